@@ -0,0 +1,100 @@
+package com.developcollect.commonpay.benchmark;
+
+import com.alibaba.fastjson.JSONObject;
+import com.alipay.api.AlipayApiException;
+import com.alipay.api.internal.util.AlipaySignature;
+import com.developcollect.commonpay.PayPlatform;
+import com.developcollect.commonpay.config.AliPayConfig;
+import com.developcollect.commonpay.pay.DefaultPayDTO;
+import com.developcollect.commonpay.pay.alipay.bean.PayData;
+import com.developcollect.commonpay.pay.alipay.bean.PayQueryData;
+import com.developcollect.dcinfra.utils.SerializeUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 支付宝请求报文处理
+ * biz_content序列化和RSA2签名、验签, 签名内容和支付宝SDK发请求时一样是排序后的公共参数加biz_content
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AlipaySignBenchmark {
+
+    private static final String CHARSET = "UTF-8";
+    private static final String SIGN_TYPE = "RSA2";
+
+    private AliPayConfig aliPayConfig;
+    private DefaultPayDTO payDTO;
+    private String privateKey;
+    private String publicKey;
+    private Map<String, String> params;
+    private Map<String, String> signedParams;
+
+    @Setup(Level.Trial)
+    public void setup() throws NoSuchAlgorithmException, AlipayApiException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+        privateKey = Base64.getEncoder().encodeToString(keyPair.getPrivate().getEncoded());
+        publicKey = Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded());
+
+        aliPayConfig = new AliPayConfig();
+        aliPayConfig.setAppId("2016101100664659");
+
+        payDTO = new DefaultPayDTO();
+        payDTO.setOutTradeNo("20201201123456789012");
+        payDTO.setTotalFee(1L);
+        payDTO.setPayPlatform(PayPlatform.ALI_PAY);
+        payDTO.setTimeStart(LocalDateTime.of(2020, 12, 1, 12, 0));
+        payDTO.setTimeExpire(LocalDateTime.of(2020, 12, 1, 12, 30));
+
+        params = new HashMap<>();
+        params.put("app_id", aliPayConfig.getAppId());
+        params.put("method", "alipay.trade.precreate");
+        params.put("format", "json");
+        params.put("charset", CHARSET);
+        params.put("sign_type", SIGN_TYPE);
+        params.put("timestamp", "2020-12-01 12:00:00");
+        params.put("version", "1.0");
+        params.put("notify_url", "https://pay.example.com/notify/alipay");
+        params.put("biz_content", JSONObject.toJSONString(PayData.of(payDTO, aliPayConfig)));
+
+        signedParams = new HashMap<>(params);
+        signedParams.put("sign", sign());
+    }
+
+    @Benchmark
+    public String payBizContent() {
+        return JSONObject.toJSONString(PayData.of(payDTO, aliPayConfig));
+    }
+
+    @Benchmark
+    public String queryBizContent() {
+        return SerializeUtil.beanToJson(PayQueryData.of(payDTO));
+    }
+
+    @Benchmark
+    public String sign() throws AlipayApiException {
+        return AlipaySignature.rsaSign(AlipaySignature.getSignCheckContentV1(params), privateKey, CHARSET, SIGN_TYPE);
+    }
+
+    @Benchmark
+    public boolean verify() throws AlipayApiException {
+        return AlipaySignature.rsaCheckV1(signedParams, publicKey, CHARSET, SIGN_TYPE);
+    }
+}
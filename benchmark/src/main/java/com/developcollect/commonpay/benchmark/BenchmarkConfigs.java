@@ -0,0 +1,34 @@
+package com.developcollect.commonpay.benchmark;
+
+import com.developcollect.commonpay.config.GlobalConfig;
+
+import java.lang.reflect.Field;
+
+/**
+ * 基准测试用的全局配置
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+final class BenchmarkConfigs {
+
+    private BenchmarkConfigs() {
+    }
+
+    /**
+     * 不开启保护措施、缓存和指标的配置, 只测被测代码本身
+     */
+    static GlobalConfig bare() {
+        return new GlobalConfig();
+    }
+
+    /**
+     * 设置全局配置
+     * GlobalConfig通常由Spring注入后反射初始化, 这里直接设置实例
+     */
+    static void install(GlobalConfig config) throws ReflectiveOperationException {
+        Field instance = GlobalConfig.class.getDeclaredField("GLOBAL_CONFIG");
+        instance.setAccessible(true);
+        instance.set(null, config);
+    }
+}
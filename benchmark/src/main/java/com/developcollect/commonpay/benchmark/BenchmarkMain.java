@@ -0,0 +1,64 @@
+package com.developcollect.commonpay.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * 基准测试入口
+ * 参数和JMH自带的入口一样, 没有指定时使用固定的默认值, 方便前后两次结果直接对比:
+ * <ul>
+ *     <li>结果以JSON格式写到 target/jmh-result.json, 可以用 -rf、-rff 修改</li>
+ *     <li>被测JVM固定堆大小并预先分配内存, 可以用 -jvmArgs 修改</li>
+ * </ul>
+ * 例如只跑微信签名: java -jar target/benchmarks.jar WxPaySign -rff target/wxpay.json
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public class BenchmarkMain {
+
+    static final String DEFAULT_RESULT_FILE = "target/jmh-result.json";
+
+    static final String[] DEFAULT_JVM_ARGS = {"-Xms1g", "-Xmx1g", "-XX:+AlwaysPreTouch", "-Dfile.encoding=UTF-8"};
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        CommandLineOptions cmdOptions;
+        try {
+            cmdOptions = new CommandLineOptions(args);
+        } catch (CommandLineOptionException e) {
+            System.err.println("Error parsing command line:");
+            System.err.println(" " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        if (cmdOptions.shouldHelp()) {
+            cmdOptions.showHelp();
+            return;
+        }
+
+        ChainedOptionsBuilder builder = new OptionsBuilder().parent(cmdOptions);
+        if (!cmdOptions.getResultFormat().hasValue()) {
+            builder.resultFormat(ResultFormatType.JSON);
+        }
+        if (!cmdOptions.getResult().hasValue()) {
+            builder.result(DEFAULT_RESULT_FILE);
+        }
+        if (!cmdOptions.getJvmArgs().hasValue()) {
+            builder.jvmArgs(DEFAULT_JVM_ARGS);
+        }
+
+        Runner runner = new Runner(builder.build());
+        if (cmdOptions.shouldList()) {
+            runner.list();
+            return;
+        }
+        runner.run();
+    }
+}
@@ -0,0 +1,77 @@
+package com.developcollect.commonpay.benchmark;
+
+import com.developcollect.commonpay.PayPlatform;
+import com.developcollect.commonpay.notice.outbox.MappedOutbox;
+import com.developcollect.commonpay.pay.PayResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 发件箱追加吞吐
+ * 每次追加后立即标记完成, 对应结果马上送达的情况, 段文件会不断轮转和删除, 不会占满磁盘
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OutboxAppendBenchmark {
+
+    @Param({"false", "true"})
+    public boolean syncOnAppend;
+
+    private File dir;
+    private MappedOutbox outbox;
+    private PayResponse payResponse;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("common-pay-outbox").toFile();
+        outbox = new MappedOutbox(dir).setSyncOnAppend(syncOnAppend);
+        outbox.open();
+
+        payResponse = new PayResponse()
+                .setPayPlatform(PayPlatform.WX_PAY)
+                .setSuccess(true)
+                .setTradeNo("4200000123202012011234567890")
+                .setOutTradeNo("20201201123456789012")
+                .setPayTime(LocalDateTime.now());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        outbox.close();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long appendAndMarkDone() throws IOException {
+        long id = outbox.append((byte) 'P', payResponse);
+        outbox.markDone(id);
+        return id;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long appendAndMarkDone4Threads() throws IOException {
+        long id = outbox.append((byte) 'P', payResponse);
+        outbox.markDone(id);
+        return id;
+    }
+}
@@ -0,0 +1,76 @@
+package com.developcollect.commonpay.benchmark;
+
+import com.developcollect.commonpay.PayPlatform;
+import com.developcollect.commonpay.config.GlobalConfig;
+import com.developcollect.commonpay.guard.GuardedPay;
+import com.developcollect.commonpay.guard.IPayInterceptor;
+import com.developcollect.commonpay.pay.DefaultPayDTO;
+import com.developcollect.commonpay.pay.IPayDTO;
+import com.developcollect.commonpay.pay.Pay;
+import com.developcollect.commonpay.pay.PayResponse;
+import com.developcollect.commonpay.pay.nopay.NoPay;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 拦截器管道开销
+ * 支付平台调用换成直接返回固定结果, 保护措施全部关闭, 只比较 直接调用 和 经过{@link GuardedPay}
+ * 分别挂0、1、4个透传拦截器的耗时; 没有拦截器时和直接调用的差距应该只有一次列表判空
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PayInterceptorBenchmark {
+
+    @Param({"0", "1", "4"})
+    public int interceptorCount;
+
+    private Pay direct;
+    private Pay guarded;
+    private IPayDTO payDTO;
+
+    @Setup(Level.Trial)
+    public void setup() throws ReflectiveOperationException {
+        GlobalConfig config = BenchmarkConfigs.bare();
+        for (int i = 0; i < interceptorCount; i++) {
+            IPayInterceptor passThrough = invocation -> invocation.proceed();
+            config.getPayInterceptors().add(passThrough);
+        }
+        BenchmarkConfigs.install(config);
+
+        PayResponse payResponse = new PayResponse()
+                .setPayPlatform(PayPlatform.WX_PAY)
+                .setSuccess(true)
+                .setOutTradeNo("20201201123456789012");
+        direct = new NoPay() {
+            @Override
+            public PayResponse payQuery(IPayDTO payDTO) {
+                return payResponse;
+            }
+        };
+        guarded = new GuardedPay(PayPlatform.WX_PAY, direct);
+
+        DefaultPayDTO dto = new DefaultPayDTO();
+        dto.setOutTradeNo("20201201123456789012");
+        dto.setTotalFee(1L);
+        dto.setPayPlatform(PayPlatform.WX_PAY);
+        payDTO = dto;
+    }
+
+    @Benchmark
+    public PayResponse direct() {
+        return direct.payQuery(payDTO);
+    }
+
+    @Benchmark
+    public PayResponse guarded() {
+        return guarded.payQuery(payDTO);
+    }
+}
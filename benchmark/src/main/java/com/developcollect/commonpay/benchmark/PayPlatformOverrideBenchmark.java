@@ -0,0 +1,71 @@
+package com.developcollect.commonpay.benchmark;
+
+import com.developcollect.commonpay.PayPlatform;
+import com.developcollect.commonpay.PayUtil;
+import com.developcollect.commonpay.RePayPlatformPayDTO;
+import com.developcollect.commonpay.config.GlobalConfig;
+import com.developcollect.commonpay.pay.DefaultPayDTO;
+import com.developcollect.commonpay.pay.IPayDTO;
+import com.developcollect.commonpay.pay.Pay;
+import com.developcollect.commonpay.pay.PayResponse;
+import com.developcollect.commonpay.pay.nopay.NoPay;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 指定支付平台调用的开销
+ * PayUtil中带payPlatform参数的方法会为订单创建覆盖支付平台的动态代理, 这里比较 按订单中的支付平台调用、
+ * 指定支付平台调用 和 直接包装成{@link RePayPlatformPayDTO}调用, 支付平台调用换成直接返回固定结果
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PayPlatformOverrideBenchmark {
+
+    private IPayDTO payDTO;
+
+    @Setup(Level.Trial)
+    public void setup() throws ReflectiveOperationException {
+        PayResponse payResponse = new PayResponse()
+                .setPayPlatform(PayPlatform.WX_PAY)
+                .setSuccess(true)
+                .setOutTradeNo("20201201123456789012");
+        Pay pay = new NoPay() {
+            @Override
+            public PayResponse payQuery(IPayDTO payDTO) {
+                return payResponse;
+            }
+        };
+        GlobalConfig config = BenchmarkConfigs.bare()
+                .setPayFactory(payPlatform -> pay);
+        BenchmarkConfigs.install(config);
+
+        DefaultPayDTO dto = new DefaultPayDTO();
+        dto.setOutTradeNo("20201201123456789012");
+        dto.setTotalFee(1L);
+        dto.setPayPlatform(PayPlatform.ALI_PAY);
+        payDTO = dto;
+    }
+
+    @Benchmark
+    public PayResponse orderPlatform() {
+        return PayUtil.payQuery(payDTO);
+    }
+
+    @Benchmark
+    public PayResponse overridePlatform() {
+        return PayUtil.payQuery(PayPlatform.WX_PAY, payDTO);
+    }
+
+    @Benchmark
+    public PayResponse wrapperPlatform() {
+        return PayUtil.payQuery(new RePayPlatformPayDTO(PayPlatform.WX_PAY, payDTO));
+    }
+}
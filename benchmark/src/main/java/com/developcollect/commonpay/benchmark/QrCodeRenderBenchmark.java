@@ -0,0 +1,66 @@
+package com.developcollect.commonpay.benchmark;
+
+import cn.hutool.extra.qrcode.QrCodeUtil;
+import com.developcollect.commonpay.qrcode.QrCodeFormat;
+import com.developcollect.commonpay.qrcode.QrCodeRenderer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 二维码渲染吞吐
+ * 对比原来的hutool(zxing + ImageIO)和{@link QrCodeRenderer}, 每次渲染的内容都不一样,
+ * 缓存命中的情况用固定内容单独测
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QrCodeRenderBenchmark {
+
+    private static final String CODE_URL = "weixin://wxpay/bizpayurl?pr=";
+
+    @Param({"300"})
+    public int size;
+
+    private QrCodeRenderer uncached;
+    private QrCodeRenderer cached;
+    private int seq;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        uncached = new QrCodeRenderer(0, 0);
+        cached = new QrCodeRenderer();
+    }
+
+    @Benchmark
+    public byte[] hutool() {
+        return QrCodeUtil.generatePng(CODE_URL + seq++, size, size);
+    }
+
+    @Benchmark
+    public byte[] rendererPng() {
+        return uncached.render(CODE_URL + seq++, size, size, QrCodeFormat.PNG);
+    }
+
+    @Benchmark
+    public byte[] rendererSvg() {
+        return uncached.render(CODE_URL + seq++, size, size, QrCodeFormat.SVG);
+    }
+
+    @Benchmark
+    public byte[] rendererCacheHit() {
+        return cached.render(CODE_URL, size, size, QrCodeFormat.PNG);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public byte[] rendererPng4Threads() {
+        return uncached.render(CODE_URL + Thread.currentThread().getId() + System.nanoTime(), size, size, QrCodeFormat.PNG);
+    }
+}
@@ -0,0 +1,114 @@
+package com.developcollect.commonpay.benchmark;
+
+import com.developcollect.commonpay.PayPlatform;
+import com.developcollect.commonpay.cache.TerminalStateCache;
+import com.developcollect.commonpay.config.GlobalConfig;
+import com.developcollect.commonpay.guard.GuardedPay;
+import com.developcollect.commonpay.metrics.InMemoryPayMetrics;
+import com.developcollect.commonpay.notice.IUnconfirmedOrderFetcher;
+import com.developcollect.commonpay.notice.Page;
+import com.developcollect.commonpay.notice.QueryNoticeManager;
+import com.developcollect.commonpay.pay.DefaultPayDTO;
+import com.developcollect.commonpay.pay.IPayDTO;
+import com.developcollect.commonpay.pay.Pay;
+import com.developcollect.commonpay.pay.PayResponse;
+import com.developcollect.commonpay.pay.QueryResult;
+import com.developcollect.commonpay.pay.nopay.NoPay;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 主动查询一轮的开销
+ * 未支付订单从内存中分页取出, 支付平台调用换成直接返回"未支付", 测的是分页、保护措施、结果分类和广播判断这些
+ * 查询之外的开销; 保留默认的熔断、隔离舱和指标, 关闭限流和自适应并发限制, 避免测的是被拒绝的调用
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QuerySweepBenchmark {
+
+    @Param({"50", "500"})
+    public int backlog;
+
+    private SweepManager manager;
+
+    @Setup(Level.Trial)
+    public void setup() throws ReflectiveOperationException {
+        List<IPayDTO> orders = new ArrayList<>(backlog);
+        for (int i = 0; i < backlog; i++) {
+            DefaultPayDTO dto = new DefaultPayDTO();
+            dto.setOutTradeNo(String.valueOf(20201201000000000L + i));
+            dto.setTotalFee(1L);
+            dto.setPayPlatform(PayPlatform.WX_PAY);
+            orders.add(dto);
+        }
+
+        Pay pending = new NoPay() {
+            @Override
+            public QueryResult<PayResponse> payQueryResult(IPayDTO payDTO) {
+                return QueryResult.pending(new PayResponse()
+                        .setPayPlatform(PayPlatform.WX_PAY)
+                        .setSuccess(false)
+                        .setOutTradeNo(payDTO.getOutTradeNo()));
+            }
+        };
+        Pay guarded = new GuardedPay(PayPlatform.WX_PAY, pending);
+
+        GlobalConfig config = new GlobalConfig()
+                .enableGuards()
+                .setRateLimiter(null)
+                .setAdaptiveLimiter(null)
+                .setPayMetrics(new InMemoryPayMetrics())
+                .setTerminalStateCache(new TerminalStateCache())
+                .setPayFactory(payPlatform -> guarded)
+                .setUnconfirmedOrderFetcher(new InMemoryOrderFetcher(orders));
+        BenchmarkConfigs.install(config);
+        manager = new SweepManager();
+    }
+
+    @Benchmark
+    public void paySweep() {
+        manager.paySweep();
+    }
+
+    /**
+     * 只暴露一轮查询, 不启动定时任务
+     */
+    static class SweepManager extends QueryNoticeManager {
+        void paySweep() {
+            payQueryTask();
+        }
+    }
+
+    /**
+     * 每页50条的内存分页
+     */
+    static class InMemoryOrderFetcher implements IUnconfirmedOrderFetcher {
+
+        private final List<IPayDTO> orders;
+
+        InMemoryOrderFetcher(List<IPayDTO> orders) {
+            this.orders = orders;
+        }
+
+        @Override
+        public Page<IPayDTO> getUnconfirmedOrders(Page<IPayDTO> page) {
+            // 第一次传入的是空的第1页, 之后每次取下一页
+            long current = page.getRecords().isEmpty() ? page.getCurrent() : page.getCurrent() + 1;
+            Page<IPayDTO> next = new Page<>(current, page.getSize(), orders.size());
+            int from = (int) ((current - 1) * page.getSize());
+            int to = (int) Math.min(from + page.getSize(), orders.size());
+            next.setRecords(orders.subList(from, to));
+            return next;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.developcollect.commonpay.benchmark;
+
+import com.developcollect.commonpay.utils.UnitUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 金额单位换算
+ * 每个请求和回调都会在分和元之间换算, 金额从固定种子生成的数组中轮流取, 避免被常量折叠
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UnitUtilBenchmark {
+
+    private static final int SIZE = 1024;
+
+    private final long[] fens = new long[SIZE];
+    private final String[] yuanStrs = new String[SIZE];
+    private final BigDecimal[] yuans = new BigDecimal[SIZE];
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(20201201L);
+        for (int i = 0; i < SIZE; i++) {
+            fens[i] = 1 + random.nextInt(10_000_000);
+            yuans[i] = UnitUtil.convertFenToYuan(fens[i]);
+            yuanStrs[i] = yuans[i].toPlainString();
+        }
+    }
+
+    private int next() {
+        return index = (index + 1) & (SIZE - 1);
+    }
+
+    @Benchmark
+    public BigDecimal fenToYuan() {
+        return UnitUtil.convertFenToYuan(fens[next()]);
+    }
+
+    @Benchmark
+    public String fenToYuanStr() {
+        return UnitUtil.convertFenToYuanStr(fens[next()]);
+    }
+
+    @Benchmark
+    public long yuanStrToFen() {
+        return UnitUtil.convertYuanToFen(yuanStrs[next()]);
+    }
+
+    @Benchmark
+    public long yuanToFen() {
+        return UnitUtil.convertYuanToFen(yuans[next()]);
+    }
+}
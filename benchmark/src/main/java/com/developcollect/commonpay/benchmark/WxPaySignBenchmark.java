@@ -0,0 +1,73 @@
+package com.developcollect.commonpay.benchmark;
+
+import com.developcollect.commonpay.pay.wxpay.sdk.WXPayConstants;
+import com.developcollect.commonpay.pay.wxpay.sdk.WXPayUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 微信支付请求报文处理
+ * 用一个统一下单请求的参数测签名、生成xml和解析xml, 每次下单、查询和回调验签都会走这几步
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WxPaySignBenchmark {
+
+    private static final String KEY = "192006250b4c09247ec02edce69f6a2d";
+
+    @Param({"MD5", "HMACSHA256"})
+    public WXPayConstants.SignType signType;
+
+    private Map<String, String> data;
+    private String xml;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        data = new HashMap<>();
+        data.put("appid", "wx2421b1c4370ec43b");
+        data.put("mch_id", "10000100");
+        data.put("nonce_str", "1add1a30ac87aa2db72f57a2375d8fec");
+        data.put("body", "商品_20201201123456789012");
+        data.put("out_trade_no", "20201201123456789012");
+        data.put("total_fee", "1");
+        data.put("spbill_create_ip", "123.12.12.123");
+        data.put("notify_url", "https://pay.example.com/notify/wxpay");
+        data.put("trade_type", "NATIVE");
+        data.put("product_id", "20201201123456789012");
+        data.put("time_start", "20201201120000");
+        data.put("time_expire", "20201201123000");
+        data.put("sign_type", signType == WXPayConstants.SignType.MD5 ? WXPayConstants.MD5 : WXPayConstants.HMACSHA256);
+        data.put("sign", WXPayUtil.generateSignature(data, KEY, signType));
+        xml = WXPayUtil.mapToXml(data);
+    }
+
+    @Benchmark
+    public String generateSignature() throws Exception {
+        return WXPayUtil.generateSignature(data, KEY, signType);
+    }
+
+    @Benchmark
+    public String mapToXml() throws Exception {
+        return WXPayUtil.mapToXml(data);
+    }
+
+    @Benchmark
+    public Map<String, String> xmlToMap() throws Exception {
+        return WXPayUtil.xmlToMap(xml);
+    }
+
+    @Benchmark
+    public boolean verifyResponse() throws Exception {
+        return WXPayUtil.isSignatureValid(WXPayUtil.xmlToMap(xml), KEY, signType);
+    }
+}
@@ -0,0 +1,146 @@
+package com.developcollect.commonpay.config;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.experimental.Accessors;
+
+import java.io.InputStream;
+import java.util.function.Supplier;
+
+/**
+ * 支付宝支付配置
+ *
+ * @author zak
+ * @since 1.0.0
+ */
+
+@Data
+@EqualsAndHashCode(callSuper = true)
+@Accessors(chain = true)
+public class AliPayConfig extends AbstractPayConfig {
+
+    /**
+     * 支付宝appid
+     */
+    private String appId;
+
+    /**
+     * 私钥
+     */
+    private String privateKey;
+
+    /**
+     * 公钥
+     */
+    private String publicKey;
+
+    /**
+     * 编码集，支持 GBK/UTF-8
+     */
+    private String charset = "UTF-8";
+
+    /**
+     * 商户生成签名字符串所使用的签名算法类型，目前支持 RSA2 和 RSA，推荐使用 RSA2
+     */
+    private String signType = "RSA2";
+
+    /**
+     * 请求超时时间, 单位毫秒
+     * 默认和支付宝SDK自身的超时一致(连接3秒 + 读15秒); 开启自适应超时后按接口耗时收紧, 不超过这个值
+     */
+    private int timeoutMillis = 18_000;
+
+    /**
+     * 网关地址, 为空时按是否debug使用支付宝正式环境或沙箱环境的地址
+     * 可以指向本地的模拟网关, 如 http://127.0.0.1:8080/gateway.do
+     *
+     * @since 2.2.0
+     */
+    private String serverUrl;
+
+
+    /**
+     * 应用公钥证书内容提供器
+     */
+    private Supplier<String> appCertContentSupplier;
+
+
+    /**
+     * 支付宝公钥证书文件内容提供器
+     */
+    private Supplier<String> alipayCertContentSupplier;
+
+
+    /**
+     * 支付宝 CA 根证书文件内容提供器
+     */
+    private Supplier<String> alipayRootCertContentSupplier;
+
+
+    public boolean hasCert() {
+        return this.getAppCertContentSupplier() != null
+                && this.getAlipayCertContentSupplier() != null
+                && this.getAlipayRootCertContentSupplier() != null;
+    }
+
+
+    public AliPayConfig setAppId(String appId) {
+        checkNotFrozen();
+        this.appId = appId;
+        return this;
+    }
+
+    public AliPayConfig setPrivateKey(String privateKey) {
+        checkNotFrozen();
+        this.privateKey = privateKey;
+        return this;
+    }
+
+    public AliPayConfig setPublicKey(String publicKey) {
+        checkNotFrozen();
+        this.publicKey = publicKey;
+        return this;
+    }
+
+    public AliPayConfig setCharset(String charset) {
+        checkNotFrozen();
+        this.charset = charset;
+        return this;
+    }
+
+    public AliPayConfig setSignType(String signType) {
+        checkNotFrozen();
+        this.signType = signType;
+        return this;
+    }
+
+    public AliPayConfig setTimeoutMillis(int timeoutMillis) {
+        checkNotFrozen();
+        this.timeoutMillis = timeoutMillis;
+        return this;
+    }
+
+    public AliPayConfig setServerUrl(String serverUrl) {
+        checkNotFrozen();
+        this.serverUrl = serverUrl;
+        return this;
+    }
+
+    public AliPayConfig setAppCertContentSupplier(Supplier<String> appCertContentSupplier) {
+        checkNotFrozen();
+        this.appCertContentSupplier = appCertContentSupplier;
+        return this;
+    }
+
+    public AliPayConfig setAlipayCertContentSupplier(Supplier<String> alipayCertContentSupplier) {
+        checkNotFrozen();
+        this.alipayCertContentSupplier = alipayCertContentSupplier;
+        return this;
+    }
+
+    public AliPayConfig setAlipayRootCertContentSupplier(Supplier<String> alipayRootCertContentSupplier) {
+        checkNotFrozen();
+        this.alipayRootCertContentSupplier = alipayRootCertContentSupplier;
+        return this;
+    }
+}
@@ -4,6 +4,8 @@ import cn.hutool.core.util.StrUtil;
 import com.alibaba.fastjson.JSONObject;
 import com.alipay.api.AlipayApiException;
 import com.alipay.api.AlipayClient;
+import com.alipay.api.AlipayRequest;
+import com.alipay.api.AlipayResponse;
 import com.alipay.api.CertAlipayRequest;
 import com.alipay.api.DefaultAlipayClient;
 import com.alipay.api.request.*;
@@ -11,17 +13,25 @@ import com.alipay.api.response.*;
 import com.developcollect.commonpay.ExtKeys;
 import com.developcollect.commonpay.PayPlatform;
 import com.developcollect.commonpay.config.AliPayConfig;
+import com.developcollect.commonpay.config.GlobalConfig;
 import com.developcollect.commonpay.exception.PayException;
+import com.developcollect.commonpay.guard.AdaptiveTimeouts;
+import com.developcollect.commonpay.guard.Deadlines;
+import com.developcollect.commonpay.guard.PayCallContext;
+import com.developcollect.commonpay.metrics.CallTimings;
 import com.developcollect.commonpay.pay.*;
 import com.developcollect.commonpay.pay.alipay.bean.PayData;
 import com.developcollect.commonpay.pay.alipay.bean.PayQueryData;
 import com.developcollect.commonpay.pay.alipay.bean.RefundData;
 import com.developcollect.commonpay.pay.alipay.bean.TransferData;
+import com.developcollect.commonpay.pay.alipay.utils.AlipaySignature;
+import com.developcollect.commonpay.warmup.WarmUpSteps;
 import com.developcollect.dcinfra.utils.DateUtil;
 import com.developcollect.dcinfra.utils.SerializeUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 
+import java.net.URI;
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.Map;
@@ -43,6 +53,8 @@ public class Alipay extends AbstractPay {
      */
     private static final String SERVER_URL = "https://openapi.alipay.com/gateway.do";
     private static final String SANDBOX_SERVER_URL = "https://openapi.alipaydev.com/gateway.do";
+    private static final String SERVER_DOMAIN = "openapi.alipay.com";
+    private static final String SANDBOX_SERVER_DOMAIN = "openapi.alipaydev.com";
 
     /**
      * 参数返回格式，只支持 json
@@ -81,10 +93,54 @@ public class Alipay extends AbstractPay {
      **/
     public static final String WAP_PRODUCT_CODE = "QUICK_WAP_WAY";
 
-//    /**
-//     * alipayClient是可重用的
-//     */
-//    private volatile AlipayClient alipayClient;
+    /**
+     * alipayClient是可重用的, 挂在配置快照上, 配置重新加载后重新创建
+     */
+    private static final String CLIENT_RESOURCE = "alipay.client";
+
+    /**
+     * 支付宝SDK自身的超时时间: 连接3秒 + 读15秒
+     */
+    private static final long SDK_TIMEOUT_MILLIS = 18_000;
+
+    /**
+     * 预热时加载并初始化的类: 用到的请求和响应类, 以及SDK内部请求、解析响应和验签的类
+     * SDK内部的类在不同版本中可能不存在, 用类名加载
+     */
+    private static final Class<?>[] WARM_UP_CLASSES = {
+            AlipayTradePayRequest.class, AlipayTradePayResponse.class,
+            AlipayTradePrecreateRequest.class, AlipayTradePrecreateResponse.class,
+            AlipayTradeWapPayRequest.class, AlipayTradeWapPayResponse.class,
+            AlipayTradePagePayRequest.class, AlipayTradePagePayResponse.class,
+            AlipayTradeQueryRequest.class, AlipayTradeQueryResponse.class,
+            AlipayTradeCloseRequest.class, AlipayTradeCloseResponse.class,
+            AlipayTradeRefundRequest.class, AlipayTradeRefundResponse.class,
+            AlipayTradeFastpayRefundQueryRequest.class, AlipayTradeFastpayRefundQueryResponse.class,
+            AlipayFundTransUniTransferRequest.class, AlipayFundTransUniTransferResponse.class,
+            AlipayFundTransOrderQueryRequest.class, AlipayFundTransOrderQueryResponse.class,
+    };
+    private static final String[] WARM_UP_SDK_CLASS_NAMES = {
+            "com.alipay.api.internal.util.WebUtils",
+            "com.alipay.api.internal.util.AlipayHashMap",
+            "com.alipay.api.internal.util.RequestParametersHolder",
+            "com.alipay.api.internal.util.AntCertificationUtil",
+            "com.alipay.api.internal.util.json.JSONValidatingReader",
+            "com.alipay.api.internal.parser.json.ObjectJsonParser",
+            "com.alipay.api.internal.parser.json.JsonConverter",
+            "com.alipay.api.internal.mapping.Converters",
+    };
+
+
+    public Alipay() {
+    }
+
+    /**
+     * @param merchantId 商户标识, 为null时使用默认配置
+     * @since 2.2.0
+     */
+    public Alipay(String merchantId) {
+        super(merchantId);
+    }
 
 
     /**
@@ -100,7 +156,7 @@ public class Alipay extends AbstractPay {
             alipayTradePayRequest.setNotifyUrl(aliPayConfig.getPayNotifyUrlGenerator().apply(payDTO));
 
 
-            PayData payData = PayData.of(payDTO);
+            PayData payData = PayData.of(payDTO, aliPayConfig);
             payData.setAuthCode(payDTO.getExt(ExtKeys.PAY_SCAN_AUTH_CODE).toString());
             payData.setProductCode("FACE_TO_FACE_PAYMENT");
 
@@ -109,14 +165,10 @@ public class Alipay extends AbstractPay {
             alipayTradePayRequest.setBizContent(param);
             AlipayTradePayResponse response ;
 
-            if (aliPayConfig.hasCert()) {
-                response = alipayClient.certificateExecute(alipayTradePayRequest);
-            }else{
-                response = alipayClient.execute(alipayTradePayRequest);
-            }
+            response = execute(alipayClient, aliPayConfig, alipayTradePayRequest);
 
             // 当前预下单请求生成的二维码码串，可以用二维码生成工具根据该码串值生成对应的二维码
-            PayResponse payResponse = PayResponse.of(response);
+            PayResponse payResponse = AliPayResponses.of(response);
             return payResponse;
         } catch (Throwable throwable) {
             log.error("支付宝支付失败", throwable);
@@ -142,7 +194,7 @@ public class Alipay extends AbstractPay {
             AlipayTradePrecreateRequest preCreateRequest = new AlipayTradePrecreateRequest();
             preCreateRequest.setNotifyUrl(aliPayConfig.getPayNotifyUrlGenerator().apply(payDTO));
 
-            PayData payData = PayData.of(payDTO);
+            PayData payData = PayData.of(payDTO, aliPayConfig);
             payData.setProductCode("FACE_TO_FACE_PAYMENT");
 
             String param = JSONObject.toJSONString(payData);
@@ -151,11 +203,7 @@ public class Alipay extends AbstractPay {
 
             AlipayTradePrecreateResponse response ;
 
-            if (aliPayConfig.hasCert()) {
-                response = alipayClient.certificateExecute(preCreateRequest);
-            }else{
-                response = alipayClient.execute(preCreateRequest);
-            }
+            response = execute(alipayClient, aliPayConfig, preCreateRequest);
 
             //网关返回码,code 非10000接口调用失败，错误信息以subMsg属性返回
             //如code为10000，需要再次判断subCode是否为空，
@@ -200,7 +248,7 @@ public class Alipay extends AbstractPay {
                 alipayRequest.setReturnUrl(aliPayConfig.getWapReturnUrlGenerator().apply(payDTO));
             }
 
-            PayData payData = PayData.of(payDTO);
+            PayData payData = PayData.of(payDTO, aliPayConfig);
             payData.setProductCode("QUICK_WAP_PAY");
 
             try {
@@ -245,7 +293,7 @@ public class Alipay extends AbstractPay {
                 alipayRequest.setReturnUrl(aliPayConfig.getPcReturnUrlGenerator().apply(payDTO));
             }
 
-            PayData payData = PayData.of(payDTO);
+            PayData payData = PayData.of(payDTO, aliPayConfig);
             payData.setProductCode("FAST_INSTANT_TRADE_PAY");
 
             String param = JSONObject.toJSONString(payData);
@@ -279,6 +327,28 @@ public class Alipay extends AbstractPay {
      */
     @Override
     public PayResponse payQuery(IPayDTO payDTO) {
+        return toPayQueryResponse(payDTO, payQueryResult(payDTO));
+    }
+
+    @Override
+    public PayResponse toPayQueryResponse(IPayDTO payDTO, QueryResult<PayResponse> result) {
+        if (result.isTransportError()) {
+            log.error("支付宝订单[{}]查询失败", payDTO.getOutTradeNo(), result.getCause());
+        } else if (!result.isAnswered()) {
+            log.info("支付宝订单[{}]查询失败: {}", payDTO.getOutTradeNo(), result);
+        }
+        return result.isAnswered() ? result.getResponse() : null;
+    }
+
+    /**
+     * 订单查询, 交易不存在等业务结果不抛异常
+     * https://opendocs.alipay.com/apis/api_1/alipay.trade.query
+     *
+     * @param payDTO 支付参数
+     * @return 查询结果
+     */
+    @Override
+    public QueryResult<PayResponse> payQueryResult(IPayDTO payDTO) {
         try {
             AliPayConfig payConfig = getPayConfig();
             AlipayClient alipayClient = getAlipayClient(payConfig);
@@ -291,21 +361,70 @@ public class Alipay extends AbstractPay {
 
             AlipayTradeQueryResponse response ;
 
-            if (payConfig.hasCert()) {
-                response = alipayClient.certificateExecute(request);
-            }else{
-                response = alipayClient.execute(request);
-            }
+            response = executeQuery(alipayClient, payConfig, request);
 
             if (!response.isSuccess()) {
+                // 用户还没有扫码时支付宝侧没有交易
+                return "ACQ.TRADE_NOT_EXIST".equals(response.getSubCode())
+                        ? QueryResult.notFound(null, response.getSubCode(), response.getSubMsg())
+                        : QueryResult.businessError(null, response.getSubCode(), response.getSubMsg());
+            }
+
+            return QueryResult.of(AliPayResponses.of(response));
+        } catch (Exception e) {
+            return QueryResult.transportError(e);
+        }
+    }
+
+    /**
+     * 关闭订单
+     * https://opendocs.alipay.com/apis/api_1/alipay.trade.close
+     * 用户还没有扫码时支付宝侧没有交易, 返回交易不存在; 这时关不掉预下单的二维码, 之后扫码仍然可以支付,
+     * 所以返回未关闭的结果(错误码为ACQ.TRADE_NOT_EXIST), 订单靠下单时传入的time_expire失效或者之后再查询确认
+     *
+     * @param payDTO 订单
+     * @return 关闭结果, 交易不存在时{@link PayResponse#isClosed()}为false
+     */
+    @Override
+    public PayResponse closeOrder(IPayDTO payDTO) {
+        try {
+            AliPayConfig payConfig = getPayConfig();
+            AlipayClient alipayClient = getAlipayClient(payConfig);
+
+            AlipayTradeCloseRequest request = new AlipayTradeCloseRequest();
+            request.setBizContent(SerializeUtil.beanToJson(PayQueryData.of(payDTO)));
+
+            AlipayTradeCloseResponse response;
+            response = execute(alipayClient, payConfig, request);
+
+            if (!response.isSuccess() && "ACQ.TRADE_STATUS_ERROR".equals(response.getSubCode())) {
+                // 交易状态不允许关闭, 一般是已经支付或已经关闭了, 以查询结果为准
+                PayResponse payResponse = payQuery(payDTO);
+                if (payResponse == null) {
+                    throw new PayException(response.getSubCode(), response);
+                }
+                return payResponse;
+            }
+            boolean notExist = !response.isSuccess() && "ACQ.TRADE_NOT_EXIST".equals(response.getSubCode());
+            if (!response.isSuccess() && !notExist) {
                 throw new PayException(response.getSubCode(), response);
             }
 
-            PayResponse payResponse = PayResponse.of(response);
+            PayResponse payResponse = new PayResponse();
+            payResponse
+                    .setClosed(!notExist)
+                    .setErrCode(response.getSubCode())
+                    .setErrCodeDes(response.getSubMsg())
+                    .setRawObj(response)
+                    .setPayPlatform(getPlatform())
+                    .setTradeNo(response.getTradeNo() == null ? payDTO.getTradeNo() : response.getTradeNo())
+                    .setOutTradeNo(payDTO.getOutTradeNo());
             return payResponse;
-        } catch (Exception e) {
-            log.error("支付宝订单[{}]查询失败", payDTO.getOutTradeNo(), e);
-            return null;
+        } catch (Throwable throwable) {
+            log.error("支付宝订单[{}]关闭失败", payDTO.getOutTradeNo());
+            throw (throwable instanceof PayException)
+                    ? (PayException) throwable
+                    : new PayException("支付宝订单关闭失败", throwable);
         }
     }
 
@@ -326,11 +445,7 @@ public class Alipay extends AbstractPay {
 
             AlipayTradeRefundResponse alipayTradeRefundResponse;
 
-            if (aliPayConfig.hasCert()) {
-                alipayTradeRefundResponse = alipayClient.certificateExecute(refundRequest);
-            }else{
-                alipayTradeRefundResponse = alipayClient.execute(refundRequest);
-            }
+            alipayTradeRefundResponse = execute(alipayClient, aliPayConfig, refundRequest);
 
             if (!alipayTradeRefundResponse.isSuccess()) {
                 throw new PayException(alipayTradeRefundResponse.getSubCode(), alipayTradeRefundResponse);
@@ -364,6 +479,37 @@ public class Alipay extends AbstractPay {
      */
     @Override
     public RefundResponse refundQuery(IRefundDTO refundDTO) {
+        return toRefundQueryResponse(refundDTO, refundQueryResult(refundDTO));
+    }
+
+    @Override
+    public RefundResponse toRefundQueryResponse(IRefundDTO refundDTO, QueryResult<RefundResponse> result) {
+        if (result.isTransportError()) {
+            Throwable cause = result.getCause();
+            if (cause instanceof AlipayApiException) {
+                log.error("支付宝退款查询失败", cause);
+                return null;
+            }
+            throw cause instanceof PayException
+                    ? (PayException) cause
+                    : new PayException("支付宝退款查询失败", cause);
+        }
+        if (result.isBusinessError()) {
+            throw new PayException(result.getCode(), result.getResponse().getRawObj());
+        }
+        return result.getResponse();
+    }
+
+    /**
+     * 支付宝退款查询, 退款不存在等业务结果不抛异常
+     * https://opendocs.alipay.com/apis/api_1/alipay.trade.fastpay.refund.query
+     * 支付宝只有退款成功时才返回退款金额, 没有退款金额时按退款不存在处理, 退款结果的状态为失败
+     *
+     * @param refundDTO 退款单
+     * @return 查询结果
+     */
+    @Override
+    public QueryResult<RefundResponse> refundQueryResult(IRefundDTO refundDTO) {
         try {
             AliPayConfig aliPayConfig = getPayConfig();
             AlipayClient alipayClient = getAlipayClient(aliPayConfig);
@@ -388,35 +534,31 @@ public class Alipay extends AbstractPay {
 
             request.setBizContent(JSONObject.toJSONString(paramMap));
             AlipayTradeFastpayRefundQueryResponse response ;
-            if (aliPayConfig.hasCert()) {
-                response = alipayClient.certificateExecute(request);
-            }else{
-                response = alipayClient.execute(request);
-            }
-            if (!response.isSuccess()) {
-                log.debug("支付宝退款查询调用失败");
-                throw new PayException(response.getSubCode(), response);
-            }
+            response = executeQuery(alipayClient, aliPayConfig, request);
 
             RefundResponse refundResponse = new RefundResponse();
             refundResponse.setRawObj(response);
-            refundResponse.setRefundNo(response.getTradeNo() + ":" + refundDTO.getOutRefundNo());
-            if (StringUtils.isNotBlank(response.getRefundAmount()) || "REFUND_SUCCESS".equals(response.getRefundStatus())) {
-                refundResponse.setStatus(RefundResponse.SUCCESS);
-            } else {
-                refundResponse.setStatus(RefundResponse.FAIL);
-            }
             refundResponse.setPayPlatform(getPlatform());
             refundResponse.setOutRefundNo(refundDTO.getOutRefundNo());
+            if (!response.isSuccess()) {
+                log.debug("支付宝退款查询调用失败");
+                return QueryResult.businessError(refundResponse, response.getSubCode(), response.getSubMsg());
+            }
+
+            refundResponse.setRefundNo(response.getTradeNo() + ":" + refundDTO.getOutRefundNo());
             //退款时间； 默认不返回该信息，需与支付宝约定后配置返回；
             if (response.getGmtRefundPay() != null) {
                 refundResponse.setRefundTime(DateUtil.localDateTime(response.getGmtRefundPay()));
             }
-            return refundResponse;
-        } catch (AlipayApiException e) {
-            e.printStackTrace();
+            if (StringUtils.isNotBlank(response.getRefundAmount()) || "REFUND_SUCCESS".equals(response.getRefundStatus())) {
+                refundResponse.setStatus(RefundResponse.SUCCESS);
+                return QueryResult.of(refundResponse);
+            }
+            refundResponse.setStatus(RefundResponse.FAIL);
+            return QueryResult.notFound(refundResponse, response.getRefundStatus(), "退款不存在");
+        } catch (Exception e) {
+            return QueryResult.transportError(e);
         }
-        return null;
     }
 
     @Override
@@ -433,11 +575,7 @@ public class Alipay extends AbstractPay {
             log.debug("支付宝转账参数: {}", param);
             transferRequest.setBizContent(param);
             AlipayFundTransUniTransferResponse response;
-            if (aliPayConfig.hasCert()) {
-                response = alipayClient.certificateExecute(transferRequest);
-            }else{
-                response = alipayClient.execute(transferRequest);
-            }
+            response = execute(alipayClient, aliPayConfig, transferRequest);
             if (!response.isSuccess()) {
                 throw new PayException(response.getSubCode(), response);
             }
@@ -476,6 +614,33 @@ public class Alipay extends AbstractPay {
 
     @Override
     public TransferResponse transferQuery(ITransferDTO transferDTO) {
+        return toTransferQueryResponse(transferDTO, transferQueryResult(transferDTO));
+    }
+
+    @Override
+    public TransferResponse toTransferQueryResponse(ITransferDTO transferDTO, QueryResult<TransferResponse> result) {
+        if (result.isAnswered()) {
+            return result.getResponse();
+        }
+        log.error("支付宝查询转账失败");
+        Throwable cause = result.getCause();
+        if (cause == null) {
+            throw new PayException(result.getCode(), result.getResponse().getRawObj());
+        }
+        throw cause instanceof PayException
+                ? (PayException) cause
+                : new PayException("支付宝查询转账失败", cause);
+    }
+
+    /**
+     * 支付宝转账查询, 转账单不存在等业务结果不抛异常
+     * https://opendocs.alipay.com/apis/api_1/alipay.fund.trans.order.query
+     *
+     * @param transferDTO 转账单
+     * @return 查询结果
+     */
+    @Override
+    public QueryResult<TransferResponse> transferQueryResult(ITransferDTO transferDTO) {
         try {
             AliPayConfig aliPayConfig = getPayConfig();
             AlipayClient alipayClient = getAlipayClient(aliPayConfig);
@@ -491,22 +656,22 @@ public class Alipay extends AbstractPay {
 
             request.setBizContent(JSONObject.toJSONString(paramMap));
             AlipayFundTransOrderQueryResponse response;
-            if (aliPayConfig.hasCert()) {
-                response = alipayClient.certificateExecute(request);
-            }else{
-                response = alipayClient.execute(request);
-            }
+            response = executeQuery(alipayClient, aliPayConfig, request);
+
+            TransferResponse transferResponse = new TransferResponse();
+            transferResponse.setPayPlatform(getPlatform());
+            transferResponse.setRawObj(response);
 
             if (!response.isSuccess()) {
                 log.debug("支付宝转账查询调用失败");
-                throw new PayException(response.getSubCode(), response);
+                transferResponse.setOutTransferNo(transferDTO.getOutTransferNo());
+                return "ORDER_NOT_EXIST".equals(response.getSubCode())
+                        ? QueryResult.notFound(transferResponse, response.getSubCode(), response.getSubMsg())
+                        : QueryResult.businessError(transferResponse, response.getSubCode(), response.getSubMsg());
             }
 
-            TransferResponse transferResponse = new TransferResponse();
             transferResponse.setTransferNo(response.getOrderId());
             transferResponse.setOutTransferNo(response.getOutBizNo());
-            transferResponse.setPayPlatform(getPlatform());
-            transferResponse.setRawObj(response);
 
             LocalDateTime transDate = Optional.of(response)
                     .map(AlipayFundTransOrderQueryResponse::getPayDate)
@@ -525,23 +690,100 @@ public class Alipay extends AbstractPay {
                 transferResponse.setStatus(TransferResponse.PROCESSING);
             }
 
-            return transferResponse;
-        } catch (Throwable throwable) {
-            log.error("支付宝查询转账失败");
-            throw (throwable instanceof PayException)
-                    ? (PayException) throwable
-                    : new PayException("支付宝查询转账失败", throwable);
+            return QueryResult.of(transferResponse);
+        } catch (Exception e) {
+            return QueryResult.transportError(e);
+        }
+    }
+
+
+    /**
+     * 请求支付宝的下单、退款、转账、关单等会改变状态的接口
+     * 放弃等待后请求仍可能在支付宝执行成功, 所以不交给单独的线程限时等待, 在调用方线程中执行到SDK自身超时;
+     * 只在发出前检查截止时间
+     */
+    private <T extends AlipayResponse> T execute(AlipayClient alipayClient, AliPayConfig aliPayConfig, AlipayRequest<T> request) throws AlipayApiException {
+        return execute(alipayClient, aliPayConfig, request, false);
+    }
+
+    /**
+     * 请求支付宝的查询接口
+     * SDK不支持按请求设置超时, 超时时间或剩余时间比SDK自身的超时短时在单独的线程中请求并限时等待, 查询放弃等待也没有副作用
+     */
+    private <T extends AlipayResponse> T executeQuery(AlipayClient alipayClient, AliPayConfig aliPayConfig, AlipayRequest<T> request) throws AlipayApiException {
+        return execute(alipayClient, aliPayConfig, request, true);
+    }
+
+    private <T extends AlipayResponse> T execute(AlipayClient alipayClient, AliPayConfig aliPayConfig, AlipayRequest<T> request, boolean idempotent) throws AlipayApiException {
+        String method = request.getApiMethodName();
+        PayCallContext.current().checkDeadline("请求支付宝" + method);
+        AdaptiveTimeouts adaptiveTimeouts = GlobalConfig.adaptiveTimeouts();
+        int timeoutMillis = adaptiveTimeouts == null
+                ? aliPayConfig.getTimeoutMillis()
+                : adaptiveTimeouts.timeoutMillis(method, aliPayConfig.getTimeoutMillis());
+        long start = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        CallTimings.recordDomain(serverDomain(aliPayConfig));
+        try {
+            if (!idempotent) {
+                return doExecute(alipayClient, aliPayConfig, request);
+            }
+            return Deadlines.callWithin(timeoutMillis, SDK_TIMEOUT_MILLIS, () -> doExecute(alipayClient, aliPayConfig, request));
+        } catch (AlipayApiException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new PayException("请求支付宝" + method + "失败", e);
+        } finally {
+            // SDK内部的签名、请求和验签拆不开, 整体计入SERVER
+            CallTimings.record(CallTimings.Phase.SERVER, startNanos);
+            // 超时的耗时也计入, 接口整体变慢时超时时间才能跟着放宽
+            if (adaptiveTimeouts != null) {
+                adaptiveTimeouts.record(method, System.currentTimeMillis() - start);
+            }
         }
     }
 
+    private static <T extends AlipayResponse> T doExecute(AlipayClient alipayClient, AliPayConfig aliPayConfig, AlipayRequest<T> request) throws AlipayApiException {
+        return aliPayConfig.hasCert()
+                ? alipayClient.certificateExecute(request)
+                : alipayClient.execute(request);
+    }
+
+    private static String serverUrl(AliPayConfig aliPayConfig) {
+        if (aliPayConfig.getServerUrl() != null) {
+            return aliPayConfig.getServerUrl();
+        }
+        return aliPayConfig.isDebug() ? SANDBOX_SERVER_URL : SERVER_URL;
+    }
+
+    private static String serverDomain(AliPayConfig aliPayConfig) {
+        if (aliPayConfig.getServerUrl() != null) {
+            return URI.create(aliPayConfig.getServerUrl()).getHost();
+        }
+        return aliPayConfig.isDebug() ? SANDBOX_SERVER_DOMAIN : SERVER_DOMAIN;
+    }
 
     private AlipayClient getAlipayClient(AliPayConfig aliPayConfig) {
+        return getConfigResource(aliPayConfig, CLIENT_RESOURCE, this::newAlipayClient);
+    }
+
+    private AlipayClient newAlipayClient(AliPayConfig aliPayConfig) {
+        long start = System.nanoTime();
+        try {
+            return doNewAlipayClient(aliPayConfig);
+        } finally {
+            // 解析密钥和证书
+            CallTimings.record(CallTimings.Phase.CONFIG, start);
+        }
+    }
+
+    private AlipayClient doNewAlipayClient(AliPayConfig aliPayConfig) {
         if (aliPayConfig.hasCert()) {
             return getCertClient(aliPayConfig);
         }
 
         AlipayClient alipayClient = new DefaultAlipayClient(
-                aliPayConfig.isDebug() ? SANDBOX_SERVER_URL : SERVER_URL,
+                serverUrl(aliPayConfig),
                 aliPayConfig.getAppId(),
                 aliPayConfig.getPrivateKey(),
                 FORMAT,
@@ -559,7 +801,7 @@ public class Alipay extends AbstractPay {
         try {
             //构造client
             CertAlipayRequest certAlipayRequest = new CertAlipayRequest();
-            certAlipayRequest.setServerUrl(aliPayConfig.isDebug() ? SANDBOX_SERVER_URL : SERVER_URL);
+            certAlipayRequest.setServerUrl(serverUrl(aliPayConfig));
             certAlipayRequest.setAppId(aliPayConfig.getAppId());
             certAlipayRequest.setPrivateKey(aliPayConfig.getPrivateKey());
             certAlipayRequest.setFormat(FORMAT);
@@ -577,6 +819,47 @@ public class Alipay extends AbstractPay {
 
 
 
+    @Override
+    public void warmUp(WarmUpSteps steps) {
+        AliPayConfig aliPayConfig = getPayConfig();
+        steps.run("classes", Alipay::loadWarmUpClasses);
+        steps.call("client", () -> getAlipayClient(aliPayConfig));
+        steps.run("sign", () -> warmUpSign(aliPayConfig));
+        // 不预先建立连接: 网关没有可以匿名调用的接口, JDK的keep-alive空闲连接也只保留5秒左右, 等不到第一笔业务调用
+    }
+
+    private static void loadWarmUpClasses() throws ClassNotFoundException {
+        ClassLoader classLoader = Alipay.class.getClassLoader();
+        for (Class<?> clazz : WARM_UP_CLASSES) {
+            Class.forName(clazz.getName(), true, classLoader);
+        }
+        for (String className : WARM_UP_SDK_CLASS_NAMES) {
+            try {
+                Class.forName(className, true, classLoader);
+            } catch (ClassNotFoundException e) {
+                log.debug("支付宝SDK中没有{}, 跳过预热", className);
+            }
+        }
+    }
+
+    /**
+     * 生成一次查询参数并签名, 解析私钥和支付宝公钥(证书模式下从证书中取出公钥)
+     */
+    private static void warmUpSign(AliPayConfig aliPayConfig) throws AlipayApiException {
+        DefaultPayDTO payDTO = new DefaultPayDTO();
+        payDTO.setOutTradeNo("warm-up");
+        String content = "app_id=" + aliPayConfig.getAppId()
+                + "&biz_content=" + SerializeUtil.beanToJson(PayQueryData.of(payDTO))
+                + "&charset=" + aliPayConfig.getCharset()
+                + "&method=alipay.trade.query&sign_type=" + aliPayConfig.getSignType();
+        String sign = AlipaySignature.rsaSign(content, aliPayConfig.getPrivateKey(), aliPayConfig.getCharset(), aliPayConfig.getSignType());
+        String publicKey = aliPayConfig.hasCert()
+                ? AlipaySignature.getAlipayPublicKeyFromCertContent(aliPayConfig.getAlipayCertContentSupplier().get())
+                : aliPayConfig.getPublicKey();
+        // 私钥签名用支付宝公钥验签, 结果总是不通过, 只为解析公钥和加载验签用到的类
+        AlipaySignature.rsaCheck(content, sign, publicKey, aliPayConfig.getCharset(), aliPayConfig.getSignType());
+    }
+
     @Override
     protected int getPlatform() {
         return PayPlatform.ALI_PAY;
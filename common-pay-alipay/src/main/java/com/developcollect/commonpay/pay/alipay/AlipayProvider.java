@@ -0,0 +1,24 @@
+package com.developcollect.commonpay.pay.alipay;
+
+import com.developcollect.commonpay.PayPlatform;
+import com.developcollect.commonpay.config.IPayProvider;
+import com.developcollect.commonpay.pay.Pay;
+
+/**
+ * 支付宝支付的提供者
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public class AlipayProvider implements IPayProvider {
+
+    @Override
+    public int getPayPlatform() {
+        return PayPlatform.ALI_PAY;
+    }
+
+    @Override
+    public Pay createPay(String merchantId) {
+        return new Alipay(merchantId);
+    }
+}
@@ -3,6 +3,7 @@ package com.developcollect.commonpay.pay.alipay.bean;
 import cn.hutool.core.date.DateUtil;
 import com.alibaba.fastjson.annotation.JSONField;
 import com.developcollect.commonpay.PayPlatform;
+import com.developcollect.commonpay.config.AliPayConfig;
 import com.developcollect.commonpay.config.GlobalConfig;
 import com.developcollect.commonpay.pay.IPayDTO;
 import lombok.Data;
@@ -68,6 +69,10 @@ public class PayData implements Serializable {
 
 
     public static PayData of(IPayDTO payDTO) {
+        return of(payDTO, GlobalConfig.getPayConfig(PayPlatform.ALI_PAY));
+    }
+
+    public static PayData of(IPayDTO payDTO, AliPayConfig aliPayConfig) {
         PayData payData = new PayData();
         payData.setOutTradeNo(payDTO.getOutTradeNo());
 
@@ -75,7 +80,7 @@ public class PayData implements Serializable {
         payData.setBody("商品_" + payDTO.getOutTradeNo());
         payData.setTotalAmount(payDTO.getTotalFee());
         // FIXME: 2020/1/9 沙箱环境加了这个参数后导致   订单信息无法识别,建议联系卖家。错误码:INVALID_PARAMETER
-        if (GlobalConfig.getPayConfig(PayPlatform.ALI_PAY).isDebug() == false) {
+        if (aliPayConfig.isDebug() == false) {
             payData.setTimeExpire(DateUtil.format(payDTO.getTimeExpire(), "yyyy-MM-dd HH:mm:ss"));
         }
         return payData;
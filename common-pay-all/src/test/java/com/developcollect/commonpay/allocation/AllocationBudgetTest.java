@@ -0,0 +1,215 @@
+package com.developcollect.commonpay.allocation;
+
+import com.alibaba.fastjson.JSONObject;
+import com.alipay.api.internal.util.AlipaySignature;
+import com.developcollect.commonpay.PayPlatform;
+import com.developcollect.commonpay.PayUtil;
+import com.developcollect.commonpay.cache.TerminalStateCache;
+import com.developcollect.commonpay.config.AliPayConfig;
+import com.developcollect.commonpay.config.GlobalConfig;
+import com.developcollect.commonpay.config.WxPayConfig;
+import com.developcollect.commonpay.metrics.InMemoryPayMetrics;
+import com.developcollect.commonpay.pay.DefaultPayDTO;
+import com.developcollect.commonpay.pay.IPayDTO;
+import com.developcollect.commonpay.pay.PayResponse;
+import com.developcollect.commonpay.pay.alipay.bean.PayData;
+import com.developcollect.commonpay.pay.alipay.bean.PayQueryData;
+import com.developcollect.commonpay.pay.nopay.NoPay;
+import com.developcollect.commonpay.pay.wxpay.sdk.WXPayConstants;
+import com.developcollect.commonpay.pay.wxpay.sdk.WXPayUtil;
+import com.developcollect.commonpay.simulator.GatewaySimulator;
+import com.developcollect.dcinfra.utils.SerializeUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * 热点路径的内存分配预算
+ * 用{@link AllocationMeter}测量每次操作在当前线程分配的字节数, 超过提交的预算时失败, 见{@link AllocationBudgets}
+ * <p>
+ * 报文和签名的数据和基准测试中的一样
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public class AllocationBudgetTest {
+
+    private static final String WX_KEY = "192006250b4c09247ec02edce69f6a2d";
+
+    private static final int WARMUP = 20_000;
+    private static final int ITERATIONS = 2_000;
+
+    private Map<String, String> wxPayData;
+
+    @BeforeClass
+    public static void checkSupported() {
+        assumeTrue("JVM不支持统计线程分配的内存", AllocationMeter.isSupported());
+    }
+
+    @Before
+    public void setUp() {
+        wxPayData = new HashMap<>();
+        wxPayData.put("appid", "wx2421b1c4370ec43b");
+        wxPayData.put("mch_id", "10000100");
+        wxPayData.put("nonce_str", "1add1a30ac87aa2db72f57a2375d8fec");
+        wxPayData.put("body", "商品_20201201123456789012");
+        wxPayData.put("out_trade_no", "20201201123456789012");
+        wxPayData.put("total_fee", "1");
+        wxPayData.put("spbill_create_ip", "123.12.12.123");
+        wxPayData.put("notify_url", "https://pay.example.com/notify/wxpay");
+        wxPayData.put("trade_type", "NATIVE");
+        wxPayData.put("product_id", "20201201123456789012");
+        wxPayData.put("time_start", "20201201120000");
+        wxPayData.put("time_expire", "20201201123000");
+    }
+
+    @After
+    public void resetGlobalConfig() throws ReflectiveOperationException {
+        installGlobalConfig(null);
+    }
+
+    @Test
+    public void wxPaySignMd5() throws Exception {
+        long bytes = AllocationMeter.bytesPerOp(WARMUP, ITERATIONS,
+                () -> WXPayUtil.generateSignature(wxPayData, WX_KEY, WXPayConstants.SignType.MD5));
+        AllocationBudgets.assertWithinBudget("wxpay.sign.md5", bytes);
+    }
+
+    @Test
+    public void wxPaySignHmacSha256() throws Exception {
+        long bytes = AllocationMeter.bytesPerOp(WARMUP, ITERATIONS,
+                () -> WXPayUtil.generateSignature(wxPayData, WX_KEY, WXPayConstants.SignType.HMACSHA256));
+        AllocationBudgets.assertWithinBudget("wxpay.sign.hmacsha256", bytes);
+    }
+
+    @Test
+    public void wxPayMapToXml() throws Exception {
+        long bytes = AllocationMeter.bytesPerOp(WARMUP, ITERATIONS, () -> WXPayUtil.mapToXml(wxPayData));
+        AllocationBudgets.assertWithinBudget("wxpay.xml.encode", bytes);
+    }
+
+    @Test
+    public void wxPayXmlToMap() throws Exception {
+        String xml = WXPayUtil.mapToXml(wxPayData);
+        long bytes = AllocationMeter.bytesPerOp(WARMUP, ITERATIONS, () -> WXPayUtil.xmlToMap(xml));
+        AllocationBudgets.assertWithinBudget("wxpay.xml.decode", bytes);
+    }
+
+    @Test
+    public void alipayPayBizContent() throws Exception {
+        AliPayConfig aliPayConfig = new AliPayConfig();
+        aliPayConfig.setAppId("2016101100664659");
+        DefaultPayDTO payDTO = alipayOrder();
+        long bytes = AllocationMeter.bytesPerOp(WARMUP, ITERATIONS,
+                () -> JSONObject.toJSONString(PayData.of(payDTO, aliPayConfig)));
+        AllocationBudgets.assertWithinBudget("alipay.bizcontent.pay", bytes);
+    }
+
+    @Test
+    public void alipayQueryBizContent() throws Exception {
+        DefaultPayDTO payDTO = alipayOrder();
+        long bytes = AllocationMeter.bytesPerOp(WARMUP, ITERATIONS,
+                () -> SerializeUtil.beanToJson(PayQueryData.of(payDTO)));
+        AllocationBudgets.assertWithinBudget("alipay.bizcontent.query", bytes);
+    }
+
+    @Test
+    public void alipaySign() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+        String privateKey = Base64.getEncoder().encodeToString(keyPair.getPrivate().getEncoded());
+        Map<String, String> params = new HashMap<>();
+        params.put("app_id", "2016101100664659");
+        params.put("method", "alipay.trade.precreate");
+        params.put("format", "json");
+        params.put("charset", "UTF-8");
+        params.put("sign_type", "RSA2");
+        params.put("timestamp", "2020-12-01 12:00:00");
+        params.put("version", "1.0");
+        params.put("notify_url", "https://pay.example.com/notify/alipay");
+        params.put("biz_content", "{\"out_trade_no\":\"20201201123456789012\",\"total_amount\":\"0.01\",\"subject\":\"商品_20201201123456789012\"}");
+        // RSA签名比较慢, 少测几次
+        long bytes = AllocationMeter.bytesPerOp(1_000, 100,
+                () -> AlipaySignature.rsaSign(AlipaySignature.getSignCheckContentV1(params), privateKey, "UTF-8", "RSA2"));
+        AllocationBudgets.assertWithinBudget("alipay.sign.rsa2", bytes);
+    }
+
+    @Test
+    public void platformOverride() throws Exception {
+        PayResponse payResponse = new PayResponse()
+                .setPayPlatform(PayPlatform.WX_PAY)
+                .setSuccess(true)
+                .setOutTradeNo("20201201123456789012");
+        NoPay pay = new NoPay() {
+            @Override
+            public PayResponse payQuery(IPayDTO payDTO) {
+                return payResponse;
+            }
+        };
+        installGlobalConfig(new GlobalConfig()
+                .setPayFactory(payPlatform -> pay));
+        DefaultPayDTO payDTO = alipayOrder();
+        long bytes = AllocationMeter.bytesPerOp(WARMUP, ITERATIONS, () -> PayUtil.payQuery(PayPlatform.WX_PAY, payDTO));
+        AllocationBudgets.assertWithinBudget("payutil.platform-override", bytes);
+    }
+
+    /**
+     * 开启所有保护措施、终态缓存和指标后查询模拟网关上未支付的订单, 包括签名、报文和http客户端在调用方线程的全部分配
+     */
+    @Test
+    public void simulatedPayQuery() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        String appPublicKey = Base64.getEncoder().encodeToString(generator.generateKeyPair().getPublic().getEncoded());
+        try (GatewaySimulator simulator = new GatewaySimulator(WX_KEY, appPublicKey, 1).start()) {
+            WxPayConfig wxPayConfig = new WxPayConfig();
+            wxPayConfig.setAppId("wx2421b1c4370ec43b");
+            wxPayConfig.setMchId("10000100");
+            wxPayConfig.setKey(WX_KEY);
+            wxPayConfig.setDomain(simulator.getWxPayDomain());
+            GlobalConfig config = new GlobalConfig()
+                    .enableGuards()
+                    .setTerminalStateCache(new TerminalStateCache())
+                    .setPayMetrics(new InMemoryPayMetrics());
+            config.getPayConfigSupplierMap().put(PayPlatform.WX_PAY, () -> wxPayConfig);
+            installGlobalConfig(config);
+
+            DefaultPayDTO payDTO = new DefaultPayDTO();
+            payDTO.setOutTradeNo("20201201123456789012");
+            payDTO.setTotalFee(1L);
+            payDTO.setPayPlatform(PayPlatform.WX_PAY);
+            simulator.getWxPayLedger().create(payDTO.getOutTradeNo(), payDTO.getTotalFee());
+
+            long bytes = AllocationMeter.bytesPerOp(2_000, 200, () -> PayUtil.payQuery(payDTO));
+            AllocationBudgets.assertWithinBudget("payutil.pay-query.wxpay", bytes);
+        }
+    }
+
+    private static DefaultPayDTO alipayOrder() {
+        DefaultPayDTO payDTO = new DefaultPayDTO();
+        payDTO.setOutTradeNo("20201201123456789012");
+        payDTO.setTotalFee(1L);
+        payDTO.setPayPlatform(PayPlatform.ALI_PAY);
+        payDTO.setTimeStart(LocalDateTime.of(2020, 12, 1, 12, 0));
+        payDTO.setTimeExpire(LocalDateTime.of(2020, 12, 1, 12, 30));
+        return payDTO;
+    }
+
+    private static void installGlobalConfig(GlobalConfig config) throws ReflectiveOperationException {
+        Field instance = GlobalConfig.class.getDeclaredField("GLOBAL_CONFIG");
+        instance.setAccessible(true);
+        instance.set(null, config);
+    }
+}
@@ -0,0 +1,101 @@
+package com.developcollect.commonpay.allocation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Properties;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 提交在 src/test/resources/allocation-budgets.properties 中的每次操作内存分配预算, 单位字节
+ * <p>
+ * 有意增加分配时要同时调整预算; 运行时加上 -Dallocation.budget.record=true 只打印测量值和建议的预算(测量值加25%), 不做断言,
+ * 用于重新记录预算, 例如升级依赖或JDK之后
+ * <p>
+ * 预算是在 recorded.jdk 指定的JDK大版本上测的; 其他大版本上优先用 名称.jdk大版本 的预算,
+ * 没有时用默认预算乘以 jdk.tolerance, 因为不同JDK的字符串、集合和加密实现分配的内存不一样
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+final class AllocationBudgets {
+
+    private static final String RESOURCE = "/allocation-budgets.properties";
+
+    private static final boolean RECORD = Boolean.getBoolean("allocation.budget.record");
+
+    private static final Properties BUDGETS = load();
+
+    private static final int JDK = jdkMajorVersion();
+
+    private AllocationBudgets() {
+    }
+
+    static void assertWithinBudget(String name, long bytesPerOp) {
+        if (RECORD) {
+            // 在其他JDK大版本上记录时打印这个大版本单独的预算
+            String key = isRecordedJdk() ? name : name + ".jdk" + JDK;
+            System.out.printf("%s=%d    # 实测 %d%n", key, suggestedBudget(bytesPerOp), bytesPerOp);
+            return;
+        }
+        long budgetBytes = budgetOf(name);
+        assertTrue(String.format("%s 每次分配 %d 字节, 超过预算 %d 字节; 如果是预期的变化, 请调整 %s", name, bytesPerOp, budgetBytes, RESOURCE),
+                bytesPerOp <= budgetBytes);
+    }
+
+    /**
+     * 当前JDK的预算, 没有预算时失败
+     */
+    private static long budgetOf(String name) {
+        String jdkBudget = BUDGETS.getProperty(name + ".jdk" + JDK);
+        if (jdkBudget != null) {
+            return Long.parseLong(jdkBudget.trim());
+        }
+        String budget = BUDGETS.getProperty(name);
+        assertNotNull(RESOURCE + " 中没有 " + name + " 的预算", budget);
+        long budgetBytes = Long.parseLong(budget.trim());
+        if (!isRecordedJdk()) {
+            double tolerance = Double.parseDouble(BUDGETS.getProperty("jdk.tolerance", "1").trim());
+            budgetBytes = (long) Math.ceil(budgetBytes * tolerance);
+        }
+        return budgetBytes;
+    }
+
+    private static boolean isRecordedJdk() {
+        String recordedJdk = BUDGETS.getProperty("recorded.jdk");
+        return recordedJdk == null || Integer.parseInt(recordedJdk.trim()) == JDK;
+    }
+
+    /**
+     * 1.8 返回 8, 11 返回 11
+     */
+    private static int jdkMajorVersion() {
+        String version = System.getProperty("java.specification.version");
+        if (version.startsWith("1.")) {
+            version = version.substring(2);
+        }
+        return Integer.parseInt(version);
+    }
+
+    /**
+     * 测量值加25%, 向上取整到64字节
+     */
+    private static long suggestedBudget(long bytesPerOp) {
+        long budget = bytesPerOp + bytesPerOp / 4;
+        return (budget + 63) / 64 * 64;
+    }
+
+    private static Properties load() {
+        Properties properties = new Properties();
+        try (InputStream in = AllocationBudgets.class.getResourceAsStream(RESOURCE)) {
+            if (in != null) {
+                properties.load(in);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return properties;
+    }
+}
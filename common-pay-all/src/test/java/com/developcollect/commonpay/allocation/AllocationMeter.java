@@ -0,0 +1,68 @@
+package com.developcollect.commonpay.allocation;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.Callable;
+
+/**
+ * 测量当前线程每次操作分配的内存
+ * 先预热到JIT编译和逃逸分析稳定下来, 再测几轮取最小值, 排除类加载、缓存扩容等偶尔发生的一次性分配
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+final class AllocationMeter {
+
+    private static final int ROUNDS = 5;
+
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN = allocationBean();
+
+    /**
+     * 保存操作的返回值, 防止JIT把整个操作优化掉
+     */
+    static volatile Object sink;
+
+    private AllocationMeter() {
+    }
+
+    static boolean isSupported() {
+        return THREAD_BEAN != null;
+    }
+
+    /**
+     * 测量每次操作分配的字节数
+     *
+     * @param warmup     预热次数
+     * @param iterations 每轮测量的次数
+     * @param operation  操作
+     * @return 各轮中每次操作分配字节数的最小值
+     */
+    static long bytesPerOp(int warmup, int iterations, Callable<?> operation) throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            sink = operation.call();
+        }
+        long threadId = Thread.currentThread().getId();
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = THREAD_BEAN.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < iterations; i++) {
+                sink = operation.call();
+            }
+            long allocated = THREAD_BEAN.getThreadAllocatedBytes(threadId) - start;
+            best = Math.min(best, allocated / iterations);
+        }
+        return best;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (!(threadBean instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        if (!allocationBean.isThreadAllocatedMemorySupported() || !allocationBean.isThreadAllocatedMemoryEnabled()) {
+            return null;
+        }
+        return allocationBean;
+    }
+}
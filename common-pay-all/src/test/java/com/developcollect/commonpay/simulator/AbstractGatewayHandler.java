@@ -0,0 +1,80 @@
+package com.developcollect.commonpay.simulator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * 模拟网关的请求处理
+ * 未捕获的异常返回500
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+abstract class AbstractGatewayHandler implements HttpHandler {
+
+    static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    protected final GatewaySimulator simulator;
+
+    AbstractGatewayHandler(GatewaySimulator simulator) {
+        this.simulator = simulator;
+    }
+
+    @Override
+    public final void handle(HttpExchange exchange) throws IOException {
+        try {
+            doHandle(exchange);
+        } catch (Exception e) {
+            send(exchange, 500, "text/plain", e.toString());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * 处理请求
+     */
+    protected abstract void doHandle(HttpExchange exchange) throws Exception;
+
+    static String readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        try (InputStream in = exchange.getRequestBody()) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType + ";charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * 模拟通信失败, 返回503
+     */
+    static void sendUnavailable(HttpExchange exchange) throws IOException {
+        send(exchange, 503, "text/plain", "");
+    }
+
+    static String format(LocalDateTime time) {
+        return time == null ? null : TIME_FORMATTER.format(time);
+    }
+}
@@ -0,0 +1,380 @@
+package com.developcollect.commonpay.simulator;
+
+import com.alibaba.fastjson.JSONObject;
+import com.developcollect.commonpay.simulator.SimulatedLedger.GatewayError;
+import com.developcollect.commonpay.simulator.SimulatedLedger.Refund;
+import com.developcollect.commonpay.simulator.SimulatedLedger.Trade;
+import com.developcollect.commonpay.simulator.SimulatedLedger.TradeState;
+import com.developcollect.commonpay.simulator.SimulatedLedger.Transfer;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 支付宝gateway.do接口
+ * 公共参数在url上, biz_content在表单里; 请求用应用公钥验签, 响应用模拟网关的私钥签名,
+ * 格式和支付宝一致: {"方法名_response":{...},"sign":"..."}
+ * <p>
+ * 和支付宝一样, 预下单后用户还没有扫码的交易查询和关闭时返回交易不存在;
+ * 系统错误返回 20000/isp.unknow-error, 限流返回 40004/isv.app-call-limited
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+class AlipayHandler extends AbstractGatewayHandler {
+
+    private final PublicKey appPublicKey;
+    private final PrivateKey privateKey;
+    private final SimulatedLedger ledger;
+
+    AlipayHandler(GatewaySimulator simulator, PublicKey appPublicKey, PrivateKey privateKey) {
+        super(simulator);
+        this.appPublicKey = appPublicKey;
+        this.privateKey = privateKey;
+        this.ledger = simulator.getAlipayLedger();
+    }
+
+    static PublicKey decodePublicKey(String base64) {
+        try {
+            return KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(Base64.getMimeDecoder().decode(base64)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("支付宝应用公钥格式错误", e);
+        }
+    }
+
+    @Override
+    protected void doHandle(HttpExchange exchange) throws Exception {
+        Map<String, String> params = new HashMap<>();
+        parseForm(exchange.getRequestURI().getRawQuery(), params);
+        parseForm(readBody(exchange), params);
+
+        String method = params.get("method");
+        if (method == null) {
+            sendSigned(exchange, "error_response", failure("40002", "Invalid Arguments", "isv.invalid-method", "缺少方法名参数"));
+            return;
+        }
+        String rootNode = method.replace('.', '_') + "_response";
+        if (!verify(params)) {
+            sendSigned(exchange, rootNode, failure("40002", "Invalid Arguments", "isv.invalid-signature", "验签出错"));
+            return;
+        }
+
+        switch (simulator.nextFault()) {
+            case TRANSPORT:
+                sendUnavailable(exchange);
+                return;
+            case THROTTLED:
+                sendSigned(exchange, rootNode, failure("40004", "Business Failed", "isv.app-call-limited", "调用频率超限"));
+                return;
+            case SYSTEM_ERROR:
+                sendSigned(exchange, rootNode, failure("20000", "Service Currently Unavailable", "isp.unknow-error", "系统繁忙"));
+                return;
+            default:
+        }
+
+        JSONObject biz = JSONObject.parseObject(params.get("biz_content"));
+        if (biz == null) {
+            biz = new JSONObject();
+        }
+        JSONObject response;
+        try {
+            response = dispatch(method, biz);
+        } catch (GatewayError e) {
+            response = businessFailure(e);
+        }
+        if (response == null) {
+            sendSigned(exchange, "error_response", failure("40002", "Invalid Arguments", "isv.invalid-method", "不存在的方法名"));
+            return;
+        }
+        sendSigned(exchange, rootNode, response);
+    }
+
+    private JSONObject dispatch(String method, JSONObject biz) {
+        switch (method) {
+            case "alipay.trade.pay":
+                return tradePay(biz);
+            case "alipay.trade.precreate":
+                return precreate(biz);
+            case "alipay.trade.query":
+                return tradeQuery(biz);
+            case "alipay.trade.close":
+                return tradeClose(biz);
+            case "alipay.trade.refund":
+                return refund(biz);
+            case "alipay.trade.fastpay.refund.query":
+                return refundQuery(biz);
+            case "alipay.fund.trans.uni.transfer":
+                return transfer(biz);
+            case "alipay.fund.trans.order.query":
+                return transferQuery(biz);
+            default:
+                return null;
+        }
+    }
+
+    private JSONObject tradePay(JSONObject biz) {
+        require(biz, "auth_code");
+        Trade trade = ledger.micropay(require(biz, "out_trade_no"), fen(require(biz, "total_amount")));
+        JSONObject response;
+        if (trade.getState() == TradeState.USERPAYING) {
+            response = failure("10003", "order success pay inprocess", null, null);
+        } else {
+            response = success();
+            response.put("gmt_payment", format(trade.getPayTime()));
+        }
+        response.put("trade_no", trade.tradeNo);
+        response.put("out_trade_no", trade.outTradeNo);
+        response.put("total_amount", yuan(trade.totalFee));
+        return response;
+    }
+
+    private JSONObject precreate(JSONObject biz) {
+        Trade trade = ledger.create(require(biz, "out_trade_no"), fen(require(biz, "total_amount")));
+        JSONObject response = success();
+        response.put("out_trade_no", trade.outTradeNo);
+        response.put("qr_code", "https://qr.alipay.com/" + trade.tradeNo);
+        return response;
+    }
+
+    private JSONObject tradeQuery(JSONObject biz) {
+        Trade trade = scannedTrade(require(biz, "out_trade_no"));
+        JSONObject response = success();
+        response.put("trade_no", trade.tradeNo);
+        response.put("out_trade_no", trade.outTradeNo);
+        response.put("trade_status", tradeStatus(trade));
+        response.put("total_amount", yuan(trade.totalFee));
+        if (trade.getPayTime() != null) {
+            response.put("send_pay_date", format(trade.getPayTime()));
+        }
+        return response;
+    }
+
+    private JSONObject tradeClose(JSONObject biz) {
+        String outTradeNo = require(biz, "out_trade_no");
+        scannedTrade(outTradeNo);
+        Trade trade = ledger.close(outTradeNo);
+        JSONObject response = success();
+        response.put("trade_no", trade.tradeNo);
+        response.put("out_trade_no", trade.outTradeNo);
+        return response;
+    }
+
+    private JSONObject refund(JSONObject biz) {
+        Refund refund = ledger.refund(require(biz, "out_trade_no"), require(biz, "out_request_no"), fen(require(biz, "refund_amount")));
+        JSONObject response = success();
+        response.put("trade_no", refund.trade.tradeNo);
+        response.put("out_trade_no", refund.trade.outTradeNo);
+        response.put("fund_change", "Y");
+        response.put("refund_fee", yuan(refund.refundFee));
+        response.put("gmt_refund_pay", format(LocalDateTime.now()));
+        return response;
+    }
+
+    /**
+     * 和支付宝一样, 退款不存在或还没有完成时也返回成功, 只是没有退款金额
+     */
+    private JSONObject refundQuery(JSONObject biz) {
+        String outTradeNo = require(biz, "out_trade_no");
+        String outRequestNo = require(biz, "out_request_no");
+        ledger.query(outTradeNo);
+        JSONObject response = success();
+        response.put("out_trade_no", outTradeNo);
+        response.put("out_request_no", outRequestNo);
+        Refund refund;
+        try {
+            refund = ledger.queryRefund(outRequestNo);
+        } catch (GatewayError e) {
+            return response;
+        }
+        if (refund.getState() == SimulatedLedger.RefundState.SUCCESS) {
+            response.put("trade_no", refund.trade.tradeNo);
+            response.put("total_amount", yuan(refund.trade.totalFee));
+            response.put("refund_amount", yuan(refund.refundFee));
+            response.put("refund_status", "REFUND_SUCCESS");
+            response.put("gmt_refund_pay", format(refund.getSuccessTime()));
+        }
+        return response;
+    }
+
+    private JSONObject transfer(JSONObject biz) {
+        JSONObject payee = biz.getJSONObject("payee_info");
+        String account = payee == null ? null : payee.getString("identity");
+        if (account == null) {
+            throw new GatewayError("PARAM_ERROR", "缺少参数payee_info.identity");
+        }
+        Transfer transfer = ledger.transfer(require(biz, "out_biz_no"), fen(require(biz, "trans_amount")), account);
+        JSONObject response = success();
+        response.put("out_biz_no", transfer.outTransferNo);
+        response.put("order_id", transfer.transferNo);
+        response.put("pay_fund_order_id", transfer.transferNo);
+        response.put("status", "SUCCESS");
+        response.put("trans_date", format(transfer.paymentTime));
+        return response;
+    }
+
+    private JSONObject transferQuery(JSONObject biz) {
+        Transfer transfer = ledger.queryTransfer(require(biz, "out_biz_no"));
+        JSONObject response = success();
+        response.put("order_id", transfer.transferNo);
+        response.put("out_biz_no", transfer.outTransferNo);
+        response.put("status", "SUCCESS");
+        response.put("pay_date", format(transfer.paymentTime));
+        response.put("order_fee", "0.00");
+        return response;
+    }
+
+    /**
+     * 用户扫码后支付宝才有交易
+     */
+    private Trade scannedTrade(String outTradeNo) {
+        Trade trade = ledger.query(outTradeNo);
+        if (trade.getState() == TradeState.NOTPAY) {
+            throw new GatewayError("ORDERNOTEXIST", "交易不存在");
+        }
+        return trade;
+    }
+
+    private static String tradeStatus(Trade trade) {
+        switch (trade.getState()) {
+            case SUCCESS:
+                return "TRADE_SUCCESS";
+            case REFUND:
+                // 全额退款后交易关闭
+                synchronized (trade) {
+                    return trade.refundedFee >= trade.totalFee ? "TRADE_CLOSED" : "TRADE_SUCCESS";
+                }
+            case CLOSED:
+                return "TRADE_CLOSED";
+            default:
+                return "WAIT_BUYER_PAY";
+        }
+    }
+
+    private static JSONObject businessFailure(GatewayError e) {
+        String subCode;
+        switch (e.getCode()) {
+            case "ORDERNOTEXIST":
+                subCode = "ACQ.TRADE_NOT_EXIST";
+                break;
+            case "ORDERCLOSED":
+                subCode = "ACQ.TRADE_HAS_CLOSE";
+                break;
+            case "ORDERPAID":
+            case "TRADE_STATE_ERROR":
+                subCode = "ACQ.TRADE_STATUS_ERROR";
+                break;
+            case "NOT_FOUND":
+                subCode = "ORDER_NOT_EXIST";
+                break;
+            case "REFUNDNOTEXIST":
+                subCode = "ACQ.REFUND_NOT_EXIST";
+                break;
+            default:
+                subCode = "ACQ.INVALID_PARAMETER";
+        }
+        return failure("40004", "Business Failed", subCode, e.getMessage());
+    }
+
+    private static JSONObject success() {
+        JSONObject response = new JSONObject(true);
+        response.put("code", "10000");
+        response.put("msg", "Success");
+        return response;
+    }
+
+    private static JSONObject failure(String code, String msg, String subCode, String subMsg) {
+        JSONObject response = new JSONObject(true);
+        response.put("code", code);
+        response.put("msg", msg);
+        if (subCode != null) {
+            response.put("sub_code", subCode);
+            response.put("sub_msg", subMsg);
+        }
+        return response;
+    }
+
+    /**
+     * 按支付宝SDK的方式拼接待签名内容: 除sign外的非空参数按名称排序
+     */
+    private boolean verify(Map<String, String> params) throws GeneralSecurityException {
+        String sign = params.get("sign");
+        if (sign == null) {
+            return false;
+        }
+        StringBuilder content = new StringBuilder();
+        for (Map.Entry<String, String> entry : new TreeMap<>(params).entrySet()) {
+            if ("sign".equals(entry.getKey()) || entry.getValue() == null || entry.getValue().isEmpty()) {
+                continue;
+            }
+            if (content.length() > 0) {
+                content.append('&');
+            }
+            content.append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        Signature signature = Signature.getInstance("RSA".equals(params.get("sign_type")) ? "SHA1withRSA" : "SHA256withRSA");
+        signature.initVerify(appPublicKey);
+        signature.update(content.toString().getBytes(StandardCharsets.UTF_8));
+        try {
+            return signature.verify(Base64.getMimeDecoder().decode(sign));
+        } catch (IllegalArgumentException | SignatureException e) {
+            return false;
+        }
+    }
+
+    private void sendSigned(HttpExchange exchange, String rootNode, JSONObject response) throws Exception {
+        String content = response.toJSONString();
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(privateKey);
+        signature.update(content.getBytes(StandardCharsets.UTF_8));
+        String sign = Base64.getEncoder().encodeToString(signature.sign());
+        send(exchange, 200, "application/json", "{\"" + rootNode + "\":" + content + ",\"sign\":\"" + sign + "\"}");
+    }
+
+    private static void parseForm(String form, Map<String, String> params) throws UnsupportedEncodingException {
+        if (form == null || form.isEmpty()) {
+            return;
+        }
+        for (String pair : form.split("&")) {
+            int index = pair.indexOf('=');
+            if (index > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, index), "UTF-8"),
+                        URLDecoder.decode(pair.substring(index + 1), "UTF-8"));
+            }
+        }
+    }
+
+    private static String require(JSONObject biz, String name) {
+        String value = biz.getString(name);
+        if (value == null || value.isEmpty()) {
+            throw new GatewayError("PARAM_ERROR", "缺少参数" + name);
+        }
+        return value;
+    }
+
+    private static long fen(String yuan) {
+        try {
+            return new BigDecimal(yuan).movePointRight(2).longValueExact();
+        } catch (ArithmeticException | NumberFormatException e) {
+            throw new GatewayError("PARAM_ERROR", "金额格式错误: " + yuan);
+        }
+    }
+
+    private static String yuan(long fen) {
+        return BigDecimal.valueOf(fen, 2).toPlainString();
+    }
+}
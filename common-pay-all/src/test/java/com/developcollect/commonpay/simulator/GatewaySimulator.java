@@ -0,0 +1,295 @@
+package com.developcollect.commonpay.simulator;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 本地的微信支付、支付宝模拟网关, 用于离线的功能和性能测试
+ * <ul>
+ *     <li>微信支付: 把{@code WxPayConfig#domain}设置为{@link #getWxPayDomain()},
+ *     支持统一下单、付款码支付、查询订单、关闭订单、退款、查询退款、企业付款、查询企业付款和下载对账单(包括/sandboxnew沙箱路径)</li>
+ *     <li>支付宝: 把{@code AliPayConfig#serverUrl}设置为{@link #getAlipayServerUrl()}, 公钥设置为{@link #getAlipayPublicKey()},
+ *     支持{@code Alipay}用到的gateway.do接口</li>
+ * </ul>
+ * 请求都会校验签名, 订单、退款和转账的状态保存在{@link SimulatedLedger}中;
+ * 可以设置响应延迟分布、业务错误率、通信错误率和限流, 随机数使用固定种子, 同样的请求顺序得到同样的结果
+ * <p>
+ * 走的是http, 不校验退款和企业付款的客户端证书
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public class GatewaySimulator implements Closeable {
+
+    static {
+        // HttpServer默认开着Nagle算法, 响应头和响应体分两次写, 碰上客户端的延迟确认每个请求要多等40ms
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    /**
+     * 模拟的故障
+     */
+    enum Fault {
+        NONE,
+        /**
+         * 返回503, 没有响应报文
+         */
+        TRANSPORT,
+        /**
+         * 返回限流的业务错误
+         */
+        THROTTLED,
+        /**
+         * 返回系统错误的业务错误
+         */
+        SYSTEM_ERROR
+    }
+
+    private final String wxPayKey;
+    private final PublicKey alipayAppPublicKey;
+    private final KeyPair alipayKeyPair;
+    private final Random random;
+    private final long startMillis = System.currentTimeMillis();
+
+    private final SimulatedLedger wxPayLedger = new SimulatedLedger("4200", this::currentMillis);
+    private final SimulatedLedger alipayLedger = new SimulatedLedger("2020", this::currentMillis);
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong transportErrorCount = new AtomicLong();
+    private final AtomicLong throttledCount = new AtomicLong();
+    private final AtomicLong systemErrorCount = new AtomicLong();
+
+    private volatile LatencyDistribution latency = LatencyDistribution.none();
+    private volatile double systemErrorRate;
+    private volatile double transportErrorRate;
+    private volatile Throttle throttle;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * @param wxPayKey           微信支付商户key
+     * @param alipayAppPublicKey 支付宝应用公钥, base64编码, 用来验证请求的签名
+     * @param seed               随机数种子
+     */
+    public GatewaySimulator(String wxPayKey, String alipayAppPublicKey, long seed) {
+        this.wxPayKey = wxPayKey;
+        this.alipayAppPublicKey = AlipayHandler.decodePublicKey(alipayAppPublicKey);
+        this.random = new Random(seed);
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            this.alipayKeyPair = generator.generateKeyPair();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 在本地随机端口启动
+     */
+    public GatewaySimulator start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/", new WxPayHandler(this, wxPayKey));
+        server.createContext("/gateway.do", new AlipayHandler(this, alipayAppPublicKey, alipayKeyPair.getPrivate()));
+        server.start();
+        return this;
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    /**
+     * 微信支付接口域名, 带协议和端口
+     */
+    public String getWxPayDomain() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * 支付宝网关地址
+     */
+    public String getAlipayServerUrl() {
+        return getWxPayDomain() + "/gateway.do";
+    }
+
+    /**
+     * 模拟网关的支付宝公钥, base64编码, 用来验证响应的签名
+     */
+    public String getAlipayPublicKey() {
+        return Base64.getEncoder().encodeToString(alipayKeyPair.getPublic().getEncoded());
+    }
+
+    public SimulatedLedger getWxPayLedger() {
+        return wxPayLedger;
+    }
+
+    public SimulatedLedger getAlipayLedger() {
+        return alipayLedger;
+    }
+
+    /**
+     * 设置响应延迟分布
+     */
+    public GatewaySimulator setLatency(LatencyDistribution latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * 设置返回系统错误的比例
+     *
+     * @param systemErrorRate 0到1
+     */
+    public GatewaySimulator setSystemErrorRate(double systemErrorRate) {
+        this.systemErrorRate = systemErrorRate;
+        return this;
+    }
+
+    /**
+     * 设置返回503的比例
+     *
+     * @param transportErrorRate 0到1
+     */
+    public GatewaySimulator setTransportErrorRate(double transportErrorRate) {
+        this.transportErrorRate = transportErrorRate;
+        return this;
+    }
+
+    /**
+     * 设置限流, 超过的请求返回频率限制的业务错误
+     *
+     * @param permitsPerSecond 每秒允许的请求数, 小于等于0时不限流
+     */
+    public GatewaySimulator setPermitsPerSecond(double permitsPerSecond) {
+        this.throttle = permitsPerSecond > 0 ? new Throttle(permitsPerSecond) : null;
+        return this;
+    }
+
+    /**
+     * 设置两个平台下单后自动付款的时间
+     *
+     * @param autoPayMillis 单位毫秒, 小于0时只能通过账本付款
+     */
+    public GatewaySimulator setAutoPayMillis(long autoPayMillis) {
+        wxPayLedger.setAutoPayMillis(autoPayMillis);
+        alipayLedger.setAutoPayMillis(autoPayMillis);
+        return this;
+    }
+
+    /**
+     * 设置两个平台退款从处理中变为成功的时间
+     *
+     * @param refundMillis 单位毫秒
+     */
+    public GatewaySimulator setRefundMillis(long refundMillis) {
+        wxPayLedger.setRefundMillis(refundMillis);
+        alipayLedger.setRefundMillis(refundMillis);
+        return this;
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public long getTransportErrorCount() {
+        return transportErrorCount.get();
+    }
+
+    public long getThrottledCount() {
+        return throttledCount.get();
+    }
+
+    public long getSystemErrorCount() {
+        return systemErrorCount.get();
+    }
+
+    /**
+     * 验签通过后, 按设置的延迟等待, 再决定这次请求模拟的故障
+     */
+    Fault nextFault() {
+        requestCount.incrementAndGet();
+        long delay;
+        double roll;
+        synchronized (random) {
+            delay = latency.sampleMillis(random);
+            roll = random.nextDouble();
+        }
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (roll < transportErrorRate) {
+            transportErrorCount.incrementAndGet();
+            return Fault.TRANSPORT;
+        }
+        Throttle currentThrottle = throttle;
+        if (currentThrottle != null && !currentThrottle.tryAcquire()) {
+            throttledCount.incrementAndGet();
+            return Fault.THROTTLED;
+        }
+        if (roll < transportErrorRate + systemErrorRate) {
+            systemErrorCount.incrementAndGet();
+            return Fault.SYSTEM_ERROR;
+        }
+        return Fault.NONE;
+    }
+
+    private long currentMillis() {
+        return System.currentTimeMillis() - startMillis;
+    }
+
+    /**
+     * 令牌桶, 最多攒1秒的令牌
+     */
+    private static class Throttle {
+
+        private final double permitsPerNano;
+        private final double maxPermits;
+        private double permits;
+        private long lastNanos = System.nanoTime();
+
+        Throttle(double permitsPerSecond) {
+            this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.maxPermits = Math.max(1, permitsPerSecond);
+            this.permits = maxPermits;
+        }
+
+        synchronized boolean tryAcquire() {
+            long now = System.nanoTime();
+            permits = Math.min(maxPermits, permits + (now - lastNanos) * permitsPerNano);
+            lastNanos = now;
+            if (permits < 1) {
+                return false;
+            }
+            permits -= 1;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.developcollect.commonpay.simulator;
+
+import com.alipay.api.AlipayApiException;
+import com.alipay.api.AlipayClient;
+import com.alipay.api.DefaultAlipayClient;
+import com.alipay.api.request.AlipayTradePrecreateRequest;
+import com.alipay.api.request.AlipayTradeQueryRequest;
+import com.alipay.api.response.AlipayTradePrecreateResponse;
+import com.alipay.api.response.AlipayTradeQueryResponse;
+import com.developcollect.commonpay.config.GlobalConfig;
+import com.developcollect.commonpay.pay.wxpay.DefaultWXPayConfig;
+import com.developcollect.commonpay.pay.wxpay.sdk.WXPay;
+import com.developcollect.commonpay.simulator.SimulatedLedger.TradeState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * 模拟网关测试
+ * 用微信支付SDK和支付宝SDK直接请求模拟网关, 验证签名、状态流转和故障注入
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public class GatewaySimulatorTest {
+
+    private static final String WX_KEY = "0123456789abcdef0123456789abcdef";
+
+    private String alipayAppPrivateKey;
+    private GatewaySimulator simulator;
+
+    @Before
+    public void startSimulator() throws Exception {
+        // SDK请求时会读取全局的超时、熔断等配置, 这里用默认配置
+        installGlobalConfig(new GlobalConfig());
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair appKeyPair = generator.generateKeyPair();
+        alipayAppPrivateKey = Base64.getEncoder().encodeToString(appKeyPair.getPrivate().getEncoded());
+        String appPublicKey = Base64.getEncoder().encodeToString(appKeyPair.getPublic().getEncoded());
+        simulator = new GatewaySimulator(WX_KEY, appPublicKey, 42).start();
+    }
+
+    @After
+    public void stopSimulator() throws ReflectiveOperationException {
+        simulator.close();
+        installGlobalConfig(null);
+    }
+
+    @Test
+    public void wxPayOrderLifecycle() throws Exception {
+        WXPay wxPay = wxPay(WX_KEY);
+
+        Map<String, String> order = wxPay.unifiedOrder(orderRequest("T0001", 100));
+        assertEquals("SUCCESS", order.get("return_code"));
+        assertEquals("SUCCESS", order.get("result_code"));
+        assertNotNull(order.get("code_url"));
+
+        assertEquals("NOTPAY", wxPay.orderQuery(queryRequest("T0001")).get("trade_state"));
+
+        simulator.getWxPayLedger().pay("T0001");
+        Map<String, String> paid = wxPay.orderQuery(queryRequest("T0001"));
+        assertEquals("SUCCESS", paid.get("trade_state"));
+        assertNotNull(paid.get("transaction_id"));
+
+        // 已支付的订单不能关闭
+        Map<String, String> close = wxPay.closeOrder(queryRequest("T0001"));
+        assertEquals("FAIL", close.get("result_code"));
+        assertEquals("ORDERPAID", close.get("err_code"));
+
+        // 退款要客户端证书, 直接在账本上退款, 再用SDK查询
+        simulator.setRefundMillis(0);
+        simulator.getWxPayLedger().refund("T0001", "R0001", 40);
+        Map<String, String> refundQuery = new HashMap<>();
+        refundQuery.put("out_refund_no", "R0001");
+        Map<String, String> refund = wxPay.refundQuery(refundQuery);
+        assertEquals("SUCCESS", refund.get("refund_status_0"));
+        assertEquals("40", refund.get("refund_fee_0"));
+        assertEquals(TradeState.REFUND, simulator.getWxPayLedger().query("T0001").getState());
+    }
+
+    @Test
+    public void wxPayAutoPayAfterDelay() throws Exception {
+        simulator.setAutoPayMillis(0);
+        WXPay wxPay = wxPay(WX_KEY);
+        wxPay.unifiedOrder(orderRequest("T0002", 1));
+        assertEquals("SUCCESS", wxPay.orderQuery(queryRequest("T0002")).get("trade_state"));
+    }
+
+    @Test
+    public void wxPayRejectsWrongSignature() throws Exception {
+        Map<String, String> response = wxPay("fedcba9876543210fedcba9876543210").unifiedOrder(orderRequest("T0003", 1));
+        assertEquals("FAIL", response.get("return_code"));
+        assertTrue(simulator.getWxPayLedger().trades().isEmpty());
+    }
+
+    @Test
+    public void faultInjection() throws Exception {
+        WXPay wxPay = wxPay(WX_KEY);
+        wxPay.unifiedOrder(orderRequest("T0004", 1));
+
+        simulator.setSystemErrorRate(1);
+        Map<String, String> systemError = wxPay.orderQuery(queryRequest("T0004"));
+        assertEquals("SYSTEMERROR", systemError.get("err_code"));
+        assertEquals(1, simulator.getSystemErrorCount());
+
+        simulator.setSystemErrorRate(0).setTransportErrorRate(1);
+        try {
+            wxPay.orderQuery(queryRequest("T0004"));
+            fail("模拟网关应该返回503");
+        } catch (Exception expected) {
+            assertEquals(1, simulator.getTransportErrorCount());
+        }
+    }
+
+    @Test
+    public void throttling() throws Exception {
+        simulator.setPermitsPerSecond(5);
+        WXPay wxPay = wxPay(WX_KEY);
+        wxPay.unifiedOrder(orderRequest("T0005", 1));
+
+        int limited = 0;
+        for (int i = 0; i < 20; i++) {
+            if ("FREQUENCY_LIMITED".equals(wxPay.orderQuery(queryRequest("T0005")).get("err_code"))) {
+                limited++;
+            }
+        }
+        assertTrue("连续请求应该被限流", limited > 0);
+        assertEquals(limited, simulator.getThrottledCount());
+    }
+
+    @Test
+    public void alipayPrecreateAndQuery() throws AlipayApiException {
+        AlipayClient client = new DefaultAlipayClient(simulator.getAlipayServerUrl(), "2021000000000000",
+                alipayAppPrivateKey, "json", "UTF-8", simulator.getAlipayPublicKey(), "RSA2");
+
+        AlipayTradePrecreateRequest precreate = new AlipayTradePrecreateRequest();
+        precreate.setBizContent("{\"out_trade_no\":\"A0001\",\"total_amount\":\"12.34\",\"subject\":\"test\"}");
+        AlipayTradePrecreateResponse precreateResponse = client.execute(precreate);
+        assertTrue(precreateResponse.isSuccess());
+        assertNotNull(precreateResponse.getQrCode());
+        assertEquals(1234, simulator.getAlipayLedger().query("A0001").totalFee);
+
+        // 用户还没有扫码时支付宝查不到交易
+        AlipayTradeQueryRequest query = new AlipayTradeQueryRequest();
+        query.setBizContent("{\"out_trade_no\":\"A0001\"}");
+        assertEquals("ACQ.TRADE_NOT_EXIST", client.execute(query).getSubCode());
+
+        simulator.getAlipayLedger().pay("A0001");
+        AlipayTradeQueryResponse queryResponse = client.execute(query);
+        assertTrue(queryResponse.isSuccess());
+        assertEquals("TRADE_SUCCESS", queryResponse.getTradeStatus());
+        assertEquals("12.34", queryResponse.getTotalAmount());
+    }
+
+    private WXPay wxPay(String key) throws Exception {
+        DefaultWXPayConfig config = new DefaultWXPayConfig();
+        config.setAppId("wx0000000000000000");
+        config.setMchId("1900000000");
+        config.setKey(key);
+        config.setDomain(simulator.getWxPayDomain());
+        return new WXPay(config, false, false);
+    }
+
+    private static void installGlobalConfig(GlobalConfig config) throws ReflectiveOperationException {
+        Field instance = GlobalConfig.class.getDeclaredField("GLOBAL_CONFIG");
+        instance.setAccessible(true);
+        instance.set(null, config);
+    }
+
+    private static Map<String, String> orderRequest(String outTradeNo, long totalFee) {
+        Map<String, String> reqData = new HashMap<>();
+        reqData.put("body", "商品_" + outTradeNo);
+        reqData.put("out_trade_no", outTradeNo);
+        reqData.put("total_fee", String.valueOf(totalFee));
+        reqData.put("spbill_create_ip", "127.0.0.1");
+        reqData.put("notify_url", "http://127.0.0.1/notify");
+        reqData.put("trade_type", "NATIVE");
+        return reqData;
+    }
+
+    private static Map<String, String> queryRequest(String outTradeNo) {
+        Map<String, String> reqData = new HashMap<>();
+        reqData.put("out_trade_no", outTradeNo);
+        return reqData;
+    }
+}
@@ -0,0 +1,65 @@
+package com.developcollect.commonpay.simulator;
+
+import java.util.Random;
+
+/**
+ * 模拟网关的响应延迟分布
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+
+    /**
+     * 采样一次延迟
+     *
+     * @param random 随机数, 由模拟网关按固定种子创建
+     * @return 延迟, 单位毫秒
+     */
+    long sampleMillis(Random random);
+
+    /**
+     * 没有延迟
+     */
+    static LatencyDistribution none() {
+        return random -> 0;
+    }
+
+    /**
+     * 固定延迟
+     *
+     * @param millis 延迟, 单位毫秒
+     */
+    static LatencyDistribution fixed(long millis) {
+        return random -> millis;
+    }
+
+    /**
+     * 均匀分布
+     *
+     * @param minMillis 最小延迟, 单位毫秒
+     * @param maxMillis 最大延迟, 单位毫秒
+     */
+    static LatencyDistribution uniform(long minMillis, long maxMillis) {
+        if (maxMillis < minMillis) {
+            throw new IllegalArgumentException("maxMillis < minMillis");
+        }
+        return random -> minMillis + (long) (random.nextDouble() * (maxMillis - minMillis + 1));
+    }
+
+    /**
+     * 对数正态分布, 支付平台接口的延迟大致符合这个分布: 多数请求集中在中位数附近, 少数请求有很长的尾巴
+     *
+     * @param medianMillis 中位数, 单位毫秒
+     * @param p99Millis    99分位, 单位毫秒, 不能小于中位数
+     */
+    static LatencyDistribution logNormal(double medianMillis, double p99Millis) {
+        if (medianMillis <= 0 || p99Millis < medianMillis) {
+            throw new IllegalArgumentException("需要 0 < medianMillis <= p99Millis");
+        }
+        // 标准正态分布的99分位是2.326
+        double sigma = Math.log(p99Millis / medianMillis) / 2.326;
+        return random -> Math.round(medianMillis * Math.exp(sigma * random.nextGaussian()));
+    }
+}
@@ -0,0 +1,392 @@
+package com.developcollect.commonpay.simulator;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * 模拟网关的账本, 一个支付平台一个
+ * 保存订单、退款单和转账单的状态, 状态只按支付平台允许的方向变化:
+ * <pre>
+ * 订单:   NOTPAY -> USERPAYING -> SUCCESS -> REFUND
+ *           |                      (全额退款后支付宝为CLOSED)
+ *           +-> CLOSED
+ * 退款单: PROCESSING -> SUCCESS
+ * 转账单: SUCCESS
+ * </pre>
+ * 用户付款由测试调用{@link #pay(String)}触发, 或者设置了自动付款时间后在查询时按时间推进;
+ * 退款在设置的时间后从处理中变为成功
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public class SimulatedLedger {
+
+    /**
+     * 订单状态, 取值和微信的trade_state一致
+     */
+    public enum TradeState {
+        NOTPAY, USERPAYING, SUCCESS, REFUND, CLOSED
+    }
+
+    /**
+     * 退款状态
+     */
+    public enum RefundState {
+        PROCESSING, SUCCESS
+    }
+
+    private final String prefix;
+    private final LongSupplier clock;
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<String, Trade> trades = new ConcurrentHashMap<>();
+    private final Map<String, Refund> refunds = new ConcurrentHashMap<>();
+    private final Map<String, Transfer> transfers = new ConcurrentHashMap<>();
+
+    /**
+     * 下单后自动付款的时间, 单位毫秒, 小于0时只能调用{@link #pay(String)}付款
+     */
+    private volatile long autoPayMillis = -1;
+
+    /**
+     * 退款从处理中变为成功的时间, 单位毫秒
+     */
+    private volatile long refundMillis = 0;
+
+    /**
+     * @param prefix 平台单号前缀
+     * @param clock  时钟, 单位毫秒
+     */
+    SimulatedLedger(String prefix, LongSupplier clock) {
+        this.prefix = prefix;
+        this.clock = clock;
+    }
+
+    public void setAutoPayMillis(long autoPayMillis) {
+        this.autoPayMillis = autoPayMillis;
+    }
+
+    public void setRefundMillis(long refundMillis) {
+        this.refundMillis = refundMillis;
+    }
+
+    /**
+     * 下单, 同一个商户单号重复下单时金额必须相同
+     *
+     * @param outTradeNo 商户订单号
+     * @param totalFee   订单金额, 单位分
+     * @return 订单
+     */
+    public Trade create(String outTradeNo, long totalFee) {
+        Trade trade = trades.computeIfAbsent(outTradeNo, no -> new Trade(no, nextNo(), totalFee, clock.getAsLong()));
+        synchronized (trade) {
+            if (trade.totalFee != totalFee) {
+                throw new GatewayError("INVALID_REQUEST", "商户订单号重复, 金额不一致");
+            }
+            if (trade.state == TradeState.CLOSED) {
+                throw new GatewayError("ORDERCLOSED", "订单已关闭");
+            }
+            if (trade.state != TradeState.NOTPAY && trade.state != TradeState.USERPAYING) {
+                throw new GatewayError("ORDERPAID", "订单已支付");
+            }
+        }
+        return trade;
+    }
+
+    /**
+     * 付款码支付, 用户出示付款码即付款, 设置了自动付款时间时先进入用户支付中
+     *
+     * @param outTradeNo 商户订单号
+     * @param totalFee   订单金额, 单位分
+     * @return 订单
+     */
+    public Trade micropay(String outTradeNo, long totalFee) {
+        Trade trade = create(outTradeNo, totalFee);
+        synchronized (trade) {
+            if (autoPayMillis > 0) {
+                trade.state = TradeState.USERPAYING;
+            } else {
+                markPaid(trade);
+            }
+        }
+        return trade;
+    }
+
+    /**
+     * 查询订单, 会先按时间推进状态
+     *
+     * @param outTradeNo 商户订单号
+     * @return 订单
+     * @throws GatewayError 订单不存在
+     */
+    public Trade query(String outTradeNo) {
+        Trade trade = trades.get(outTradeNo);
+        if (trade == null) {
+            throw new GatewayError("ORDERNOTEXIST", "订单不存在");
+        }
+        synchronized (trade) {
+            long autoPay = autoPayMillis;
+            if (autoPay >= 0 && (trade.state == TradeState.NOTPAY || trade.state == TradeState.USERPAYING)
+                    && clock.getAsLong() - trade.createMillis >= autoPay) {
+                markPaid(trade);
+            }
+        }
+        return trade;
+    }
+
+    /**
+     * 用户付款
+     *
+     * @param outTradeNo 商户订单号
+     * @return 订单
+     */
+    public Trade pay(String outTradeNo) {
+        Trade trade = query(outTradeNo);
+        synchronized (trade) {
+            if (trade.state == TradeState.CLOSED) {
+                throw new GatewayError("ORDERCLOSED", "订单已关闭");
+            }
+            if (trade.state == TradeState.NOTPAY || trade.state == TradeState.USERPAYING) {
+                markPaid(trade);
+            }
+        }
+        return trade;
+    }
+
+    /**
+     * 关闭订单
+     *
+     * @param outTradeNo 商户订单号
+     * @return 订单
+     */
+    public Trade close(String outTradeNo) {
+        Trade trade = query(outTradeNo);
+        synchronized (trade) {
+            if (trade.state != TradeState.NOTPAY && trade.state != TradeState.USERPAYING && trade.state != TradeState.CLOSED) {
+                throw new GatewayError("ORDERPAID", "订单已支付");
+            }
+            trade.state = TradeState.CLOSED;
+        }
+        return trade;
+    }
+
+    /**
+     * 退款, 同一个退款单号重复退款时返回原退款单
+     *
+     * @param outTradeNo  商户订单号
+     * @param outRefundNo 商户退款单号
+     * @param refundFee   退款金额, 单位分
+     * @return 退款单
+     */
+    public Refund refund(String outTradeNo, String outRefundNo, long refundFee) {
+        Trade trade = query(outTradeNo);
+        synchronized (trade) {
+            Refund refund = refunds.get(outRefundNo);
+            if (refund != null) {
+                if (refund.refundFee != refundFee) {
+                    throw new GatewayError("INVALID_REQUEST", "退款单号重复, 金额不一致");
+                }
+                return refund;
+            }
+            if (trade.state != TradeState.SUCCESS && trade.state != TradeState.REFUND) {
+                throw new GatewayError("TRADE_STATE_ERROR", "订单状态错误");
+            }
+            if (trade.refundedFee + refundFee > trade.totalFee) {
+                throw new GatewayError("INVALID_REQUEST", "退款金额大于订单剩余可退金额");
+            }
+            refund = new Refund(trade, outRefundNo, nextNo(), refundFee, clock.getAsLong());
+            refunds.put(outRefundNo, refund);
+            trade.refunds.add(refund);
+            trade.refundedFee += refundFee;
+            trade.state = TradeState.REFUND;
+            return refund;
+        }
+    }
+
+    /**
+     * 查询退款单, 会先按时间推进状态
+     *
+     * @param outRefundNo 商户退款单号
+     * @return 退款单
+     * @throws GatewayError 退款单不存在
+     */
+    public Refund queryRefund(String outRefundNo) {
+        Refund refund = refunds.get(outRefundNo);
+        if (refund == null) {
+            throw new GatewayError("REFUNDNOTEXIST", "退款单不存在");
+        }
+        synchronized (refund.trade) {
+            if (refund.state == RefundState.PROCESSING && clock.getAsLong() - refund.createMillis >= refundMillis) {
+                refund.state = RefundState.SUCCESS;
+                refund.successTime = LocalDateTime.now();
+            }
+        }
+        return refund;
+    }
+
+    /**
+     * 转账, 同一个转账单号重复转账时返回原转账单
+     *
+     * @param outTransferNo 商户转账单号
+     * @param amount        金额, 单位分
+     * @param account       收款账号
+     * @return 转账单
+     */
+    public Transfer transfer(String outTransferNo, long amount, String account) {
+        Transfer transfer = transfers.computeIfAbsent(outTransferNo,
+                no -> new Transfer(no, nextNo(), amount, account, LocalDateTime.now()));
+        if (transfer.amount != amount) {
+            throw new GatewayError("INVALID_REQUEST", "转账单号重复, 金额不一致");
+        }
+        return transfer;
+    }
+
+    /**
+     * 查询转账单
+     *
+     * @param outTransferNo 商户转账单号
+     * @return 转账单
+     * @throws GatewayError 转账单不存在
+     */
+    public Transfer queryTransfer(String outTransferNo) {
+        Transfer transfer = transfers.get(outTransferNo);
+        if (transfer == null) {
+            throw new GatewayError("NOT_FOUND", "转账单不存在");
+        }
+        return transfer;
+    }
+
+    /**
+     * 已付款的订单, 用于生成对账单
+     */
+    public List<Trade> paidTrades() {
+        List<Trade> paid = new ArrayList<>();
+        for (Trade trade : trades.values()) {
+            if (trade.payTime != null) {
+                paid.add(trade);
+            }
+        }
+        return paid;
+    }
+
+    public Collection<Trade> trades() {
+        return trades.values();
+    }
+
+    /**
+     * 清空账本
+     */
+    public void clear() {
+        trades.clear();
+        refunds.clear();
+        transfers.clear();
+    }
+
+    private void markPaid(Trade trade) {
+        trade.state = TradeState.SUCCESS;
+        trade.payTime = LocalDateTime.now();
+    }
+
+    private String nextNo() {
+        return prefix + String.format("%018d", sequence.incrementAndGet());
+    }
+
+    /**
+     * 订单
+     */
+    public static class Trade {
+        public final String outTradeNo;
+        public final String tradeNo;
+        public final long totalFee;
+        final long createMillis;
+        volatile TradeState state = TradeState.NOTPAY;
+        volatile LocalDateTime payTime;
+        long refundedFee;
+        final List<Refund> refunds = new ArrayList<>();
+
+        Trade(String outTradeNo, String tradeNo, long totalFee, long createMillis) {
+            this.outTradeNo = outTradeNo;
+            this.tradeNo = tradeNo;
+            this.totalFee = totalFee;
+            this.createMillis = createMillis;
+        }
+
+        public TradeState getState() {
+            return state;
+        }
+
+        public LocalDateTime getPayTime() {
+            return payTime;
+        }
+    }
+
+    /**
+     * 退款单
+     */
+    public static class Refund {
+        public final Trade trade;
+        public final String outRefundNo;
+        public final String refundNo;
+        public final long refundFee;
+        final long createMillis;
+        volatile RefundState state = RefundState.PROCESSING;
+        volatile LocalDateTime successTime;
+
+        Refund(Trade trade, String outRefundNo, String refundNo, long refundFee, long createMillis) {
+            this.trade = trade;
+            this.outRefundNo = outRefundNo;
+            this.refundNo = refundNo;
+            this.refundFee = refundFee;
+            this.createMillis = createMillis;
+        }
+
+        public RefundState getState() {
+            return state;
+        }
+
+        public LocalDateTime getSuccessTime() {
+            return successTime;
+        }
+    }
+
+    /**
+     * 转账单
+     */
+    public static class Transfer {
+        public final String outTransferNo;
+        public final String transferNo;
+        public final long amount;
+        public final String account;
+        public final LocalDateTime paymentTime;
+
+        Transfer(String outTransferNo, String transferNo, long amount, String account, LocalDateTime paymentTime) {
+            this.outTransferNo = outTransferNo;
+            this.transferNo = transferNo;
+            this.amount = amount;
+            this.account = account;
+            this.paymentTime = paymentTime;
+        }
+    }
+
+    /**
+     * 业务错误, 错误码用微信的, 支付宝处理器转换成自己的错误码
+     */
+    public static class GatewayError extends RuntimeException {
+
+        private final String code;
+
+        public GatewayError(String code, String message) {
+            super(message, null, false, false);
+            this.code = code;
+        }
+
+        public String getCode() {
+            return code;
+        }
+    }
+}
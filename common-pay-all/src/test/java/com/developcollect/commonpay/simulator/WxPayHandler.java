@@ -0,0 +1,348 @@
+package com.developcollect.commonpay.simulator;
+
+import com.developcollect.commonpay.pay.wxpay.sdk.WXPayConstants;
+import com.developcollect.commonpay.pay.wxpay.sdk.WXPayUtil;
+import com.developcollect.commonpay.simulator.SimulatedLedger.GatewayError;
+import com.developcollect.commonpay.simulator.SimulatedLedger.Refund;
+import com.developcollect.commonpay.simulator.SimulatedLedger.Trade;
+import com.developcollect.commonpay.simulator.SimulatedLedger.Transfer;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 微信支付v2接口
+ * 请求和响应都是xml, 响应的签名方式和请求的sign_type一致;
+ * 企业付款的请求固定用MD5签名, 没有sign_type, 响应按SDK的签名方式(沙箱MD5, 正式HMAC-SHA256)签名
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+class WxPayHandler extends AbstractGatewayHandler {
+
+    private static final String SANDBOX_PREFIX = "/sandboxnew";
+    private static final DateTimeFormatter PAY_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
+    private final String key;
+    private final SimulatedLedger ledger;
+
+    WxPayHandler(GatewaySimulator simulator, String key) {
+        super(simulator);
+        this.key = key;
+        this.ledger = simulator.getWxPayLedger();
+    }
+
+    @Override
+    protected void doHandle(HttpExchange exchange) throws Exception {
+        String path = exchange.getRequestURI().getPath();
+        boolean sandbox = path.startsWith(SANDBOX_PREFIX);
+        if (sandbox) {
+            path = path.substring(SANDBOX_PREFIX.length());
+        }
+
+        Map<String, String> request;
+        try {
+            request = WXPayUtil.xmlToMap(readBody(exchange));
+        } catch (Exception e) {
+            sendXml(exchange, returnFail("XML格式错误"));
+            return;
+        }
+
+        boolean transfer = path.startsWith("/mmpaymkttransfers/");
+        WXPayConstants.SignType requestSignType = transfer || !WXPayConstants.HMACSHA256.equals(request.get("sign_type"))
+                ? WXPayConstants.SignType.MD5
+                : WXPayConstants.SignType.HMACSHA256;
+        if (!WXPayUtil.isSignatureValid(request, key, requestSignType)) {
+            sendXml(exchange, returnFail("签名错误"));
+            return;
+        }
+        if ("/pay/getsignkey".equals(path)) {
+            // 沙箱的验签key, 直接用商户key
+            Map<String, String> response = returnSuccess();
+            response.put("sandbox_signkey", key);
+            sendXml(exchange, response);
+            return;
+        }
+
+        WXPayConstants.SignType responseSignType = transfer
+                ? (sandbox ? WXPayConstants.SignType.MD5 : WXPayConstants.SignType.HMACSHA256)
+                : requestSignType;
+
+        switch (simulator.nextFault()) {
+            case TRANSPORT:
+                sendUnavailable(exchange);
+                return;
+            case THROTTLED:
+                sendSigned(exchange, resultFail(request, "FREQUENCY_LIMITED", "频率限制"), responseSignType);
+                return;
+            case SYSTEM_ERROR:
+                sendSigned(exchange, resultFail(request, "SYSTEMERROR", "系统错误"), responseSignType);
+                return;
+            default:
+        }
+
+        if ("/pay/downloadbill".equals(path)) {
+            downloadBill(exchange);
+            return;
+        }
+
+        Map<String, String> response;
+        try {
+            response = dispatch(path, request);
+        } catch (GatewayError e) {
+            response = resultFail(request, e.getCode(), e.getMessage());
+        }
+        if (response == null) {
+            send(exchange, 404, "text/plain", "");
+            return;
+        }
+        sendSigned(exchange, response, responseSignType);
+    }
+
+    private Map<String, String> dispatch(String path, Map<String, String> request) {
+        switch (path) {
+            case "/pay/unifiedorder":
+                return unifiedOrder(request);
+            case "/pay/micropay":
+                return micropay(request);
+            case "/pay/orderquery":
+                return orderQuery(request);
+            case "/pay/closeorder":
+                ledger.close(require(request, "out_trade_no"));
+                return resultSuccess(request);
+            case "/secapi/pay/refund":
+                return refund(request);
+            case "/pay/refundquery":
+                return refundQuery(request);
+            case "/mmpaymkttransfers/promotion/transfers":
+                return transfer(request);
+            case "/mmpaymkttransfers/gettransferinfo":
+                return transferQuery(request);
+            default:
+                return null;
+        }
+    }
+
+    private Map<String, String> unifiedOrder(Map<String, String> request) {
+        Trade trade = ledger.create(require(request, "out_trade_no"), requireLong(request, "total_fee"));
+        String tradeType = require(request, "trade_type");
+        Map<String, String> response = resultSuccess(request);
+        response.put("trade_type", tradeType);
+        response.put("prepay_id", "wx" + trade.tradeNo);
+        if ("NATIVE".equals(tradeType)) {
+            response.put("code_url", "weixin://wxpay/bizpayurl?pr=" + trade.tradeNo);
+        } else if ("MWEB".equals(tradeType)) {
+            response.put("mweb_url", "https://wx.tenpay.com/cgi-bin/mmpayweb-bin/checkmweb?prepay_id=wx" + trade.tradeNo);
+        }
+        return response;
+    }
+
+    private Map<String, String> micropay(Map<String, String> request) {
+        require(request, "auth_code");
+        Trade trade = ledger.micropay(require(request, "out_trade_no"), requireLong(request, "total_fee"));
+        if (trade.getState() == SimulatedLedger.TradeState.USERPAYING) {
+            throw new GatewayError("USERPAYING", "需要用户输入支付密码");
+        }
+        Map<String, String> response = resultSuccess(request);
+        putTrade(response, trade);
+        response.put("trade_type", "MICROPAY");
+        return response;
+    }
+
+    private Map<String, String> orderQuery(Map<String, String> request) {
+        Trade trade = ledger.query(require(request, "out_trade_no"));
+        Map<String, String> response = resultSuccess(request);
+        response.put("trade_state", trade.getState().name());
+        response.put("out_trade_no", trade.outTradeNo);
+        response.put("total_fee", String.valueOf(trade.totalFee));
+        if (trade.getPayTime() != null) {
+            putTrade(response, trade);
+        }
+        return response;
+    }
+
+    private Map<String, String> refund(Map<String, String> request) {
+        String outTradeNo = require(request, "out_trade_no");
+        long totalFee = requireLong(request, "total_fee");
+        if (ledger.query(outTradeNo).totalFee != totalFee) {
+            throw new GatewayError("INVALID_REQUEST", "订单金额不一致");
+        }
+        Refund refund = ledger.refund(outTradeNo, require(request, "out_refund_no"), requireLong(request, "refund_fee"));
+        Map<String, String> response = resultSuccess(request);
+        response.put("transaction_id", refund.trade.tradeNo);
+        response.put("out_trade_no", outTradeNo);
+        response.put("out_refund_no", refund.outRefundNo);
+        response.put("refund_id", refund.refundNo);
+        response.put("refund_fee", String.valueOf(refund.refundFee));
+        response.put("total_fee", String.valueOf(totalFee));
+        return response;
+    }
+
+    private Map<String, String> refundQuery(Map<String, String> request) {
+        List<Refund> refunds;
+        if (request.get("out_refund_no") != null) {
+            refunds = Collections.singletonList(ledger.queryRefund(request.get("out_refund_no")));
+        } else if (request.get("out_trade_no") != null) {
+            Trade trade = ledger.query(request.get("out_trade_no"));
+            refunds = new ArrayList<>();
+            synchronized (trade) {
+                for (Refund refund : trade.refunds) {
+                    refunds.add(refund);
+                }
+            }
+            if (refunds.isEmpty()) {
+                throw new GatewayError("REFUNDNOTEXIST", "退款单不存在");
+            }
+            for (Refund refund : refunds) {
+                ledger.queryRefund(refund.outRefundNo);
+            }
+        } else {
+            throw new GatewayError("INVALID_REQUEST", "缺少参数out_refund_no");
+        }
+
+        Trade trade = refunds.get(0).trade;
+        Map<String, String> response = resultSuccess(request);
+        response.put("transaction_id", trade.tradeNo);
+        response.put("out_trade_no", trade.outTradeNo);
+        response.put("total_fee", String.valueOf(trade.totalFee));
+        response.put("refund_count", String.valueOf(refunds.size()));
+        for (int i = 0; i < refunds.size(); i++) {
+            Refund refund = refunds.get(i);
+            response.put("out_refund_no_" + i, refund.outRefundNo);
+            response.put("refund_id_" + i, refund.refundNo);
+            response.put("refund_fee_" + i, String.valueOf(refund.refundFee));
+            response.put("refund_status_" + i, refund.getState().name());
+            if (refund.getSuccessTime() != null) {
+                response.put("refund_success_time_" + i, format(refund.getSuccessTime()));
+            }
+        }
+        return response;
+    }
+
+    private Map<String, String> transfer(Map<String, String> request) {
+        Transfer transfer = ledger.transfer(require(request, "partner_trade_no"),
+                requireLong(request, "amount"), require(request, "openid"));
+        Map<String, String> response = returnSuccess();
+        response.put("mch_appid", request.get("mch_appid"));
+        response.put("mchid", request.get("mchid"));
+        response.put("nonce_str", WXPayUtil.generateNonceStr());
+        response.put("result_code", WXPayConstants.SUCCESS);
+        response.put("partner_trade_no", transfer.outTransferNo);
+        response.put("payment_no", transfer.transferNo);
+        response.put("payment_time", format(transfer.paymentTime));
+        return response;
+    }
+
+    private Map<String, String> transferQuery(Map<String, String> request) {
+        Transfer transfer = ledger.queryTransfer(require(request, "partner_trade_no"));
+        Map<String, String> response = returnSuccess();
+        response.put("appid", request.get("mch_appid"));
+        response.put("mch_id", request.get("mchid"));
+        response.put("result_code", WXPayConstants.SUCCESS);
+        response.put("partner_trade_no", transfer.outTransferNo);
+        response.put("detail_id", transfer.transferNo);
+        response.put("status", "SUCCESS");
+        response.put("openid", transfer.account);
+        response.put("payment_amount", String.valueOf(transfer.amount));
+        response.put("transfer_time", format(transfer.paymentTime));
+        response.put("payment_time", format(transfer.paymentTime));
+        return response;
+    }
+
+    /**
+     * 对账单, 只包含已付款的订单, 没有订单时和微信一样返回错误的xml
+     */
+    private void downloadBill(HttpExchange exchange) throws Exception {
+        List<Trade> trades = ledger.paidTrades();
+        if (trades.isEmpty()) {
+            sendXml(exchange, returnFail("No Bill Exist"));
+            return;
+        }
+        StringBuilder bill = new StringBuilder("交易时间,微信订单号,商户订单号,交易类型,交易状态,货币种类,订单金额\r\n");
+        long totalFee = 0;
+        for (Trade trade : trades) {
+            bill.append('`').append(format(trade.getPayTime()))
+                    .append(",`").append(trade.tradeNo)
+                    .append(",`").append(trade.outTradeNo)
+                    .append(",`NATIVE,`SUCCESS,`CNY,`").append(yuan(trade.totalFee))
+                    .append("\r\n");
+            totalFee += trade.totalFee;
+        }
+        bill.append("总交易单数,应结订单总金额\r\n")
+                .append('`').append(trades.size()).append(",`").append(yuan(totalFee)).append("\r\n");
+        send(exchange, 200, "text/plain", bill.toString());
+    }
+
+    private static void putTrade(Map<String, String> response, Trade trade) {
+        response.put("transaction_id", trade.tradeNo);
+        response.put("out_trade_no", trade.outTradeNo);
+        response.put("total_fee", String.valueOf(trade.totalFee));
+        response.put("time_end", PAY_TIME_FORMATTER.format(trade.getPayTime()));
+    }
+
+    private static String yuan(long fen) {
+        return String.format("%d.%02d", fen / 100, fen % 100);
+    }
+
+    private static String require(Map<String, String> request, String name) {
+        String value = request.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new GatewayError("PARAM_ERROR", "缺少参数" + name);
+        }
+        return value;
+    }
+
+    private static long requireLong(Map<String, String> request, String name) {
+        try {
+            return Long.parseLong(require(request, name));
+        } catch (NumberFormatException e) {
+            throw new GatewayError("PARAM_ERROR", "参数" + name + "格式错误");
+        }
+    }
+
+    private static Map<String, String> returnSuccess() {
+        Map<String, String> response = new LinkedHashMap<>();
+        response.put("return_code", WXPayConstants.SUCCESS);
+        response.put("return_msg", "OK");
+        return response;
+    }
+
+    private static Map<String, String> returnFail(String message) {
+        Map<String, String> response = new LinkedHashMap<>();
+        response.put("return_code", WXPayConstants.FAIL);
+        response.put("return_msg", message);
+        return response;
+    }
+
+    private static Map<String, String> resultSuccess(Map<String, String> request) {
+        Map<String, String> response = returnSuccess();
+        response.put("appid", request.get("appid"));
+        response.put("mch_id", request.get("mch_id"));
+        response.put("nonce_str", WXPayUtil.generateNonceStr());
+        response.put("result_code", WXPayConstants.SUCCESS);
+        return response;
+    }
+
+    private static Map<String, String> resultFail(Map<String, String> request, String errCode, String errCodeDes) {
+        Map<String, String> response = resultSuccess(request);
+        response.put("result_code", WXPayConstants.FAIL);
+        response.put("err_code", errCode);
+        response.put("err_code_des", errCodeDes);
+        return response;
+    }
+
+    private void sendSigned(HttpExchange exchange, Map<String, String> response, WXPayConstants.SignType signType) throws Exception {
+        response.values().removeIf(value -> value == null);
+        response.put(WXPayConstants.FIELD_SIGN, WXPayUtil.generateSignature(response, key, signType));
+        sendXml(exchange, response);
+    }
+
+    private static void sendXml(HttpExchange exchange, Map<String, String> response) throws Exception {
+        send(exchange, 200, "text/xml", WXPayUtil.mapToXml(response));
+    }
+}
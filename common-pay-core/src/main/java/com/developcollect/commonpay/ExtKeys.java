@@ -17,4 +17,10 @@ public interface ExtKeys {
      * 微信JS支付时微信用户标识在{@link com.developcollect.commonpay.pay.IPayDTO}中的扩展参数key
      */
     String PAY_WXJS_OPENID = "PAY_WXJS_OPENID";
+
+    /**
+     * 多商户时商户标识在{@link com.developcollect.commonpay.pay.IExtDto}中的扩展参数key
+     * 取值为{@link com.developcollect.commonpay.config.GlobalConfig#putMerchantPayConfig}时使用的商户标识
+     */
+    String MERCHANT_ID = "MERCHANT_ID";
 }
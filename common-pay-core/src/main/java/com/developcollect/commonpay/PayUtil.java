@@ -2,13 +2,26 @@ package com.developcollect.commonpay;
 
 import cn.hutool.core.codec.Base64;
 import cn.hutool.extra.qrcode.QrCodeUtil;
+import com.developcollect.commonpay.cache.PrepayCache;
+import com.developcollect.commonpay.cache.TerminalStateCache;
 import com.developcollect.commonpay.config.AbstractPayConfig;
 import com.developcollect.commonpay.config.GlobalConfig;
+import com.developcollect.commonpay.config.IMerchantRouter;
+import com.developcollect.commonpay.exception.DeadlineExceededException;
 import com.developcollect.commonpay.exception.PayException;
+import com.developcollect.commonpay.guard.PayCallContext;
+import com.developcollect.commonpay.guard.PayOperation;
+import com.developcollect.commonpay.notice.BroadcastUtil;
 import com.developcollect.commonpay.pay.*;
+import com.developcollect.commonpay.qrcode.QrCodeFormat;
+import com.developcollect.commonpay.qrcode.QrCodeRenderer;
 import com.developcollect.dcinfra.utils.CglibUtil;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.Supplier;
+
 
 /**
  * 支付工具类
@@ -46,11 +59,29 @@ public class PayUtil {
      * @param payDTO 订单
      */
     public static PayResponse payScan(IPayDTO payDTO) {
-        Pay pay = GlobalConfig.payFactory().createPay(payDTO.getPayPlatform());
+        String merchantId = merchantOf(payDTO);
+        Pay pay = createPay(payDTO.getPayPlatform(), merchantId);
         PayResponse payResponse = pay.payScan(payDTO);
+        cacheTerminalState(merchantId, payResponse);
         return payResponse;
     }
 
+    /**
+     * 在限定时间内扫用户付款码支付, 用于收银台不能长时间等待的场景
+     * 限流和隔离舱的排队、每次请求的超时、切换备用域名的重试都只能使用剩余的时间,
+     * 超时抛出{@link com.developcollect.commonpay.exception.DeadlineExceededException}, 此时支付结果未知, 需要再查询确认
+     *
+     * @param payDTO        订单
+     * @param authCode      付款码
+     * @param timeoutMillis 最长时间, 单位毫秒
+     * @return 支付结果
+     * @author zak
+     * @since 2.2.0
+     */
+    public static PayResponse payScan(IPayDTO payDTO, String authCode, long timeoutMillis) {
+        return withDeadline(timeoutMillis, () -> payScan(payDTO, authCode));
+    }
+
     /**
      * 使用订单中的支付平台, 而是用指定的支付平台进行扫用户付款码支付
      * 注意: 如果额外指定了支付平台, 那么在回调配置的生成器时传入的{@link IPayDTO}可能是{@link RePayPlatformPayDTO}类型,
@@ -92,8 +123,8 @@ public class PayUtil {
      * @return com.developcollect.commonpay.pay.PayAppResult
      */
     public static PayAppResult payApp(IPayDTO payDTO) {
-        Pay pay = GlobalConfig.payFactory().createPay(payDTO.getPayPlatform());
-        PayAppResult result = pay.payApp(payDTO);
+        Pay pay = createPay(payDTO);
+        PayAppResult result = prepay(PayOperation.PAY_APP, payDTO, () -> pay.payApp(payDTO));
         return result;
     }
 
@@ -126,8 +157,8 @@ public class PayUtil {
      * @since 1.0.0
      */
     public static String payQrCode(IPayDTO payDTO) {
-        Pay pay = GlobalConfig.payFactory().createPay(payDTO.getPayPlatform());
-        String code = pay.payQrCode(payDTO);
+        Pay pay = createPay(payDTO);
+        String code = prepay(PayOperation.PAY_QR_CODE, payDTO, () -> pay.payQrCode(payDTO));
         return code;
     }
 
@@ -160,14 +191,39 @@ public class PayUtil {
      */
     public static String payQrCodeBase64(IPayDTO payDTO) {
         String code = payQrCode(payDTO);
-        AbstractPayConfig payConfig = GlobalConfig.getPayConfig(payDTO.getPayPlatform());
+        AbstractPayConfig payConfig = getPayConfig(payDTO);
         int qrCodeWidth = payConfig.getQrCodeWidth();
         int qrCodeHeight = payConfig.getQrCodeHeight();
+        QrCodeRenderer qrCodeRenderer = GlobalConfig.qrCodeRenderer();
+        if (qrCodeRenderer != null) {
+            return qrCodeRenderer.renderPngBase64(code, qrCodeWidth, qrCodeHeight);
+        }
         byte[] qrCodeBytes = QrCodeUtil.generatePng(code, qrCodeWidth, qrCodeHeight);
         String qrCodeBase64 = Base64.encode(qrCodeBytes);
         return qrCodeBase64;
     }
 
+    /**
+     * 支付(二维码)
+     * 把二维码图片直接写入输出流, 比如http响应流, 不需要再转base64
+     *
+     * @param payDTO 订单
+     * @param format 图片格式
+     * @param out    输出流
+     * @throws IOException 写入输出流失败
+     * @author zak
+     * @since 2.2.0
+     */
+    public static void payQrCodeImage(IPayDTO payDTO, QrCodeFormat format, OutputStream out) throws IOException {
+        String code = payQrCode(payDTO);
+        AbstractPayConfig payConfig = getPayConfig(payDTO);
+        QrCodeRenderer qrCodeRenderer = GlobalConfig.qrCodeRenderer();
+        if (qrCodeRenderer == null) {
+            throw new PayException("没有配置二维码渲染器");
+        }
+        qrCodeRenderer.render(code, payConfig.getQrCodeWidth(), payConfig.getQrCodeHeight(), format, out);
+    }
+
     /**
      * 不使用订单中的支付平台, 而是用指定的支付平台支付(二维码)
      * 返回的是一张png格式的二维码图片的base64字符串
@@ -198,8 +254,7 @@ public class PayUtil {
      */
     public static String payQrCodeAccessUrl(IPayDTO payDTO) {
         String code = payQrCode(payDTO);
-        String accessUrl = GlobalConfig
-                .getPayConfig(payDTO.getPayPlatform())
+        String accessUrl = getPayConfig(payDTO)
                 .getPayQrCodeAccessUrlGenerator()
                 .apply(payDTO, code);
         return accessUrl;
@@ -237,8 +292,8 @@ public class PayUtil {
      * @since 1.0.0
      */
     public static String payPcForm(IPayDTO payDTO) {
-        Pay pay = GlobalConfig.payFactory().createPay(payDTO.getPayPlatform());
-        String form = pay.payPcForm(payDTO);
+        Pay pay = createPay(payDTO);
+        String form = prepay(PayOperation.PAY_PC_FORM, payDTO, () -> pay.payPcForm(payDTO));
         return form;
     }
 
@@ -272,8 +327,7 @@ public class PayUtil {
      */
     public static String payPcFormAccessUrl(IPayDTO payDTO) {
         String form = payPcForm(payDTO);
-        String accessUrl = GlobalConfig
-                .getPayConfig(payDTO.getPayPlatform())
+        String accessUrl = getPayConfig(payDTO)
                 .getPcPayFormHtmlAccessUrlGenerator()
                 .apply(payDTO, form);
         return accessUrl;
@@ -316,8 +370,8 @@ public class PayUtil {
             // 微信是直接返回的url, 没有返回html代码的接口
             throw new PayException("暂不支持返回WAP页面代码");
         }
-        Pay pay = GlobalConfig.payFactory().createPay(payDTO.getPayPlatform());
-        String form = pay.payWapForm(payDTO);
+        Pay pay = createPay(payDTO);
+        String form = prepay(PayOperation.PAY_WAP_FORM, payDTO, () -> pay.payWapForm(payDTO));
         return form;
     }
 
@@ -353,14 +407,13 @@ public class PayUtil {
     public static String payWapFormAccessUrl(IPayDTO payDTO) {
         if (payDTO.getPayPlatform() == PayPlatform.WX_PAY) {
             // 微信是直接返回的url, 不需要通过访问链接生成器生成
-            Pay pay = GlobalConfig.payFactory().createPay(payDTO.getPayPlatform());
-            String form = pay.payWapForm(payDTO);
+            Pay pay = createPay(payDTO);
+            String form = prepay(PayOperation.PAY_WAP_FORM, payDTO, () -> pay.payWapForm(payDTO));
             return form;
         }
 
         String form = payWapForm(payDTO);
-        String accessUrl = GlobalConfig
-                .getPayConfig(payDTO.getPayPlatform())
+        String accessUrl = getPayConfig(payDTO)
                 .getWapPayFormHtmlAccessUrlGenerator()
                 .apply(payDTO, form);
         return accessUrl;
@@ -411,8 +464,8 @@ public class PayUtil {
      * @return WxJsPayResult
      */
     public static PayWxJsResult payWxJs(IPayDTO payDTO) {
-        Pay pay = GlobalConfig.payFactory().createPay(payDTO.getPayPlatform());
-        PayWxJsResult payWxJsResult = pay.payWxJs(payDTO);
+        Pay pay = createPay(payDTO);
+        PayWxJsResult payWxJsResult = prepay(PayOperation.PAY_WX_JS, payDTO, () -> pay.payWxJs(payDTO));
         return payWxJsResult;
     }
 
@@ -435,8 +488,8 @@ public class PayUtil {
      * @return WxJsPayResult
      */
     public static PayWxJsResult payAppletsJs(IPayDTO payDTO) {
-        Pay pay = GlobalConfig.payFactory().createPay(payDTO.getPayPlatform());
-        PayWxJsResult payWxJsResult = pay.payAppletsJs(payDTO);
+        Pay pay = createPay(payDTO);
+        PayWxJsResult payWxJsResult = prepay(PayOperation.PAY_APPLETS_JS, payDTO, () -> pay.payAppletsJs(payDTO));
         return payWxJsResult;
     }
 
@@ -491,12 +544,16 @@ public class PayUtil {
      * @since 1.0.0
      */
     public static PayResponse paySync(IPayDTO payDTO) {
-        Pay pay = GlobalConfig.payFactory().createPay(payDTO.getPayPlatform());
+        String merchantId = merchantOf(payDTO);
+        Pay pay = createPay(payDTO.getPayPlatform(), merchantId);
         PayResponse payResponse = pay.paySync(payDTO);
-        // 如果广播失败了不会重试
-        boolean broadcast = GlobalConfig.payBroadcaster().broadcast(payResponse);
-        if (!broadcast) {
-            log.error("订单[{}]支付结果广播失败", payDTO.getOutTradeNo());
+        cacheTerminalState(merchantId, payResponse);
+        if (GlobalConfig.payBroadcaster() != null) {
+            // 配置了异步广播管道时失败会自动重试, 否则失败了不会重试
+            boolean broadcast = BroadcastUtil.broadcast(payResponse);
+            if (!broadcast) {
+                log.error("订单[{}]支付结果广播失败", payDTO.getOutTradeNo());
+            }
         }
         return payResponse;
     }
@@ -520,9 +577,24 @@ public class PayUtil {
         return paySync(rePayPlatformPayDTO);
     }
 
+    /**
+     * 在限定时间内支付(同步支付)
+     * 超时抛出{@link com.developcollect.commonpay.exception.DeadlineExceededException}, 此时支付结果未知, 需要再查询确认
+     *
+     * @param payDTO        订单
+     * @param timeoutMillis 最长时间, 单位毫秒
+     * @return 支付结果
+     * @author zak
+     * @since 2.2.0
+     */
+    public static PayResponse paySync(IPayDTO payDTO, long timeoutMillis) {
+        return withDeadline(timeoutMillis, () -> paySync(payDTO));
+    }
+
     /**
      * 查询订单支付结果
      * 查询出错时返回null
+     * 已支付或已关闭的订单会缓存查询结果, 重复查询时直接返回缓存的结果
      *
      * @param payDTO 订单
      * @return 订单支付结果
@@ -530,11 +602,52 @@ public class PayUtil {
      * @since 1.0.0
      */
     public static PayResponse payQuery(IPayDTO payDTO) {
-        Pay pay = GlobalConfig.payFactory().createPay(payDTO.getPayPlatform());
+        String merchantId = merchantOf(payDTO);
+        TerminalStateCache cache = GlobalConfig.terminalStateCache();
+        if (cache != null) {
+            PayResponse cached = cache.getPayResponse(payDTO.getPayPlatform(), merchantId, payDTO.getOutTradeNo());
+            if (cached != null) {
+                return cached;
+            }
+        }
+        Pay pay = createPay(payDTO.getPayPlatform(), merchantId);
         PayResponse payResponse = pay.payQuery(payDTO);
+        cacheTerminalState(merchantId, payResponse);
         return payResponse;
     }
 
+    /**
+     * 查询订单支付结果, 不抛异常
+     * 订单不存在、业务错误和通信失败都通过返回的{@link QueryResult}区分, 适合轮询时使用;
+     * 已支付或已关闭的订单会缓存查询结果, 重复查询时直接返回缓存的结果
+     *
+     * @param payDTO 订单
+     * @return 查询结果
+     * @author zak
+     * @since 2.2.0
+     */
+    public static QueryResult<PayResponse> payQueryResult(IPayDTO payDTO) {
+        String merchantId = merchantOf(payDTO);
+        TerminalStateCache cache = GlobalConfig.terminalStateCache();
+        if (cache != null) {
+            PayResponse cached = cache.getPayResponse(payDTO.getPayPlatform(), merchantId, payDTO.getOutTradeNo());
+            if (cached != null) {
+                return QueryResult.success(cached);
+            }
+        }
+        QueryResult<PayResponse> result;
+        try {
+            result = createPay(payDTO.getPayPlatform(), merchantId).payQueryResult(payDTO);
+        } catch (RuntimeException e) {
+            // 保护措施拒绝的调用
+            return QueryResult.transportError(e);
+        }
+        if (result.isSuccess()) {
+            cacheTerminalState(merchantId, result.getResponse());
+        }
+        return result;
+    }
+
     /**
      * 不使用订单中的支付平台, 而是用指定的支付平台查询订单支付结果
      * 查询出错时返回null
@@ -554,10 +667,76 @@ public class PayUtil {
         return payQuery(rePayPlatformPayDTO);
     }
 
+    /**
+     * 在限定时间内查询订单支付结果
+     * 查询出错或超时时返回null, 超时不抛出{@link DeadlineExceededException}, 和不限时的查询一样由调用方稍后再查
+     *
+     * @param payDTO        订单
+     * @param timeoutMillis 最长时间, 单位毫秒
+     * @return 订单支付结果
+     * @author zak
+     * @since 2.2.0
+     */
+    public static PayResponse payQuery(IPayDTO payDTO, long timeoutMillis) {
+        try {
+            return withDeadline(timeoutMillis, () -> payQuery(payDTO));
+        } catch (DeadlineExceededException e) {
+            log.debug("订单[{}]查询超时", payDTO.getOutTradeNo(), e);
+            return null;
+        }
+    }
+
+    /**
+     * 关闭订单
+     * 关闭后订单不能再支付, 如果订单在关闭前已经支付成功, 返回的是支付成功的结果
+     * 已支付或已关闭的订单会直接返回缓存的结果
+     *
+     * 官方文档:
+     * 支付宝  https://opendocs.alipay.com/apis/api_1/alipay.trade.close
+     * 微信    https://pay.weixin.qq.com/wiki/doc/api/native.php?chapter=9_3
+     * @param payDTO 订单
+     * @return 关闭结果, 关闭成功时{@link PayResponse#isClosed()}为true
+     * @author zak
+     * @since 2.2.0
+     */
+    public static PayResponse closeOrder(IPayDTO payDTO) {
+        String merchantId = merchantOf(payDTO);
+        TerminalStateCache cache = GlobalConfig.terminalStateCache();
+        if (cache != null) {
+            PayResponse cached = cache.getPayResponse(payDTO.getPayPlatform(), merchantId, payDTO.getOutTradeNo());
+            if (cached != null) {
+                return cached;
+            }
+        }
+        Pay pay = createPay(payDTO.getPayPlatform(), merchantId);
+        PayResponse payResponse = pay.closeOrder(payDTO);
+        cacheTerminalState(merchantId, payResponse);
+        PrepayCache prepayCache = GlobalConfig.prepayCache();
+        if (prepayCache != null) {
+            prepayCache.removeAll(merchantId, payDTO);
+        }
+        return payResponse;
+    }
+
+    /**
+     * 不使用订单中的支付平台, 而是用指定的支付平台关闭订单
+     *
+     * @param payPlatform 支付平台
+     * @param payDTO      订单
+     * @return 关闭结果
+     * @author zak
+     * @since 2.2.0
+     */
+    public static PayResponse closeOrder(int payPlatform, IPayDTO payDTO) {
+        IPayDTO rePayPlatformPayDTO = rePayPlatformPayDTO(payPlatform, payDTO);
+        return closeOrder(rePayPlatformPayDTO);
+    }
+
 
     /**
      * 退款(同步方法)
      * 直接返回退款结果,而不是通过异步通知的形式
+     * 退款由收款的商户发起, 选中的商户会写入退款单的扩展参数{@link ExtKeys#MERCHANT_ID}, 之后查询退款时路由到同一个商户
      *
      * 官方文档:
      * 支付宝  https://opendocs.alipay.com/apis/api_1/alipay.trade.refund
@@ -569,11 +748,17 @@ public class PayUtil {
      * @since 1.0.0
      */
     public static RefundResponse refundSync(IPayDTO payDTO, IRefundDTO refundDTO) {
-        Pay pay = GlobalConfig.payFactory().createPay(refundDTO.getPayPlatform());
+        int payPlatform = refundDTO.getPayPlatform();
+        String merchantId = merchantOf(payPlatform, payDTO);
+        if (merchantId != null) {
+            refundDTO.putExt(ExtKeys.MERCHANT_ID, merchantId);
+        }
+        Pay pay = createPay(payPlatform, merchantId);
         RefundResponse refundResponse = pay.refundSync(payDTO, refundDTO);
+        cacheTerminalState(merchantId, refundResponse);
         if (GlobalConfig.refundBroadcaster() != null) {
-            // 如果广播失败了不会重试
-            boolean broadcast = GlobalConfig.refundBroadcaster().broadcast(refundResponse);
+            // 配置了异步广播管道时失败会自动重试, 否则失败了不会重试
+            boolean broadcast = BroadcastUtil.broadcast(refundResponse);
             if (!broadcast) {
                 log.error("退款[{}]结果广播失败", refundDTO.getOutRefundNo());
             }
@@ -605,6 +790,9 @@ public class PayUtil {
 
     /**
      * 查询退款结果
+     * 退款成功或失败后会缓存查询结果, 重复查询时直接返回缓存的结果
+     * 多商户时使用退款单上的商户(退款时写入), 退款单上没有商户时按原订单号路由,
+     * 退款单没有保存商户的应该使用{@link #refundQuery(IPayDTO, IRefundDTO)}
      *
      * @param refundDTO
      * @return com.developcollect.commonpay.pay.RefundResponse
@@ -612,9 +800,84 @@ public class PayUtil {
      * @date 2020/9/28 14:45
      */
     public static RefundResponse refundQuery(IRefundDTO refundDTO) {
-        Pay pay = GlobalConfig.payFactory().createPay(refundDTO.getPayPlatform());
-        RefundResponse refundResponse = pay.refundQuery(refundDTO);
-        return refundResponse;
+        return refundQuery(merchantOf(refundDTO), refundDTO);
+    }
+
+    /**
+     * 查询退款结果, 按原订单选择商户
+     *
+     * @param payDTO    原订单
+     * @param refundDTO 退款单
+     * @return 退款结果
+     * @author zak
+     * @since 2.2.0
+     */
+    public static RefundResponse refundQuery(IPayDTO payDTO, IRefundDTO refundDTO) {
+        return refundQuery(merchantOf(refundDTO.getPayPlatform(), payDTO), refundDTO);
+    }
+
+    private static RefundResponse refundQuery(String merchantId, IRefundDTO refundDTO) {
+        TerminalStateCache cache = GlobalConfig.terminalStateCache();
+        if (cache != null) {
+            RefundResponse cached = cache.getRefundResponse(refundDTO.getPayPlatform(), merchantId, refundDTO.getOutRefundNo());
+            if (cached != null) {
+                return cached;
+            }
+        }
+        // 通过查询结果判断是否终态: 支付平台查不到的退款单也会返回失败状态, 不能当成终态缓存
+        Pay pay = createPay(refundDTO.getPayPlatform(), merchantId);
+        QueryResult<RefundResponse> result = pay.refundQueryResult(refundDTO);
+        if (result.isSuccess()) {
+            cacheTerminalState(merchantId, result.getResponse());
+        }
+        return pay.toRefundQueryResponse(refundDTO, result);
+    }
+
+    /**
+     * 查询退款结果, 不抛异常
+     * 退款不存在、业务错误和通信失败都通过返回的{@link QueryResult}区分, 适合轮询时使用;
+     * 退款成功或失败后会缓存查询结果, 重复查询时直接返回缓存的结果
+     *
+     * @param refundDTO 退款单
+     * @return 查询结果
+     * @author zak
+     * @since 2.2.0
+     */
+    public static QueryResult<RefundResponse> refundQueryResult(IRefundDTO refundDTO) {
+        return refundQueryResult(merchantOf(refundDTO), refundDTO);
+    }
+
+    /**
+     * 查询退款结果, 按原订单选择商户, 不抛异常
+     *
+     * @param payDTO    原订单
+     * @param refundDTO 退款单
+     * @return 查询结果
+     * @author zak
+     * @since 2.2.0
+     */
+    public static QueryResult<RefundResponse> refundQueryResult(IPayDTO payDTO, IRefundDTO refundDTO) {
+        return refundQueryResult(merchantOf(refundDTO.getPayPlatform(), payDTO), refundDTO);
+    }
+
+    private static QueryResult<RefundResponse> refundQueryResult(String merchantId, IRefundDTO refundDTO) {
+        TerminalStateCache cache = GlobalConfig.terminalStateCache();
+        if (cache != null) {
+            RefundResponse cached = cache.getRefundResponse(refundDTO.getPayPlatform(), merchantId, refundDTO.getOutRefundNo());
+            if (cached != null) {
+                return QueryResult.success(cached);
+            }
+        }
+        QueryResult<RefundResponse> result;
+        try {
+            result = createPay(refundDTO.getPayPlatform(), merchantId).refundQueryResult(refundDTO);
+        } catch (RuntimeException e) {
+            return QueryResult.transportError(e);
+        }
+        if (result.isSuccess()) {
+            cacheTerminalState(merchantId, result.getResponse());
+        }
+        return result;
     }
 
 
@@ -631,12 +894,14 @@ public class PayUtil {
      * @since 1.0.0
      */
     public static TransferResponse transferSync(ITransferDTO transferDTO) {
-        Pay pay = GlobalConfig.payFactory().createPay(transferDTO.getPayPlatform());
+        String merchantId = merchantOf(transferDTO);
+        Pay pay = createPay(transferDTO.getPayPlatform(), merchantId);
         TransferResponse transferResponse = pay.transferSync(transferDTO);
+        cacheTerminalState(merchantId, transferResponse);
 
         if (GlobalConfig.transferBroadcaster() != null) {
-            // 如果广播失败了不会重试
-            boolean broadcast = GlobalConfig.transferBroadcaster().broadcast(transferResponse);
+            // 配置了异步广播管道时失败会自动重试, 否则失败了不会重试
+            boolean broadcast = BroadcastUtil.broadcast(transferResponse);
             if (!broadcast) {
                 log.error("转账[{}]结果广播失败", transferDTO.getOutTransferNo());
             }
@@ -668,6 +933,7 @@ public class PayUtil {
 
     /**
      * 查询转账结果
+     * 转账成功或失败后会缓存查询结果, 重复查询时直接返回缓存的结果
      *
      * @param transferDTO
      * @return com.developcollect.commonpay.pay.TransferResponse
@@ -675,11 +941,168 @@ public class PayUtil {
      * @date 2020/9/28 14:44
      */
     public static TransferResponse transferQuery(ITransferDTO transferDTO) {
-        Pay pay = GlobalConfig.payFactory().createPay(transferDTO.getPayPlatform());
+        String merchantId = merchantOf(transferDTO);
+        TerminalStateCache cache = GlobalConfig.terminalStateCache();
+        if (cache != null) {
+            TransferResponse cached = cache.getTransferResponse(transferDTO.getPayPlatform(), merchantId, transferDTO.getOutTransferNo());
+            if (cached != null) {
+                return cached;
+            }
+        }
+        Pay pay = createPay(transferDTO.getPayPlatform(), merchantId);
         TransferResponse transferResponse = pay.transferQuery(transferDTO);
+        cacheTerminalState(merchantId, transferResponse);
         return transferResponse;
     }
 
+    /**
+     * 查询转账结果, 不抛异常
+     * 转账单不存在、业务错误和通信失败都通过返回的{@link QueryResult}区分, 适合轮询时使用;
+     * 转账成功或失败后会缓存查询结果, 重复查询时直接返回缓存的结果
+     *
+     * @param transferDTO 转账单
+     * @return 查询结果
+     * @author zak
+     * @since 2.2.0
+     */
+    public static QueryResult<TransferResponse> transferQueryResult(ITransferDTO transferDTO) {
+        String merchantId = merchantOf(transferDTO);
+        TerminalStateCache cache = GlobalConfig.terminalStateCache();
+        if (cache != null) {
+            TransferResponse cached = cache.getTransferResponse(transferDTO.getPayPlatform(), merchantId, transferDTO.getOutTransferNo());
+            if (cached != null) {
+                return QueryResult.success(cached);
+            }
+        }
+        QueryResult<TransferResponse> result;
+        try {
+            result = createPay(transferDTO.getPayPlatform(), merchantId).transferQueryResult(transferDTO);
+        } catch (RuntimeException e) {
+            return QueryResult.transportError(e);
+        }
+        if (result.isSuccess()) {
+            cacheTerminalState(merchantId, result.getResponse());
+        }
+        return result;
+    }
+
+    /**
+     * 在限定时间内执行支付调用
+     * 可以包住任意多个PayUtil的调用, 它们共享同一个截止时间; 嵌套设置时以更早的截止时间为准
+     * <pre>
+     * RefundResponse response = PayUtil.withDeadline(3000, () -> PayUtil.refundSync(payDTO, refundDTO));
+     * </pre>
+     *
+     * @param timeoutMillis 最长时间, 单位毫秒
+     * @param call          支付调用
+     * @param <T>           返回值类型
+     * @return 调用结果
+     * @author zak
+     * @since 2.2.0
+     */
+    public static <T> T withDeadline(long timeoutMillis, Supplier<T> call) {
+        return PayCallContext.withDeadline(timeoutMillis, call);
+    }
+
+
+    /**
+     * 通过预支付结果缓存调用下单接口
+     * 订单已经支付或关闭时不使用缓存, 由支付平台返回相应的错误
+     */
+    private static <T> T prepay(PayOperation operation, IPayDTO payDTO, Supplier<T> supplier) {
+        PrepayCache prepayCache = GlobalConfig.prepayCache();
+        if (prepayCache == null) {
+            return supplier.get();
+        }
+        String merchantId = merchantOf(payDTO);
+        TerminalStateCache terminalStateCache = GlobalConfig.terminalStateCache();
+        if (terminalStateCache != null
+                && terminalStateCache.peekPayResponse(payDTO.getPayPlatform(), merchantId, payDTO.getOutTradeNo()) != null) {
+            prepayCache.remove(operation, merchantId, payDTO);
+            return supplier.get();
+        }
+        return prepayCache.get(operation, merchantId, payDTO, supplier);
+    }
+
+    /**
+     * 根据订单选择商户, 创建该商户的支付对象
+     */
+    private static Pay createPay(IPayDTO payDTO) {
+        return createPay(payDTO.getPayPlatform(), merchantOf(payDTO));
+    }
+
+    private static Pay createPay(int payPlatform, String merchantId) {
+        return GlobalConfig.payFactory().createPay(payPlatform, merchantId);
+    }
+
+    private static String merchantOf(IPayDTO payDTO) {
+        return merchantOf(payDTO.getPayPlatform(), payDTO);
+    }
+
+    /**
+     * 按订单选择商户, 退款时也用原订单选择商户
+     */
+    private static String merchantOf(int payPlatform, IPayDTO payDTO) {
+        return routeMerchant(payPlatform, payDTO.getOutTradeNo(), payDTO);
+    }
+
+    /**
+     * 退款单上有商户(退款时写入)时使用退款单上的商户, 否则按原订单号选择
+     */
+    private static String merchantOf(IRefundDTO refundDTO) {
+        return routeMerchant(refundDTO.getPayPlatform(), refundDTO.getOutTradeNo(), refundDTO);
+    }
+
+    private static String merchantOf(ITransferDTO transferDTO) {
+        return routeMerchant(transferDTO.getPayPlatform(), transferDTO.getOutTransferNo(), transferDTO);
+    }
+
+    private static <T extends AbstractPayConfig> T getPayConfig(IPayDTO payDTO) {
+        return GlobalConfig.getPayConfig(payDTO.getPayPlatform(), merchantOf(payDTO));
+    }
+
+    private static String routeMerchant(int payPlatform, String orderNo, IExtDto dto) {
+        IMerchantRouter merchantRouter = GlobalConfig.merchantRouter();
+        return merchantRouter == null ? null : merchantRouter.route(payPlatform, orderNo, dto);
+    }
+
+    /**
+     * 在结果上记下处理的商户, 终态结果放入缓存
+     * 缓存和广播去重的key都包含商户, 不同商户相同单号的结果不会混在一起
+     */
+    private static void cacheTerminalState(String merchantId, PayResponse payResponse) {
+        if (payResponse == null) {
+            return;
+        }
+        payResponse.setMerchantId(merchantId);
+        TerminalStateCache cache = GlobalConfig.terminalStateCache();
+        if (cache != null) {
+            cache.put(payResponse);
+        }
+    }
+
+    private static void cacheTerminalState(String merchantId, RefundResponse refundResponse) {
+        if (refundResponse == null) {
+            return;
+        }
+        refundResponse.setMerchantId(merchantId);
+        TerminalStateCache cache = GlobalConfig.terminalStateCache();
+        if (cache != null) {
+            cache.put(refundResponse);
+        }
+    }
+
+    private static void cacheTerminalState(String merchantId, TransferResponse transferResponse) {
+        if (transferResponse == null) {
+            return;
+        }
+        transferResponse.setMerchantId(merchantId);
+        TerminalStateCache cache = GlobalConfig.terminalStateCache();
+        if (cache != null) {
+            cache.put(transferResponse);
+        }
+    }
+
 
     private static IPayDTO rePayPlatformPayDTO(int payPlatform, IPayDTO payDTO) {
         try {
@@ -0,0 +1,241 @@
+package com.developcollect.commonpay.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 有界缓存
+ * 同时按容量和存活时间淘汰, 容量超出时按写入顺序淘汰最早写入的条目
+ * 读写都不加锁, 适合读多写少的高并发场景
+ *
+ * @param <K> key类型
+ * @param <V> value类型
+ * @author zak
+ * @since 2.2.0
+ */
+public class BoundedCache<K, V> {
+
+    /**
+     * 最大条目数
+     */
+    private final int maxSize;
+
+    /**
+     * 写入后的默认存活时间， 单位毫秒
+     */
+    private final long expireAfterWriteMillis;
+
+    private final ConcurrentHashMap<K, Node<K, V>> map;
+
+    /**
+     * 写入顺序, 用于容量淘汰
+     * 被覆盖或删除的节点只做标记, 在淘汰时顺带清理
+     */
+    private final ConcurrentLinkedQueue<Node<K, V>> writeOrder = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger writeOrderLength = new AtomicInteger();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+
+    public BoundedCache(int maxSize, long expireAfterWriteMillis) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        if (expireAfterWriteMillis <= 0) {
+            throw new IllegalArgumentException("expireAfterWriteMillis must be positive");
+        }
+        this.maxSize = maxSize;
+        this.expireAfterWriteMillis = expireAfterWriteMillis;
+        this.map = new ConcurrentHashMap<>(Math.min(maxSize, 1024));
+    }
+
+    /**
+     * 获取缓存值, 并记录命中统计
+     *
+     * @param key key
+     * @return 缓存值, 不存在或已过期返回null
+     */
+    public V get(K key) {
+        V value = peek(key);
+        if (value == null) {
+            missCount.increment();
+        } else {
+            hitCount.increment();
+        }
+        return value;
+    }
+
+    /**
+     * 获取缓存值, 不记录命中统计
+     *
+     * @param key key
+     * @return 缓存值, 不存在或已过期返回null
+     */
+    public V peek(K key) {
+        Node<K, V> node = map.get(key);
+        if (node == null) {
+            return null;
+        }
+        if (node.isExpired(currentTimeMillis())) {
+            if (map.remove(key, node)) {
+                node.dead = true;
+                evictionCount.increment();
+            }
+            return null;
+        }
+        return node.value;
+    }
+
+    /**
+     * 放入缓存, 使用默认存活时间
+     *
+     * @param key   key
+     * @param value value
+     */
+    public void put(K key, V value) {
+        put(key, value, currentTimeMillis() + expireAfterWriteMillis);
+    }
+
+    /**
+     * 放入缓存, 并指定过期时间
+     * 过期时间不会超过默认存活时间
+     *
+     * @param key           key
+     * @param value         value
+     * @param expireAtMillis 过期时间戳, 单位毫秒
+     */
+    public void put(K key, V value, long expireAtMillis) {
+        long now = currentTimeMillis();
+        long expireAt = Math.min(expireAtMillis, now + expireAfterWriteMillis);
+        if (expireAt <= now) {
+            remove(key);
+            return;
+        }
+        Node<K, V> node = new Node<>(key, value, expireAt);
+        Node<K, V> prev = map.put(key, node);
+        if (prev != null) {
+            prev.dead = true;
+        }
+        writeOrder.offer(node);
+        writeOrderLength.incrementAndGet();
+        evict(now);
+    }
+
+    /**
+     * 删除缓存
+     *
+     * @param key key
+     * @return 被删除的值
+     */
+    public V remove(K key) {
+        Node<K, V> node = map.remove(key);
+        if (node == null) {
+            return null;
+        }
+        node.dead = true;
+        return node.value;
+    }
+
+    public void clear() {
+        map.clear();
+        writeOrder.clear();
+        writeOrderLength.set(0);
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getExpireAfterWriteMillis() {
+        return expireAfterWriteMillis;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * 命中率
+     *
+     * @return 命中率, 没有请求时返回1
+     */
+    public double hitRate() {
+        long hit = getHitCount();
+        long total = hit + getMissCount();
+        return total == 0 ? 1.0 : (double) hit / total;
+    }
+
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private void evict(long now) {
+        // 先淘汰队首已过期或已失效的节点
+        Node<K, V> head;
+        while ((head = writeOrder.peek()) != null && (head.dead || head.isExpired(now))) {
+            if (writeOrder.remove(head)) {
+                writeOrderLength.decrementAndGet();
+                if (!head.dead && map.remove(head.key, head)) {
+                    evictionCount.increment();
+                }
+                head.dead = true;
+            }
+        }
+
+        // 再按容量淘汰
+        while (map.size() > maxSize && (head = writeOrder.poll()) != null) {
+            writeOrderLength.decrementAndGet();
+            if (!head.dead && map.remove(head.key, head)) {
+                evictionCount.increment();
+            }
+            head.dead = true;
+        }
+
+        // 失效节点堆积在队列中间时整体清理一次
+        int length = writeOrderLength.get();
+        if (length > 2 * Math.max(map.size(), 64)) {
+            synchronized (writeOrder) {
+                if (writeOrderLength.get() == length) {
+                    int before = writeOrder.size();
+                    writeOrder.removeIf(node -> node.dead);
+                    writeOrderLength.addAndGet(writeOrder.size() - before);
+                }
+            }
+        }
+    }
+
+
+    private static final class Node<K, V> {
+        private final K key;
+        private final V value;
+        private final long expireAt;
+        private volatile boolean dead;
+
+        private Node(K key, V value, long expireAt) {
+            this.key = key;
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+
+        private boolean isExpired(long now) {
+            return expireAt <= now;
+        }
+    }
+}
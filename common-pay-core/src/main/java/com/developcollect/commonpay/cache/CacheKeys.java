@@ -0,0 +1,132 @@
+package com.developcollect.commonpay.cache;
+
+import com.developcollect.commonpay.guard.PayOperation;
+
+/**
+ * 缓存key编码工具
+ * 把 业务类型 + 支付平台 + 商户标识 + 业务单号 编码成一个紧凑的字符串:
+ * 第1个字符是业务类型, 第2、3个字符是支付平台的高低16位, 第4个字符是商户标识的长度, 之后是商户标识和业务单号
+ * 这样既不会冲突, 也不需要额外的分隔符和包装对象
+ * <p>
+ * 按操作区分的key(调用合并、预支付缓存、限流)用操作的序号作为业务类型
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public final class CacheKeys {
+
+    /**
+     * 支付单
+     */
+    public static final char PAY = 'P';
+
+    /**
+     * 退款单
+     */
+    public static final char REFUND = 'R';
+
+    /**
+     * 转账单
+     */
+    public static final char TRANSFER = 'T';
+
+    private CacheKeys() {
+    }
+
+    /**
+     * 编码默认商户的缓存key
+     *
+     * @param type        业务类型
+     * @param payPlatform 支付平台
+     * @param no          业务单号
+     * @return 缓存key, 业务单号为空时返回null
+     */
+    public static String of(char type, int payPlatform, String no) {
+        return of(type, payPlatform, null, no);
+    }
+
+    /**
+     * 编码缓存key
+     * 不同商户的业务单号可能相同, 所以商户标识也是key的一部分
+     *
+     * @param type        业务类型
+     * @param payPlatform 支付平台
+     * @param merchantId  商户标识, 默认配置为null
+     * @param no          业务单号
+     * @return 缓存key, 业务单号为空时返回null
+     */
+    public static String of(char type, int payPlatform, String merchantId, String no) {
+        if (no == null || no.isEmpty()) {
+            return null;
+        }
+        return encode(type, payPlatform, merchantId, no);
+    }
+
+    /**
+     * 编码按操作区分的key
+     *
+     * @param operation   操作
+     * @param payPlatform 支付平台
+     * @param merchantId  商户标识, 默认配置为null
+     * @param no          业务单号
+     * @return key, 业务单号为空时返回null
+     */
+    public static String of(PayOperation operation, int payPlatform, String merchantId, String no) {
+        return of((char) operation.ordinal(), payPlatform, merchantId, no);
+    }
+
+    /**
+     * 编码不带业务单号的key, 如按 支付平台 + 商户 + 操作 限流
+     *
+     * @param operation   操作
+     * @param payPlatform 支付平台
+     * @param merchantId  商户标识, 默认配置为null
+     * @return key
+     */
+    public static String of(PayOperation operation, int payPlatform, String merchantId) {
+        return encode((char) operation.ordinal(), payPlatform, merchantId, "");
+    }
+
+    /**
+     * 从缓存key中解出业务类型
+     */
+    public static char typeOf(String key) {
+        return key.charAt(0);
+    }
+
+    /**
+     * 从缓存key中解出支付平台
+     */
+    public static int payPlatformOf(String key) {
+        return (key.charAt(1) << 16) | key.charAt(2);
+    }
+
+    /**
+     * 从缓存key中解出商户标识, 默认配置返回null
+     */
+    public static String merchantIdOf(String key) {
+        int merchantLength = key.charAt(3);
+        return merchantLength == 0 ? null : key.substring(4, 4 + merchantLength);
+    }
+
+    /**
+     * 从缓存key中解出业务单号
+     */
+    public static String noOf(String key) {
+        return key.substring(4 + key.charAt(3));
+    }
+
+
+    private static String encode(char type, int payPlatform, String merchantId, String no) {
+        int merchantLength = merchantId == null ? 0 : merchantId.length();
+        StringBuilder sb = new StringBuilder(no.length() + merchantLength + 4)
+                .append(type)
+                .append((char) (payPlatform >>> 16))
+                .append((char) payPlatform)
+                .append((char) merchantLength);
+        if (merchantLength > 0) {
+            sb.append(merchantId);
+        }
+        return sb.append(no).toString();
+    }
+}
@@ -0,0 +1,168 @@
+package com.developcollect.commonpay.cache;
+
+import com.developcollect.commonpay.ExtKeys;
+import com.developcollect.commonpay.guard.PayOperation;
+import com.developcollect.commonpay.pay.IPayDTO;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.function.Supplier;
+
+/**
+ * 预支付结果缓存
+ * 用户重新打开收银台时, 同一个订单会再次请求二维码、JS支付参数、APP支付参数或支付表单,
+ * 这时直接返回之前的结果, 不再请求支付平台的下单接口, 也不用重新签名
+ * <p>
+ * 缓存key由 操作 + 支付平台 + 订单金额 + 微信用户标识 + 商户标识 + 商户订单号 组成, 金额变了就不会命中;
+ * 缓存在订单过期时间失效, 同时不超过支付平台对预支付结果有效期的限制:
+ * 微信的prepay_id和code_url有效期2小时, mweb_url有效期5分钟, 支付宝的支付表单也按5分钟处理
+ * <p>
+ * 注意: 缓存的结果对象会返回给多个调用方, 调用方不要修改返回的对象
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public class PrepayCache {
+
+    /**
+     * 默认最大缓存条目数
+     */
+    public static final int DEFAULT_MAX_SIZE = 10_000;
+
+    /**
+     * prepay_id、code_url的最长有效期, 单位毫秒
+     */
+    public static final long PREPAY_EXPIRE_MILLIS = 2 * 60 * 60 * 1000L;
+
+    /**
+     * H5支付链接和支付表单的最长有效期, 单位毫秒
+     */
+    public static final long FORM_EXPIRE_MILLIS = 5 * 60 * 1000L;
+
+    private static final PayOperation[] PREPAY_OPERATIONS = {
+            PayOperation.PAY_QR_CODE,
+            PayOperation.PAY_APP,
+            PayOperation.PAY_WX_JS,
+            PayOperation.PAY_APPLETS_JS,
+            PayOperation.PAY_PC_FORM,
+            PayOperation.PAY_WAP_FORM
+    };
+
+    private final BoundedCache<String, Object> cache;
+
+
+    public PrepayCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public PrepayCache(int maxSize) {
+        this.cache = new BoundedCache<>(maxSize, PREPAY_EXPIRE_MILLIS);
+    }
+
+    /**
+     * 获取缓存的预支付结果, 没有时调用下单接口并缓存
+     *
+     * @param operation  操作
+     * @param merchantId 商户标识, 默认配置为null
+     * @param payDTO     订单
+     * @param supplier   下单调用
+     * @param <T>        预支付结果类型
+     * @return 预支付结果
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(PayOperation operation, String merchantId, IPayDTO payDTO, Supplier<T> supplier) {
+        String key = keyOf(operation, merchantId, payDTO);
+        if (key == null) {
+            return supplier.get();
+        }
+        Object cached = cache.get(key);
+        if (cached != null) {
+            return (T) cached;
+        }
+        T result = supplier.get();
+        if (result != null) {
+            cache.put(key, result, expireAt(operation, payDTO));
+        }
+        return result;
+    }
+
+    /**
+     * 删除订单的预支付结果
+     *
+     * @param operation  操作
+     * @param merchantId 商户标识, 默认配置为null
+     * @param payDTO     订单
+     */
+    public void remove(PayOperation operation, String merchantId, IPayDTO payDTO) {
+        String key = keyOf(operation, merchantId, payDTO);
+        if (key != null) {
+            cache.remove(key);
+        }
+    }
+
+    /**
+     * 删除订单所有的预支付结果, 订单关闭后调用
+     *
+     * @param merchantId 商户标识, 默认配置为null
+     * @param payDTO     订单
+     */
+    public void removeAll(String merchantId, IPayDTO payDTO) {
+        for (PayOperation operation : PREPAY_OPERATIONS) {
+            remove(operation, merchantId, payDTO);
+        }
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    public double hitRate() {
+        return cache.hitRate();
+    }
+
+
+    private static long expireAt(PayOperation operation, IPayDTO payDTO) {
+        long now = System.currentTimeMillis();
+        boolean form = operation == PayOperation.PAY_PC_FORM || operation == PayOperation.PAY_WAP_FORM;
+        long expireAt = now + (form ? FORM_EXPIRE_MILLIS : PREPAY_EXPIRE_MILLIS);
+        LocalDateTime timeExpire = payDTO.getTimeExpire();
+        if (timeExpire != null) {
+            expireAt = Math.min(expireAt, timeExpire.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        }
+        return expireAt;
+    }
+
+    private static String keyOf(PayOperation operation, String merchantId, IPayDTO payDTO) {
+        String outTradeNo = payDTO.getOutTradeNo();
+        Long totalFee = payDTO.getTotalFee();
+        if (outTradeNo == null || outTradeNo.isEmpty() || totalFee == null) {
+            return null;
+        }
+        long fee = totalFee;
+        // 金额和openId也是key的一部分, 放在订单号前面
+        StringBuilder sb = new StringBuilder(outTradeNo.length() + 40)
+                .append((char) (fee >>> 48))
+                .append((char) (fee >>> 32))
+                .append((char) (fee >>> 16))
+                .append((char) fee);
+        if (operation == PayOperation.PAY_WX_JS || operation == PayOperation.PAY_APPLETS_JS) {
+            // JS支付的prepay_id绑定了微信用户
+            Object openId = payDTO.getExt(ExtKeys.PAY_WXJS_OPENID);
+            sb.append(openId == null ? "" : openId.toString());
+        }
+        sb.append('\u0000').append(outTradeNo);
+        return CacheKeys.of(operation, payDTO.getPayPlatform(), merchantId, sb.toString());
+    }
+}
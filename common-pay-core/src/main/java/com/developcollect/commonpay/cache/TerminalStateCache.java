@@ -0,0 +1,321 @@
+package com.developcollect.commonpay.cache;
+
+import com.developcollect.commonpay.pay.PayResponse;
+import com.developcollect.commonpay.pay.RefundResponse;
+import com.developcollect.commonpay.pay.TransferResponse;
+
+import java.io.Serializable;
+
+/**
+ * 终态结果缓存
+ * 订单支付成功或关闭、退款和转账成功或失败后, 结果就不会再变了,
+ * 这时重复的查询直接从缓存返回, 不再请求支付平台;
+ * 同时记录结果是否已经广播过, 避免主动查询通知时重复广播同一个结果
+ * <p>
+ * 放入和取出时都复制结果, 调用方修改拿到的结果不会影响缓存和其他调用方
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public class TerminalStateCache {
+
+    /**
+     * 默认最大缓存条目数
+     */
+    public static final int DEFAULT_MAX_SIZE = 100_000;
+
+    /**
+     * 默认存活时间， 单位毫秒
+     */
+    public static final long DEFAULT_EXPIRE_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private final BoundedCache<String, Entry> cache;
+
+
+    public TerminalStateCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_EXPIRE_MILLIS);
+    }
+
+    public TerminalStateCache(int maxSize, long expireAfterWriteMillis) {
+        this.cache = new BoundedCache<>(maxSize, expireAfterWriteMillis);
+    }
+
+    /**
+     * 支付结果是否是终态
+     */
+    public static boolean isTerminal(PayResponse payResponse) {
+        return payResponse != null && (payResponse.isSuccess() || payResponse.isClosed());
+    }
+
+    /**
+     * 退款结果是否是终态
+     */
+    public static boolean isTerminal(RefundResponse refundResponse) {
+        return refundResponse != null
+                && (refundResponse.getStatus() == RefundResponse.SUCCESS
+                || refundResponse.getStatus() == RefundResponse.FAIL);
+    }
+
+    /**
+     * 转账结果是否是终态
+     */
+    public static boolean isTerminal(TransferResponse transferResponse) {
+        if (transferResponse == null || transferResponse.getStatus() == null) {
+            return false;
+        }
+        int status = transferResponse.getStatus();
+        return status == TransferResponse.SUCCESS || status == TransferResponse.FAIL;
+    }
+
+    /**
+     * 获取缓存的默认商户的支付终态结果
+     *
+     * @param payPlatform 支付平台
+     * @param outTradeNo  商户订单号
+     * @return 支付结果的副本, 没有缓存时返回null
+     */
+    public PayResponse getPayResponse(int payPlatform, String outTradeNo) {
+        return getPayResponse(payPlatform, null, outTradeNo);
+    }
+
+    /**
+     * 获取缓存的支付终态结果
+     *
+     * @param payPlatform 支付平台
+     * @param merchantId  商户标识, 默认配置为null
+     * @param outTradeNo  商户订单号
+     * @return 支付结果的副本, 没有缓存时返回null
+     */
+    public PayResponse getPayResponse(int payPlatform, String merchantId, String outTradeNo) {
+        PayResponse cached = (PayResponse) get(CacheKeys.of(CacheKeys.PAY, payPlatform, merchantId, outTradeNo));
+        return cached == null ? null : cached.copy();
+    }
+
+    /**
+     * 获取缓存的支付终态结果, 不记录命中统计
+     * 用于下单前检查订单是否已经是终态这类附带的查询, 避免命中率被非查询请求拉低
+     *
+     * @param payPlatform 支付平台
+     * @param merchantId  商户标识, 默认配置为null
+     * @param outTradeNo  商户订单号
+     * @return 支付结果的副本, 没有缓存时返回null
+     */
+    public PayResponse peekPayResponse(int payPlatform, String merchantId, String outTradeNo) {
+        PayResponse cached = (PayResponse) peek(CacheKeys.of(CacheKeys.PAY, payPlatform, merchantId, outTradeNo));
+        return cached == null ? null : cached.copy();
+    }
+
+    /**
+     * 获取缓存的默认商户的退款终态结果
+     *
+     * @param payPlatform 支付平台
+     * @param outRefundNo 商户退款单号
+     * @return 退款结果的副本, 没有缓存时返回null
+     */
+    public RefundResponse getRefundResponse(int payPlatform, String outRefundNo) {
+        return getRefundResponse(payPlatform, null, outRefundNo);
+    }
+
+    /**
+     * 获取缓存的退款终态结果
+     *
+     * @param payPlatform 支付平台
+     * @param merchantId  商户标识, 默认配置为null
+     * @param outRefundNo 商户退款单号
+     * @return 退款结果的副本, 没有缓存时返回null
+     */
+    public RefundResponse getRefundResponse(int payPlatform, String merchantId, String outRefundNo) {
+        RefundResponse cached = (RefundResponse) get(CacheKeys.of(CacheKeys.REFUND, payPlatform, merchantId, outRefundNo));
+        return cached == null ? null : cached.copy();
+    }
+
+    /**
+     * 获取缓存的默认商户的转账终态结果
+     *
+     * @param payPlatform   支付平台
+     * @param outTransferNo 商户转账单号
+     * @return 转账结果的副本, 没有缓存时返回null
+     */
+    public TransferResponse getTransferResponse(int payPlatform, String outTransferNo) {
+        return getTransferResponse(payPlatform, null, outTransferNo);
+    }
+
+    /**
+     * 获取缓存的转账终态结果
+     *
+     * @param payPlatform   支付平台
+     * @param merchantId    商户标识, 默认配置为null
+     * @param outTransferNo 商户转账单号
+     * @return 转账结果的副本, 没有缓存时返回null
+     */
+    public TransferResponse getTransferResponse(int payPlatform, String merchantId, String outTransferNo) {
+        TransferResponse cached = (TransferResponse) get(CacheKeys.of(CacheKeys.TRANSFER, payPlatform, merchantId, outTransferNo));
+        return cached == null ? null : cached.copy();
+    }
+
+    /**
+     * 缓存支付结果, 非终态结果不会缓存
+     *
+     * @param payResponse 支付结果
+     * @return 是否已缓存
+     */
+    public boolean put(PayResponse payResponse) {
+        return isTerminal(payResponse)
+                && put(keyOf(payResponse), payResponse.copy(), false);
+    }
+
+    /**
+     * 缓存退款结果, 非终态结果不会缓存
+     *
+     * @param refundResponse 退款结果
+     * @return 是否已缓存
+     */
+    public boolean put(RefundResponse refundResponse) {
+        return isTerminal(refundResponse)
+                && put(keyOf(refundResponse), refundResponse.copy(), false);
+    }
+
+    /**
+     * 缓存转账结果, 非终态结果不会缓存
+     *
+     * @param transferResponse 转账结果
+     * @return 是否已缓存
+     */
+    public boolean put(TransferResponse transferResponse) {
+        return isTerminal(transferResponse)
+                && put(keyOf(transferResponse), transferResponse.copy(), false);
+    }
+
+    /**
+     * 终态的支付结果是否已经广播过
+     */
+    public boolean isBroadcasted(PayResponse payResponse) {
+        return isTerminal(payResponse) && isBroadcasted(keyOf(payResponse));
+    }
+
+    /**
+     * 终态的退款结果是否已经广播过
+     */
+    public boolean isBroadcasted(RefundResponse refundResponse) {
+        return isTerminal(refundResponse) && isBroadcasted(keyOf(refundResponse));
+    }
+
+    /**
+     * 终态的转账结果是否已经广播过
+     */
+    public boolean isBroadcasted(TransferResponse transferResponse) {
+        return isTerminal(transferResponse) && isBroadcasted(keyOf(transferResponse));
+    }
+
+    /**
+     * 标记支付结果已广播, 非终态结果不会标记
+     */
+    public void markBroadcasted(PayResponse payResponse) {
+        if (isTerminal(payResponse)) {
+            put(keyOf(payResponse), payResponse.copy(), true);
+        }
+    }
+
+    /**
+     * 标记退款结果已广播, 非终态结果不会标记
+     */
+    public void markBroadcasted(RefundResponse refundResponse) {
+        if (isTerminal(refundResponse)) {
+            put(keyOf(refundResponse), refundResponse.copy(), true);
+        }
+    }
+
+    /**
+     * 标记转账结果已广播, 非终态结果不会标记
+     */
+    public void markBroadcasted(TransferResponse transferResponse) {
+        if (isTerminal(transferResponse)) {
+            put(keyOf(transferResponse), transferResponse.copy(), true);
+        }
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    public long getEvictionCount() {
+        return cache.getEvictionCount();
+    }
+
+    public double hitRate() {
+        return cache.hitRate();
+    }
+
+
+    private Serializable get(String key) {
+        if (key == null) {
+            return null;
+        }
+        Entry entry = cache.get(key);
+        return entry == null ? null : entry.response;
+    }
+
+    private Serializable peek(String key) {
+        if (key == null) {
+            return null;
+        }
+        Entry entry = cache.peek(key);
+        return entry == null ? null : entry.response;
+    }
+
+    private boolean isBroadcasted(String key) {
+        if (key == null) {
+            return false;
+        }
+        Entry entry = cache.peek(key);
+        return entry != null && entry.broadcasted;
+    }
+
+    private boolean put(String key, Serializable response, boolean broadcasted) {
+        if (key == null) {
+            return false;
+        }
+        Entry prev = cache.peek(key);
+        if (prev != null && prev.broadcasted && !broadcasted) {
+            // 已经广播过的结果不能被覆盖成未广播
+            return true;
+        }
+        cache.put(key, new Entry(response, broadcasted));
+        return true;
+    }
+
+    private static String keyOf(PayResponse payResponse) {
+        return CacheKeys.of(CacheKeys.PAY, payResponse.getPayPlatform(), payResponse.getMerchantId(), payResponse.getOutTradeNo());
+    }
+
+    private static String keyOf(RefundResponse refundResponse) {
+        return CacheKeys.of(CacheKeys.REFUND, refundResponse.getPayPlatform(), refundResponse.getMerchantId(), refundResponse.getOutRefundNo());
+    }
+
+    private static String keyOf(TransferResponse transferResponse) {
+        return CacheKeys.of(CacheKeys.TRANSFER, transferResponse.getPayPlatform(), transferResponse.getMerchantId(), transferResponse.getOutTransferNo());
+    }
+
+
+    private static final class Entry {
+        private final Serializable response;
+        private final boolean broadcasted;
+
+        private Entry(Serializable response, boolean broadcasted) {
+            this.response = response;
+            this.broadcasted = broadcasted;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.developcollect.commonpay.config;
+
+import com.developcollect.commonpay.exception.PayException;
+import com.developcollect.commonpay.pay.IPayDTO;
+import com.developcollect.commonpay.pay.IRefundDTO;
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import lombok.experimental.Accessors;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+
+/**
+ * 支付配置基类
+ *
+ * @author zak
+ * @since 1.0.0
+ */
+@Data
+@Accessors(chain = true)
+public abstract class AbstractPayConfig {
+
+    /**
+     * 是否启用debug模式
+     * 有些支付平台会提供测试环境， 比如支付宝有提供沙箱环境
+     * 如果支付平台本身不支持测试环境， 那么这个值设置了也没用
+     */
+    private boolean debug = false;
+
+    /**
+     * 退款结果异步通知地址生成器
+     */
+    protected BiFunction<IPayDTO, IRefundDTO, String> refundNotifyUrlGenerator;
+
+    /**
+     * 支付结果异步通知地址生成器
+     */
+    protected Function<IPayDTO, String> payNotifyUrlGenerator;
+
+
+    /**
+     * 支付二维码访问链接生成器
+     */
+    protected BiFunction<IPayDTO, String, String> payQrCodeAccessUrlGenerator;
+
+    /**
+     * PC支付页面访问链接生成器
+     */
+    protected BiFunction<IPayDTO, String, String> pcPayFormHtmlAccessUrlGenerator;
+
+    /**
+     * PC支付完成跳转地址生成器
+     */
+    protected Function<IPayDTO, String> pcReturnUrlGenerator;
+
+    /**
+     * WAP支付页面访问链接生成器
+     */
+    protected BiFunction<IPayDTO, String, String> wapPayFormHtmlAccessUrlGenerator;
+
+    /**
+     * WAP支付完成跳转地址生成器
+     */
+    protected Function<IPayDTO, String> wapReturnUrlGenerator;
+
+    /**
+     * 扩展Map
+     * 方便其他自定义配置放到这里
+     */
+    protected Map<String, Object> extendMap = new HashMap<>();
+
+    /**
+     * 二维码宽度
+     */
+    protected int qrCodeWidth = 300;
+
+    /**
+     * 二维码高度
+     */
+    protected int qrCodeHeight = 300;
+
+    /**
+     * 是否已冻结
+     * 配置被{@link PayConfigRegistry}加载后冻结, 扩展Map不能再修改
+     */
+    @Setter(AccessLevel.NONE)
+    private transient volatile boolean frozen = false;
+
+    /**
+     * 配置所属的快照, 由{@link PayConfigRegistry}在快照生效时设置
+     * 配置生成器每次返回同一个对象时, 指向最新的快照
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private transient volatile PayConfigSnapshot<?> snapshot;
+
+    /**
+     * 获取自定义配置
+     *
+     * @param key key
+     * @return java.lang.Object
+     */
+    public <T> T getExt(String key) {
+        return (T) extendMap.get(key);
+    }
+
+    /**
+     * 设置自定义配置
+     *
+     * @param key    key
+     * @param extend 自定义配置值
+     * @return java.lang.Object
+     */
+    public Object putExt(String key, Object extend) {
+        checkNotFrozen();
+        extendMap.put(key, extend);
+        return this;
+    }
+
+    /**
+     * 冻结配置, 扩展Map替换为不可修改的副本
+     *
+     * @author zak
+     * @since 2.2.0
+     */
+    synchronized void freeze() {
+        if (frozen) {
+            return;
+        }
+        extendMap = extendMap == null
+                ? Collections.emptyMap()
+                : Collections.unmodifiableMap(new HashMap<>(extendMap));
+        frozen = true;
+    }
+
+    /**
+     * 是否已冻结
+     *
+     * @return 已冻结返回true
+     * @author zak
+     * @since 2.2.0
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * 配置冻结后所有setter都会抛出异常, 子类的setter也要先调用这个方法
+     *
+     * @throws PayException 配置已冻结
+     * @author zak
+     * @since 2.2.0
+     */
+    protected void checkNotFrozen() {
+        if (frozen) {
+            throw new PayException("支付配置已生效, 不能修改, 请修改配置生成器后调用GlobalConfig.reloadPayConfig重新加载");
+        }
+    }
+
+    PayConfigSnapshot<?> snapshot() {
+        return snapshot;
+    }
+
+    void bindSnapshot(PayConfigSnapshot<?> snapshot) {
+        this.snapshot = snapshot;
+    }
+
+
+    public AbstractPayConfig setDebug(boolean debug) {
+        checkNotFrozen();
+        this.debug = debug;
+        return this;
+    }
+
+    public AbstractPayConfig setRefundNotifyUrlGenerator(BiFunction<IPayDTO, IRefundDTO, String> refundNotifyUrlGenerator) {
+        checkNotFrozen();
+        this.refundNotifyUrlGenerator = refundNotifyUrlGenerator;
+        return this;
+    }
+
+    public AbstractPayConfig setPayNotifyUrlGenerator(Function<IPayDTO, String> payNotifyUrlGenerator) {
+        checkNotFrozen();
+        this.payNotifyUrlGenerator = payNotifyUrlGenerator;
+        return this;
+    }
+
+    public AbstractPayConfig setPayQrCodeAccessUrlGenerator(BiFunction<IPayDTO, String, String> payQrCodeAccessUrlGenerator) {
+        checkNotFrozen();
+        this.payQrCodeAccessUrlGenerator = payQrCodeAccessUrlGenerator;
+        return this;
+    }
+
+    public AbstractPayConfig setPcPayFormHtmlAccessUrlGenerator(BiFunction<IPayDTO, String, String> pcPayFormHtmlAccessUrlGenerator) {
+        checkNotFrozen();
+        this.pcPayFormHtmlAccessUrlGenerator = pcPayFormHtmlAccessUrlGenerator;
+        return this;
+    }
+
+    public AbstractPayConfig setPcReturnUrlGenerator(Function<IPayDTO, String> pcReturnUrlGenerator) {
+        checkNotFrozen();
+        this.pcReturnUrlGenerator = pcReturnUrlGenerator;
+        return this;
+    }
+
+    public AbstractPayConfig setWapPayFormHtmlAccessUrlGenerator(BiFunction<IPayDTO, String, String> wapPayFormHtmlAccessUrlGenerator) {
+        checkNotFrozen();
+        this.wapPayFormHtmlAccessUrlGenerator = wapPayFormHtmlAccessUrlGenerator;
+        return this;
+    }
+
+    public AbstractPayConfig setWapReturnUrlGenerator(Function<IPayDTO, String> wapReturnUrlGenerator) {
+        checkNotFrozen();
+        this.wapReturnUrlGenerator = wapReturnUrlGenerator;
+        return this;
+    }
+
+    public AbstractPayConfig setExtendMap(Map<String, Object> extendMap) {
+        checkNotFrozen();
+        this.extendMap = extendMap;
+        return this;
+    }
+
+    public AbstractPayConfig setQrCodeWidth(int qrCodeWidth) {
+        checkNotFrozen();
+        this.qrCodeWidth = qrCodeWidth;
+        return this;
+    }
+
+    public AbstractPayConfig setQrCodeHeight(int qrCodeHeight) {
+        checkNotFrozen();
+        this.qrCodeHeight = qrCodeHeight;
+        return this;
+    }
+}
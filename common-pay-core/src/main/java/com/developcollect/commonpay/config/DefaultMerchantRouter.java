@@ -0,0 +1,61 @@
+package com.developcollect.commonpay.config;
+
+import com.developcollect.commonpay.ExtKeys;
+import com.developcollect.commonpay.pay.IExtDto;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 默认商户路由
+ * 订单上有商户标识({@link IExtDto#getMerchantId()})时使用订单上的商户;
+ * 没有时如果支付平台配置了分流商户, 按订单号的hash在分流商户中选择一个, 否则使用默认配置
+ * <p>
+ * 按订单号分流的结果依赖分流商户列表, 列表变化后已有订单可能被分到别的商户,
+ * 所以分流时会把选中的商户写回订单的扩展参数, 业务方应该把它和订单一起保存
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+@Accessors(chain = true)
+public class DefaultMerchantRouter implements IMerchantRouter {
+
+    /**
+     * 分流商户, key为支付平台
+     */
+    @Getter
+    @Setter
+    private Map<Integer, List<String>> balancedMerchantMap = new ConcurrentHashMap<>();
+
+    @Override
+    public String route(int payPlatform, String orderNo, IExtDto dto) {
+        String merchantId = dto.getMerchantId();
+        if (merchantId != null && !merchantId.isEmpty()) {
+            return merchantId;
+        }
+        List<String> merchants = balancedMerchantMap.get(payPlatform);
+        if (merchants == null || merchants.isEmpty() || orderNo == null || orderNo.isEmpty()) {
+            return null;
+        }
+        merchantId = merchants.get(Math.floorMod(orderNo.hashCode(), merchants.size()));
+        dto.putExt(ExtKeys.MERCHANT_ID, merchantId);
+        return merchantId;
+    }
+
+    /**
+     * 设置支付平台的分流商户
+     *
+     * @param payPlatform 支付平台
+     * @param merchantIds 商户标识
+     * @return this
+     * @author zak
+     * @since 2.2.0
+     */
+    public DefaultMerchantRouter balance(int payPlatform, String... merchantIds) {
+        balancedMerchantMap.put(payPlatform, Collections.unmodifiableList(new ArrayList<>(Arrays.asList(merchantIds))));
+        return this;
+    }
+}
@@ -0,0 +1,134 @@
+package com.developcollect.commonpay.config;
+
+
+import com.developcollect.commonpay.PayPlatform;
+import com.developcollect.commonpay.exception.ConfigException;
+import com.developcollect.commonpay.guard.GuardedPay;
+import com.developcollect.commonpay.pay.Pay;
+import com.developcollect.commonpay.pay.nopay.NoPay;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 支付对象创建工厂
+ * 支付平台的实现由类路径中的{@link IPayProvider}提供, 只引入了某个支付平台的模块时只会加载这个平台
+ *
+ * @author zak
+ * @since 1.0.0
+ */
+@Slf4j
+public class DefaultPayFactory implements IPayFactory {
+
+    protected final Map<Integer, Pay> payMap = new ConcurrentHashMap<>();
+
+    /**
+     * 多商户的支付对象, 支付平台 -> 商户标识 -> 支付对象
+     */
+    protected final Map<Integer, Map<String, Pay>> merchantPayMap = new ConcurrentHashMap<>();
+
+
+    /**
+     * 根本支付枚举创建支付方式对象
+     * 创建的支付对象会用{@link GuardedPay}包装, 加上相同调用合并等保护措施和配置的拦截器
+     *
+     * @param payPlatform 支付平台
+     * @return Pay 支付对象
+     * @author zak
+     * @since 1.0.0
+     */
+    @Override
+    public Pay createPay(int payPlatform) {
+        if (!GlobalConfig.payPlatformVerify(payPlatform, null)) {
+            throw new ConfigException("未找到支付平台[{}]的默认配置", payPlatform);
+        }
+        return payMap.computeIfAbsent(payPlatform, k -> new GuardedPay(k, null, newPay(k, null)));
+    }
+
+    /**
+     * 根据支付平台和商户创建支付对象
+     * 每个商户有自己的支付对象, 使用自己的配置快照, 客户端、连接池和调用统计互相隔离
+     *
+     * @param payPlatform 支付平台
+     * @param merchantId  商户标识, 为空时使用默认配置
+     * @return Pay 支付对象
+     * @author zak
+     * @since 2.2.0
+     */
+    @Override
+    public Pay createPay(int payPlatform, String merchantId) {
+        if (merchantId == null || merchantId.isEmpty()) {
+            return createPay(payPlatform);
+        }
+        Map<String, Pay> merchants = merchantPayMap.computeIfAbsent(payPlatform, k -> new ConcurrentHashMap<>());
+        Pay pay = merchants.get(merchantId);
+        if (pay != null) {
+            return pay;
+        }
+        if (!GlobalConfig.payPlatformVerify(payPlatform, merchantId)) {
+            throw new ConfigException("未找到支付平台[{}]商户[{}]的配置", payPlatform, merchantId);
+        }
+        return merchants.computeIfAbsent(merchantId, k -> new GuardedPay(payPlatform, k, newPay(payPlatform, k)));
+    }
+
+    /**
+     * 创建实际的支付对象
+     * 内置的支付平台没有引入对应模块时抛出异常, 不会缓存; 没有实现的自定义支付平台和以前一样返回{@link NoPay}
+     *
+     * @param payPlatform 支付平台
+     * @param merchantId  商户标识, 默认配置为null
+     * @return 支付对象
+     * @throws ConfigException 配置了内置支付平台, 但类路径中没有它的模块
+     * @author zak
+     * @since 2.2.0
+     */
+    protected Pay newPay(int payPlatform, String merchantId) {
+        IPayProvider provider = Providers.BY_PLATFORM.get(payPlatform);
+        if (provider != null) {
+            return provider.createPay(merchantId);
+        }
+        String module = moduleOf(payPlatform);
+        if (module != null) {
+            throw new ConfigException("类路径中没有支付平台[{}]的实现, 需要引入{}模块", payPlatform, module);
+        }
+        return new NoPay();
+    }
+
+    /**
+     * 内置支付平台所在的模块, 不是内置支付平台时返回null
+     */
+    private static String moduleOf(int payPlatform) {
+        switch (payPlatform) {
+            case PayPlatform.ALI_PAY:
+                return "common-pay-alipay";
+            case PayPlatform.WX_PAY:
+                return "common-pay-wxpay";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 类路径中的支付平台实现, 第一次创建支付对象时才发现
+     */
+    private static final class Providers {
+
+        static final Map<Integer, IPayProvider> BY_PLATFORM = load();
+
+        private static Map<Integer, IPayProvider> load() {
+            Map<Integer, IPayProvider> providers = new HashMap<>(4);
+            for (IPayProvider provider : ServiceLoader.load(IPayProvider.class, DefaultPayFactory.class.getClassLoader())) {
+                IPayProvider existing = providers.putIfAbsent(provider.getPayPlatform(), provider);
+                if (existing != null) {
+                    log.warn("支付平台[{}]有多个实现, 使用{}, 忽略{}",
+                            provider.getPayPlatform(), existing.getClass().getName(), provider.getClass().getName());
+                }
+            }
+            return Collections.unmodifiableMap(providers);
+        }
+    }
+}
@@ -0,0 +1,782 @@
+package com.developcollect.commonpay.config;
+
+import com.developcollect.commonpay.cache.PrepayCache;
+import com.developcollect.commonpay.cache.TerminalStateCache;
+import com.developcollect.commonpay.guard.AdaptiveLimiter;
+import com.developcollect.commonpay.guard.AdaptiveTimeouts;
+import com.developcollect.commonpay.guard.Bulkhead;
+import com.developcollect.commonpay.guard.CircuitBreaker;
+import com.developcollect.commonpay.guard.IPayInterceptor;
+import com.developcollect.commonpay.guard.RateLimiter;
+import com.developcollect.commonpay.guard.SingleFlight;
+import com.developcollect.commonpay.metrics.IPayMetrics;
+import com.developcollect.commonpay.metrics.InMemoryPayMetrics;
+import com.developcollect.commonpay.notice.*;
+import com.developcollect.commonpay.qrcode.QrCodeRenderer;
+import com.developcollect.commonpay.warmup.PayWarmUp;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import javax.annotation.Resource;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+
+/**
+ * 全局配置
+ * 当前项目中所有的配置都集中在这个类中
+ * @author zak
+ * @since 1.0.0
+ */
+@Data
+@Accessors(chain = true)
+public class GlobalConfig {
+
+    /**
+     * 支付配置生成器
+     * 生成器只在第一次使用和重新加载时调用, 生成的配置会被冻结缓存,
+     * 修改配置后需要调用{@link #reloadPayConfig(int)}才会生效
+     */
+    private Map<Integer, Supplier<? extends AbstractPayConfig>> payConfigSupplierMap = new ConcurrentHashMap<>();
+
+    /**
+     * 多商户支付配置生成器
+     * 支付平台 -> 商户标识 -> 配置生成器, 用{@link #putMerchantPayConfig}添加
+     * 调用时由{@link #merchantRouter}选择商户, 没有选中商户时使用{@link #payConfigSupplierMap}中的默认配置
+     */
+    private Map<Integer, Map<String, Supplier<? extends AbstractPayConfig>>> merchantPayConfigSupplierMap = new ConcurrentHashMap<>();
+
+    /**
+     * 商户路由
+     */
+    private IMerchantRouter merchantRouter = new DefaultMerchantRouter();
+
+    /**
+     * 支付配置注册表
+     * 保存每个支付平台(的每个商户)当前生效的配置快照
+     */
+    private final PayConfigRegistry payConfigRegistry = new PayConfigRegistry(this::lookupPayConfigSupplier);
+
+    /**
+     * pay工厂
+     */
+    private IPayFactory payFactory = new DefaultPayFactory();
+
+    /**
+     * 支付结果广播器
+     */
+    private IPayBroadcaster payBroadcaster;
+
+    /**
+     * 退款结果广播器
+     */
+    private IRefundBroadcaster refundBroadcaster;
+
+    /**
+     * 转账结果广播器
+     */
+    private ITransferBroadcaster transferBroadcaster;
+
+    /**
+     * 未确认订单提取器
+     */
+    private IUnconfirmedOrderFetcher unconfirmedOrderFetcher;
+
+    /**
+     * 未确认提现单提取器
+     */
+    private IUnconfirmedTransferFetcher unconfirmedTransferFetcher;
+
+    /**
+     * 未确认退款单提取器
+     */
+    private IUnconfirmedRefundFetcher unconfirmedRefundFetcher;
+
+    /**
+     * 主动查询通知管理器
+     */
+    private QueryNoticeManager queryNoticeManager = new QueryNoticeManager();
+
+    /**
+     * 查询通知间隔， 单位毫秒
+     */
+    private long queryNoticeDelay = 10 * 60 * 1000;
+
+    /**
+     * 终态结果缓存
+     * 配置后订单已支付、退款和转账已成功或失败后, 重复查询直接从缓存返回, 并且不会重复广播
+     * 为null时不使用缓存
+     */
+    private TerminalStateCache terminalStateCache;
+
+    /**
+     * 异步广播管道
+     * 配置后广播结果会异步批量发送, 失败时自动重试
+     * 为null时在调用方线程同步广播
+     */
+    private BroadcastPipeline broadcastPipeline;
+
+    /**
+     * 过期订单关闭器
+     * 配置后会定时关闭已过期的未确认订单, 并广播关闭结果
+     * 为null时不关闭
+     */
+    private ExpiredOrderCloser expiredOrderCloser;
+
+    /**
+     * 相同调用合并
+     * 配置后同一个业务单同时发起的相同查询只会请求一次支付平台, 重复的写操作默认被拒绝
+     * 为null时不合并
+     */
+    private SingleFlight singleFlight;
+
+    /**
+     * 客户端限流
+     * 配置后按 支付平台 + 商户 + 操作 限制调用支付平台的频率, 没有配置限流值的操作不限流
+     * 为null时不限流
+     */
+    private RateLimiter rateLimiter;
+
+    /**
+     * 隔离舱
+     * 配置后下单、查询、退款转账三类操作分开限制并发, 后台任务的调用优先让给前台
+     * 为null时不隔离
+     */
+    private Bulkhead bulkhead;
+
+    /**
+     * 自适应并发限制
+     * 配置后按 支付平台 + 操作 根据接口耗时动态调整允许的在途请求数
+     * 为null时不限制
+     */
+    private AdaptiveLimiter adaptiveLimiter;
+
+    /**
+     * 按接口自适应的超时时间
+     * 配置后根据每个接口观测到的耗时分位收紧超时时间, 不超过配置的超时时间
+     * 为null时所有接口都使用配置的超时时间
+     */
+    private AdaptiveTimeouts adaptiveTimeouts;
+
+    /**
+     * 熔断器
+     * 配置后支付平台的某个操作失败或超时过多时熔断, 熔断期间的调用直接失败
+     * 为null时不熔断
+     */
+    private CircuitBreaker circuitBreaker;
+
+    /**
+     * 支付指标收集器
+     * 配置后记录支付平台调用、主动查询和结果广播的次数和耗时, 如{@link InMemoryPayMetrics}
+     * 为null时不收集
+     */
+    private IPayMetrics payMetrics;
+
+    /**
+     * 支付调用拦截器
+     * 按顺序包在每个支付方法外面, 排在前面的在外层
+     */
+    private List<IPayInterceptor> payInterceptors = new CopyOnWriteArrayList<>();
+
+    /**
+     * 预支付结果缓存
+     * 配置后同一个订单重复请求二维码、JS支付参数、APP支付参数或支付表单时直接返回之前的结果
+     * 为null时不使用缓存
+     */
+    private PrepayCache prepayCache;
+
+    /**
+     * 二维码渲染器
+     * 设置为null则使用hutool生成二维码图片
+     */
+    private QrCodeRenderer qrCodeRenderer = new QrCodeRenderer();
+
+    /**
+     * 支付预热
+     * 配置后初始化时在后台并行预热所有支付平台和商户, 主动查询等预热结束后才开始
+     * 为null时不预热
+     */
+    private PayWarmUp payWarmUp;
+
+
+
+    /**
+     * 配置变更时清空预支付结果缓存
+     */
+    private static final IPayConfigListener PREPAY_CACHE_INVALIDATOR = (oldSnapshot, newSnapshot) -> {
+        PrepayCache prepayCache = prepayCache();
+        if (oldSnapshot != null && prepayCache != null) {
+            prepayCache.clear();
+        }
+    };
+
+    /**
+     * 配置变更时关闭旧快照上的连接池等对象, 等待1分钟让在途调用结束
+     */
+    private static final IPayConfigListener SNAPSHOT_RESOURCE_CLOSER = new SnapshotResourceCloser(60_000);
+
+    /**
+     * 持有实例
+     */
+    private static GlobalConfig GLOBAL_CONFIG;
+
+    @Resource
+    private GlobalConfig globalConfig;
+
+    public GlobalConfig() {
+    }
+
+    /**
+     * 配置初始化方法
+     * 在配置设置好后要调用该方法进行初始化
+     * 之所以设置为私有类型是为了防止其他地方误调用， 所以要调用该方法的话需要反射调用
+     *
+     * @author zak
+     * @since 1.0.0
+     */
+    private void init() {
+        GLOBAL_CONFIG = globalConfig;
+        // 配置变更后, 用旧配置签名的预支付结果不能再用
+        this.getPayConfigRegistry().addListener(PREPAY_CACHE_INVALIDATOR);
+        // 旧配置的http连接池和清理线程不关闭会一直占着
+        this.getPayConfigRegistry().addListener(SNAPSHOT_RESOURCE_CLOSER);
+        if (this.getBroadcastPipeline() != null) {
+            this.getBroadcastPipeline().init();
+        }
+        if (this.getPayWarmUp() == null) {
+            this.getQueryNoticeManager().init();
+        } else {
+            // 第一轮主动查询等预热结束后再开始
+            this.getQueryNoticeManager().init(this.getPayWarmUp().start(this));
+        }
+        if (this.getExpiredOrderCloser() != null) {
+            this.getExpiredOrderCloser().init();
+        }
+    }
+
+    /**
+     * 获取当前全局配置实例
+     * @return 全局配置
+     * @author zak
+     * @since 1.0.0
+     */
+    private static GlobalConfig getInstance() {
+        return GLOBAL_CONFIG;
+    }
+
+
+    /**
+     * 根据支付平台获取相应的支付配置
+     * @param payPlatform 支付平台 取值见{@link com.developcollect.commonpay.PayPlatform}
+     * @param <T> 支付配置的类型
+     * @return 支付配置
+     * @author zak
+     * @since 1.0.0
+     */
+    public static <T extends AbstractPayConfig> T getPayConfig(int payPlatform) {
+        PayConfigSnapshot<T> snapshot = payConfigSnapshot(payPlatform);
+        return snapshot.getConfig();
+    }
+
+    /**
+     * 根据支付平台和商户获取相应的支付配置
+     *
+     * @param payPlatform 支付平台 取值见{@link com.developcollect.commonpay.PayPlatform}
+     * @param merchantId  商户标识, 为空时获取默认配置
+     * @param <T>         支付配置的类型
+     * @return 支付配置
+     * @author zak
+     * @since 2.2.0
+     */
+    public static <T extends AbstractPayConfig> T getPayConfig(int payPlatform, String merchantId) {
+        PayConfigSnapshot<T> snapshot = payConfigSnapshot(payPlatform, merchantId);
+        return snapshot.getConfig();
+    }
+
+    /**
+     * 根据支付平台获取当前生效的配置快照
+     *
+     * @param payPlatform 支付平台 取值见{@link com.developcollect.commonpay.PayPlatform}
+     * @param <T>         支付配置的类型
+     * @return 配置快照
+     * @author zak
+     * @since 2.2.0
+     */
+    public static <T extends AbstractPayConfig> PayConfigSnapshot<T> payConfigSnapshot(int payPlatform) {
+        return getInstance().getPayConfigRegistry().get(payPlatform);
+    }
+
+    /**
+     * 根据支付平台和商户获取当前生效的配置快照
+     *
+     * @param payPlatform 支付平台 取值见{@link com.developcollect.commonpay.PayPlatform}
+     * @param merchantId  商户标识, 为空时获取默认配置
+     * @param <T>         支付配置的类型
+     * @return 配置快照
+     * @author zak
+     * @since 2.2.0
+     */
+    public static <T extends AbstractPayConfig> PayConfigSnapshot<T> payConfigSnapshot(int payPlatform, String merchantId) {
+        return getInstance().getPayConfigRegistry().get(payPlatform, merchantId);
+    }
+
+    /**
+     * 重新加载支付平台的配置
+     * 重新调用配置生成器生成新的快照, 依赖旧配置的客户端、证书等会在新快照上重新创建
+     *
+     * @param payPlatform 支付平台 取值见{@link com.developcollect.commonpay.PayPlatform}
+     * @author zak
+     * @since 2.2.0
+     */
+    public static void reloadPayConfig(int payPlatform) {
+        getInstance().getPayConfigRegistry().reload(payPlatform);
+    }
+
+    /**
+     * 重新加载商户的配置
+     *
+     * @param payPlatform 支付平台 取值见{@link com.developcollect.commonpay.PayPlatform}
+     * @param merchantId  商户标识
+     * @author zak
+     * @since 2.2.0
+     */
+    public static void reloadPayConfig(int payPlatform, String merchantId) {
+        getInstance().getPayConfigRegistry().reload(payPlatform, merchantId);
+    }
+
+    /**
+     * 重新加载所有支付平台的配置
+     *
+     * @author zak
+     * @since 2.2.0
+     */
+    public static void reloadPayConfig() {
+        getInstance().getPayConfigRegistry().reloadAll();
+    }
+
+    /**
+     * 添加支付配置变更监听器
+     *
+     * @param listener 监听器
+     * @author zak
+     * @since 2.2.0
+     */
+    public static void addPayConfigListener(IPayConfigListener listener) {
+        getInstance().getPayConfigRegistry().addListener(listener);
+    }
+
+    /**
+     * 设置支付配置生成器
+     * 已加载的配置快照会被丢弃, 下次使用时重新生成
+     *
+     * @param payConfigSupplierMap 支付配置生成器
+     * @return 全局配置
+     * @author zak
+     * @since 2.2.0
+     */
+    public GlobalConfig setPayConfigSupplierMap(Map<Integer, Supplier<? extends AbstractPayConfig>> payConfigSupplierMap) {
+        this.payConfigSupplierMap = payConfigSupplierMap;
+        this.payConfigRegistry.invalidateAll();
+        return this;
+    }
+
+    /**
+     * 设置多商户支付配置生成器
+     * 已加载的配置快照会被丢弃, 下次使用时重新生成
+     *
+     * @param merchantPayConfigSupplierMap 多商户支付配置生成器
+     * @return 全局配置
+     * @author zak
+     * @since 2.2.0
+     */
+    public GlobalConfig setMerchantPayConfigSupplierMap(Map<Integer, Map<String, Supplier<? extends AbstractPayConfig>>> merchantPayConfigSupplierMap) {
+        this.merchantPayConfigSupplierMap = merchantPayConfigSupplierMap;
+        this.payConfigRegistry.invalidateAll();
+        return this;
+    }
+
+    /**
+     * 添加商户的支付配置生成器
+     * 商户已经加载过配置的, 需要调用{@link #reloadPayConfig(int, String)}才会生效
+     *
+     * @param payPlatform 支付平台 取值见{@link com.developcollect.commonpay.PayPlatform}
+     * @param merchantId  商户标识, 同一个支付平台内唯一
+     * @param supplier    支付配置生成器
+     * @return 全局配置
+     * @author zak
+     * @since 2.2.0
+     */
+    public GlobalConfig putMerchantPayConfig(int payPlatform, String merchantId, Supplier<? extends AbstractPayConfig> supplier) {
+        if (merchantId == null || merchantId.isEmpty()) {
+            throw new IllegalArgumentException("merchantId is empty");
+        }
+        merchantPayConfigSupplierMap
+                .computeIfAbsent(payPlatform, k -> new ConcurrentHashMap<>())
+                .put(merchantId, supplier);
+        return this;
+    }
+
+    /**
+     * 使用默认参数开启所有保护措施
+     * 相同调用合并、客户端限流、隔离舱、自适应并发限制、自适应超时和熔断器默认都不开启,
+     * 调用这个方法一次全部开启, 之后可以再单独替换或置为null
+     *
+     * @return 全局配置
+     * @author zak
+     * @since 2.2.0
+     */
+    public GlobalConfig enableGuards() {
+        this.singleFlight = new SingleFlight();
+        this.rateLimiter = new RateLimiter();
+        this.bulkhead = new Bulkhead();
+        this.adaptiveLimiter = new AdaptiveLimiter();
+        this.adaptiveTimeouts = new AdaptiveTimeouts();
+        this.circuitBreaker = new CircuitBreaker();
+        return this;
+    }
+
+    private Supplier<? extends AbstractPayConfig> lookupPayConfigSupplier(Integer payPlatform, String merchantId) {
+        if (merchantId == null) {
+            return getPayConfigSupplierMap().get(payPlatform);
+        }
+        Map<String, Supplier<? extends AbstractPayConfig>> merchants = getMerchantPayConfigSupplierMap().get(payPlatform);
+        return merchants == null ? null : merchants.get(merchantId);
+    }
+
+    /**
+     * 获取当前配置的支付工厂
+     * @return 支付工厂
+     * @author zak
+     * @since 1.0.0
+     */
+    public static IPayFactory payFactory() {
+        return getInstance().getPayFactory();
+    }
+
+    /**
+     * 获取当前配置的未确认订单提取器
+     * @return 未确认订单提取器
+     * @author zak
+     * @since 1.0.0
+     */
+    public static IUnconfirmedOrderFetcher unconfirmedOrderFetcher() {
+        return getInstance().getUnconfirmedOrderFetcher();
+    }
+
+
+    /**
+     * 获取当前配置的未确认提现单提取器
+     *
+     * @return 未确认提现单提取器
+     * @author zak
+     * @since 1.0.0
+     */
+    public static IUnconfirmedTransferFetcher unconfirmedTransferFetcher() {
+        return getInstance().getUnconfirmedTransferFetcher();
+    }
+
+
+    /**
+     * 获取当前配置的未确认退款单提取器
+     *
+     * @return 未确认退款单提取器
+     * @author zak
+     * @since 1.0.0
+     */
+    public static IUnconfirmedRefundFetcher unconfirmedRefundFetcher() {
+        return getInstance().getUnconfirmedRefundFetcher();
+    }
+
+    /**
+     * 获取当前配置的支付结果广播器
+     * @return 支付结果广播器
+     * @author zak
+     * @since 1.0.0
+     */
+    public static IPayBroadcaster payBroadcaster() {
+        return getInstance().getPayBroadcaster();
+    }
+
+    /**
+     * 获取当前配置的退款结果广播器
+     *
+     * @return 退款结果广播器
+     * @author zak
+     * @since 1.0.0
+     */
+    public static IRefundBroadcaster refundBroadcaster() {
+        return getInstance().getRefundBroadcaster();
+    }
+
+    /**
+     * 获取当前配置的转账结果广播器
+     *
+     * @return 转账结果广播器
+     * @author zak
+     * @since 1.0.0
+     */
+    public static ITransferBroadcaster transferBroadcaster() {
+        return getInstance().getTransferBroadcaster();
+    }
+
+    /**
+     * 获取当前配置的终态结果缓存
+     *
+     * @return 终态结果缓存, 没有配置时返回null
+     * @author zak
+     * @since 2.2.0
+     */
+    public static TerminalStateCache terminalStateCache() {
+        return getInstance().getTerminalStateCache();
+    }
+
+    /**
+     * 获取当前配置的异步广播管道
+     *
+     * @return 异步广播管道, 没有配置时返回null
+     * @author zak
+     * @since 2.2.0
+     */
+    public static BroadcastPipeline broadcastPipeline() {
+        return getInstance().getBroadcastPipeline();
+    }
+
+    /**
+     * 获取当前配置的相同调用合并
+     *
+     * @return 相同调用合并, 没有配置时返回null
+     * @author zak
+     * @since 2.2.0
+     */
+    public static SingleFlight singleFlight() {
+        return getInstance().getSingleFlight();
+    }
+
+    /**
+     * 获取当前配置的客户端限流
+     *
+     * @return 客户端限流, 没有配置时返回null
+     * @author zak
+     * @since 2.2.0
+     */
+    public static RateLimiter rateLimiter() {
+        return getInstance().getRateLimiter();
+    }
+
+    /**
+     * 获取当前配置的隔离舱
+     *
+     * @return 隔离舱, 没有配置时返回null
+     * @author zak
+     * @since 2.2.0
+     */
+    public static Bulkhead bulkhead() {
+        return getInstance().getBulkhead();
+    }
+
+    /**
+     * 获取当前配置的自适应并发限制
+     *
+     * @return 自适应并发限制, 没有配置时返回null
+     * @author zak
+     * @since 2.2.0
+     */
+    public static AdaptiveLimiter adaptiveLimiter() {
+        return getInstance().getAdaptiveLimiter();
+    }
+
+    /**
+     * 获取当前配置的自适应超时时间
+     *
+     * @return 自适应超时时间, 没有配置时返回null
+     * @author zak
+     * @since 2.2.0
+     */
+    public static AdaptiveTimeouts adaptiveTimeouts() {
+        return getInstance().getAdaptiveTimeouts();
+    }
+
+    /**
+     * 获取当前配置的熔断器
+     *
+     * @return 熔断器, 没有配置时返回null
+     * @author zak
+     * @since 2.2.0
+     */
+    public static CircuitBreaker circuitBreaker() {
+        return getInstance().getCircuitBreaker();
+    }
+
+    /**
+     * 获取当前配置的支付指标收集器
+     *
+     * @return 支付指标收集器, 没有配置时返回null
+     * @author zak
+     * @since 2.2.0
+     */
+    public static IPayMetrics payMetrics() {
+        return getInstance().getPayMetrics();
+    }
+
+    /**
+     * 获取当前配置的支付调用拦截器
+     *
+     * @return 支付调用拦截器, 没有配置时返回null或空列表
+     * @author zak
+     * @since 2.2.0
+     */
+    public static List<IPayInterceptor> payInterceptors() {
+        return getInstance().getPayInterceptors();
+    }
+
+    /**
+     * 获取当前配置的预支付结果缓存
+     *
+     * @return 预支付结果缓存, 没有配置时返回null
+     * @author zak
+     * @since 2.2.0
+     */
+    public static PrepayCache prepayCache() {
+        return getInstance().getPrepayCache();
+    }
+
+    /**
+     * 获取当前配置的二维码渲染器
+     *
+     * @return 二维码渲染器, 没有配置时返回null
+     * @author zak
+     * @since 2.2.0
+     */
+    public static QrCodeRenderer qrCodeRenderer() {
+        return getInstance().getQrCodeRenderer();
+    }
+
+    /**
+     * 获取当前配置的商户路由
+     *
+     * @return 商户路由
+     * @author zak
+     * @since 2.2.0
+     */
+    public static IMerchantRouter merchantRouter() {
+        return getInstance().getMerchantRouter();
+    }
+
+    /**
+     * 校验指定的支付平台是否有支付配置
+     * 默认配置或者任意一个商户的配置都算, 只配置了多商户的支付平台也能通过校验
+     * @param payPlatform 支付平台
+     * @return 有支付配置返回true， 否则返回false
+     * @author zak
+     * @since 1.0.0
+     */
+    public static boolean payPlatformVerify(int payPlatform) {
+        if (getInstance().getPayConfigSupplierMap().containsKey(payPlatform)) {
+            return true;
+        }
+        Map<String, Supplier<? extends AbstractPayConfig>> merchants = getInstance().getMerchantPayConfigSupplierMap().get(payPlatform);
+        return merchants != null && !merchants.isEmpty();
+    }
+
+    /**
+     * 校验指定的商户是否有支付配置
+     * @param payPlatform 支付平台
+     * @param merchantId  商户标识, 为空时只校验默认配置
+     * @return 有支付配置返回true， 否则返回false
+     * @author zak
+     * @since 2.2.0
+     */
+    public static boolean payPlatformVerify(int payPlatform, String merchantId) {
+        if (merchantId == null || merchantId.isEmpty()) {
+            return getInstance().getPayConfigSupplierMap().containsKey(payPlatform);
+        }
+        Map<String, Supplier<? extends AbstractPayConfig>> merchants = getInstance().getMerchantPayConfigSupplierMap().get(payPlatform);
+        return merchants != null && merchants.containsKey(merchantId);
+    }
+
+    /**
+     * 获取主动查询的时间间隔
+     * 主动查询订单支付状态的定时器时间间隔就是用的这个值
+     * @return 主动查询的时间间隔
+     * @author zak
+     * @since 1.0.0
+     */
+    public static long queryNoticeDelay() {
+        return getInstance().getQueryNoticeDelay();
+    }
+
+
+    @Override
+    public boolean equals(final Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof GlobalConfig)) {
+            return false;
+        }
+        final GlobalConfig other = (GlobalConfig) o;
+        if (!other.canEqual((Object) this)) {
+            return false;
+        }
+        final Object this$payConfigSupplierMap = this.getPayConfigSupplierMap();
+        final Object other$payConfigSupplierMap = other.getPayConfigSupplierMap();
+        if (this$payConfigSupplierMap == null ? other$payConfigSupplierMap != null : !this$payConfigSupplierMap.equals(other$payConfigSupplierMap)) {
+            return false;
+        }
+        final Object this$payFactory = this.getPayFactory();
+        final Object other$payFactory = other.getPayFactory();
+        if (this$payFactory == null ? other$payFactory != null : !this$payFactory.equals(other$payFactory)) {
+            return false;
+        }
+        final Object this$payBroadcaster = this.getPayBroadcaster();
+        final Object other$payBroadcaster = other.getPayBroadcaster();
+        if (this$payBroadcaster == null ? other$payBroadcaster != null : !this$payBroadcaster.equals(other$payBroadcaster)) {
+            return false;
+        }
+        final Object this$unconfirmedOrderFetcher = this.getUnconfirmedOrderFetcher();
+        final Object other$unconfirmedOrderFetcher = other.getUnconfirmedOrderFetcher();
+        if (this$unconfirmedOrderFetcher == null ? other$unconfirmedOrderFetcher != null : !this$unconfirmedOrderFetcher.equals(other$unconfirmedOrderFetcher)) {
+            return false;
+        }
+        final Object this$queryNoticeManager = this.getQueryNoticeManager();
+        final Object other$queryNoticeManager = other.getQueryNoticeManager();
+        if (this$queryNoticeManager == null ? other$queryNoticeManager != null : !this$queryNoticeManager.equals(other$queryNoticeManager)) {
+            return false;
+        }
+        if (this.getQueryNoticeDelay() != other.getQueryNoticeDelay()) {
+            return false;
+        }
+        return true;
+    }
+
+    protected boolean canEqual(final Object other) {
+        return other instanceof GlobalConfig;
+    }
+
+    @Override
+    public int hashCode() {
+        final int PRIME = 59;
+        int result = 1;
+        final Object $payConfigSupplierMap = this.getPayConfigSupplierMap();
+        result = result * PRIME + ($payConfigSupplierMap == null ? 43 : $payConfigSupplierMap.hashCode());
+        final Object $payFactory = this.getPayFactory();
+        result = result * PRIME + ($payFactory == null ? 43 : $payFactory.hashCode());
+        final Object $payBroadcaster = this.getPayBroadcaster();
+        result = result * PRIME + ($payBroadcaster == null ? 43 : $payBroadcaster.hashCode());
+        final Object $unconfirmedOrderFetcher = this.getUnconfirmedOrderFetcher();
+        result = result * PRIME + ($unconfirmedOrderFetcher == null ? 43 : $unconfirmedOrderFetcher.hashCode());
+        final Object $queryNoticeManager = this.getQueryNoticeManager();
+        result = result * PRIME + ($queryNoticeManager == null ? 43 : $queryNoticeManager.hashCode());
+        final long $queryNoticeDelay = this.getQueryNoticeDelay();
+        result = result * PRIME + (int) ($queryNoticeDelay >>> 32 ^ $queryNoticeDelay);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "GlobalConfig(payConfigSupplierMap=" + this.getPayConfigSupplierMap() + ", payFactory=" + this.getPayFactory() + ", payBroadcaster=" + this.getPayBroadcaster() + ", unconfirmedOrderFetcher=" + this.getUnconfirmedOrderFetcher() + ", queryNoticeManager=" + this.getQueryNoticeManager() + ", queryNoticeDelay=" + this.getQueryNoticeDelay() + ")";
+    }
+}
@@ -0,0 +1,30 @@
+package com.developcollect.commonpay.config;
+
+
+import com.developcollect.commonpay.pay.IExtDto;
+
+/**
+ * 商户路由接口
+ * 多商户时为每次调用选择使用哪个商户的支付配置
+ * <p>
+ * 同一个订单的下单、查询、关单、退款必须路由到同一个商户,
+ * 所以路由结果只能由订单本身决定, 比如订单上保存的商户标识或者订单号
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+@FunctionalInterface
+public interface IMerchantRouter {
+
+    /**
+     * 选择商户
+     *
+     * @param payPlatform 支付平台
+     * @param orderNo     商户订单号, 转账时为商户转账单号
+     * @param dto         订单、退款单或转账单
+     * @return 商户标识, 返回null时使用{@link GlobalConfig#getPayConfigSupplierMap()}中的默认配置
+     * @author zak
+     * @since 2.2.0
+     */
+    String route(int payPlatform, String orderNo, IExtDto dto);
+}
@@ -0,0 +1,24 @@
+package com.developcollect.commonpay.config;
+
+
+/**
+ * 支付配置变更监听器
+ * 支付配置重新加载后回调, 可以在这里清理依赖旧配置的缓存
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+@FunctionalInterface
+public interface IPayConfigListener {
+
+    /**
+     * 支付配置已变更
+     * 回调时新配置已经生效, 回调在执行重新加载的线程中同步执行
+     *
+     * @param oldSnapshot 旧的配置快照, 第一次加载时为null
+     * @param newSnapshot 新的配置快照, 配置被整体丢弃时为null
+     * @author zak
+     * @since 2.2.0
+     */
+    void onChange(PayConfigSnapshot<?> oldSnapshot, PayConfigSnapshot<?> newSnapshot);
+}
@@ -0,0 +1,43 @@
+package com.developcollect.commonpay.config;
+
+
+import com.developcollect.commonpay.exception.ConfigException;
+import com.developcollect.commonpay.pay.Pay;
+
+/**
+ * 支付对象工厂接口
+ *
+ * @author zak
+ * @since 1.0.0
+ */
+@FunctionalInterface
+public interface IPayFactory {
+
+    /**
+     * 根据支付平台创建相应的支付对象
+     * 支付平台取值见{@link com.developcollect.commonpay.PayPlatform}
+     *
+     * @param payPlatform 支付平台
+     * @return 支付对象
+     * @author zak
+     * @since 1.0.0
+     */
+    Pay createPay(int payPlatform);
+
+    /**
+     * 根据支付平台和商户创建相应的支付对象
+     * 返回的支付对象使用该商户的支付配置
+     *
+     * @param payPlatform 支付平台
+     * @param merchantId  商户标识, 为空时使用默认配置
+     * @return 支付对象
+     * @author zak
+     * @since 2.2.0
+     */
+    default Pay createPay(int payPlatform, String merchantId) {
+        if (merchantId == null || merchantId.isEmpty()) {
+            return createPay(payPlatform);
+        }
+        throw new ConfigException("支付工厂[{}]不支持多商户", getClass().getName());
+    }
+}
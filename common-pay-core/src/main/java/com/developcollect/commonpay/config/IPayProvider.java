@@ -0,0 +1,37 @@
+package com.developcollect.commonpay.config;
+
+import com.developcollect.commonpay.pay.Pay;
+
+/**
+ * 支付平台实现的提供者
+ * 每个支付平台模块在 META-INF/services/com.developcollect.commonpay.config.IPayProvider 中注册自己的提供者,
+ * {@link DefaultPayFactory}第一次创建支付对象时用{@link java.util.ServiceLoader}发现类路径中的提供者,
+ * 没有引入的支付平台模块不会被加载
+ * <p>
+ * 提供者本身会在发现时被实例化, 不要在其中引用支付平台SDK的类, 在{@link #createPay(String)}中才加载支付平台的实现
+ * 自定义支付平台也可以用同样的方式注册
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public interface IPayProvider {
+
+    /**
+     * 支付平台
+     *
+     * @return 支付平台 取值见{@link com.developcollect.commonpay.PayPlatform}
+     * @author zak
+     * @since 2.2.0
+     */
+    int getPayPlatform();
+
+    /**
+     * 创建支付对象
+     *
+     * @param merchantId 商户标识, 默认配置为null
+     * @return 支付对象
+     * @author zak
+     * @since 2.2.0
+     */
+    Pay createPay(String merchantId);
+}
@@ -0,0 +1,207 @@
+package com.developcollect.commonpay.config;
+
+import com.developcollect.commonpay.exception.PayException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * 支付配置注册表
+ * 每个支付平台(的每个商户)的配置生成器只在第一次使用和重新加载时调用, 结果冻结后保存为{@link PayConfigSnapshot};
+ * 所有快照放在不可变的Map中, 重新加载时整体替换, 读取配置只需要一次volatile读
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+@Slf4j
+public class PayConfigRegistry {
+
+    /**
+     * 默认配置在快照Map中的商户标识
+     */
+    private static final String DEFAULT_MERCHANT = "";
+
+    private final BiFunction<Integer, String, Supplier<? extends AbstractPayConfig>> supplierLookup;
+
+    private final List<IPayConfigListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 当前生效的快照, 支付平台 -> 商户标识 -> 快照, 只在持有this锁时替换
+     */
+    private volatile Map<Integer, Map<String, PayConfigSnapshot<?>>> snapshots = Collections.emptyMap();
+
+    private long versionSequence = 0;
+
+
+    /**
+     * @param supplierLookup 根据支付平台和商户标识查找配置生成器, 默认配置的商户标识为null
+     */
+    public PayConfigRegistry(BiFunction<Integer, String, Supplier<? extends AbstractPayConfig>> supplierLookup) {
+        this.supplierLookup = supplierLookup;
+    }
+
+    /**
+     * 获取支付平台当前的默认配置快照
+     *
+     * @param payPlatform 支付平台
+     * @param <T>         支付配置类型
+     * @return 配置快照
+     * @throws PayException 支付平台没有配置
+     * @author zak
+     * @since 2.2.0
+     */
+    public <T extends AbstractPayConfig> PayConfigSnapshot<T> get(int payPlatform) {
+        return get(payPlatform, null);
+    }
+
+    /**
+     * 获取商户当前的配置快照
+     *
+     * @param payPlatform 支付平台
+     * @param merchantId  商户标识, 为空时获取默认配置
+     * @param <T>         支付配置类型
+     * @return 配置快照
+     * @throws PayException 商户没有配置
+     * @author zak
+     * @since 2.2.0
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends AbstractPayConfig> PayConfigSnapshot<T> get(int payPlatform, String merchantId) {
+        String key = keyOf(merchantId);
+        Map<String, PayConfigSnapshot<?>> merchants = snapshots.get(payPlatform);
+        PayConfigSnapshot<?> snapshot = merchants == null ? null : merchants.get(key);
+        if (snapshot == null) {
+            snapshot = load(payPlatform, key, false);
+        }
+        return (PayConfigSnapshot<T>) snapshot;
+    }
+
+    /**
+     * 重新调用配置生成器, 生成新的默认配置快照并替换
+     *
+     * @param payPlatform 支付平台
+     * @param <T>         支付配置类型
+     * @return 新的配置快照
+     * @author zak
+     * @since 2.2.0
+     */
+    public <T extends AbstractPayConfig> PayConfigSnapshot<T> reload(int payPlatform) {
+        return reload(payPlatform, null);
+    }
+
+    /**
+     * 重新调用配置生成器, 生成商户新的配置快照并替换
+     *
+     * @param payPlatform 支付平台
+     * @param merchantId  商户标识, 为空时重新加载默认配置
+     * @param <T>         支付配置类型
+     * @return 新的配置快照
+     * @author zak
+     * @since 2.2.0
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends AbstractPayConfig> PayConfigSnapshot<T> reload(int payPlatform, String merchantId) {
+        return (PayConfigSnapshot<T>) load(payPlatform, keyOf(merchantId), true);
+    }
+
+    /**
+     * 重新加载所有已加载过的配置
+     *
+     * @author zak
+     * @since 2.2.0
+     */
+    public void reloadAll() {
+        for (Map.Entry<Integer, Map<String, PayConfigSnapshot<?>>> entry : snapshots.entrySet()) {
+            for (String key : entry.getValue().keySet()) {
+                load(entry.getKey(), key, true);
+            }
+        }
+    }
+
+    /**
+     * 丢弃所有快照, 下次使用时重新加载
+     * 配置生成器整体替换后调用
+     *
+     * @author zak
+     * @since 2.2.0
+     */
+    public void invalidateAll() {
+        Map<Integer, Map<String, PayConfigSnapshot<?>>> old;
+        synchronized (this) {
+            old = snapshots;
+            snapshots = Collections.emptyMap();
+        }
+        for (Map<String, PayConfigSnapshot<?>> merchants : old.values()) {
+            for (PayConfigSnapshot<?> snapshot : merchants.values()) {
+                fireChange(snapshot, null);
+            }
+        }
+    }
+
+    public void addListener(IPayConfigListener listener) {
+        if (!listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+
+    public void removeListener(IPayConfigListener listener) {
+        listeners.remove(listener);
+    }
+
+
+    private PayConfigSnapshot<?> load(int payPlatform, String key, boolean force) {
+        // 配置生成器可能要读文件、解析证书, 在锁外调用, 不阻塞其他支付平台和商户的加载
+        String merchantId = DEFAULT_MERCHANT.equals(key) ? null : key;
+        String name = merchantId == null
+                ? "支付平台[" + payPlatform + "]"
+                : "支付平台[" + payPlatform + "]的商户[" + merchantId + "]";
+        Supplier<? extends AbstractPayConfig> supplier = supplierLookup.apply(payPlatform, merchantId);
+        if (supplier == null) {
+            throw new PayException(name + "没有支付配置");
+        }
+        AbstractPayConfig config = supplier.get();
+        if (config == null) {
+            throw new PayException(name + "的支付配置为空");
+        }
+        config.freeze();
+
+        PayConfigSnapshot<?> oldSnapshot;
+        PayConfigSnapshot<?> newSnapshot;
+        synchronized (this) {
+            Map<String, PayConfigSnapshot<?>> merchants = snapshots.get(payPlatform);
+            oldSnapshot = merchants == null ? null : merchants.get(key);
+            if (oldSnapshot != null && !force) {
+                // 其他线程已经加载好了
+                return oldSnapshot;
+            }
+            newSnapshot = new PayConfigSnapshot<>(payPlatform, merchantId, ++versionSequence, config);
+            config.bindSnapshot(newSnapshot);
+
+            Map<String, PayConfigSnapshot<?>> merchantsCopy = merchants == null ? new HashMap<>() : new HashMap<>(merchants);
+            merchantsCopy.put(key, newSnapshot);
+            Map<Integer, Map<String, PayConfigSnapshot<?>>> copy = new HashMap<>(snapshots);
+            copy.put(payPlatform, merchantsCopy);
+            snapshots = copy;
+        }
+        log.debug("支付平台[{}]商户[{}]的支付配置已加载, 版本: {}", payPlatform, newSnapshot.getMerchantId(), newSnapshot.getVersion());
+        fireChange(oldSnapshot, newSnapshot);
+        return newSnapshot;
+    }
+
+    private void fireChange(PayConfigSnapshot<?> oldSnapshot, PayConfigSnapshot<?> newSnapshot) {
+        for (IPayConfigListener listener : listeners) {
+            try {
+                listener.onChange(oldSnapshot, newSnapshot);
+            } catch (Exception e) {
+                log.error("支付配置变更监听器执行失败", e);
+            }
+        }
+    }
+
+    private static String keyOf(String merchantId) {
+        return merchantId == null || merchantId.isEmpty() ? DEFAULT_MERCHANT : merchantId;
+    }
+}
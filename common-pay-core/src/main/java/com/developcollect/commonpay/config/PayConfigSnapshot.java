@@ -0,0 +1,186 @@
+package com.developcollect.commonpay.config;
+
+import com.developcollect.commonpay.exception.PayException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 支付配置快照
+ * 某个支付平台(的某个商户)在某一时刻生效的支付配置, 每次重新加载都会生成新的快照, 版本号递增
+ * <p>
+ * 根据配置创建的对象(支付平台客户端、证书、http连接池等)通过{@link #getResource(String, Function)}挂在快照上,
+ * 同一个快照内只创建一次, 创建时只阻塞获取同一个对象的调用; 配置重新加载后新快照会重新创建, 旧快照被替换一段时间后(等在途调用结束),
+ * 其中实现了{@link AutoCloseable}的对象会被关闭(见{@link SnapshotResourceCloser}), 释放连接池、后台线程等,
+ * 关闭后不能再获取对象; 每个商户有自己的快照, 所以客户端、连接池、证书都是按商户隔离的
+ *
+ * @param <T> 支付配置类型
+ * @author zak
+ * @since 2.2.0
+ */
+@Slf4j
+public final class PayConfigSnapshot<T extends AbstractPayConfig> {
+
+    private final int payPlatform;
+
+    private final String merchantId;
+
+    private final long version;
+
+    private final T config;
+
+    private final long createTime;
+
+    private final ConcurrentHashMap<String, Resource> resources = new ConcurrentHashMap<>();
+
+    private volatile boolean closed;
+
+
+    PayConfigSnapshot(int payPlatform, String merchantId, long version, T config) {
+        this.payPlatform = payPlatform;
+        this.merchantId = merchantId;
+        this.version = version;
+        this.config = config;
+        this.createTime = System.currentTimeMillis();
+    }
+
+    public int getPayPlatform() {
+        return payPlatform;
+    }
+
+    /**
+     * 商户标识, 默认配置为null
+     */
+    public String getMerchantId() {
+        return merchantId;
+    }
+
+    /**
+     * 配置版本号, 所有支付平台共用一个递增序列
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * 支付配置, 已冻结, 不要修改
+     */
+    public T getConfig() {
+        return config;
+    }
+
+    /**
+     * 快照生成时间, 毫秒时间戳
+     */
+    public long getCreateTime() {
+        return createTime;
+    }
+
+    /**
+     * 获取支付配置所属的快照
+     *
+     * @param config 通过{@link GlobalConfig#getPayConfig(int, String)}取得的支付配置
+     * @param <T>    支付配置类型
+     * @return 配置快照
+     * @throws PayException 配置不是由{@link PayConfigRegistry}加载的
+     * @author zak
+     * @since 2.2.0
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends AbstractPayConfig> PayConfigSnapshot<T> of(T config) {
+        PayConfigSnapshot<?> snapshot = config.snapshot();
+        if (snapshot == null) {
+            throw new PayException("支付配置没有通过GlobalConfig加载, 不能获取根据配置创建的对象");
+        }
+        return (PayConfigSnapshot<T>) snapshot;
+    }
+
+    /**
+     * 获取根据当前配置创建的对象, 没有时创建
+     * 创建在锁外进行, 同一个快照的同一个名称只创建一次
+     *
+     * @param name    名称
+     * @param factory 根据配置创建对象
+     * @param <R>     对象类型
+     * @return 对象
+     * @throws PayException 快照已被替换并关闭
+     * @author zak
+     * @since 2.2.0
+     */
+    @SuppressWarnings("unchecked")
+    public <R> R getResource(String name, Function<? super T, ? extends R> factory) {
+        checkOpen();
+        Resource resource = resources.get(name);
+        if (resource == null) {
+            resource = resources.computeIfAbsent(name, k -> new Resource());
+        }
+        return (R) resource.get(factory);
+    }
+
+    /**
+     * 快照是否已关闭
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 关闭快照上所有实现了{@link AutoCloseable}的对象
+     * 只在快照被替换后调用, 关闭失败只记录日志; 正在创建的对象会等创建完成后关闭
+     */
+    void closeResources() {
+        closed = true;
+        for (Resource resource : resources.values()) {
+            resource.close();
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new PayException(this + "已被替换并关闭, 请重新获取支付配置");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PayConfigSnapshot(payPlatform=" + payPlatform + ", merchantId=" + merchantId + ", version=" + version + ", createTime=" + createTime + ")";
+    }
+
+
+    /**
+     * 快照上的一个对象, 第一次获取时创建
+     */
+    private final class Resource {
+
+        private volatile Object value;
+
+        Object get(Function<? super T, ?> factory) {
+            Object v = value;
+            if (v == null) {
+                synchronized (this) {
+                    v = value;
+                    if (v == null) {
+                        // 关闭快照时会拿这个锁, 锁内检查保证关闭后不会再创建
+                        checkOpen();
+                        v = factory.apply(config);
+                        value = v;
+                    }
+                }
+            }
+            return v;
+        }
+
+        synchronized void close() {
+            Object v = value;
+            value = null;
+            if (v instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) v).close();
+                } catch (Exception e) {
+                    log.warn("关闭{}上的对象失败: {}", PayConfigSnapshot.this, v, e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.developcollect.commonpay.config;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 关闭被替换的配置快照上的对象
+ * 配置重新加载或整体丢弃后, 旧快照上的http连接池、后台清理线程等不会再被新调用使用,
+ * 但是可能还有在途调用, 所以等待一段时间后再关闭
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+@Slf4j
+final class SnapshotResourceCloser implements IPayConfigListener {
+
+    private final long delayMillis;
+
+    private volatile ScheduledExecutorService scheduler;
+
+
+    /**
+     * @param delayMillis 旧快照被替换后等待多久再关闭, 应该比最长的一次支付平台调用更长
+     */
+    SnapshotResourceCloser(long delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    @Override
+    public void onChange(PayConfigSnapshot<?> oldSnapshot, PayConfigSnapshot<?> newSnapshot) {
+        if (oldSnapshot == null || oldSnapshot == newSnapshot) {
+            return;
+        }
+        scheduler().schedule(() -> {
+            log.debug("关闭已被替换的支付配置快照: {}", oldSnapshot);
+            oldSnapshot.closeResources();
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private ScheduledExecutorService scheduler() {
+        ScheduledExecutorService s = scheduler;
+        if (s == null) {
+            synchronized (this) {
+                s = scheduler;
+                if (s == null) {
+                    s = Executors.newSingleThreadScheduledExecutor(
+                            ThreadFactoryBuilder.create().setNamePrefix("COMMON-PAY-SNAPSHOT-CLOSER-").setDaemon(true).build()
+                    );
+                    scheduler = s;
+                }
+            }
+        }
+        return s;
+    }
+}
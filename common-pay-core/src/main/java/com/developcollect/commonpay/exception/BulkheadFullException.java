@@ -0,0 +1,16 @@
+package com.developcollect.commonpay.exception;
+
+/**
+ * 隔离舱已满异常
+ * 同类操作的并发数和排队数都已经到达上限, 或者排队超时;
+ * 也用于限时调用的线程已用完的情况, 见{@link com.developcollect.commonpay.guard.Deadlines#callWithin}
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public class BulkheadFullException extends PayException {
+
+    public BulkheadFullException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,31 @@
+package com.developcollect.commonpay.exception;
+
+import com.developcollect.commonpay.guard.PayOperation;
+
+/**
+ * 熔断异常
+ * 支付平台的这个操作最近失败或超时过多, 熔断期间的调用不请求支付平台, 直接失败
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public class CircuitOpenException extends PayException {
+
+    private final int payPlatform;
+
+    private final PayOperation operation;
+
+    public CircuitOpenException(int payPlatform, PayOperation operation) {
+        super("支付平台[" + payPlatform + "]的" + operation + "操作已熔断, 请稍后再试");
+        this.payPlatform = payPlatform;
+        this.operation = operation;
+    }
+
+    public int getPayPlatform() {
+        return payPlatform;
+    }
+
+    public PayOperation getOperation() {
+        return operation;
+    }
+}
@@ -0,0 +1,15 @@
+package com.developcollect.commonpay.exception;
+
+/**
+ * 并发超限异常
+ * 调用支付平台接口的在途请求数已经到达自适应并发限制
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public class ConcurrencyLimitException extends PayException {
+
+    public ConcurrencyLimitException(String message) {
+        super(message);
+    }
+}
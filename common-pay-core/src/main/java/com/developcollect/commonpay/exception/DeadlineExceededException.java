@@ -0,0 +1,20 @@
+package com.developcollect.commonpay.exception;
+
+/**
+ * 调用超过截止时间异常
+ * 通过{@link com.developcollect.commonpay.guard.PayCallContext#withDeadline}设置的截止时间已到,
+ * 调用没有发出或者已经被中止, 订单状态需要以查询结果为准
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public class DeadlineExceededException extends PayException {
+
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+
+    public DeadlineExceededException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
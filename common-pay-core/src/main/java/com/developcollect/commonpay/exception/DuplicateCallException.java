@@ -0,0 +1,15 @@
+package com.developcollect.commonpay.exception;
+
+/**
+ * 重复调用异常
+ * 同一个业务单的写操作(退款、转账等)还没有返回时, 又发起了相同的调用
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public class DuplicateCallException extends PayException {
+
+    public DuplicateCallException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,15 @@
+package com.developcollect.commonpay.exception;
+
+/**
+ * 限流异常
+ * 调用支付平台接口前等待令牌的时间超过了允许的最长等待时间
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public class RateLimitException extends PayException {
+
+    public RateLimitException(String message) {
+        super(message);
+    }
+}
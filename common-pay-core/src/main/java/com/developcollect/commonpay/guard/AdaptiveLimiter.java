@@ -0,0 +1,263 @@
+package com.developcollect.commonpay.guard;
+
+import com.developcollect.commonpay.exception.ConcurrencyLimitException;
+import com.developcollect.commonpay.pay.QueryResult;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 自适应并发限制
+ * 按 支付平台 + 操作 根据观测到的接口耗时动态调整允许的在途请求数:
+ * 耗时高出基线{@link #rttTolerance}倍以上时按比例收紧, 耗时恢复后逐步放开;
+ * 请求因为网络异常(超时、连接失败)或超过截止时间失败时直接乘性减少
+ * <p>
+ * 基线耗时是所有样本的长期平均, 当前耗时明显低于基线时基线会快速回落;
+ * 在途请求数不到限制的一半时说明限制不是瓶颈, 只收紧不放大
+ * <p>
+ * 超过限制的调用直接抛出{@link ConcurrencyLimitException}, 不排队, 避免支付平台变慢时请求越积越多
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+@Accessors(chain = true)
+public class AdaptiveLimiter {
+
+    /**
+     * 初始并发限制
+     */
+    @Getter
+    @Setter
+    private int initialLimit = 32;
+
+    /**
+     * 最小并发限制
+     */
+    @Getter
+    @Setter
+    private int minLimit = 4;
+
+    /**
+     * 最大并发限制
+     */
+    @Getter
+    @Setter
+    private int maxLimit = 256;
+
+    /**
+     * 允许的耗时相对基线的倍数, 超过后开始收紧
+     */
+    @Getter
+    @Setter
+    private double rttTolerance = 1.5;
+
+    /**
+     * 每个样本对限制的调整幅度
+     */
+    @Getter
+    @Setter
+    private double smoothing = 0.2;
+
+    /**
+     * 基线耗时的平均窗口, 按样本数计算
+     */
+    @Getter
+    @Setter
+    private int baselineWindow = 600;
+
+    /**
+     * 网络异常时限制的缩小比例
+     */
+    @Getter
+    @Setter
+    private double backoffRatio = 0.9;
+
+    private final ConcurrentHashMap<Integer, Limit[]> limits = new ConcurrentHashMap<>();
+
+    private final LongAdder rejectedCount = new LongAdder();
+
+
+    /**
+     * 在并发限制下执行调用
+     *
+     * @param payPlatform 支付平台
+     * @param operation   操作
+     * @param call        实际调用
+     * @param <T>         返回值类型
+     * @return 调用结果
+     * @throws ConcurrencyLimitException 在途请求数已到达限制
+     */
+    public <T> T execute(int payPlatform, PayOperation operation, Supplier<T> call) {
+        Limit limit = limitOf(payPlatform, operation);
+        int inFlight = limit.tryAcquire();
+        if (inFlight < 0) {
+            rejectedCount.increment();
+            throw new ConcurrencyLimitException("支付平台[" + payPlatform + "]的" + operation + "操作在途请求过多, 请稍后再试");
+        }
+        long start = System.nanoTime();
+        boolean dropped = false;
+        try {
+            T result = call.get();
+            // 查询结果不抛异常, 通信失败记录在结果里
+            if (result instanceof QueryResult && ((QueryResult<?>) result).isTransportError()) {
+                dropped = GatewayErrors.isGatewayError(((QueryResult<?>) result).getCause());
+            }
+            return result;
+        } catch (RuntimeException | Error e) {
+            dropped = GatewayErrors.isGatewayError(e);
+            throw e;
+        } finally {
+            limit.release(System.nanoTime() - start, inFlight, dropped);
+        }
+    }
+
+    /**
+     * 当前并发限制
+     *
+     * @param payPlatform 支付平台
+     * @param operation   操作
+     * @return 并发限制, 还没有调用过时返回初始限制
+     */
+    public int getLimit(int payPlatform, PayOperation operation) {
+        Limit[] platformLimits = limits.get(payPlatform);
+        return platformLimits == null ? initialLimit : platformLimits[operation.ordinal()].limit;
+    }
+
+    /**
+     * 当前在途请求数
+     */
+    public int getInFlight(int payPlatform, PayOperation operation) {
+        Limit[] platformLimits = limits.get(payPlatform);
+        return platformLimits == null ? 0 : platformLimits[operation.ordinal()].inFlight.get();
+    }
+
+    /**
+     * 当前基线耗时, 单位毫秒, 没有样本时返回0
+     */
+    public double getBaselineRttMillis(int payPlatform, PayOperation operation) {
+        Limit[] platformLimits = limits.get(payPlatform);
+        return platformLimits == null ? 0 : platformLimits[operation.ordinal()].baselineRttNanos / 1e6;
+    }
+
+    /**
+     * 所有调用过的 支付平台 + 操作 的当前并发限制, 用于监控展示
+     *
+     * @return 支付平台 -> 操作 -> 并发限制
+     */
+    public Map<Integer, Map<PayOperation, Integer>> getLimits() {
+        Map<Integer, Map<PayOperation, Integer>> snapshot = new HashMap<>();
+        limits.forEach((payPlatform, platformLimits) -> {
+            Map<PayOperation, Integer> operationLimits = new EnumMap<>(PayOperation.class);
+            for (PayOperation operation : PayOperation.values()) {
+                Limit limit = platformLimits[operation.ordinal()];
+                if (limit.sampled) {
+                    operationLimits.put(operation, limit.limit);
+                }
+            }
+            snapshot.put(payPlatform, operationLimits);
+        });
+        return snapshot;
+    }
+
+    /**
+     * 因为超过限制被拒绝的调用数
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+
+    Limit limitOf(int payPlatform, PayOperation operation) {
+        Limit[] platformLimits = limits.get(payPlatform);
+        if (platformLimits == null) {
+            platformLimits = limits.computeIfAbsent(payPlatform, k -> {
+                Limit[] array = new Limit[PayOperation.values().length];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = new Limit(initialLimit);
+                }
+                return array;
+            });
+        }
+        return platformLimits[operation.ordinal()];
+    }
+
+
+    /**
+     * 一个 支付平台 + 操作 的并发限制
+     */
+    final class Limit {
+
+        final AtomicInteger inFlight = new AtomicInteger();
+
+        volatile int limit;
+
+        volatile boolean sampled;
+
+        /**
+         * 以下字段只在持有锁时修改
+         */
+        private double estimatedLimit;
+        volatile double baselineRttNanos;
+        private long samples;
+
+        Limit(int initialLimit) {
+            this.limit = initialLimit;
+            this.estimatedLimit = initialLimit;
+        }
+
+        /**
+         * @return 进入后的在途请求数, 超过限制返回-1
+         */
+        int tryAcquire() {
+            for (;;) {
+                int current = inFlight.get();
+                if (current >= limit) {
+                    return -1;
+                }
+                if (inFlight.compareAndSet(current, current + 1)) {
+                    return current + 1;
+                }
+            }
+        }
+
+        void release(long rttNanos, int inFlightAtStart, boolean dropped) {
+            inFlight.decrementAndGet();
+            onSample(rttNanos, inFlightAtStart, dropped);
+        }
+
+        synchronized void onSample(long rttNanos, int inFlightAtStart, boolean dropped) {
+            double estimated = estimatedLimit;
+            if (dropped) {
+                estimated = estimated * backoffRatio;
+            } else {
+                samples++;
+                double baseline = samples == 1
+                        ? rttNanos
+                        : baselineRttNanos + (rttNanos - baselineRttNanos) / Math.min(samples, baselineWindow);
+                if (baseline > 2 * rttNanos) {
+                    // 耗时明显恢复, 让基线尽快跟上
+                    baseline *= 0.95;
+                }
+                baselineRttNanos = baseline;
+
+                double gradient = Math.max(0.5, Math.min(1.0, rttTolerance * baseline / rttNanos));
+                // 在途请求不到限制的一半时只收紧不放大
+                double headroom = inFlightAtStart >= estimated / 2 ? Math.sqrt(estimated) : 0;
+                double newLimit = estimated * gradient + headroom;
+                estimated = estimated * (1 - smoothing) + newLimit * smoothing;
+            }
+            estimated = Math.max(minLimit, Math.min(maxLimit, estimated));
+            estimatedLimit = estimated;
+            limit = (int) estimated;
+            sampled = true;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.developcollect.commonpay.guard;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 按接口自适应的超时时间
+ * 记录每个支付平台接口(微信的url后缀, 支付宝的method)的耗时分布,
+ * 样本足够后超时时间取 {@link #percentile}分位耗时 x {@link #multiplier}, 不低于{@link #minTimeoutMillis}, 不超过配置的超时时间;
+ * 样本不够时使用配置的超时时间
+ * <p>
+ * 这样刷卡支付这类平时很快的接口超时会收紧到秒级, 下载对账单这类慢接口仍然使用配置的超时时间
+ * <p>
+ * 支付宝SDK不支持按请求设置超时, 超时时间收紧到SDK自身的超时以下后, 每个支付宝请求都在{@link Deadlines}的线程中执行并限时等待
+ * <p>
+ * 耗时按对数分桶计数, 样本数到达{@link #window}后所有桶减半, 旧的样本逐渐失去权重
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+@Accessors(chain = true)
+public class AdaptiveTimeouts {
+
+    /**
+     * 分桶上界, 单位毫秒, 每个桶比上一个大约20%
+     */
+    private static final long[] BOUNDS = buildBounds();
+
+    /**
+     * 取哪个分位的耗时
+     */
+    @Getter
+    @Setter
+    private double percentile = 0.99;
+
+    /**
+     * 超时时间相对分位耗时的倍数
+     */
+    @Getter
+    @Setter
+    private double multiplier = 3.0;
+
+    /**
+     * 自适应超时时间的下限, 单位毫秒
+     */
+    @Getter
+    @Setter
+    private int minTimeoutMillis = 2000;
+
+    /**
+     * 开始自适应前至少需要的样本数
+     */
+    @Getter
+    @Setter
+    private int minSamples = 100;
+
+    /**
+     * 样本窗口大小
+     */
+    @Getter
+    @Setter
+    private int window = 2000;
+
+    private final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+
+    /**
+     * 记录一次请求的耗时
+     *
+     * @param endpoint      接口
+     * @param elapsedMillis 耗时, 单位毫秒
+     */
+    public void record(String endpoint, long elapsedMillis) {
+        Histogram histogram = histograms.get(endpoint);
+        if (histogram == null) {
+            histogram = histograms.computeIfAbsent(endpoint, k -> new Histogram());
+        }
+        histogram.record(elapsedMillis);
+    }
+
+    /**
+     * 获取接口的超时时间
+     *
+     * @param endpoint                接口
+     * @param configuredTimeoutMillis 配置的超时时间, 单位毫秒
+     * @return 超时时间, 单位毫秒
+     */
+    public int timeoutMillis(String endpoint, int configuredTimeoutMillis) {
+        Histogram histogram = histograms.get(endpoint);
+        if (histogram == null || histogram.total.get() < minSamples) {
+            return configuredTimeoutMillis;
+        }
+        long derived = (long) (histogram.percentile(percentile) * multiplier);
+        return (int) Math.min(configuredTimeoutMillis, Math.max(minTimeoutMillis, derived));
+    }
+
+    /**
+     * 获取接口的分位耗时
+     *
+     * @param endpoint 接口
+     * @param q        分位, 0到1之间
+     * @return 分位耗时, 单位毫秒, 没有样本时返回-1
+     */
+    public long percentileMillis(String endpoint, double q) {
+        Histogram histogram = histograms.get(endpoint);
+        return histogram == null || histogram.total.get() == 0 ? -1 : histogram.percentile(q);
+    }
+
+    /**
+     * 接口当前窗口内的样本数
+     */
+    public long getSampleCount(String endpoint) {
+        Histogram histogram = histograms.get(endpoint);
+        return histogram == null ? 0 : histogram.total.get();
+    }
+
+
+    private static long[] buildBounds() {
+        long[] bounds = new long[80];
+        int n = 0;
+        for (double bound = 1; n < bounds.length && bound < 600_000; bound *= 1.2) {
+            long value = n == 0 ? 1 : Math.max(bounds[n - 1] + 1, Math.round(bound));
+            bounds[n++] = value;
+        }
+        bounds[n - 1] = Long.MAX_VALUE;
+        return Arrays.copyOf(bounds, n);
+    }
+
+
+    /**
+     * 耗时分布
+     */
+    final class Histogram {
+
+        final AtomicLongArray counts = new AtomicLongArray(BOUNDS.length);
+
+        final AtomicLong total = new AtomicLong();
+
+        void record(long elapsedMillis) {
+            int index = Arrays.binarySearch(BOUNDS, elapsedMillis);
+            counts.incrementAndGet(index >= 0 ? index : -index - 1);
+            if (total.incrementAndGet() >= window) {
+                decay();
+            }
+        }
+
+        long percentile(double q) {
+            long target = (long) Math.ceil(total.get() * q);
+            long seen = 0;
+            for (int i = 0; i < BOUNDS.length; i++) {
+                seen += counts.get(i);
+                if (seen >= target && seen > 0) {
+                    return BOUNDS[i];
+                }
+            }
+            return BOUNDS[BOUNDS.length - 2];
+        }
+
+        private synchronized void decay() {
+            if (total.get() < window) {
+                return;
+            }
+            long remaining = 0;
+            for (int i = 0; i < BOUNDS.length; i++) {
+                long count = counts.get(i);
+                long half = count / 2;
+                counts.addAndGet(i, half - count);
+                remaining += half;
+            }
+            total.set(remaining);
+        }
+    }
+}
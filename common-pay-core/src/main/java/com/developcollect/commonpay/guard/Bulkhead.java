@@ -0,0 +1,285 @@
+package com.developcollect.commonpay.guard;
+
+import com.developcollect.commonpay.exception.BulkheadFullException;
+import com.developcollect.commonpay.exception.PayException;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * 隔离舱
+ * 按{@link OperationClass}把调用支付平台的并发分成互不占用的几个舱, 每个舱有自己的并发上限和排队上限,
+ * 大批量的退款或者主动查询再多也只会占满自己的舱, 不会拖慢收银台下单
+ * <p>
+ * 舱内前台调用优先: 有前台调用在排队时后台调用不会进舱, 后台调用最多只能占用舱的一部分并发;
+ * 过载时后台调用先排队延后, 排队满了或者超时就直接放弃
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+@Accessors(chain = true)
+public class Bulkhead {
+
+    /**
+     * 前台调用最长排队时间, 单位毫秒
+     */
+    @Getter
+    @Setter
+    private long maxWaitMillis = 3000;
+
+    /**
+     * 后台调用最长排队时间, 单位毫秒
+     */
+    @Getter
+    @Setter
+    private long backgroundMaxWaitMillis = 30_000;
+
+    private final Compartment[] compartments = new Compartment[OperationClass.values().length];
+
+
+    public Bulkhead() {
+        configure(OperationClass.CHECKOUT, 64, 256);
+        configure(OperationClass.QUERY, 16, 64);
+        configure(OperationClass.SETTLEMENT, 16, 64);
+    }
+
+    /**
+     * 配置某类操作的舱
+     * 后台调用最多占用一半的并发数
+     *
+     * @param operationClass 操作类别
+     * @param maxConcurrent  最大并发数
+     * @param maxQueue       最大排队数, 前台和后台分别计算
+     * @return this
+     */
+    public Bulkhead configure(OperationClass operationClass, int maxConcurrent, int maxQueue) {
+        return configure(operationClass, maxConcurrent, maxQueue, Math.max(1, maxConcurrent / 2));
+    }
+
+    /**
+     * 配置某类操作的舱
+     * 重新配置只影响之后的调用, 已经进舱的调用在原来的舱中完成
+     *
+     * @param operationClass          操作类别
+     * @param maxConcurrent           最大并发数
+     * @param maxQueue                最大排队数, 前台和后台分别计算
+     * @param backgroundMaxConcurrent 后台调用最大并发数
+     * @return this
+     */
+    public Bulkhead configure(OperationClass operationClass, int maxConcurrent, int maxQueue, int backgroundMaxConcurrent) {
+        if (maxConcurrent <= 0 || maxQueue < 0 || backgroundMaxConcurrent < 0) {
+            throw new IllegalArgumentException("illegal bulkhead config");
+        }
+        compartments[operationClass.ordinal()] = new Compartment(maxConcurrent, maxQueue, Math.min(backgroundMaxConcurrent, maxConcurrent));
+        return this;
+    }
+
+    /**
+     * 在舱内执行调用
+     *
+     * @param operationClass 操作类别
+     * @param call           调用
+     * @param <T>            返回值类型
+     * @return 调用结果
+     * @throws BulkheadFullException 舱已满或排队超时
+     */
+    public <T> T execute(OperationClass operationClass, Supplier<T> call) {
+        Compartment compartment = compartments[operationClass.ordinal()];
+        PayCallContext context = PayCallContext.current();
+        boolean background = context.isBackground();
+        // 排队时间不超过调用的剩余时间
+        long timeoutNanos = context.boundNanos(TimeUnit.MILLISECONDS.toNanos(background ? backgroundMaxWaitMillis : maxWaitMillis));
+        boolean acquired;
+        try {
+            acquired = compartment.acquire(background, timeoutNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PayException("等待进入隔离舱时被中断", e);
+        }
+        if (!acquired) {
+            throw new BulkheadFullException((background ? "后台" : "") + operationClass + "类操作并发已满, 请稍后再试");
+        }
+        try {
+            return call.get();
+        } finally {
+            compartment.release();
+        }
+    }
+
+    /**
+     * 当前在舱内执行的调用数
+     */
+    public int getActiveCount(OperationClass operationClass) {
+        return compartments[operationClass.ordinal()].activeCount();
+    }
+
+    /**
+     * 当前排队的调用数, 包括前台和后台
+     */
+    public int getWaitingCount(OperationClass operationClass) {
+        return compartments[operationClass.ordinal()].waitingCount();
+    }
+
+    /**
+     * 排过队的调用数
+     */
+    public long getQueuedCount(OperationClass operationClass) {
+        return compartments[operationClass.ordinal()].queuedCount.sum();
+    }
+
+    /**
+     * 被拒绝的前台调用数
+     */
+    public long getRejectedCount(OperationClass operationClass) {
+        return compartments[operationClass.ordinal()].rejectedCount.sum();
+    }
+
+    /**
+     * 被放弃的后台调用数
+     */
+    public long getShedCount(OperationClass operationClass) {
+        return compartments[operationClass.ordinal()].shedCount.sum();
+    }
+
+
+    /**
+     * 舱
+     */
+    static final class Compartment {
+
+        private final int maxConcurrent;
+        private final int maxQueue;
+        private final int backgroundMaxConcurrent;
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition foregroundTurn = lock.newCondition();
+        private final Condition backgroundTurn = lock.newCondition();
+
+        private int active;
+        private int foregroundWaiting;
+        private int backgroundWaiting;
+
+        final LongAdder queuedCount = new LongAdder();
+        final LongAdder rejectedCount = new LongAdder();
+        final LongAdder shedCount = new LongAdder();
+
+        Compartment(int maxConcurrent, int maxQueue, int backgroundMaxConcurrent) {
+            this.maxConcurrent = maxConcurrent;
+            this.maxQueue = maxQueue;
+            this.backgroundMaxConcurrent = backgroundMaxConcurrent;
+        }
+
+        boolean acquire(boolean background, long timeoutNanos) throws InterruptedException {
+            lock.lock();
+            try {
+                boolean acquired = background
+                        ? acquireBackground(timeoutNanos)
+                        : acquireForeground(timeoutNanos);
+                if (!acquired) {
+                    (background ? shedCount : rejectedCount).increment();
+                    // 放弃时可能刚好被唤醒过, 把机会让给下一个
+                    signalNext();
+                }
+                return acquired;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void release() {
+            lock.lock();
+            try {
+                active--;
+                signalNext();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int activeCount() {
+            lock.lock();
+            try {
+                return active;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int waitingCount() {
+            lock.lock();
+            try {
+                return foregroundWaiting + backgroundWaiting;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean acquireForeground(long timeoutNanos) throws InterruptedException {
+            if (active < maxConcurrent && foregroundWaiting == 0) {
+                active++;
+                return true;
+            }
+            if (foregroundWaiting >= maxQueue) {
+                return false;
+            }
+            queuedCount.increment();
+            foregroundWaiting++;
+            try {
+                while (active >= maxConcurrent) {
+                    if (timeoutNanos <= 0) {
+                        return false;
+                    }
+                    timeoutNanos = foregroundTurn.awaitNanos(timeoutNanos);
+                }
+                active++;
+                return true;
+            } finally {
+                foregroundWaiting--;
+            }
+        }
+
+        private boolean acquireBackground(long timeoutNanos) throws InterruptedException {
+            if (backgroundRunnable() && backgroundWaiting == 0) {
+                active++;
+                return true;
+            }
+            if (backgroundWaiting >= maxQueue) {
+                return false;
+            }
+            queuedCount.increment();
+            backgroundWaiting++;
+            try {
+                while (!backgroundRunnable()) {
+                    if (timeoutNanos <= 0) {
+                        return false;
+                    }
+                    timeoutNanos = backgroundTurn.awaitNanos(timeoutNanos);
+                }
+                active++;
+                return true;
+            } finally {
+                backgroundWaiting--;
+            }
+        }
+
+        private boolean backgroundRunnable() {
+            return foregroundWaiting == 0 && active < backgroundMaxConcurrent;
+        }
+
+        private void signalNext() {
+            if (foregroundWaiting > 0) {
+                if (active < maxConcurrent) {
+                    foregroundTurn.signal();
+                }
+            } else if (backgroundWaiting > 0 && active < backgroundMaxConcurrent) {
+                backgroundTurn.signal();
+            }
+        }
+    }
+}
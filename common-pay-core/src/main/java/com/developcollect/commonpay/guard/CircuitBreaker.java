@@ -0,0 +1,462 @@
+package com.developcollect.commonpay.guard;
+
+import com.developcollect.commonpay.exception.CircuitOpenException;
+import com.developcollect.commonpay.pay.QueryResult;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * 熔断器
+ * 按 支付平台 + 操作 统计最近{@link #windowSeconds}秒的调用, 失败率或慢调用比例超过阈值后熔断:
+ * 熔断期间的调用直接抛出{@link CircuitOpenException}, 不再等到超时;
+ * 熔断{@link #openMillis}毫秒后进入半开状态, 放行{@link #halfOpenPermits}个探测调用,
+ * 全部成功则恢复, 有一个失败就重新熔断
+ * <p>
+ * 默认只有网络异常、超时和因此查询失败的查询结果算失败, 业务异常、订单不存在和本地的参数错误不算, 可以通过{@link #failurePredicate}修改;
+ * 慢调用按{@link #execute}包住的调用耗时判断, 本地限流和排队的等待时间不应该包在里面
+ * <p>
+ * 调用的结果只计入放行它时的状态: 状态变化前放行、变化后才结束的调用不计数, 比如正常状态放行的调用不会被当成半开状态的探测;
+ * 状态变化的监听器和日志在释放熔断器的锁之后执行, 并发的状态变化的通知顺序不保证, 需要当前状态时用{@link #getState}
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+@Slf4j
+@Accessors(chain = true)
+public class CircuitBreaker {
+
+    /**
+     * 熔断状态
+     */
+    public enum State {
+        /**
+         * 正常
+         */
+        CLOSED,
+        /**
+         * 熔断
+         */
+        OPEN,
+        /**
+         * 半开, 正在探测
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * 统计窗口, 单位秒
+     */
+    @Getter
+    @Setter
+    private int windowSeconds = 10;
+
+    /**
+     * 窗口内至少有这么多调用才计算失败率
+     */
+    @Getter
+    @Setter
+    private int minimumCalls = 20;
+
+    /**
+     * 失败率阈值
+     */
+    @Getter
+    @Setter
+    private double failureRateThreshold = 0.5;
+
+    /**
+     * 慢调用阈值, 单位毫秒
+     */
+    @Getter
+    @Setter
+    private long slowCallMillis = 5000;
+
+    /**
+     * 慢调用比例阈值
+     */
+    @Getter
+    @Setter
+    private double slowCallRateThreshold = 0.8;
+
+    /**
+     * 熔断持续时间, 单位毫秒
+     */
+    @Getter
+    @Setter
+    private long openMillis = 30_000;
+
+    /**
+     * 半开状态放行的探测调用数
+     */
+    @Getter
+    @Setter
+    private int halfOpenPermits = 3;
+
+    /**
+     * 判断异常是否算失败
+     */
+    @Getter
+    @Setter
+    private Predicate<Throwable> failurePredicate = GatewayErrors::isGatewayError;
+
+    private final ConcurrentHashMap<Integer, Breaker[]> breakers = new ConcurrentHashMap<>();
+
+    private final List<ICircuitBreakerListener> listeners = new CopyOnWriteArrayList<>();
+
+
+    /**
+     * 在熔断保护下执行调用
+     *
+     * @param payPlatform 支付平台
+     * @param operation   操作
+     * @param call        实际调用
+     * @param <T>         返回值类型
+     * @return 调用结果
+     * @throws CircuitOpenException 已熔断
+     */
+    public <T> T execute(int payPlatform, PayOperation operation, Supplier<T> call) {
+        Breaker breaker = breakerOf(payPlatform, operation);
+        long generation = breaker.tryAcquire();
+        if (generation < 0) {
+            throw new CircuitOpenException(payPlatform, operation);
+        }
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = call.get();
+            // 查询不抛异常, 通信失败记录在结果里
+            failed = result instanceof QueryResult && isFailure((QueryResult<?>) result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            failed = failurePredicate.test(e);
+            throw e;
+        } finally {
+            breaker.onResult(generation, failed, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 已熔断时直接抛出异常, 不占用半开状态的探测名额
+     * 放在限流和隔离舱外面, 熔断期间的调用不用排队等待就失败
+     *
+     * @param payPlatform 支付平台
+     * @param operation   操作
+     * @throws CircuitOpenException 已熔断
+     */
+    public void checkNotOpen(int payPlatform, PayOperation operation) {
+        Breaker[] platformBreakers = breakers.get(payPlatform);
+        if (platformBreakers != null && platformBreakers[operation.ordinal()].isOpen()) {
+            throw new CircuitOpenException(payPlatform, operation);
+        }
+    }
+
+    /**
+     * 当前熔断状态
+     */
+    public State getState(int payPlatform, PayOperation operation) {
+        Breaker[] platformBreakers = breakers.get(payPlatform);
+        return platformBreakers == null ? State.CLOSED : platformBreakers[operation.ordinal()].state;
+    }
+
+    /**
+     * 所有调用过的 支付平台 + 操作 的熔断状态
+     *
+     * @return 支付平台 -> 操作 -> 熔断状态
+     */
+    public Map<Integer, Map<PayOperation, State>> getStates() {
+        Map<Integer, Map<PayOperation, State>> snapshot = new HashMap<>();
+        breakers.forEach((payPlatform, platformBreakers) -> {
+            Map<PayOperation, State> states = new EnumMap<>(PayOperation.class);
+            for (PayOperation operation : PayOperation.values()) {
+                states.put(operation, platformBreakers[operation.ordinal()].state);
+            }
+            snapshot.put(payPlatform, states);
+        });
+        return snapshot;
+    }
+
+    /**
+     * 当前窗口内的失败率, 没有调用时返回0
+     */
+    public double getFailureRate(int payPlatform, PayOperation operation) {
+        Breaker[] platformBreakers = breakers.get(payPlatform);
+        return platformBreakers == null ? 0 : platformBreakers[operation.ordinal()].failureRate();
+    }
+
+    /**
+     * 手动恢复
+     */
+    public void reset(int payPlatform, PayOperation operation) {
+        breakerOf(payPlatform, operation).transition(State.CLOSED);
+    }
+
+    /**
+     * 手动熔断, 比如支付平台公告维护时
+     */
+    public void forceOpen(int payPlatform, PayOperation operation) {
+        breakerOf(payPlatform, operation).transition(State.OPEN);
+    }
+
+    public void addListener(ICircuitBreakerListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ICircuitBreakerListener listener) {
+        listeners.remove(listener);
+    }
+
+
+    private boolean isFailure(QueryResult<?> result) {
+        return result.isTransportError() && result.getCause() != null && failurePredicate.test(result.getCause());
+    }
+
+    private Breaker breakerOf(int payPlatform, PayOperation operation) {
+        Breaker[] platformBreakers = breakers.get(payPlatform);
+        if (platformBreakers == null) {
+            platformBreakers = breakers.computeIfAbsent(payPlatform, k -> {
+                Breaker[] array = new Breaker[PayOperation.values().length];
+                for (PayOperation op : PayOperation.values()) {
+                    array[op.ordinal()] = new Breaker(payPlatform, op);
+                }
+                return array;
+            });
+        }
+        return platformBreakers[operation.ordinal()];
+    }
+
+    private void fireStateChange(int payPlatform, PayOperation operation, State from, State to) {
+        log.warn("支付平台[{}]的{}操作熔断状态 {} -> {}", payPlatform, operation, from, to);
+        for (ICircuitBreakerListener listener : listeners) {
+            try {
+                listener.onStateChange(payPlatform, operation, from, to);
+            } catch (Exception e) {
+                log.error("熔断状态监听器执行失败", e);
+            }
+        }
+    }
+
+
+    /**
+     * 一个 支付平台 + 操作 的熔断器
+     * 窗口按秒分桶, 所有状态只在持有锁时修改, 正常状态下放行不加锁;
+     * 每次状态变化代数加一, 放行时记下代数, 调用结束时代数变了就不计数
+     */
+    final class Breaker {
+
+        private final int payPlatform;
+        private final PayOperation operation;
+
+        volatile State state = State.CLOSED;
+
+        /**
+         * 状态变化的次数, 先改状态再改代数, 读的时候先读代数再读状态
+         */
+        private volatile long generation;
+
+        private long openUntilNanos;
+        private int probes;
+        private int probeSuccesses;
+
+        private long[] bucketSeconds = new long[0];
+        private int[] calls;
+        private int[] failures;
+        private int[] slowCalls;
+
+        Breaker(int payPlatform, PayOperation operation) {
+            this.payPlatform = payPlatform;
+            this.operation = operation;
+        }
+
+        /**
+         * 是否在熔断持续时间内
+         */
+        boolean isOpen() {
+            if (state != State.OPEN) {
+                return false;
+            }
+            synchronized (this) {
+                return state == State.OPEN && System.nanoTime() - openUntilNanos < 0;
+            }
+        }
+
+        /**
+         * 放行调用
+         *
+         * @return 放行时的代数, 传给{@link #onResult}; 不放行时返回-1
+         */
+        long tryAcquire() {
+            long admitted = generation;
+            if (state == State.CLOSED) {
+                return admitted;
+            }
+            State from;
+            synchronized (this) {
+                from = null;
+                if (state == State.OPEN) {
+                    if (System.nanoTime() - openUntilNanos < 0) {
+                        return -1;
+                    }
+                    from = transitionLocked(State.HALF_OPEN);
+                }
+                if (state == State.HALF_OPEN) {
+                    if (probes >= halfOpenPermits) {
+                        admitted = -1;
+                    } else {
+                        probes++;
+                        admitted = generation;
+                    }
+                } else {
+                    admitted = generation;
+                }
+            }
+            if (from != null) {
+                fireStateChange(payPlatform, operation, from, State.HALF_OPEN);
+            }
+            return admitted;
+        }
+
+        void onResult(long admitted, boolean failed, long elapsedNanos) {
+            State from;
+            State to;
+            synchronized (this) {
+                if (admitted != generation) {
+                    // 放行后状态已经变过
+                    return;
+                }
+                to = nextState(failed, elapsedNanos);
+                from = to == null ? null : transitionLocked(to);
+            }
+            if (from != null) {
+                fireStateChange(payPlatform, operation, from, to);
+            }
+        }
+
+        /**
+         * 计入一次调用的结果, 持有锁时调用
+         *
+         * @return 需要转换到的状态, 不需要转换时返回null
+         */
+        private State nextState(boolean failed, long elapsedNanos) {
+            if (state == State.HALF_OPEN) {
+                if (failed) {
+                    return State.OPEN;
+                }
+                return ++probeSuccesses >= halfOpenPermits ? State.CLOSED : null;
+            }
+            if (state == State.OPEN) {
+                // 熔断状态不放行调用, 代数相同时不会走到这里
+                return null;
+            }
+            boolean slow = elapsedNanos >= TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+            int index = bucket(System.nanoTime());
+            calls[index]++;
+            if (failed) {
+                failures[index]++;
+            }
+            if (slow) {
+                slowCalls[index]++;
+            }
+
+            long totalCalls = sum(calls);
+            if (totalCalls < minimumCalls) {
+                return null;
+            }
+            if (sum(failures) >= totalCalls * failureRateThreshold
+                    || sum(slowCalls) >= totalCalls * slowCallRateThreshold) {
+                return State.OPEN;
+            }
+            return null;
+        }
+
+        synchronized double failureRate() {
+            if (calls == null) {
+                return 0;
+            }
+            bucket(System.nanoTime());
+            long totalCalls = sum(calls);
+            return totalCalls == 0 ? 0 : (double) sum(failures) / totalCalls;
+        }
+
+        void transition(State to) {
+            State from;
+            synchronized (this) {
+                from = transitionLocked(to);
+            }
+            if (from != null) {
+                fireStateChange(payPlatform, operation, from, to);
+            }
+        }
+
+        /**
+         * 转换状态, 持有锁时调用; 通知由调用方在释放锁之后发出
+         *
+         * @return 转换前的状态, 状态没有变化时返回null
+         */
+        private State transitionLocked(State to) {
+            State from = state;
+            if (from == to) {
+                return null;
+            }
+            state = to;
+            generation++;
+            probes = 0;
+            probeSuccesses = 0;
+            if (to == State.OPEN) {
+                openUntilNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(openMillis);
+            } else if (to == State.CLOSED) {
+                // 恢复后重新统计
+                bucketSeconds = new long[0];
+            }
+            return from;
+        }
+
+        /**
+         * 定位当前秒的桶, 过期的桶清零
+         */
+        private int bucket(long nowNanos) {
+            if (bucketSeconds.length != windowSeconds) {
+                bucketSeconds = new long[windowSeconds];
+                calls = new int[windowSeconds];
+                failures = new int[windowSeconds];
+                slowCalls = new int[windowSeconds];
+            }
+            long second = TimeUnit.NANOSECONDS.toSeconds(nowNanos);
+            for (int i = 0; i < bucketSeconds.length; i++) {
+                if (second - bucketSeconds[i] >= windowSeconds) {
+                    bucketSeconds[i] = second - windowSeconds;
+                    calls[i] = 0;
+                    failures[i] = 0;
+                    slowCalls[i] = 0;
+                }
+            }
+            int index = (int) Math.floorMod(second, (long) windowSeconds);
+            if (bucketSeconds[index] != second) {
+                bucketSeconds[index] = second;
+                calls[index] = 0;
+                failures[index] = 0;
+                slowCalls[index] = 0;
+            }
+            return index;
+        }
+
+        private long sum(int[] counts) {
+            long sum = 0;
+            for (int count : counts) {
+                sum += count;
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.developcollect.commonpay.guard;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import com.developcollect.commonpay.exception.BulkheadFullException;
+import com.developcollect.commonpay.exception.DeadlineExceededException;
+import com.developcollect.commonpay.exception.PayException;
+
+import java.util.concurrent.*;
+
+/**
+ * 截止时间工具
+ * 用于不支持按请求设置超时的客户端: 到截止时间中止请求, 或者在单独的线程中执行并限时等待结果
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public final class Deadlines {
+
+    private static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(1,
+            ThreadFactoryBuilder.create().setNamePrefix("COMMON-PAY-DEADLINE-TIMER-").setDaemon(true).build());
+
+    /**
+     * 执行限时调用的线程, 调用方超时返回后请求还会在这里继续直到客户端自己超时
+     * 线程用完时拒绝调用, 不在调用方线程中执行, 否则截止时间会失效
+     */
+    private static final ThreadPoolExecutor CALLER = new ThreadPoolExecutor(
+            0, 256, 60, TimeUnit.SECONDS,
+            new SynchronousQueue<>(),
+            ThreadFactoryBuilder.create().setNamePrefix("COMMON-PAY-DEADLINE-CALL-").setDaemon(true).build(),
+            new ThreadPoolExecutor.AbortPolicy());
+
+    static {
+        TIMER.setRemoveOnCancelPolicy(true);
+    }
+
+    private Deadlines() {
+    }
+
+    /**
+     * 在当前调用上下文的截止时间执行中止动作
+     *
+     * @param abort 中止动作
+     * @return 定时任务, 请求完成后要取消; 当前没有截止时间时返回null
+     */
+    public static ScheduledFuture<?> abortAtDeadline(Runnable abort) {
+        PayCallContext context = PayCallContext.current();
+        if (!context.hasDeadline()) {
+            return null;
+        }
+        return TIMER.schedule(abort, Math.max(0, context.remainingNanos()), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 限时执行调用
+     * 时间足够时直接在当前线程执行, 否则在单独的线程中执行并最多等待到超时;
+     * 支付平台无响应时超时的请求会占住线程直到客户端自己超时, 线程用完后新的调用直接被拒绝;
+     * 超时后调用还会继续执行, 只能用于查询等放弃后没有副作用的调用
+     *
+     * @param timeoutMillis       超时时间, 单位毫秒, 还会被限制在当前调用上下文的剩余时间内
+     * @param clientTimeoutMillis 客户端自身的超时时间, 单位毫秒, 不小于这个时间时直接执行
+     * @param call                调用
+     * @param <T>                 返回值类型
+     * @return 调用结果
+     * @throws DeadlineExceededException 超时
+     * @throws BulkheadFullException     执行限时调用的线程已用完, 调用没有发出
+     * @throws Exception                 调用本身抛出的异常
+     */
+    public static <T> T callWithin(long timeoutMillis, long clientTimeoutMillis, Callable<T> call) throws Exception {
+        PayCallContext context = PayCallContext.current();
+        long timeoutNanos = context.boundNanos(TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+        if (timeoutNanos >= TimeUnit.MILLISECONDS.toNanos(clientTimeoutMillis)) {
+            return call.call();
+        }
+        if (timeoutNanos <= 0) {
+            throw new DeadlineExceededException("调用前已超过截止时间");
+        }
+        Future<T> future;
+        try {
+            future = CALLER.submit(call);
+        } catch (RejectedExecutionException e) {
+            throw new BulkheadFullException("限时调用的线程已用完, 支付平台可能无响应, 请稍后再试");
+        }
+        try {
+            return future.get(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new DeadlineExceededException("调用超过" + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + "毫秒未返回", e);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new PayException("等待调用结果时被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.developcollect.commonpay.guard;
+
+import com.developcollect.commonpay.exception.DeadlineExceededException;
+
+import java.io.IOException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 支付平台故障判断
+ * 网络异常和超时说明支付平台或者到支付平台的网络出了问题, 业务异常(参数错误、订单状态不对等)不算
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+final class GatewayErrors {
+
+    private GatewayErrors() {
+    }
+
+    static boolean isGatewayError(Throwable t) {
+        for (int depth = 0; t != null && depth < 8; depth++, t = t.getCause()) {
+            if (t instanceof IOException || t instanceof TimeoutException || t instanceof DeadlineExceededException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
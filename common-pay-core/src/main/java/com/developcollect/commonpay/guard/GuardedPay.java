@@ -0,0 +1,381 @@
+package com.developcollect.commonpay.guard;
+
+import com.developcollect.commonpay.config.GlobalConfig;
+import com.developcollect.commonpay.exception.*;
+import com.developcollect.commonpay.metrics.CallTimings;
+import com.developcollect.commonpay.metrics.IPayMetrics;
+import com.developcollect.commonpay.metrics.Outcome;
+import com.developcollect.commonpay.metrics.PayFlightRecorder;
+import com.developcollect.commonpay.pay.*;
+import com.developcollect.commonpay.warmup.WarmUpSteps;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 带保护的支付对象
+ * 包装实际的支付对象, 在调用前后加上相同调用合并、熔断、限流、隔离舱、自适应并发限制等保护措施,
+ * 保护措施外面是配置的{@link IPayInterceptor}拦截器,
+ * {@link com.developcollect.commonpay.config.DefaultPayFactory}创建的支付对象都会被包装
+ * <p>
+ * 同时按操作统计调用次数和失败次数, 多商户时每个商户有自己的支付对象, 统计也是按商户分开的;
+ * 配置了{@link IPayMetrics}时还会上报每次调用的结果和耗时, 并记录分阶段耗时({@link CallTimings})挂在返回的结果上;
+ * 运行时开启了JFR录制时还会提交{@link PayFlightRecorder}事件
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public class GuardedPay implements Pay {
+
+    private final int payPlatform;
+
+    private final String merchantId;
+
+    private final Pay delegate;
+
+    private final LongAdder[] callCounts = newCounters();
+    private final LongAdder[] errorCounts = newCounters();
+
+    public GuardedPay(int payPlatform, Pay delegate) {
+        this(payPlatform, null, delegate);
+    }
+
+    /**
+     * @param payPlatform 支付平台
+     * @param merchantId  商户标识, 默认配置为null
+     * @param delegate    实际的支付对象
+     */
+    public GuardedPay(int payPlatform, String merchantId, Pay delegate) {
+        this.payPlatform = payPlatform;
+        this.merchantId = merchantId;
+        this.delegate = delegate;
+    }
+
+    /**
+     * 获取被包装的实际支付对象
+     */
+    public Pay getDelegate() {
+        return delegate;
+    }
+
+    public int getPayPlatform() {
+        return payPlatform;
+    }
+
+    /**
+     * 商户标识, 默认配置为null
+     */
+    public String getMerchantId() {
+        return merchantId;
+    }
+
+    /**
+     * 调用次数, 包含被合并的调用
+     */
+    public long getCallCount(PayOperation operation) {
+        return callCounts[operation.ordinal()].sum();
+    }
+
+    /**
+     * 抛出异常的调用次数
+     */
+    public long getErrorCount(PayOperation operation) {
+        return errorCounts[operation.ordinal()].sum();
+    }
+
+    @Override
+    public PayResponse payScan(IPayDTO payDTO) {
+        return invoke(PayOperation.PAY_SCAN, payDTO.getOutTradeNo(), payDTO, null, null, () -> delegate.payScan(payDTO));
+    }
+
+    @Override
+    public PayAppResult payApp(IPayDTO payDTO) {
+        return invoke(PayOperation.PAY_APP, payDTO.getOutTradeNo(), payDTO, null, null, () -> delegate.payApp(payDTO));
+    }
+
+    @Override
+    public String payQrCode(IPayDTO payDTO) {
+        return invoke(PayOperation.PAY_QR_CODE, payDTO.getOutTradeNo(), payDTO, null, null, () -> delegate.payQrCode(payDTO));
+    }
+
+    @Override
+    public String payPcForm(IPayDTO payDTO) {
+        return invoke(PayOperation.PAY_PC_FORM, payDTO.getOutTradeNo(), payDTO, null, null, () -> delegate.payPcForm(payDTO));
+    }
+
+    @Override
+    public String payWapForm(IPayDTO payDTO) {
+        return invoke(PayOperation.PAY_WAP_FORM, payDTO.getOutTradeNo(), payDTO, null, null, () -> delegate.payWapForm(payDTO));
+    }
+
+    @Override
+    public PayWxJsResult payWxJs(IPayDTO payDTO) {
+        return invoke(PayOperation.PAY_WX_JS, payDTO.getOutTradeNo(), payDTO, null, null, () -> delegate.payWxJs(payDTO));
+    }
+
+    @Override
+    public PayWxJsResult payAppletsJs(IPayDTO payDTO) {
+        return invoke(PayOperation.PAY_APPLETS_JS, payDTO.getOutTradeNo(), payDTO, null, null, () -> delegate.payAppletsJs(payDTO));
+    }
+
+    @Override
+    public PayResponse paySync(IPayDTO payDTO) {
+        return invoke(PayOperation.PAY_SYNC, payDTO.getOutTradeNo(), payDTO, null, null, () -> delegate.paySync(payDTO));
+    }
+
+    @Override
+    public PayResponse payQuery(IPayDTO payDTO) {
+        return invokeQuery(PayOperation.PAY_QUERY, payDTO.getOutTradeNo(), payDTO, null, null,
+                () -> delegate.payQueryResult(payDTO), result -> delegate.toPayQueryResponse(payDTO, result));
+    }
+
+    @Override
+    public QueryResult<PayResponse> payQueryResult(IPayDTO payDTO) {
+        return invoke(PayOperation.PAY_QUERY, payDTO.getOutTradeNo(), payDTO, null, null, () -> delegate.payQueryResult(payDTO));
+    }
+
+    @Override
+    public RefundResponse refundSync(IPayDTO payDTO, IRefundDTO refundDTO) {
+        return invoke(PayOperation.REFUND_SYNC, refundDTO.getOutRefundNo(), payDTO, refundDTO, null, () -> delegate.refundSync(payDTO, refundDTO));
+    }
+
+    @Override
+    public RefundResponse refundQuery(IRefundDTO refundDTO) {
+        return invokeQuery(PayOperation.REFUND_QUERY, refundDTO.getOutRefundNo(), null, refundDTO, null,
+                () -> delegate.refundQueryResult(refundDTO), result -> delegate.toRefundQueryResponse(refundDTO, result));
+    }
+
+    @Override
+    public QueryResult<RefundResponse> refundQueryResult(IRefundDTO refundDTO) {
+        return invoke(PayOperation.REFUND_QUERY, refundDTO.getOutRefundNo(), null, refundDTO, null, () -> delegate.refundQueryResult(refundDTO));
+    }
+
+    @Override
+    public TransferResponse transferSync(ITransferDTO transferDTO) {
+        return invoke(PayOperation.TRANSFER_SYNC, transferDTO.getOutTransferNo(), null, null, transferDTO, () -> delegate.transferSync(transferDTO));
+    }
+
+    @Override
+    public TransferResponse transferQuery(ITransferDTO transferDTO) {
+        return invokeQuery(PayOperation.TRANSFER_QUERY, transferDTO.getOutTransferNo(), null, null, transferDTO,
+                () -> delegate.transferQueryResult(transferDTO), result -> delegate.toTransferQueryResponse(transferDTO, result));
+    }
+
+    @Override
+    public QueryResult<TransferResponse> transferQueryResult(ITransferDTO transferDTO) {
+        return invoke(PayOperation.TRANSFER_QUERY, transferDTO.getOutTransferNo(), null, null, transferDTO, () -> delegate.transferQueryResult(transferDTO));
+    }
+
+    @Override
+    public PayResponse closeOrder(IPayDTO payDTO) {
+        return invoke(PayOperation.CLOSE_ORDER, payDTO.getOutTradeNo(), payDTO, null, null, () -> delegate.closeOrder(payDTO));
+    }
+
+    /**
+     * 预热不调用支付平台的业务接口, 不经过拦截器和保护措施
+     */
+    @Override
+    public void warmUp(WarmUpSteps steps) {
+        delegate.warmUp(steps);
+    }
+
+
+    /**
+     * 依次经过配置的拦截器后在保护措施下执行调用
+     * 没有配置拦截器时直接执行, 不创建调用对象
+     *
+     * @param operation   操作
+     * @param no          业务单号
+     * @param payDTO      订单
+     * @param refundDTO   退款单
+     * @param transferDTO 转账单
+     * @param call        实际调用
+     * @param <T>         返回值类型
+     * @return 调用结果
+     */
+    protected <T> T invoke(PayOperation operation, String no,
+                           IPayDTO payDTO, IRefundDTO refundDTO, ITransferDTO transferDTO, Supplier<T> call) {
+        return intercept(operation, payDTO, refundDTO, transferDTO, () -> guard(operation, no, call));
+    }
+
+    /**
+     * 旧的查询方法
+     * 保护措施和指标按{@link QueryResult}判断调用是否失败, 旧方法返回null时分不清是订单不存在还是通信失败;
+     * 拦截器看到的仍然是旧方法的返回值
+     *
+     * @param operation   查询操作
+     * @param no          业务单号
+     * @param payDTO      订单
+     * @param refundDTO   退款单
+     * @param transferDTO 转账单
+     * @param call        返回查询结果的调用
+     * @param legacy      把查询结果转换为旧方法的返回值
+     * @param <R>         查询到的结果类型
+     * @return 旧方法的返回值
+     */
+    protected <R> R invokeQuery(PayOperation operation, String no,
+                                IPayDTO payDTO, IRefundDTO refundDTO, ITransferDTO transferDTO,
+                                Supplier<QueryResult<R>> call, Function<QueryResult<R>, R> legacy) {
+        return intercept(operation, payDTO, refundDTO, transferDTO, () -> legacy.apply(guard(operation, no, call)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T intercept(PayOperation operation, IPayDTO payDTO, IRefundDTO refundDTO, ITransferDTO transferDTO,
+                            Supplier<T> guarded) {
+        List<IPayInterceptor> interceptors = GlobalConfig.payInterceptors();
+        if (interceptors == null || interceptors.isEmpty()) {
+            return guarded.get();
+        }
+        PayInvocation invocation = new PayInvocation(payPlatform, merchantId, operation, payDTO, refundDTO, transferDTO,
+                interceptors.toArray(new IPayInterceptor[0]), guarded);
+        return (T) invocation.proceed();
+    }
+
+    /**
+     * 在保护措施下执行调用
+     *
+     * @param operation 操作
+     * @param no        业务单号
+     * @param call      实际调用
+     * @param <T>       返回值类型
+     * @return 调用结果
+     */
+    protected <T> T guard(PayOperation operation, String no, Supplier<T> call) {
+        callCounts[operation.ordinal()].increment();
+        IPayMetrics metrics = GlobalConfig.payMetrics();
+        PayFlightRecorder recorder = PayFlightRecorder.get();
+        Object event = recorder.callStarted();
+        if (metrics == null && event == null) {
+            return doGuard(operation, no, call);
+        }
+        if (metrics != null) {
+            metrics.callStarted(payPlatform, merchantId, operation);
+        }
+        long start = System.nanoTime();
+        Outcome outcome = Outcome.TRANSPORT_ERROR;
+        CallTimings previous = CallTimings.current();
+        CallTimings timings = CallTimings.start();
+        try {
+            T result = doGuard(operation, no, call);
+            outcome = outcomeOf(result);
+            attachTimings(result, timings);
+            return result;
+        } catch (RuntimeException | Error e) {
+            outcome = outcomeOf(e);
+            throw e;
+        } finally {
+            timings.finish();
+            if (previous != null) {
+                CallTimings.bind(previous);
+            }
+            if (metrics != null) {
+                metrics.callFinished(payPlatform, merchantId, operation, outcome, System.nanoTime() - start);
+                metrics.callTimed(payPlatform, merchantId, operation, timings);
+            }
+            recorder.callFinished(event, payPlatform, operation, no, outcome, timings);
+        }
+    }
+
+    /**
+     * 把分阶段耗时挂到返回的结果上
+     * 被合并的调用共享同一个结果对象, 保留真正请求支付平台的那次调用的耗时
+     */
+    private static void attachTimings(Object result, CallTimings timings) {
+        if (result instanceof QueryResult) {
+            result = ((QueryResult<?>) result).getResponse();
+        }
+        if (result instanceof PayResponse) {
+            PayResponse payResponse = (PayResponse) result;
+            if (payResponse.getTimings() == null) {
+                payResponse.setTimings(timings);
+            }
+        } else if (result instanceof RefundResponse) {
+            RefundResponse refundResponse = (RefundResponse) result;
+            if (refundResponse.getTimings() == null) {
+                refundResponse.setTimings(timings);
+            }
+        } else if (result instanceof TransferResponse) {
+            TransferResponse transferResponse = (TransferResponse) result;
+            if (transferResponse.getTimings() == null) {
+                transferResponse.setTimings(timings);
+            }
+        }
+    }
+
+    private <T> T doGuard(PayOperation operation, String no, Supplier<T> call) {
+        try {
+            PayCallContext context = PayCallContext.current();
+            if (context.hasDeadline()) {
+                // 没有截止时间时不拼接提示信息
+                context.checkDeadline("调用" + operation);
+            }
+            AdaptiveLimiter adaptiveLimiter = GlobalConfig.adaptiveLimiter();
+            // 自适应并发限制只统计真正请求支付平台的耗时, 不包含排队时间
+            Supplier<T> adaptive = adaptiveLimiter == null ? call : () -> adaptiveLimiter.execute(payPlatform, operation, call);
+            CircuitBreaker circuitBreaker = GlobalConfig.circuitBreaker();
+            // 熔断器在限流和隔离舱里面, 慢调用只按请求支付平台的耗时判断, 本地排队等待不会触发熔断
+            Supplier<T> broken = circuitBreaker == null ? adaptive : () -> circuitBreaker.execute(payPlatform, operation, adaptive);
+            Bulkhead bulkhead = GlobalConfig.bulkhead();
+            Supplier<T> isolated = bulkhead == null ? broken : () -> bulkhead.execute(operation.getOperationClass(), broken);
+            RateLimiter rateLimiter = GlobalConfig.rateLimiter();
+            // 限流和隔离舱只针对真正请求支付平台的调用, 被合并的调用不占令牌也不占并发
+            Supplier<T> limited = rateLimiter == null ? isolated : () -> {
+                rateLimiter.acquire(payPlatform, merchantId, operation);
+                return isolated.get();
+            };
+            // 已熔断时在排队之前就失败
+            Supplier<T> guarded = circuitBreaker == null ? limited : () -> {
+                circuitBreaker.checkNotOpen(payPlatform, operation);
+                return limited.get();
+            };
+            SingleFlight singleFlight = GlobalConfig.singleFlight();
+            if (singleFlight == null) {
+                return guarded.get();
+            }
+            return singleFlight.execute(payPlatform, merchantId, operation, no, guarded);
+        } catch (RuntimeException | Error e) {
+            errorCounts[operation.ordinal()].increment();
+            throw e;
+        }
+    }
+
+    /**
+     * 正常返回的调用结果分类
+     * 查询操作都按{@link QueryResult}分类, 传输错误也按异常区分是通信失败还是本地的参数、解析错误
+     */
+    private static Outcome outcomeOf(Object result) {
+        if (result instanceof QueryResult) {
+            QueryResult<?> queryResult = (QueryResult<?>) result;
+            if (queryResult.isTransportError()) {
+                return queryResult.getCause() == null ? Outcome.TRANSPORT_ERROR : outcomeOf(queryResult.getCause());
+            }
+            return queryResult.isBusinessError() ? Outcome.BUSINESS_ERROR : Outcome.SUCCESS;
+        }
+        return Outcome.SUCCESS;
+    }
+
+    private static Outcome outcomeOf(Throwable t) {
+        if (isRejection(t)) {
+            return Outcome.REJECTED;
+        }
+        return GatewayErrors.isGatewayError(t) ? Outcome.TRANSPORT_ERROR : Outcome.BUSINESS_ERROR;
+    }
+
+    private static boolean isRejection(Throwable t) {
+        return t instanceof CircuitOpenException
+                || t instanceof RateLimitException
+                || t instanceof BulkheadFullException
+                || t instanceof ConcurrencyLimitException
+                || t instanceof DuplicateCallException;
+    }
+
+    private static LongAdder[] newCounters() {
+        LongAdder[] counters = new LongAdder[PayOperation.values().length];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+}
@@ -0,0 +1,22 @@
+package com.developcollect.commonpay.guard;
+
+/**
+ * 熔断状态变化监听器
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+@FunctionalInterface
+public interface ICircuitBreakerListener {
+
+    /**
+     * 熔断状态变化
+     * 在发生变化的调用线程上同步回调, 不要做耗时的操作
+     *
+     * @param payPlatform 支付平台
+     * @param operation   操作
+     * @param from        原状态
+     * @param to          新状态
+     */
+    void onStateChange(int payPlatform, PayOperation operation, CircuitBreaker.State from, CircuitBreaker.State to);
+}
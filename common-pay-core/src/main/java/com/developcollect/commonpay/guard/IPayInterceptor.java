@@ -0,0 +1,32 @@
+package com.developcollect.commonpay.guard;
+
+/**
+ * 支付调用拦截器
+ * 按{@link com.developcollect.commonpay.config.GlobalConfig}中配置的顺序包在每个支付方法外面, 排在前面的在外层,
+ * 可以用来计时、缓存、限流、追踪或者修改返回结果
+ * <pre>
+ * IPayInterceptor timing = invocation -&gt; {
+ *     long start = System.nanoTime();
+ *     try {
+ *         return invocation.proceed();
+ *     } finally {
+ *         log.info("{} {}ms", invocation.getOperation(), (System.nanoTime() - start) / 1_000_000);
+ *     }
+ * };
+ * </pre>
+ * 拦截器在熔断、限流等保护措施的外面执行, 直接返回结果(不调用{@link PayInvocation#proceed()})的调用不会请求支付平台
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+@FunctionalInterface
+public interface IPayInterceptor {
+
+    /**
+     * 拦截支付调用
+     *
+     * @param invocation 支付调用
+     * @return 调用结果, 类型必须和被拦截的支付方法的返回值类型一致
+     */
+    Object intercept(PayInvocation invocation);
+}
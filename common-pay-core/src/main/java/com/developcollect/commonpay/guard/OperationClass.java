@@ -0,0 +1,26 @@
+package com.developcollect.commonpay.guard;
+
+/**
+ * 操作类别
+ * 同一类别的操作共用一个隔离舱({@link Bulkhead}), 不同类别之间互不占用并发数
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public enum OperationClass {
+
+    /**
+     * 收银台下单, 用户正在等待
+     */
+    CHECKOUT,
+
+    /**
+     * 查询支付、退款、转账结果
+     */
+    QUERY,
+
+    /**
+     * 退款、转账、关单等资金和订单状态变更
+     */
+    SETTLEMENT
+}
@@ -0,0 +1,197 @@
+package com.developcollect.commonpay.guard;
+
+import com.developcollect.commonpay.exception.DeadlineExceededException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 调用上下文
+ * 记录当前线程上发起的支付调用的属性, 保护措施根据它决定怎么处理这次调用
+ * <p>
+ * 业务线程默认是前台调用; 主动查询、过期订单关闭等后台任务在{@link #background(Supplier)}中调用,
+ * 限流时后台调用只能使用富余的令牌, 不会挤占前台调用
+ * <p>
+ * 在{@link #withDeadline(long, Supplier)}中发起的调用有截止时间, 排队等待、每次请求的超时和失败后的重试
+ * 都只能使用剩余的时间, 嵌套设置时以更早的截止时间为准
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public final class PayCallContext {
+
+    /**
+     * 调用优先级
+     */
+    public enum Priority {
+        /**
+         * 前台调用, 用户正在等待结果
+         */
+        FOREGROUND,
+        /**
+         * 后台调用, 比如定时查询
+         */
+        BACKGROUND
+    }
+
+    private static final ThreadLocal<PayCallContext> CURRENT = new ThreadLocal<>();
+
+    private static final PayCallContext FOREGROUND = new PayCallContext(Priority.FOREGROUND);
+    private static final PayCallContext BACKGROUND = new PayCallContext(Priority.BACKGROUND);
+
+    private final Priority priority;
+
+    private final boolean hasDeadline;
+
+    /**
+     * 截止时间, {@link System#nanoTime()}
+     */
+    private final long deadlineNanos;
+
+
+    private PayCallContext(Priority priority) {
+        this(priority, false, 0);
+    }
+
+    private PayCallContext(Priority priority, boolean hasDeadline, long deadlineNanos) {
+        this.priority = priority;
+        this.hasDeadline = hasDeadline;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * 获取当前线程的调用上下文
+     *
+     * @return 调用上下文, 没有设置时返回前台调用的上下文
+     */
+    public static PayCallContext current() {
+        PayCallContext context = CURRENT.get();
+        return context == null ? FOREGROUND : context;
+    }
+
+    /**
+     * 以后台优先级执行调用
+     *
+     * @param call 调用
+     * @param <T>  返回值类型
+     * @return 调用结果
+     */
+    public static <T> T background(Supplier<T> call) {
+        PayCallContext previous = CURRENT.get();
+        CURRENT.set(previous == null || !previous.hasDeadline
+                ? BACKGROUND
+                : new PayCallContext(Priority.BACKGROUND, true, previous.deadlineNanos));
+        try {
+            return call.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    /**
+     * 以后台优先级执行任务
+     *
+     * @param task 任务
+     */
+    public static void background(Runnable task) {
+        background(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * 在截止时间内执行调用
+     *
+     * @param timeoutMillis 从现在开始允许的最长时间, 单位毫秒
+     * @param call          调用
+     * @param <T>           返回值类型
+     * @return 调用结果
+     * @throws DeadlineExceededException 截止时间已到
+     */
+    public static <T> T withDeadline(long timeoutMillis, Supplier<T> call) {
+        PayCallContext previous = CURRENT.get();
+        PayCallContext outer = previous == null ? FOREGROUND : previous;
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        if (outer.hasDeadline && outer.deadlineNanos - deadlineNanos < 0) {
+            deadlineNanos = outer.deadlineNanos;
+        }
+        CURRENT.set(new PayCallContext(outer.priority, true, deadlineNanos));
+        try {
+            return call.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    public boolean isBackground() {
+        return priority == Priority.BACKGROUND;
+    }
+
+    public boolean hasDeadline() {
+        return hasDeadline;
+    }
+
+    /**
+     * 距离截止时间的纳秒数, 没有截止时间时返回{@link Long#MAX_VALUE}
+     */
+    public long remainingNanos() {
+        return hasDeadline ? deadlineNanos - System.nanoTime() : Long.MAX_VALUE;
+    }
+
+    /**
+     * 距离截止时间的毫秒数, 没有截止时间时返回{@link Long#MAX_VALUE}
+     */
+    public long remainingMillis() {
+        return hasDeadline ? TimeUnit.NANOSECONDS.toMillis(remainingNanos()) : Long.MAX_VALUE;
+    }
+
+    /**
+     * 把等待时间限制在剩余时间内
+     *
+     * @param nanos 等待时间, 单位纳秒
+     * @return 不超过剩余时间的等待时间, 截止时间已到时返回0
+     */
+    public long boundNanos(long nanos) {
+        return hasDeadline ? Math.max(0, Math.min(nanos, remainingNanos())) : nanos;
+    }
+
+    /**
+     * 把超时时间限制在剩余时间内
+     *
+     * @param millis 超时时间, 单位毫秒
+     * @return 不超过剩余时间的超时时间, 最小为1毫秒, 0表示不超时的配置也会被限制
+     */
+    public int boundMillis(int millis) {
+        if (!hasDeadline) {
+            return millis;
+        }
+        long remaining = Math.max(1, remainingMillis());
+        return (int) (millis <= 0 ? Math.min(remaining, Integer.MAX_VALUE) : Math.min(millis, remaining));
+    }
+
+    /**
+     * 检查截止时间
+     *
+     * @param action 要执行的动作, 用于异常信息
+     * @throws DeadlineExceededException 截止时间已到
+     */
+    public void checkDeadline(String action) {
+        if (hasDeadline && remainingNanos() <= 0) {
+            throw new DeadlineExceededException(action + "时已超过截止时间");
+        }
+    }
+
+
+    private static void restore(PayCallContext previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+}
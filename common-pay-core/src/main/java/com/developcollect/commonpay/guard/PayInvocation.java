@@ -0,0 +1,102 @@
+package com.developcollect.commonpay.guard;
+
+import com.developcollect.commonpay.pay.IPayDTO;
+import com.developcollect.commonpay.pay.IRefundDTO;
+import com.developcollect.commonpay.pay.ITransferDTO;
+
+import java.util.function.Supplier;
+
+/**
+ * 一次支付调用
+ * 传给{@link IPayInterceptor}, 调用{@link #proceed()}交给下一个拦截器, 最后一个拦截器之后是实际的支付调用;
+ * 可以多次调用{@link #proceed()}实现重试
+ * <p>
+ * 同一个调用对象只能在发起调用的线程中使用
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public final class PayInvocation {
+
+    private final int payPlatform;
+    private final String merchantId;
+    private final PayOperation operation;
+    private final IPayDTO payDTO;
+    private final IRefundDTO refundDTO;
+    private final ITransferDTO transferDTO;
+
+    private final IPayInterceptor[] interceptors;
+    private final Supplier<?> target;
+
+    /**
+     * 下一个要执行的拦截器
+     */
+    private int index;
+
+    PayInvocation(int payPlatform, String merchantId, PayOperation operation,
+                  IPayDTO payDTO, IRefundDTO refundDTO, ITransferDTO transferDTO,
+                  IPayInterceptor[] interceptors, Supplier<?> target) {
+        this.payPlatform = payPlatform;
+        this.merchantId = merchantId;
+        this.operation = operation;
+        this.payDTO = payDTO;
+        this.refundDTO = refundDTO;
+        this.transferDTO = transferDTO;
+        this.interceptors = interceptors;
+        this.target = target;
+    }
+
+    /**
+     * 执行下一个拦截器, 没有拦截器了就执行实际的支付调用
+     *
+     * @return 调用结果
+     */
+    public Object proceed() {
+        int i = index;
+        if (i >= interceptors.length) {
+            return target.get();
+        }
+        index = i + 1;
+        try {
+            return interceptors[i].intercept(this);
+        } finally {
+            index = i;
+        }
+    }
+
+    public int getPayPlatform() {
+        return payPlatform;
+    }
+
+    /**
+     * 商户标识, 默认配置为null
+     */
+    public String getMerchantId() {
+        return merchantId;
+    }
+
+    public PayOperation getOperation() {
+        return operation;
+    }
+
+    /**
+     * 订单, 退款查询和转账操作为null
+     */
+    public IPayDTO getPayDTO() {
+        return payDTO;
+    }
+
+    /**
+     * 退款单, 只有退款操作有
+     */
+    public IRefundDTO getRefundDTO() {
+        return refundDTO;
+    }
+
+    /**
+     * 转账单, 只有转账操作有
+     */
+    public ITransferDTO getTransferDTO() {
+        return transferDTO;
+    }
+}
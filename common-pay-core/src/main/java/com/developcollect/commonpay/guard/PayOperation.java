@@ -0,0 +1,46 @@
+package com.developcollect.commonpay.guard;
+
+/**
+ * 支付操作
+ * 对应{@link com.developcollect.commonpay.pay.Pay}中的各个方法
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public enum PayOperation {
+
+    PAY_SCAN(OperationClass.CHECKOUT),
+    PAY_APP(OperationClass.CHECKOUT),
+    PAY_QR_CODE(OperationClass.CHECKOUT),
+    PAY_PC_FORM(OperationClass.CHECKOUT),
+    PAY_WAP_FORM(OperationClass.CHECKOUT),
+    PAY_WX_JS(OperationClass.CHECKOUT),
+    PAY_APPLETS_JS(OperationClass.CHECKOUT),
+    PAY_SYNC(OperationClass.CHECKOUT),
+    PAY_QUERY(OperationClass.QUERY),
+    REFUND_SYNC(OperationClass.SETTLEMENT),
+    REFUND_QUERY(OperationClass.QUERY),
+    TRANSFER_SYNC(OperationClass.SETTLEMENT),
+    TRANSFER_QUERY(OperationClass.QUERY),
+    CLOSE_ORDER(OperationClass.SETTLEMENT);
+
+    /**
+     * 操作类别
+     */
+    private final OperationClass operationClass;
+
+    PayOperation(OperationClass operationClass) {
+        this.operationClass = operationClass;
+    }
+
+    /**
+     * 是否是只读的查询操作
+     */
+    public boolean isQuery() {
+        return operationClass == OperationClass.QUERY;
+    }
+
+    public OperationClass getOperationClass() {
+        return operationClass;
+    }
+}
@@ -0,0 +1,308 @@
+package com.developcollect.commonpay.guard;
+
+import com.developcollect.commonpay.cache.CacheKeys;
+import com.developcollect.commonpay.exception.PayException;
+import com.developcollect.commonpay.exception.RateLimitException;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 客户端限流
+ * 支付平台对每个商户的每个接口都有QPS限制, 超过后会返回频率限制的错误;
+ * 这里按 支付平台 + 商户 + 操作 维护令牌桶, 令牌不够时调用方排队等待, 等待时间超过上限才抛出{@link RateLimitException}
+ * <p>
+ * 限流值按支付平台配置时, 每个商户各自有一个同样大小的令牌桶; 也可以单独给某个商户配置
+ * <p>
+ * 后台调用({@link PayCallContext#background(java.util.function.Supplier)})不排队,
+ * 只在令牌桶里还留有{@link #backgroundReserveRatio}以上的令牌时才取, 前台调用多的时候后台调用会一直让路
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+@Accessors(chain = true)
+public class RateLimiter {
+
+    private static final long BACKGROUND_MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * 前台调用最长等待时间, 单位毫秒
+     */
+    @Getter
+    @Setter
+    private long maxWaitMillis = 1000;
+
+    /**
+     * 后台调用最长等待时间, 单位毫秒
+     */
+    @Getter
+    @Setter
+    private long backgroundMaxWaitMillis = 30_000;
+
+    /**
+     * 令牌桶容量, 按多少秒的令牌数计算, 决定了允许的突发调用数
+     */
+    @Getter
+    @Setter
+    private double burstSeconds = 1.0;
+
+    /**
+     * 后台调用要给前台调用保留的令牌比例
+     */
+    @Getter
+    @Setter
+    private double backgroundReserveRatio = 0.5;
+
+    /**
+     * 每秒令牌数, key为 操作 + 支付平台 (+ 商户标识)
+     */
+    private final ConcurrentHashMap<String, Double> limits = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    private final LongAdder[] acquiredCounts = newCounters();
+    private final LongAdder[] waitedCounts = newCounters();
+    private final LongAdder[] waitNanos = newCounters();
+    private final LongAdder[] rejectedCounts = newCounters();
+
+
+    /**
+     * 配置支付平台某个操作的限流值, 每个商户各自按这个值限流
+     *
+     * @param payPlatform      支付平台
+     * @param operation        操作
+     * @param permitsPerSecond 每秒允许的调用数
+     * @return this
+     */
+    public RateLimiter limit(int payPlatform, PayOperation operation, double permitsPerSecond) {
+        return limit(payPlatform, null, operation, permitsPerSecond);
+    }
+
+    /**
+     * 配置某个商户某个操作的限流值
+     *
+     * @param payPlatform      支付平台
+     * @param merchantId       商户标识, 为null时配置支付平台的限流值
+     * @param operation        操作
+     * @param permitsPerSecond 每秒允许的调用数, 小于等于0时不限流
+     * @return this
+     */
+    public RateLimiter limit(int payPlatform, String merchantId, PayOperation operation, double permitsPerSecond) {
+        String key = CacheKeys.of(operation, payPlatform, merchantId);
+        if (permitsPerSecond > 0) {
+            limits.put(key, permitsPerSecond);
+        } else {
+            limits.remove(key);
+        }
+        // 限流值变了, 令牌桶重新创建
+        buckets.clear();
+        return this;
+    }
+
+    /**
+     * 获取一个令牌, 令牌不够时等待
+     *
+     * @param payPlatform 支付平台
+     * @param merchantId  商户标识, 默认配置为null
+     * @param operation   操作
+     * @throws RateLimitException 等待时间超过上限
+     */
+    public void acquire(int payPlatform, String merchantId, PayOperation operation) {
+        if (limits.isEmpty()) {
+            return;
+        }
+        TokenBucket bucket = bucketOf(payPlatform, merchantId, operation);
+        if (bucket == null) {
+            return;
+        }
+        int index = operation.ordinal();
+        PayCallContext context = PayCallContext.current();
+        long waited = context.isBackground()
+                ? acquireBackground(bucket, context)
+                : acquireForeground(bucket, context);
+        if (waited < 0) {
+            rejectedCounts[index].increment();
+            throw new RateLimitException("支付平台[" + payPlatform + "]的" + operation + "操作调用太频繁, 请稍后再试");
+        }
+        acquiredCounts[index].increment();
+        if (waited > 0) {
+            waitedCounts[index].increment();
+            waitNanos[index].add(waited);
+        }
+    }
+
+    /**
+     * 获取到令牌的调用数
+     */
+    public long getAcquiredCount(PayOperation operation) {
+        return acquiredCounts[operation.ordinal()].sum();
+    }
+
+    /**
+     * 需要等待才获取到令牌的调用数
+     */
+    public long getWaitedCount(PayOperation operation) {
+        return waitedCounts[operation.ordinal()].sum();
+    }
+
+    /**
+     * 需要等待的调用的平均等待时间, 单位毫秒
+     */
+    public double getAverageWaitMillis(PayOperation operation) {
+        long waited = waitedCounts[operation.ordinal()].sum();
+        return waited == 0 ? 0 : waitNanos[operation.ordinal()].sum() / 1_000_000.0 / waited;
+    }
+
+    /**
+     * 等待超时被拒绝的调用数
+     */
+    public long getRejectedCount(PayOperation operation) {
+        return rejectedCounts[operation.ordinal()].sum();
+    }
+
+    public long getRejectedCount() {
+        long sum = 0;
+        for (LongAdder counter : rejectedCounts) {
+            sum += counter.sum();
+        }
+        return sum;
+    }
+
+
+    /**
+     * @return 等待的纳秒数, 超过最长等待时间时返回-1
+     */
+    private long acquireForeground(TokenBucket bucket, PayCallContext context) {
+        // 等待时间不超过调用的剩余时间
+        long wait = bucket.reserve(context.boundNanos(TimeUnit.MILLISECONDS.toNanos(maxWaitMillis)));
+        if (wait > 0) {
+            park(System.nanoTime() + wait);
+        }
+        return wait;
+    }
+
+    /**
+     * @return 等待的纳秒数, 超过最长等待时间时返回-1
+     */
+    private long acquireBackground(TokenBucket bucket, PayCallContext context) {
+        long start = System.nanoTime();
+        long deadline = start + context.boundNanos(TimeUnit.MILLISECONDS.toNanos(backgroundMaxWaitMillis));
+        double reserve = Math.min(bucket.capacity * backgroundReserveRatio, bucket.capacity - 1);
+        while (true) {
+            long wait = bucket.tryAcquire(reserve);
+            long now = System.nanoTime();
+            if (wait == 0) {
+                return now - start;
+            }
+            if (now + wait - deadline > 0) {
+                return -1;
+            }
+            // 等待期间前台调用可能又取走了令牌, 所以不一次睡到底
+            park(now + Math.min(wait, BACKGROUND_MAX_PARK_NANOS));
+        }
+    }
+
+    private static void park(long until) {
+        long remaining;
+        while ((remaining = until - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new PayException("等待限流令牌时被中断");
+            }
+        }
+    }
+
+    private TokenBucket bucketOf(int payPlatform, String merchantId, PayOperation operation) {
+        String platformKey = CacheKeys.of(operation, payPlatform, null);
+        String key = merchantId == null ? platformKey : CacheKeys.of(operation, payPlatform, merchantId);
+        TokenBucket bucket = buckets.get(key);
+        if (bucket != null) {
+            return bucket;
+        }
+        Double permitsPerSecond = limits.get(key);
+        if (permitsPerSecond == null) {
+            permitsPerSecond = limits.get(platformKey);
+        }
+        if (permitsPerSecond == null) {
+            return null;
+        }
+        double rate = permitsPerSecond;
+        return buckets.computeIfAbsent(key, k -> new TokenBucket(rate, burstSeconds));
+    }
+
+    private static LongAdder[] newCounters() {
+        LongAdder[] counters = new LongAdder[PayOperation.values().length];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+
+
+    /**
+     * 令牌桶
+     * 令牌数可以是负数, 表示已经被排队的调用预订了
+     */
+    static final class TokenBucket {
+
+        private final double permitsPerNano;
+
+        final double capacity;
+
+        private double tokens;
+
+        private long lastNanos;
+
+        TokenBucket(double permitsPerSecond, double burstSeconds) {
+            this.permitsPerNano = permitsPerSecond / 1_000_000_000.0;
+            this.capacity = Math.max(1, permitsPerSecond * burstSeconds);
+            this.tokens = capacity;
+            this.lastNanos = System.nanoTime();
+        }
+
+        /**
+         * 预订一个令牌
+         *
+         * @return 需要等待的纳秒数, 超过最长等待时间时返回-1并且不预订
+         */
+        synchronized long reserve(long maxWaitNanos) {
+            refill();
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            long wait = (long) Math.ceil((1 - tokens) / permitsPerNano);
+            if (wait > maxWaitNanos) {
+                return -1;
+            }
+            tokens -= 1;
+            return wait;
+        }
+
+        /**
+         * 在保留一部分令牌的前提下尝试取一个令牌
+         *
+         * @return 取到时返回0, 否则返回预计还要等待的纳秒数
+         */
+        synchronized long tryAcquire(double reserve) {
+            refill();
+            if (tokens >= 1 + reserve) {
+                tokens -= 1;
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((1 + reserve - tokens) / permitsPerNano));
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastNanos) * permitsPerNano);
+            lastNanos = now;
+        }
+    }
+}
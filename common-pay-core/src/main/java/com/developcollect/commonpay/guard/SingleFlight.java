@@ -0,0 +1,254 @@
+package com.developcollect.commonpay.guard;
+
+import com.developcollect.commonpay.cache.CacheKeys;
+import com.developcollect.commonpay.exception.DeadlineExceededException;
+import com.developcollect.commonpay.exception.DuplicateCallException;
+import com.developcollect.commonpay.exception.PayException;
+import com.developcollect.commonpay.pay.PayResponse;
+import com.developcollect.commonpay.pay.QueryResult;
+import com.developcollect.commonpay.pay.RefundResponse;
+import com.developcollect.commonpay.pay.TransferResponse;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 相同调用合并
+ * 同一个 支付平台 + 商户 + 操作 + 业务单号 的调用同时只会有一个真正请求支付平台,
+ * 其他同时到达的查询等待这一个调用完成后共享它的结果(或异常)
+ * <p>
+ * 查询操作总是合并; 写操作(下单、退款、转账等)默认拒绝重复的调用,
+ * 因为同一个业务单的两次写操作参数可能不同(比如扫码支付换了付款码), 合并后第二次调用的参数根本没有发给支付平台;
+ * 确认重复的写操作参数一定相同时可以配置成合并
+ * <p>
+ * 等待的调用方最多等到自己的截止时间({@link PayCallContext}), 拿到的是结果的副本, 修改结果不会影响其他调用方
+ * <p>
+ * 在途调用按key分段记录在多个ConcurrentHashMap中, 登记和撤销都不加锁
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+@Accessors(chain = true)
+public class SingleFlight {
+
+    /**
+     * 写操作重复时的处理方式
+     */
+    public enum MutatingPolicy {
+        /**
+         * 等待在途的调用, 共享其结果
+         * 只有同一个业务单的写操作参数一定相同时才能使用
+         */
+        JOIN,
+        /**
+         * 直接拒绝, 抛出{@link DuplicateCallException}
+         */
+        REJECT
+    }
+
+    private static final int DEFAULT_STRIPES = 16;
+
+    /**
+     * 写操作重复时的处理方式
+     */
+    @Getter
+    @Setter
+    private MutatingPolicy mutatingPolicy = MutatingPolicy.REJECT;
+
+    private final ConcurrentHashMap<String, CompletableFuture<Object>>[] inFlight;
+
+    private final LongAdder[] collapsedCounts = newCounters();
+    private final LongAdder[] rejectedCounts = newCounters();
+    private final LongAdder[] executedCounts = newCounters();
+
+
+    public SingleFlight() {
+        this(DEFAULT_STRIPES);
+    }
+
+    @SuppressWarnings("unchecked")
+    public SingleFlight(int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("stripes must be positive");
+        }
+        this.inFlight = new ConcurrentHashMap[stripes];
+        for (int i = 0; i < stripes; i++) {
+            inFlight[i] = new ConcurrentHashMap<>();
+        }
+    }
+
+    /**
+     * 执行默认商户的调用, 相同key的调用在途时合并或拒绝
+     *
+     * @param payPlatform 支付平台
+     * @param operation   操作
+     * @param no          业务单号, 为空时不合并
+     * @param call        实际调用
+     * @param <T>         返回值类型
+     * @return 调用结果
+     */
+    public <T> T execute(int payPlatform, PayOperation operation, String no, Supplier<T> call) {
+        return execute(payPlatform, null, operation, no, call);
+    }
+
+    /**
+     * 执行调用, 相同key的调用在途时合并或拒绝
+     * 不同商户的业务单号可能相同, 它们不会被合并
+     *
+     * @param payPlatform 支付平台
+     * @param merchantId  商户标识, 默认配置为null
+     * @param operation   操作
+     * @param no          业务单号, 为空时不合并
+     * @param call        实际调用
+     * @param <T>         返回值类型
+     * @return 调用结果
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(int payPlatform, String merchantId, PayOperation operation, String no, Supplier<T> call) {
+        if (no == null || no.isEmpty()) {
+            executedCounts[operation.ordinal()].increment();
+            return call.get();
+        }
+        String key = CacheKeys.of(operation, payPlatform, merchantId, no);
+        ConcurrentHashMap<String, CompletableFuture<Object>> stripe = inFlight[(key.hashCode() & 0x7fffffff) % inFlight.length];
+
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> existing = stripe.putIfAbsent(key, mine);
+        if (existing != null) {
+            if (!operation.isQuery() && mutatingPolicy == MutatingPolicy.REJECT) {
+                rejectedCounts[operation.ordinal()].increment();
+                throw new DuplicateCallException("业务单[" + no + "]的" + operation + "操作正在处理中, 请勿重复调用");
+            }
+            collapsedCounts[operation.ordinal()].increment();
+            return (T) copyOf(await(existing));
+        }
+
+        executedCounts[operation.ordinal()].increment();
+        try {
+            T result = call.get();
+            // 发起调用的线程返回后调用方可能修改结果, 等待的调用方从一份不会被修改的副本复制
+            mine.complete(copyOf(result));
+            return result;
+        } catch (Throwable t) {
+            mine.completeExceptionally(t);
+            throw t;
+        } finally {
+            stripe.remove(key, mine);
+        }
+    }
+
+    /**
+     * 当前在途的调用数
+     */
+    public int inFlightCount() {
+        int count = 0;
+        for (ConcurrentHashMap<String, CompletableFuture<Object>> stripe : inFlight) {
+            count += stripe.size();
+        }
+        return count;
+    }
+
+    /**
+     * 被合并(没有真正请求支付平台)的调用数
+     */
+    public long getCollapsedCount() {
+        return sum(collapsedCounts);
+    }
+
+    public long getCollapsedCount(PayOperation operation) {
+        return collapsedCounts[operation.ordinal()].sum();
+    }
+
+    /**
+     * 被拒绝的重复写操作数
+     */
+    public long getRejectedCount() {
+        return sum(rejectedCounts);
+    }
+
+    public long getRejectedCount(PayOperation operation) {
+        return rejectedCounts[operation.ordinal()].sum();
+    }
+
+    /**
+     * 真正执行的调用数
+     */
+    public long getExecutedCount() {
+        return sum(executedCounts);
+    }
+
+    public long getExecutedCount(PayOperation operation) {
+        return executedCounts[operation.ordinal()].sum();
+    }
+
+
+    private static Object await(CompletableFuture<Object> future) {
+        PayCallContext context = PayCallContext.current();
+        try {
+            if (!context.hasDeadline()) {
+                return future.get();
+            }
+            return future.get(context.boundNanos(Long.MAX_VALUE), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new DeadlineExceededException("等待相同调用的结果时已超过截止时间", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PayException("等待相同调用的结果时被中断", e);
+        } catch (ExecutionException e) {
+            // 和发起调用的线程抛出同一个异常
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new PayException(cause);
+        }
+    }
+
+    /**
+     * 复制支付、退款、转账结果和包装它们的查询结果, 其他类型原样返回
+     */
+    private static Object copyOf(Object result) {
+        if (result instanceof PayResponse) {
+            return ((PayResponse) result).copy();
+        }
+        if (result instanceof RefundResponse) {
+            return ((RefundResponse) result).copy();
+        }
+        if (result instanceof TransferResponse) {
+            return ((TransferResponse) result).copy();
+        }
+        if (result instanceof QueryResult) {
+            QueryResult<?> queryResult = (QueryResult<?>) result;
+            Object response = queryResult.getResponse();
+            return response == null ? queryResult : queryResult.withResponse(copyOf(response));
+        }
+        return result;
+    }
+
+    private static LongAdder[] newCounters() {
+        LongAdder[] counters = new LongAdder[PayOperation.values().length];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+
+    private static long sum(LongAdder[] counters) {
+        long sum = 0;
+        for (LongAdder counter : counters) {
+            sum += counter.sum();
+        }
+        return sum;
+    }
+}
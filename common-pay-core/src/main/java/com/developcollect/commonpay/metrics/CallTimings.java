@@ -0,0 +1,206 @@
+package com.developcollect.commonpay.metrics;
+
+/**
+ * 一次支付平台调用的分阶段耗时
+ * 由{@link com.developcollect.commonpay.guard.GuardedPay}在调用开始时绑定到当前线程,
+ * 请求过程中各处用{@link #record(Phase, long)}累加各阶段的耗时, 调用结束后挂在返回的结果对象上并上报到{@link IPayMetrics}
+ * <p>
+ * 主备域名切换重试时同一阶段的耗时会累加; 没有经过的阶段耗时为0, 如复用连接时没有DNS、连接和TLS握手
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public final class CallTimings {
+
+    /**
+     * 调用阶段
+     */
+    public enum Phase {
+        /**
+         * 加载证书、创建客户端等配置相关的资源, 只有第一次调用或配置变更后才有
+         */
+        CONFIG,
+        /**
+         * 请求签名和响应验签
+         */
+        SIGN,
+        /**
+         * 生成请求报文
+         */
+        SERIALIZE,
+        /**
+         * 域名解析
+         */
+        DNS,
+        /**
+         * 建立TCP连接
+         */
+        CONNECT,
+        /**
+         * TLS握手
+         */
+        TLS,
+        /**
+         * 发出请求到收到响应头, 包括支付平台的处理时间;
+         * 支付宝SDK内部的签名、请求和验签拆不开, 整体计入这个阶段
+         */
+        SERVER,
+        /**
+         * 读取响应报文
+         */
+        READ,
+        /**
+         * 解析响应报文
+         */
+        PARSE;
+
+        /**
+         * 小写的名称, 用作指标标签
+         */
+        public String label() {
+            return name().toLowerCase();
+        }
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private static final ThreadLocal<CallTimings> CURRENT = new ThreadLocal<>();
+
+    private final long[] phaseNanos = new long[PHASES.length];
+
+    private final long startNanos = System.nanoTime();
+
+    private long totalNanos = -1;
+
+    private String domain;
+
+
+    /**
+     * 开始记录, 绑定到当前线程
+     *
+     * @return 调用耗时记录, 调用结束时必须调用{@link #finish()}
+     */
+    public static CallTimings start() {
+        CallTimings timings = new CallTimings();
+        CURRENT.set(timings);
+        return timings;
+    }
+
+    /**
+     * 当前线程正在记录的调用耗时
+     *
+     * @return 调用耗时记录, 没有在记录时返回null
+     */
+    public static CallTimings current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 把调用耗时绑定到当前线程, 在其他线程中继续记录同一个调用的耗时时使用
+     *
+     * @param timings 调用耗时记录, 为null时解除绑定
+     */
+    public static void bind(CallTimings timings) {
+        if (timings == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(timings);
+        }
+    }
+
+    /**
+     * 累加当前线程正在记录的调用的阶段耗时, 没有在记录时什么也不做
+     *
+     * @param phase      阶段
+     * @param startNanos 阶段开始时{@link System#nanoTime()}的值
+     */
+    public static void record(Phase phase, long startNanos) {
+        CallTimings timings = CURRENT.get();
+        if (timings != null) {
+            timings.add(phase, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * 累加阶段耗时
+     *
+     * @param phase 阶段
+     * @param nanos 耗时, 单位纳秒
+     */
+    public void add(Phase phase, long nanos) {
+        phaseNanos[phase.ordinal()] += nanos;
+    }
+
+    /**
+     * 记录当前线程正在记录的调用实际请求的域名, 主备切换时以最后一次请求为准; 没有在记录时什么也不做
+     *
+     * @param domain 域名
+     */
+    public static void recordDomain(String domain) {
+        CallTimings timings = CURRENT.get();
+        if (timings != null) {
+            timings.domain = domain;
+        }
+    }
+
+    /**
+     * 结束记录, 解除和当前线程的绑定
+     */
+    public void finish() {
+        totalNanos = System.nanoTime() - startNanos;
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * 阶段耗时
+     *
+     * @param phase 阶段
+     * @return 耗时, 单位纳秒
+     */
+    public long getNanos(Phase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    /**
+     * 阶段耗时
+     *
+     * @param phase 阶段
+     * @return 耗时, 单位毫秒
+     */
+    public double getMillis(Phase phase) {
+        return phaseNanos[phase.ordinal()] / 1e6;
+    }
+
+    /**
+     * 实际请求的域名
+     *
+     * @return 域名, 没有发出请求时返回null
+     */
+    public String getDomain() {
+        return domain;
+    }
+
+    /**
+     * 整个调用的耗时, 包括排队等待和各阶段之外的时间
+     *
+     * @return 耗时, 单位纳秒, 还没有结束时返回到现在为止的耗时
+     */
+    public long getTotalNanos() {
+        return totalNanos >= 0 ? totalNanos : System.nanoTime() - startNanos;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(128)
+                .append("total=").append(String.format("%.1f", getTotalNanos() / 1e6)).append("ms");
+        for (Phase phase : PHASES) {
+            long nanos = phaseNanos[phase.ordinal()];
+            if (nanos > 0) {
+                sb.append(' ').append(phase.label()).append('=').append(String.format("%.1f", nanos / 1e6)).append("ms");
+            }
+        }
+        return sb.toString();
+    }
+}
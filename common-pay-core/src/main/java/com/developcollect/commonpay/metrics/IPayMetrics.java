@@ -0,0 +1,100 @@
+package com.developcollect.commonpay.metrics;
+
+import com.developcollect.commonpay.guard.PayOperation;
+
+/**
+ * 支付指标收集器
+ * 所有支付平台调用、主动查询和结果广播都会上报到这里, 默认实现是{@link InMemoryPayMetrics},
+ * 需要对接Micrometer、Dropwizard等指标库时实现这个接口并设置到{@link com.developcollect.commonpay.config.GlobalConfig}
+ * <p>
+ * 这些方法都在调用线程上执行, 实现必须是线程安全的并且不能阻塞
+ * <p>
+ * 支付平台调用上报的是带商户标识的方法, 需要按商户区分指标时实现这些方法; 默认忽略商户, 转给不带商户标识的方法
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public interface IPayMetrics {
+
+    /**
+     * 支付平台调用开始
+     *
+     * @param payPlatform 支付平台
+     * @param operation   操作
+     */
+    void callStarted(int payPlatform, PayOperation operation);
+
+    /**
+     * 支付平台调用结束, 和{@link #callStarted(int, PayOperation)}成对调用
+     *
+     * @param payPlatform   支付平台
+     * @param operation     操作
+     * @param outcome       调用结果
+     * @param durationNanos 耗时, 单位纳秒
+     */
+    void callFinished(int payPlatform, PayOperation operation, Outcome outcome, long durationNanos);
+
+    /**
+     * 支付平台调用的分阶段耗时, 在{@link #callFinished(int, PayOperation, Outcome, long)}之后调用
+     *
+     * @param payPlatform 支付平台
+     * @param operation   操作
+     * @param timings     分阶段耗时
+     */
+    default void callTimed(int payPlatform, PayOperation operation, CallTimings timings) {
+    }
+
+    /**
+     * 商户的支付平台调用开始
+     *
+     * @param payPlatform 支付平台
+     * @param merchantId  商户标识, 默认配置为null
+     * @param operation   操作
+     */
+    default void callStarted(int payPlatform, String merchantId, PayOperation operation) {
+        callStarted(payPlatform, operation);
+    }
+
+    /**
+     * 商户的支付平台调用结束, 和{@link #callStarted(int, String, PayOperation)}成对调用
+     *
+     * @param payPlatform   支付平台
+     * @param merchantId    商户标识, 默认配置为null
+     * @param operation     操作
+     * @param outcome       调用结果
+     * @param durationNanos 耗时, 单位纳秒
+     */
+    default void callFinished(int payPlatform, String merchantId, PayOperation operation, Outcome outcome, long durationNanos) {
+        callFinished(payPlatform, operation, outcome, durationNanos);
+    }
+
+    /**
+     * 商户的支付平台调用的分阶段耗时, 在{@link #callFinished(int, String, PayOperation, Outcome, long)}之后调用
+     *
+     * @param payPlatform 支付平台
+     * @param merchantId  商户标识, 默认配置为null
+     * @param operation   操作
+     * @param timings     分阶段耗时
+     */
+    default void callTimed(int payPlatform, String merchantId, PayOperation operation, CallTimings timings) {
+        callTimed(payPlatform, operation, timings);
+    }
+
+    /**
+     * 一轮主动查询结束
+     *
+     * @param task          查询任务, pay、refund或transfer
+     * @param backlog       本轮查询的单据数
+     * @param durationNanos 本轮耗时, 单位纳秒
+     */
+    void sweepFinished(String task, int backlog, long durationNanos);
+
+    /**
+     * 一条结果广播结束
+     *
+     * @param type         结果类型, pay、refund或transfer
+     * @param success      是否广播成功
+     * @param latencyNanos 从开始广播(异步广播时从提交)到结束的耗时, 单位纳秒
+     */
+    void broadcastFinished(String type, boolean success, long latencyNanos);
+}
@@ -0,0 +1,513 @@
+package com.developcollect.commonpay.metrics;
+
+import com.developcollect.commonpay.PayPlatform;
+import com.developcollect.commonpay.guard.PayOperation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 内存中的支付指标
+ * 不依赖任何指标库, 计数都用LongAdder累加, 耗时按固定的桶记录成直方图,
+ * 通过{@link #writePrometheus(Appendable)}导出Prometheus文本格式, 可以直接作为/metrics接口的响应
+ * <p>
+ * 导出的指标:
+ * <pre>
+ * commonpay_calls_total{platform,operation,outcome}                  支付平台调用次数
+ * commonpay_call_errors_total{platform,operation}                     失败(业务失败、通信失败、被拒绝)的调用次数
+ * commonpay_call_duration_seconds{platform,operation,outcome}        调用耗时直方图
+ * commonpay_calls_in_flight{platform,operation}                       在途调用数
+ * commonpay_call_phase_duration_seconds{platform,operation,phase}    调用各阶段的耗时直方图, 没有经过的阶段不记录
+ * commonpay_poller_backlog{task}                                      最近一轮主动查询的单据数
+ * commonpay_poller_sweep_duration_seconds{task}                       每轮主动查询的耗时直方图
+ * commonpay_broadcasts_total{type,result}                             结果广播次数
+ * commonpay_broadcast_duration_seconds{type,result}                   结果广播耗时直方图
+ * </pre>
+ * 多商户时支付平台调用的指标还带有merchant标签, 使用默认配置的调用没有这个标签
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public class InMemoryPayMetrics implements IPayMetrics {
+
+    /**
+     * 调用耗时直方图的桶上界, 单位秒
+     */
+    private static final double[] CALL_BUCKETS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30};
+
+    /**
+     * 主动查询耗时直方图的桶上界, 单位秒
+     */
+    private static final double[] SWEEP_BUCKETS = {0.1, 0.5, 1, 5, 10, 30, 60, 300};
+
+    /**
+     * 调用阶段耗时直方图的桶上界, 单位秒, 签名、解析等阶段只有几十微秒到几毫秒
+     */
+    private static final double[] PHASE_BUCKETS = {0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    private static final PayOperation[] OPERATIONS = PayOperation.values();
+    private static final Outcome[] OUTCOMES = Outcome.values();
+    private static final CallTimings.Phase[] PHASES = CallTimings.Phase.values();
+
+    /**
+     * 默认配置在商户表中的标识
+     */
+    private static final String DEFAULT_MERCHANT = "";
+
+    /**
+     * 支付平台 -> 商户标识 -> 调用指标
+     */
+    private final ConcurrentHashMap<Integer, ConcurrentHashMap<String, CallSeries>> platforms = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, SweepSeries> sweeps = new ConcurrentHashMap<>();
+
+    /**
+     * 广播耗时, 下标0是失败, 1是成功
+     */
+    private final ConcurrentHashMap<String, Histogram[]> broadcasts = new ConcurrentHashMap<>();
+
+
+    @Override
+    public void callStarted(int payPlatform, PayOperation operation) {
+        callStarted(payPlatform, null, operation);
+    }
+
+    @Override
+    public void callFinished(int payPlatform, PayOperation operation, Outcome outcome, long durationNanos) {
+        callFinished(payPlatform, null, operation, outcome, durationNanos);
+    }
+
+    @Override
+    public void callTimed(int payPlatform, PayOperation operation, CallTimings timings) {
+        callTimed(payPlatform, null, operation, timings);
+    }
+
+    @Override
+    public void callStarted(int payPlatform, String merchantId, PayOperation operation) {
+        callSeries(payPlatform, merchantId).inFlight[operation.ordinal()].incrementAndGet();
+    }
+
+    @Override
+    public void callFinished(int payPlatform, String merchantId, PayOperation operation, Outcome outcome, long durationNanos) {
+        CallSeries series = callSeries(payPlatform, merchantId);
+        series.inFlight[operation.ordinal()].decrementAndGet();
+        series.calls[operation.ordinal() * OUTCOMES.length + outcome.ordinal()].observe(durationNanos);
+    }
+
+    @Override
+    public void callTimed(int payPlatform, String merchantId, PayOperation operation, CallTimings timings) {
+        CallSeries series = callSeries(payPlatform, merchantId);
+        for (CallTimings.Phase phase : PHASES) {
+            long nanos = timings.getNanos(phase);
+            if (nanos > 0) {
+                series.phases[operation.ordinal() * PHASES.length + phase.ordinal()].observe(nanos);
+            }
+        }
+    }
+
+    @Override
+    public void sweepFinished(String task, int backlog, long durationNanos) {
+        SweepSeries series = sweeps.computeIfAbsent(task, k -> new SweepSeries());
+        series.backlog = backlog;
+        series.duration.observe(durationNanos);
+    }
+
+    @Override
+    public void broadcastFinished(String type, boolean success, long latencyNanos) {
+        Histogram[] histograms = broadcasts.computeIfAbsent(type, k -> new Histogram[]{new Histogram(CALL_BUCKETS), new Histogram(CALL_BUCKETS)});
+        histograms[success ? 1 : 0].observe(latencyNanos);
+    }
+
+    /**
+     * 支付平台所有商户的调用次数
+     *
+     * @param payPlatform 支付平台
+     * @param operation   操作
+     * @param outcome     调用结果
+     * @return 调用次数
+     */
+    public long getCallCount(int payPlatform, PayOperation operation, Outcome outcome) {
+        Map<String, CallSeries> merchants = platforms.get(payPlatform);
+        if (merchants == null) {
+            return 0;
+        }
+        long count = 0;
+        for (CallSeries series : merchants.values()) {
+            count += series.calls[operation.ordinal() * OUTCOMES.length + outcome.ordinal()].count();
+        }
+        return count;
+    }
+
+    /**
+     * 商户的调用次数
+     *
+     * @param payPlatform 支付平台
+     * @param merchantId  商户标识, 默认配置为null
+     * @param operation   操作
+     * @param outcome     调用结果
+     * @return 调用次数
+     */
+    public long getCallCount(int payPlatform, String merchantId, PayOperation operation, Outcome outcome) {
+        CallSeries series = findCallSeries(payPlatform, merchantId);
+        return series == null ? 0 : series.calls[operation.ordinal() * OUTCOMES.length + outcome.ordinal()].count();
+    }
+
+    /**
+     * 支付平台所有商户的在途调用数
+     *
+     * @param payPlatform 支付平台
+     * @param operation   操作
+     * @return 在途调用数
+     */
+    public int getInFlight(int payPlatform, PayOperation operation) {
+        Map<String, CallSeries> merchants = platforms.get(payPlatform);
+        if (merchants == null) {
+            return 0;
+        }
+        int inFlight = 0;
+        for (CallSeries series : merchants.values()) {
+            inFlight += series.inFlight[operation.ordinal()].get();
+        }
+        return inFlight;
+    }
+
+    /**
+     * 商户的在途调用数
+     *
+     * @param payPlatform 支付平台
+     * @param merchantId  商户标识, 默认配置为null
+     * @param operation   操作
+     * @return 在途调用数
+     */
+    public int getInFlight(int payPlatform, String merchantId, PayOperation operation) {
+        CallSeries series = findCallSeries(payPlatform, merchantId);
+        return series == null ? 0 : series.inFlight[operation.ordinal()].get();
+    }
+
+    /**
+     * 最近一轮主动查询的单据数
+     *
+     * @param task 查询任务, pay、refund或transfer
+     * @return 单据数, 还没有查询过时返回0
+     */
+    public int getSweepBacklog(String task) {
+        SweepSeries series = sweeps.get(task);
+        return series == null ? 0 : series.backlog;
+    }
+
+    /**
+     * 结果广播次数
+     *
+     * @param type    结果类型, pay、refund或transfer
+     * @param success 是否广播成功
+     * @return 广播次数
+     */
+    public long getBroadcastCount(String type, boolean success) {
+        Histogram[] histograms = broadcasts.get(type);
+        return histograms == null ? 0 : histograms[success ? 1 : 0].count();
+    }
+
+    /**
+     * 清空所有指标
+     */
+    public void clear() {
+        platforms.clear();
+        sweeps.clear();
+        broadcasts.clear();
+    }
+
+    /**
+     * 导出Prometheus文本格式(version 0.0.4)
+     *
+     * @return 指标文本
+     */
+    public String toPrometheus() {
+        StringBuilder sb = new StringBuilder(4096);
+        try {
+            writePrometheus(sb);
+        } catch (IOException e) {
+            // 写StringBuilder不会出现IO异常
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 以Prometheus文本格式(version 0.0.4)写出所有指标
+     * 没有发生过的调用不输出, 标签按支付平台、商户、操作排序
+     *
+     * @param out 输出目标
+     * @throws IOException 写入失败
+     */
+    public void writePrometheus(Appendable out) throws IOException {
+        Map<String, CallSeries> sortedSeries = sortedCallSeries();
+
+        header(out, "commonpay_calls_total", "counter", "Payment gateway calls.");
+        for (Map.Entry<String, CallSeries> entry : sortedSeries.entrySet()) {
+            String labels = entry.getKey();
+            Histogram[] calls = entry.getValue().calls;
+            for (PayOperation operation : OPERATIONS) {
+                for (Outcome outcome : OUTCOMES) {
+                    long count = calls[operation.ordinal() * OUTCOMES.length + outcome.ordinal()].count();
+                    if (count > 0) {
+                        out.append("commonpay_calls_total{").append(labels)
+                                .append(",operation=\"").append(operationLabel(operation))
+                                .append("\",outcome=\"").append(outcome.label())
+                                .append("\"} ").append(Long.toString(count)).append('\n');
+                    }
+                }
+            }
+        }
+
+        header(out, "commonpay_call_errors_total", "counter", "Payment gateway calls that did not succeed.");
+        for (Map.Entry<String, CallSeries> entry : sortedSeries.entrySet()) {
+            String labels = entry.getKey();
+            Histogram[] calls = entry.getValue().calls;
+            for (PayOperation operation : OPERATIONS) {
+                long errors = 0;
+                boolean called = false;
+                for (Outcome outcome : OUTCOMES) {
+                    long count = calls[operation.ordinal() * OUTCOMES.length + outcome.ordinal()].count();
+                    called |= count > 0;
+                    if (outcome != Outcome.SUCCESS) {
+                        errors += count;
+                    }
+                }
+                if (called) {
+                    out.append("commonpay_call_errors_total{").append(labels)
+                            .append(",operation=\"").append(operationLabel(operation))
+                            .append("\"} ").append(Long.toString(errors)).append('\n');
+                }
+            }
+        }
+
+        header(out, "commonpay_call_duration_seconds", "histogram", "Payment gateway call latency.");
+        for (Map.Entry<String, CallSeries> entry : sortedSeries.entrySet()) {
+            String labels = entry.getKey();
+            Histogram[] calls = entry.getValue().calls;
+            for (PayOperation operation : OPERATIONS) {
+                for (Outcome outcome : OUTCOMES) {
+                    Histogram histogram = calls[operation.ordinal() * OUTCOMES.length + outcome.ordinal()];
+                    histogram.write(out, "commonpay_call_duration_seconds",
+                            labels + ",operation=\"" + operationLabel(operation) + "\",outcome=\"" + outcome.label() + "\"");
+                }
+            }
+        }
+
+        header(out, "commonpay_calls_in_flight", "gauge", "Payment gateway calls in flight.");
+        for (Map.Entry<String, CallSeries> entry : sortedSeries.entrySet()) {
+            String labels = entry.getKey();
+            AtomicInteger[] inFlight = entry.getValue().inFlight;
+            for (PayOperation operation : OPERATIONS) {
+                out.append("commonpay_calls_in_flight{").append(labels)
+                        .append(",operation=\"").append(operationLabel(operation))
+                        .append("\"} ").append(Integer.toString(inFlight[operation.ordinal()].get())).append('\n');
+            }
+        }
+
+        header(out, "commonpay_call_phase_duration_seconds", "histogram", "Payment gateway call latency by phase.");
+        for (Map.Entry<String, CallSeries> entry : sortedSeries.entrySet()) {
+            String labels = entry.getKey();
+            Histogram[] phases = entry.getValue().phases;
+            for (PayOperation operation : OPERATIONS) {
+                for (CallTimings.Phase phase : PHASES) {
+                    Histogram histogram = phases[operation.ordinal() * PHASES.length + phase.ordinal()];
+                    histogram.write(out, "commonpay_call_phase_duration_seconds",
+                            labels + ",operation=\"" + operationLabel(operation) + "\",phase=\"" + phase.label() + "\"");
+                }
+            }
+        }
+
+        Map<String, SweepSeries> sortedSweeps = new TreeMap<>(sweeps);
+        header(out, "commonpay_poller_backlog", "gauge", "Unconfirmed documents seen by the last poller sweep.");
+        for (Map.Entry<String, SweepSeries> entry : sortedSweeps.entrySet()) {
+            out.append("commonpay_poller_backlog{task=\"").append(entry.getKey())
+                    .append("\"} ").append(Integer.toString(entry.getValue().backlog)).append('\n');
+        }
+        header(out, "commonpay_poller_sweep_duration_seconds", "histogram", "Poller sweep duration.");
+        for (Map.Entry<String, SweepSeries> entry : sortedSweeps.entrySet()) {
+            entry.getValue().duration.write(out, "commonpay_poller_sweep_duration_seconds", "task=\"" + entry.getKey() + "\"");
+        }
+
+        Map<String, Histogram[]> sortedBroadcasts = new TreeMap<>(broadcasts);
+        header(out, "commonpay_broadcasts_total", "counter", "Result broadcasts.");
+        for (Map.Entry<String, Histogram[]> entry : sortedBroadcasts.entrySet()) {
+            for (int i = 1; i >= 0; i--) {
+                long count = entry.getValue()[i].count();
+                if (count > 0) {
+                    out.append("commonpay_broadcasts_total{type=\"").append(entry.getKey())
+                            .append("\",result=\"").append(i == 1 ? "success" : "failure")
+                            .append("\"} ").append(Long.toString(count)).append('\n');
+                }
+            }
+        }
+        header(out, "commonpay_broadcast_duration_seconds", "histogram", "Result broadcast latency.");
+        for (Map.Entry<String, Histogram[]> entry : sortedBroadcasts.entrySet()) {
+            for (int i = 1; i >= 0; i--) {
+                entry.getValue()[i].write(out, "commonpay_broadcast_duration_seconds",
+                        "type=\"" + entry.getKey() + "\",result=\"" + (i == 1 ? "success" : "failure") + "\"");
+            }
+        }
+    }
+
+
+    private CallSeries callSeries(int payPlatform, String merchantId) {
+        ConcurrentHashMap<String, CallSeries> merchants = platforms.get(payPlatform);
+        if (merchants == null) {
+            merchants = platforms.computeIfAbsent(payPlatform, k -> new ConcurrentHashMap<>());
+        }
+        String merchant = merchantId == null ? DEFAULT_MERCHANT : merchantId;
+        CallSeries series = merchants.get(merchant);
+        return series != null ? series : merchants.computeIfAbsent(merchant, k -> new CallSeries());
+    }
+
+    private CallSeries findCallSeries(int payPlatform, String merchantId) {
+        Map<String, CallSeries> merchants = platforms.get(payPlatform);
+        return merchants == null ? null : merchants.get(merchantId == null ? DEFAULT_MERCHANT : merchantId);
+    }
+
+    /**
+     * 按支付平台、商户排序的调用指标, key是这组指标的标签
+     */
+    private Map<String, CallSeries> sortedCallSeries() {
+        Map<String, CallSeries> sorted = new LinkedHashMap<>();
+        for (Map.Entry<Integer, ConcurrentHashMap<String, CallSeries>> platform : new TreeMap<>(platforms).entrySet()) {
+            String platformLabel = "platform=\"" + platformLabel(platform.getKey()) + "\"";
+            for (Map.Entry<String, CallSeries> merchant : new TreeMap<>(platform.getValue()).entrySet()) {
+                String labels = DEFAULT_MERCHANT.equals(merchant.getKey())
+                        ? platformLabel
+                        : platformLabel + ",merchant=\"" + escapeLabel(merchant.getKey()) + "\"";
+                sorted.put(labels, merchant.getValue());
+            }
+        }
+        return sorted;
+    }
+
+    private static void header(Appendable out, String name, String type, String help) throws IOException {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n')
+                .append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static String platformLabel(int payPlatform) {
+        if (payPlatform == PayPlatform.ALI_PAY) {
+            return "alipay";
+        }
+        if (payPlatform == PayPlatform.WX_PAY) {
+            return "wxpay";
+        }
+        return Integer.toString(payPlatform);
+    }
+
+    private static String operationLabel(PayOperation operation) {
+        return operation.name().toLowerCase();
+    }
+
+    /**
+     * 商户标识由使用方配置, 按Prometheus文本格式转义反斜杠、双引号和换行
+     */
+    private static String escapeLabel(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+
+    private static final class CallSeries {
+        /**
+         * 下标是 操作序号 * 结果数 + 结果序号
+         */
+        private final Histogram[] calls = new Histogram[OPERATIONS.length * OUTCOMES.length];
+        private final AtomicInteger[] inFlight = new AtomicInteger[OPERATIONS.length];
+        /**
+         * 下标是 操作序号 * 阶段数 + 阶段序号
+         */
+        private final Histogram[] phases = new Histogram[OPERATIONS.length * PHASES.length];
+
+        private CallSeries() {
+            for (int i = 0; i < calls.length; i++) {
+                calls[i] = new Histogram(CALL_BUCKETS);
+            }
+            for (int i = 0; i < phases.length; i++) {
+                phases[i] = new Histogram(PHASE_BUCKETS);
+            }
+            for (int i = 0; i < inFlight.length; i++) {
+                inFlight[i] = new AtomicInteger();
+            }
+        }
+    }
+
+    private static final class SweepSeries {
+        private volatile int backlog;
+        private final Histogram duration = new Histogram(SWEEP_BUCKETS);
+    }
+
+    /**
+     * 固定桶的直方图
+     * 每个桶只记录落在自己范围内的次数, 导出时再累加成Prometheus要求的累计值
+     */
+    private static final class Histogram {
+        private final double[] bounds;
+        private final long[] boundNanos;
+        /**
+         * 最后一个是+Inf桶
+         */
+        private final LongAdder[] buckets;
+        private final LongAdder sumNanos = new LongAdder();
+
+        private Histogram(double[] bounds) {
+            this.bounds = bounds;
+            this.boundNanos = new long[bounds.length];
+            this.buckets = new LongAdder[bounds.length + 1];
+            for (int i = 0; i < bounds.length; i++) {
+                boundNanos[i] = (long) (bounds[i] * 1_000_000_000L);
+            }
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        private void observe(long nanos) {
+            int i = 0;
+            while (i < boundNanos.length && nanos > boundNanos[i]) {
+                i++;
+            }
+            buckets[i].increment();
+            sumNanos.add(nanos);
+        }
+
+        private long count() {
+            long count = 0;
+            for (LongAdder bucket : buckets) {
+                count += bucket.sum();
+            }
+            return count;
+        }
+
+        private void write(Appendable out, String name, String labels) throws IOException {
+            long[] counts = new long[buckets.length];
+            long total = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                counts[i] = buckets[i].sum();
+                total += counts[i];
+            }
+            if (total == 0) {
+                return;
+            }
+            long cumulative = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                cumulative += counts[i];
+                out.append(name).append("_bucket{").append(labels).append(",le=\"")
+                        .append(i < bounds.length ? Double.toString(bounds[i]) : "+Inf")
+                        .append("\"} ").append(Long.toString(cumulative)).append('\n');
+            }
+            out.append(name).append("_sum{").append(labels).append("} ")
+                    .append(Double.toString(sumNanos.sum() / 1e9)).append('\n');
+            out.append(name).append("_count{").append(labels).append("} ")
+                    .append(Long.toString(total)).append('\n');
+        }
+    }
+}
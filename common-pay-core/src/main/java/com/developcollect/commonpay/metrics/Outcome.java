@@ -0,0 +1,37 @@
+package com.developcollect.commonpay.metrics;
+
+/**
+ * 调用结果分类
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public enum Outcome {
+
+    /**
+     * 支付平台正常返回, 包括订单未支付、退款处理中这类非终态的结果
+     */
+    SUCCESS,
+
+    /**
+     * 业务失败, 如参数错误、订单不存在、订单状态不对等
+     */
+    BUSINESS_ERROR,
+
+    /**
+     * 网络异常、超时等通信失败
+     */
+    TRANSPORT_ERROR,
+
+    /**
+     * 被熔断、限流、隔离舱、并发限制或重复调用检查拒绝, 没有请求支付平台
+     */
+    REJECTED;
+
+    /**
+     * 小写的名称, 用作指标标签
+     */
+    public String label() {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,128 @@
+package com.developcollect.commonpay.metrics;
+
+import com.developcollect.commonpay.guard.PayOperation;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * JDK Flight Recorder事件
+ * 运行时有jdk.jfr(JDK 8u262+、11+)时向JFR提交支付平台调用、主动查询和结果广播事件, 没有时什么也不做;
+ * 事件类只在检测到JFR可用后才加载, 不影响在更早的Java 8上运行
+ * <p>
+ * 各个事件默认只记录超过阈值的慢操作, 阈值可以在JFR配置(.jfc)中修改, 事件名以com.developcollect.commonpay开头
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+@Slf4j
+public abstract class PayFlightRecorder {
+
+    private static final String JFR_RECORDER = "com.developcollect.commonpay.metrics.jfr.JfrPayFlightRecorder";
+
+    /**
+     * 不提交任何事件
+     */
+    public static final PayFlightRecorder NOOP = new PayFlightRecorder() {
+        @Override
+        public Object callStarted() {
+            return null;
+        }
+
+        @Override
+        public void callFinished(Object event, int payPlatform, PayOperation operation, String no, Outcome outcome, CallTimings timings) {
+        }
+
+        @Override
+        public Object sweepStarted() {
+            return null;
+        }
+
+        @Override
+        public void sweepFinished(Object event, String task, int backlog) {
+        }
+
+        @Override
+        public Object broadcastStarted() {
+            return null;
+        }
+
+        @Override
+        public void broadcastFinished(Object event, String type, int count, int failed, boolean async) {
+        }
+    };
+
+    private static final PayFlightRecorder INSTANCE = load();
+
+    /**
+     * 当前运行时的事件提交器
+     *
+     * @return 事件提交器, 没有JFR时返回{@link #NOOP}
+     */
+    public static PayFlightRecorder get() {
+        return INSTANCE;
+    }
+
+    private static PayFlightRecorder load() {
+        try {
+            Class.forName("jdk.jfr.FlightRecorder");
+            return (PayFlightRecorder) Class.forName(JFR_RECORDER).newInstance();
+        } catch (ClassNotFoundException | LinkageError e) {
+            return NOOP;
+        } catch (Exception e) {
+            log.debug("JFR事件不可用", e);
+            return NOOP;
+        }
+    }
+
+    /**
+     * 支付平台调用开始
+     *
+     * @return 事件, 没有在记录时返回null
+     */
+    public abstract Object callStarted();
+
+    /**
+     * 支付平台调用结束
+     *
+     * @param event       {@link #callStarted()}返回的事件, 为null时什么也不做
+     * @param payPlatform 支付平台
+     * @param operation   支付操作
+     * @param no          业务单号, 只记录hashCode
+     * @param outcome     结果
+     * @param timings     分阶段耗时, 可以为null
+     */
+    public abstract void callFinished(Object event, int payPlatform, PayOperation operation, String no, Outcome outcome, CallTimings timings);
+
+    /**
+     * 一轮主动查询开始
+     *
+     * @return 事件, 没有在记录时返回null
+     */
+    public abstract Object sweepStarted();
+
+    /**
+     * 一轮主动查询结束
+     *
+     * @param event   {@link #sweepStarted()}返回的事件, 为null时什么也不做
+     * @param task    查询任务, pay、refund或transfer
+     * @param backlog 本轮查询的单据数
+     */
+    public abstract void sweepFinished(Object event, String task, int backlog);
+
+    /**
+     * 结果广播开始
+     *
+     * @return 事件, 没有在记录时返回null
+     */
+    public abstract Object broadcastStarted();
+
+    /**
+     * 结果广播结束
+     *
+     * @param event  {@link #broadcastStarted()}返回的事件, 为null时什么也不做
+     * @param type   结果类型, pay、refund或transfer
+     * @param count  广播的结果数量
+     * @param failed 广播失败的数量
+     * @param async  是否是异步批量广播
+     */
+    public abstract void broadcastFinished(Object event, String type, int count, int failed, boolean async);
+}
@@ -0,0 +1,31 @@
+package com.developcollect.commonpay.metrics.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * 结果广播事件
+ * 同步广播一条结果一个事件, 异步广播每次批量发送一个事件; 默认只记录超过100毫秒的广播
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+@Name("com.developcollect.commonpay.Broadcast")
+@Label("Result Broadcast")
+@Category({"Common Pay"})
+@Description("调用广播器发送支付、退款或转账结果")
+@Threshold("100 ms")
+@StackTrace(false)
+class BroadcastEvent extends Event {
+
+    @Label("Type")
+    String type;
+
+    @Label("Count")
+    int count;
+
+    @Label("Failed")
+    int failed;
+
+    @Label("Async")
+    boolean async;
+}
@@ -0,0 +1,119 @@
+package com.developcollect.commonpay.metrics.jfr;
+
+import com.developcollect.commonpay.guard.PayOperation;
+import com.developcollect.commonpay.metrics.CallTimings;
+import com.developcollect.commonpay.metrics.Outcome;
+import com.developcollect.commonpay.metrics.PayFlightRecorder;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+
+/**
+ * 基于jdk.jfr的事件提交器
+ * 由{@link PayFlightRecorder#get()}在检测到JFR可用后反射创建, 不要直接引用这个类
+ * <p>
+ * 没有开启录制或事件被关闭时不创建事件对象
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public class JfrPayFlightRecorder extends PayFlightRecorder {
+
+    private final EventType callType = EventType.getEventType(PayCallEvent.class);
+    private final EventType sweepType = EventType.getEventType(PollerSweepEvent.class);
+    private final EventType broadcastType = EventType.getEventType(BroadcastEvent.class);
+
+    public JfrPayFlightRecorder() {
+        if (!FlightRecorder.isAvailable()) {
+            throw new IllegalStateException("JFR不可用");
+        }
+    }
+
+    @Override
+    public Object callStarted() {
+        if (!callType.isEnabled()) {
+            return null;
+        }
+        PayCallEvent event = new PayCallEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void callFinished(Object handle, int payPlatform, PayOperation operation, String no, Outcome outcome, CallTimings timings) {
+        if (handle == null) {
+            return;
+        }
+        PayCallEvent event = (PayCallEvent) handle;
+        event.end();
+        if (!event.shouldCommit()) {
+            return;
+        }
+        event.payPlatform = payPlatform;
+        event.operation = operation.name();
+        event.noHash = no == null ? 0 : no.hashCode();
+        event.outcome = outcome.label();
+        if (timings != null) {
+            event.domain = timings.getDomain();
+            event.configNanos = timings.getNanos(CallTimings.Phase.CONFIG);
+            event.signNanos = timings.getNanos(CallTimings.Phase.SIGN);
+            event.serializeNanos = timings.getNanos(CallTimings.Phase.SERIALIZE);
+            event.dnsNanos = timings.getNanos(CallTimings.Phase.DNS);
+            event.connectNanos = timings.getNanos(CallTimings.Phase.CONNECT);
+            event.tlsNanos = timings.getNanos(CallTimings.Phase.TLS);
+            event.serverNanos = timings.getNanos(CallTimings.Phase.SERVER);
+            event.readNanos = timings.getNanos(CallTimings.Phase.READ);
+            event.parseNanos = timings.getNanos(CallTimings.Phase.PARSE);
+        }
+        event.commit();
+    }
+
+    @Override
+    public Object sweepStarted() {
+        if (!sweepType.isEnabled()) {
+            return null;
+        }
+        PollerSweepEvent event = new PollerSweepEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void sweepFinished(Object handle, String task, int backlog) {
+        if (handle == null) {
+            return;
+        }
+        PollerSweepEvent event = (PollerSweepEvent) handle;
+        event.end();
+        if (event.shouldCommit()) {
+            event.task = task;
+            event.backlog = backlog;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object broadcastStarted() {
+        if (!broadcastType.isEnabled()) {
+            return null;
+        }
+        BroadcastEvent event = new BroadcastEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void broadcastFinished(Object handle, String type, int count, int failed, boolean async) {
+        if (handle == null) {
+            return;
+        }
+        BroadcastEvent event = (BroadcastEvent) handle;
+        event.end();
+        if (event.shouldCommit()) {
+            event.type = type;
+            event.count = count;
+            event.failed = failed;
+            event.async = async;
+            event.commit();
+        }
+    }
+}
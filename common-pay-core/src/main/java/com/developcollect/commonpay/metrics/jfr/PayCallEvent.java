@@ -0,0 +1,71 @@
+package com.developcollect.commonpay.metrics.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * 支付平台调用事件
+ * 默认只记录超过100毫秒的调用, 可以在JFR配置中修改阈值
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+@Name("com.developcollect.commonpay.PayCall")
+@Label("Payment Gateway Call")
+@Category({"Common Pay"})
+@Description("一次经过GuardedPay的支付平台调用")
+@Threshold("100 ms")
+@StackTrace(false)
+class PayCallEvent extends Event {
+
+    @Label("Platform")
+    int payPlatform;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Business No Hash")
+    @Description("业务单号的String.hashCode, 不记录单号原文")
+    int noHash;
+
+    @Label("Domain")
+    String domain;
+
+    @Label("Outcome")
+    String outcome;
+
+    @Label("Config")
+    @Timespan(Timespan.NANOSECONDS)
+    long configNanos;
+
+    @Label("Sign")
+    @Timespan(Timespan.NANOSECONDS)
+    long signNanos;
+
+    @Label("Serialize")
+    @Timespan(Timespan.NANOSECONDS)
+    long serializeNanos;
+
+    @Label("DNS")
+    @Timespan(Timespan.NANOSECONDS)
+    long dnsNanos;
+
+    @Label("Connect")
+    @Timespan(Timespan.NANOSECONDS)
+    long connectNanos;
+
+    @Label("TLS")
+    @Timespan(Timespan.NANOSECONDS)
+    long tlsNanos;
+
+    @Label("Server")
+    @Timespan(Timespan.NANOSECONDS)
+    long serverNanos;
+
+    @Label("Read")
+    @Timespan(Timespan.NANOSECONDS)
+    long readNanos;
+
+    @Label("Parse")
+    @Timespan(Timespan.NANOSECONDS)
+    long parseNanos;
+}
@@ -0,0 +1,25 @@
+package com.developcollect.commonpay.metrics.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * 主动查询事件, 一轮查询一个事件
+ * 默认只记录超过1秒的查询
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+@Name("com.developcollect.commonpay.PollerSweep")
+@Label("Poller Sweep")
+@Category({"Common Pay"})
+@Description("QueryNoticeManager的一轮主动查询")
+@Threshold("1 s")
+@StackTrace(false)
+class PollerSweepEvent extends Event {
+
+    @Label("Task")
+    String task;
+
+    @Label("Backlog")
+    int backlog;
+}
@@ -0,0 +1,804 @@
+package com.developcollect.commonpay.notice;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import com.developcollect.commonpay.cache.CacheKeys;
+import com.developcollect.commonpay.cache.TerminalStateCache;
+import com.developcollect.commonpay.config.GlobalConfig;
+import com.developcollect.commonpay.metrics.PayFlightRecorder;
+import com.developcollect.commonpay.notice.outbox.MappedOutbox;
+import com.developcollect.commonpay.notice.outbox.OutboxEntry;
+import com.developcollect.commonpay.pay.PayResponse;
+import com.developcollect.commonpay.pay.RefundResponse;
+import com.developcollect.commonpay.pay.TransferResponse;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 异步广播管道
+ * 广播结果先放入有界队列, 由后台线程批量调用广播器的broadcastAll方法发送,
+ * 发送失败(返回false或抛出异常)时按指数退避重试
+ * <p>
+ * 队列按业务key分成多个分段, 每个分段只有一个发送线程, 所以同一个业务单的结果按提交顺序送达;
+ * 等待重试的结果不占用发送线程, 同一个业务单在它后面提交的结果先暂存, 等它送达或放弃后再发送;
+ * 队列满时等待{@link #offerTimeoutMillis}后拒绝(提交返回false), 不在调用方线程发送, 以免越过队列中同一个业务单之前的结果
+ * <p>
+ * 在{@link GlobalConfig}中配置后生效, 没有配置时仍然在调用方线程同步广播
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+@Slf4j
+@Accessors(chain = true)
+public class BroadcastPipeline {
+
+    /**
+     * 分段数, 即发送线程数
+     */
+    @Getter
+    @Setter
+    private int stripes = 4;
+
+    /**
+     * 队列总容量, 平均分给每个分段
+     */
+    @Getter
+    @Setter
+    private int queueCapacity = 10_000;
+
+    /**
+     * 每批最多发送的条数
+     */
+    @Getter
+    @Setter
+    private int batchSize = 50;
+
+    /**
+     * 最多发送次数, 包含第一次
+     */
+    @Getter
+    @Setter
+    private int maxAttempts = 5;
+
+    /**
+     * 首次重试的退避时间, 单位毫秒
+     */
+    @Getter
+    @Setter
+    private long initialBackoffMillis = 100;
+
+    /**
+     * 最大退避时间, 单位毫秒
+     */
+    @Getter
+    @Setter
+    private long maxBackoffMillis = 5_000;
+
+    /**
+     * 队列满时入队的最长等待时间, 超时后拒绝, 单位毫秒
+     */
+    @Getter
+    @Setter
+    private long offerTimeoutMillis = 10;
+
+    /**
+     * 发件箱
+     * 配置后结果在入队前先写入发件箱, 送达后标记完成, 进程重启时重新发送没有送达的结果
+     */
+    @Getter
+    @Setter
+    private MappedOutbox outbox;
+
+
+    private volatile Stripe[] stripeArray;
+
+    /**
+     * 已入队但还没送达的终态结果, 用于去重
+     * 主动查询在结果送达前可能会再次提交同一个终态结果
+     */
+    private final ConcurrentHashMap<String, Boolean> pendingTerminal = new ConcurrentHashMap<>();
+
+    /**
+     * 放弃或拒绝发送后仍留在发件箱中的结果, 业务key -> 发件箱记录id
+     * 同一个业务单再次提交时写入新记录并标记旧记录完成, 发件箱中每个业务单只留一条, 重启后不会重复发送
+     */
+    private final ConcurrentHashMap<String, Long> abandonedOutboxIds = new ConcurrentHashMap<>();
+
+    private final LongAdder submittedCount = new LongAdder();
+    private final LongAdder deliveredCount = new LongAdder();
+    private final LongAdder retryCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LongAdder latencyNanosTotal = new LongAdder();
+    private final AtomicLong latencyNanosMax = new AtomicLong();
+
+
+    /**
+     * 初始化方法, 启动发送线程
+     * 重复调用时会先停止之前的发送线程, 之前队列中还没发送的结果会在调用方线程发送完
+     *
+     * @author zak
+     * @since 2.2.0
+     */
+    public synchronized void init() {
+        if (stripes <= 0 || queueCapacity < stripes || batchSize <= 0 || maxAttempts <= 0) {
+            throw new IllegalArgumentException("broadcast pipeline config invalid");
+        }
+        shutdown();
+
+        ThreadFactory threadFactory = ThreadFactoryBuilder.create().setNamePrefix("COMMON-PAY-BROADCAST-").build();
+        Stripe[] newStripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++) {
+            newStripes[i] = new Stripe(queueCapacity / stripes);
+            newStripes[i].thread = threadFactory.newThread(newStripes[i]);
+        }
+        for (Stripe stripe : newStripes) {
+            stripe.thread.start();
+        }
+        stripeArray = newStripes;
+
+        if (outbox != null) {
+            replay();
+        }
+    }
+
+    /**
+     * 停止发送线程, 发送线程发完手上的一批后退出, 队列中剩下的和等待重试的结果在当前线程发送完
+     *
+     * @author zak
+     * @since 2.2.0
+     */
+    public synchronized void shutdown() {
+        Stripe[] oldStripes = stripeArray;
+        if (oldStripes == null) {
+            return;
+        }
+        stripeArray = null;
+        for (Stripe stripe : oldStripes) {
+            // 不中断发送线程, 让它把手上这一批发完
+            stripe.running = false;
+        }
+        for (Stripe stripe : oldStripes) {
+            try {
+                stripe.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            List<Task> rest = stripe.drainAll();
+            if (!rest.isEmpty()) {
+                deliverNow(rest);
+            }
+        }
+        if (outbox != null) {
+            outbox.close();
+        }
+        abandonedOutboxIds.clear();
+    }
+
+    /**
+     * 提交支付结果
+     *
+     * @param payResponse 支付结果
+     * @return 是否已受理
+     */
+    public boolean submit(PayResponse payResponse) {
+        return submit(newTask(payResponse));
+    }
+
+    /**
+     * 提交退款结果
+     *
+     * @param refundResponse 退款结果
+     * @return 是否已受理
+     */
+    public boolean submit(RefundResponse refundResponse) {
+        return submit(newTask(refundResponse));
+    }
+
+    /**
+     * 提交转账结果
+     *
+     * @param transferResponse 转账结果
+     * @return 是否已受理
+     */
+    public boolean submit(TransferResponse transferResponse) {
+        return submit(newTask(transferResponse));
+    }
+
+    /**
+     * 是否已启动
+     */
+    public boolean isRunning() {
+        return stripeArray != null;
+    }
+
+    /**
+     * 当前队列中等待发送的条数
+     */
+    public int queueDepth() {
+        Stripe[] current = stripeArray;
+        if (current == null) {
+            return 0;
+        }
+        int depth = 0;
+        for (Stripe stripe : current) {
+            depth += stripe.queue.size();
+        }
+        return depth;
+    }
+
+    public long getSubmittedCount() {
+        return submittedCount.sum();
+    }
+
+    public long getDeliveredCount() {
+        return deliveredCount.sum();
+    }
+
+    public long getRetryCount() {
+        return retryCount.sum();
+    }
+
+    /**
+     * 重试次数用尽后放弃发送的条数
+     * 放弃的终态结果没有标记为已广播, 下次主动查询时会再次广播
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * 队列满被拒绝的条数
+     * 拒绝的终态结果没有标记为已广播, 下次主动查询时会再次广播; 配置了发件箱时重启后也会重新发送
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    /**
+     * 从提交到送达的平均耗时, 单位毫秒
+     */
+    public double averageLatencyMillis() {
+        long delivered = getDeliveredCount();
+        return delivered == 0 ? 0 : latencyNanosTotal.sum() / 1e6 / delivered;
+    }
+
+    /**
+     * 从提交到送达的最大耗时, 单位毫秒
+     */
+    public double maxLatencyMillis() {
+        return latencyNanosMax.get() / 1e6;
+    }
+
+
+    private Task newTask(Object response) {
+        if (response instanceof PayResponse) {
+            PayResponse payResponse = (PayResponse) response;
+            String key = CacheKeys.of(CacheKeys.PAY, payResponse.getPayPlatform(), payResponse.getMerchantId(), payResponse.getOutTradeNo());
+            return new Task(response, CacheKeys.PAY, key, TerminalStateCache.isTerminal(payResponse));
+        }
+        if (response instanceof RefundResponse) {
+            RefundResponse refundResponse = (RefundResponse) response;
+            String key = CacheKeys.of(CacheKeys.REFUND, refundResponse.getPayPlatform(), refundResponse.getMerchantId(), refundResponse.getOutRefundNo());
+            return new Task(response, CacheKeys.REFUND, key, TerminalStateCache.isTerminal(refundResponse));
+        }
+        TransferResponse transferResponse = (TransferResponse) response;
+        String key = CacheKeys.of(CacheKeys.TRANSFER, transferResponse.getPayPlatform(), transferResponse.getMerchantId(), transferResponse.getOutTransferNo());
+        return new Task(response, CacheKeys.TRANSFER, key, TerminalStateCache.isTerminal(transferResponse));
+    }
+
+    /**
+     * 重新发送发件箱中没有送达的结果
+     */
+    private void replay() {
+        List<OutboxEntry> entries;
+        try {
+            entries = outbox.open();
+        } catch (IOException e) {
+            log.error("发件箱打开失败, 本次运行不使用发件箱", e);
+            outbox = null;
+            return;
+        }
+        if (!entries.isEmpty()) {
+            log.info("发件箱中有{}条结果没有送达, 重新发送", entries.size());
+        }
+        for (OutboxEntry entry : entries) {
+            Task task = newTask(entry.getMessage());
+            task.outboxId = entry.getId();
+            submit(task);
+        }
+    }
+
+    private boolean submit(Task task) {
+        if (task.terminal && task.key != null && pendingTerminal.putIfAbsent(task.key, Boolean.TRUE) != null) {
+            // 同一个终态结果已经在队列里了
+            markOutboxDone(task);
+            return true;
+        }
+        submittedCount.increment();
+
+        MappedOutbox currentOutbox = outbox;
+        if (currentOutbox != null && task.outboxId < 0) {
+            Long abandonedId = task.key == null ? null : abandonedOutboxIds.remove(task.key);
+            try {
+                task.outboxId = currentOutbox.append((byte) task.type, (Serializable) task.response);
+            } catch (Exception e) {
+                log.warn("结果写入发件箱失败, 仍然继续发送", e);
+            }
+            if (abandonedId != null) {
+                if (task.outboxId >= 0) {
+                    // 新记录写入后才标记旧记录, 发件箱中始终有这个业务单的结果
+                    currentOutbox.markDone(abandonedId);
+                } else {
+                    abandonedOutboxIds.putIfAbsent(task.key, abandonedId);
+                }
+            }
+        }
+
+        Stripe[] current = stripeArray;
+        if (current == null) {
+            // 正在停止
+            return deliverNow(Collections.singletonList(task)) == 0;
+        }
+        int hash = task.key == null ? System.identityHashCode(task.response) : task.key.hashCode();
+        Stripe stripe = current[(hash & 0x7fffffff) % current.length];
+        try {
+            if (stripe.queue.offer(task, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 不在调用方线程发送, 否则会越过队列中同一个业务单之前的结果
+        rejectedCount.increment();
+        log.warn("广播队列已满, 拒绝广播结果: {}", task.response);
+        BroadcastUtil.broadcastFinished(typeOf(task), false, task.submitNanos);
+        abandon(task);
+        release(task);
+        return false;
+    }
+
+    /**
+     * 在当前线程发送结果, 失败的按指数退避重试
+     * 只在停止管道时使用, 同一个业务单前一条结果有了最终结论才会发送后一条
+     *
+     * @return 重试次数用尽后仍然失败的条数
+     */
+    private int deliverNow(List<Task> batch) {
+        int dropped = 0;
+        List<Task> chunk = new ArrayList<>(batch.size());
+        Set<String> keys = new HashSet<>();
+        for (Task task : batch) {
+            if (task.key != null && !keys.add(task.key)) {
+                dropped += retryNow(chunk);
+                chunk = new ArrayList<>();
+                keys.clear();
+                keys.add(task.key);
+            }
+            chunk.add(task);
+        }
+        return dropped + retryNow(chunk);
+    }
+
+    private int retryNow(List<Task> chunk) {
+        List<Task> remaining = chunk;
+        long backoff = initialBackoffMillis;
+        for (int attempt = 1; !remaining.isEmpty(); attempt++) {
+            remaining = attempt(remaining);
+            if (remaining.isEmpty()) {
+                return 0;
+            }
+            if (attempt >= maxAttempts || Thread.currentThread().isInterrupted()) {
+                giveUp(remaining, attempt);
+                return remaining.size();
+            }
+            retryCount.add(remaining.size());
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                // 停止时不再等待, 但仍然尝试最后一次
+                Thread.currentThread().interrupt();
+                attempt = maxAttempts - 1;
+            }
+            backoff = Math.min(backoff * 2, maxBackoffMillis);
+        }
+        return 0;
+    }
+
+    /**
+     * 发送一次, 不重试
+     * 同一个业务key在一次broadcastAll中最多出现一次, 由调用方保证
+     *
+     * @return 发送失败的结果
+     */
+    private List<Task> attempt(List<Task> chunk) {
+        List<Task> pays = new ArrayList<>();
+        List<Task> refunds = new ArrayList<>();
+        List<Task> transfers = new ArrayList<>();
+        for (Task task : chunk) {
+            if (task.response instanceof PayResponse) {
+                pays.add(task);
+            } else if (task.response instanceof RefundResponse) {
+                refunds.add(task);
+            } else {
+                transfers.add(task);
+            }
+        }
+
+        List<Task> failed = new ArrayList<>();
+        if (!pays.isEmpty()) {
+            IPayBroadcaster broadcaster = GlobalConfig.payBroadcaster();
+            attempt(pays, broadcaster == null ? null : broadcaster::broadcastAll, failed);
+        }
+        if (!refunds.isEmpty()) {
+            IRefundBroadcaster broadcaster = GlobalConfig.refundBroadcaster();
+            attempt(refunds, broadcaster == null ? null : broadcaster::broadcastAll, failed);
+        }
+        if (!transfers.isEmpty()) {
+            ITransferBroadcaster broadcaster = GlobalConfig.transferBroadcaster();
+            attempt(transfers, broadcaster == null ? null : broadcaster::broadcastAll, failed);
+        }
+        return failed;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> void attempt(List<Task> tasks, Function<List<T>, List<T>> broadcastAll, List<Task> failedTasks) {
+        if (broadcastAll == null) {
+            // 广播器被移除了, 没有可以发送的目标
+            drop(tasks);
+            return;
+        }
+
+        List<T> responses = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            responses.add((T) task.response);
+        }
+        List<T> failed;
+        Object event = PayFlightRecorder.get().broadcastStarted();
+        try {
+            failed = broadcastAll.apply(responses);
+        } catch (Exception e) {
+            log.warn("广播结果失败, 共{}条", responses.size(), e);
+            failed = responses;
+        }
+        PayFlightRecorder.get().broadcastFinished(event, typeOf(tasks.get(0)),
+                responses.size(), failed == null ? 0 : failed.size(), true);
+
+        for (Task task : tasks) {
+            if (failed != null && containsIdentity(failed, task.response)) {
+                failedTasks.add(task);
+            } else {
+                delivered(task);
+            }
+        }
+    }
+
+    private void giveUp(List<Task> tasks, int attempts) {
+        log.error("广播结果失败, 已发送{}次, 放弃{}条", attempts, tasks.size());
+        drop(tasks);
+    }
+
+    /**
+     * 放弃发送
+     * 放弃的终态结果没有标记为已广播, 下次主动查询时会再次广播
+     */
+    private void drop(List<Task> tasks) {
+        droppedCount.add(tasks.size());
+        for (Task task : tasks) {
+            BroadcastUtil.broadcastFinished(typeOf(task), false, task.submitNanos);
+            abandon(task);
+        }
+        release(tasks);
+    }
+
+    /**
+     * 放弃或拒绝的结果留在发件箱中, 记下记录id, 同一个业务单再次提交时替换
+     * 没有业务key的结果再次提交时认不出来, 直接标记完成, 以免重启后重复发送
+     */
+    private void abandon(Task task) {
+        MappedOutbox currentOutbox = outbox;
+        if (task.outboxId < 0 || currentOutbox == null) {
+            return;
+        }
+        if (task.key == null) {
+            currentOutbox.markDone(task.outboxId);
+            return;
+        }
+        Long previous = abandonedOutboxIds.put(task.key, task.outboxId);
+        if (previous != null && previous != task.outboxId) {
+            currentOutbox.markDone(previous);
+        }
+    }
+
+    /**
+     * 第attempts次发送失败后的退避时间
+     */
+    private long backoffNanos(int attempts) {
+        long millis = initialBackoffMillis << Math.min(attempts - 1, 20);
+        return TimeUnit.MILLISECONDS.toNanos(Math.min(millis, maxBackoffMillis));
+    }
+
+    private static boolean containsIdentity(List<?> list, Object o) {
+        for (Object e : list) {
+            if (e == o) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void delivered(Task task) {
+        long latency = System.nanoTime() - task.submitNanos;
+        deliveredCount.increment();
+        latencyNanosTotal.add(latency);
+        latencyNanosMax.accumulateAndGet(latency, Math::max);
+        BroadcastUtil.broadcastFinished(typeOf(task), true, task.submitNanos);
+
+        TerminalStateCache cache = GlobalConfig.terminalStateCache();
+        if (cache != null) {
+            if (task.response instanceof PayResponse) {
+                cache.markBroadcasted((PayResponse) task.response);
+            } else if (task.response instanceof RefundResponse) {
+                cache.markBroadcasted((RefundResponse) task.response);
+            } else {
+                cache.markBroadcasted((TransferResponse) task.response);
+            }
+        }
+        markOutboxDone(task);
+        release(task);
+    }
+
+    private static String typeOf(Task task) {
+        if (task.response instanceof PayResponse) {
+            return "pay";
+        }
+        return task.response instanceof RefundResponse ? "refund" : "transfer";
+    }
+
+    private void markOutboxDone(Task task) {
+        MappedOutbox currentOutbox = outbox;
+        if (task.outboxId >= 0 && currentOutbox != null) {
+            currentOutbox.markDone(task.outboxId);
+        }
+    }
+
+    private void release(List<Task> tasks) {
+        for (Task task : tasks) {
+            release(task);
+        }
+    }
+
+    private void release(Task task) {
+        if (task.terminal && task.key != null) {
+            pendingTerminal.remove(task.key);
+        }
+    }
+
+
+    private static final class Task {
+        private final Object response;
+        private final char type;
+        private final String key;
+        private final boolean terminal;
+        private final long submitNanos = System.nanoTime();
+        private long outboxId = -1;
+        /**
+         * 已经发送失败的次数, 只在发送线程中修改
+         */
+        private int attempts;
+        private long retryAtNanos;
+
+        private Task(Object response, char type, String key, boolean terminal) {
+            this.response = response;
+            this.type = type;
+            this.key = key;
+            this.terminal = terminal;
+        }
+    }
+
+    private final class Stripe implements Runnable {
+        private final ArrayBlockingQueue<Task> queue;
+        private volatile boolean running = true;
+        private Thread thread;
+
+        /**
+         * 等待重试的结果, 按重试时间排序
+         * 这个和下面两个字段只在发送线程中访问, 停止时在发送线程退出后由停止的线程接手
+         */
+        private final PriorityQueue<Task> retries = new PriorityQueue<>(Comparator.comparingLong((Task t) -> t.retryAtNanos));
+
+        /**
+         * 正在等待重试的业务key -> 同一个业务单在它后面提交, 暂时不能发送的结果
+         */
+        private final Map<String, List<Task>> held = new HashMap<>();
+
+        /**
+         * 前一条结果有了最终结论, 可以继续发送的结果, 比队列中的结果先发送
+         */
+        private final ArrayDeque<Task> ready = new ArrayDeque<>();
+
+        private Stripe(int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        @Override
+        public void run() {
+            List<Task> batch = new ArrayList<>(batchSize);
+            while (running) {
+                try {
+                    takeDue(batch);
+                    if (batch.isEmpty()) {
+                        Task first = queue.poll(pollNanos(), TimeUnit.NANOSECONDS);
+                        if (first != null) {
+                            batch.add(first);
+                        }
+                        takeDue(batch);
+                    }
+                    if (batch.size() < batchSize) {
+                        queue.drainTo(batch, batchSize - batch.size());
+                    }
+                    if (!batch.isEmpty()) {
+                        send(batch);
+                    }
+                } catch (InterruptedException e) {
+                    break;
+                } catch (Exception e) {
+                    log.error("广播线程异常", e);
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+
+        /**
+         * 取出到期的重试和可以继续发送的结果
+         */
+        private void takeDue(List<Task> batch) {
+            long now = System.nanoTime();
+            while (batch.size() < batchSize && !retries.isEmpty() && retries.peek().retryAtNanos - now <= 0) {
+                batch.add(retries.poll());
+            }
+            while (batch.size() < batchSize && !ready.isEmpty()) {
+                batch.add(ready.poll());
+            }
+        }
+
+        /**
+         * 队列为空时最多等到下一次重试的时间
+         */
+        private long pollNanos() {
+            long max = TimeUnit.SECONDS.toNanos(1);
+            Task next = retries.peek();
+            return next == null ? max : Math.max(0, Math.min(max, next.retryAtNanos - System.nanoTime()));
+        }
+
+        /**
+         * 发送一批结果, 同一个业务key在一次broadcastAll中最多出现一次
+         */
+        private void send(List<Task> batch) {
+            List<Task> chunk = new ArrayList<>(batch.size());
+            Set<String> keys = new HashSet<>();
+            for (Task task : batch) {
+                if (hold(task)) {
+                    continue;
+                }
+                if (task.key != null && !keys.add(task.key)) {
+                    sendChunk(chunk);
+                    chunk = new ArrayList<>();
+                    keys.clear();
+                    // 前一条可能发送失败在等待重试
+                    if (hold(task)) {
+                        continue;
+                    }
+                    keys.add(task.key);
+                }
+                chunk.add(task);
+            }
+            sendChunk(chunk);
+        }
+
+        /**
+         * 同一个业务单前面的结果在等待重试时, 暂存后面的结果
+         */
+        private boolean hold(Task task) {
+            if (task.key == null || task.attempts > 0) {
+                return false;
+            }
+            List<Task> waiting = held.get(task.key);
+            if (waiting == null) {
+                return false;
+            }
+            waiting.add(task);
+            return true;
+        }
+
+        /**
+         * 发送一次, 失败的安排重试, 不在发送线程中等待
+         */
+        private void sendChunk(List<Task> chunk) {
+            if (chunk.isEmpty()) {
+                return;
+            }
+            List<Task> failed = attempt(chunk);
+            List<Task> exhausted = new ArrayList<>();
+            long now = System.nanoTime();
+            for (Task task : chunk) {
+                if (!containsIdentity(failed, task)) {
+                    // 已送达或因为没有广播器被放弃
+                    resume(task);
+                    continue;
+                }
+                task.attempts++;
+                if (task.attempts >= maxAttempts) {
+                    exhausted.add(task);
+                    resume(task);
+                    continue;
+                }
+                retryCount.increment();
+                task.retryAtNanos = now + backoffNanos(task.attempts);
+                retries.add(task);
+                if (task.key != null) {
+                    held.putIfAbsent(task.key, new ArrayList<>());
+                }
+            }
+            if (!exhausted.isEmpty()) {
+                giveUp(exhausted, maxAttempts);
+            }
+        }
+
+        /**
+         * 重试的结果有了最终结论, 同一个业务单暂存的结果可以继续发送
+         */
+        private void resume(Task task) {
+            if (task.attempts == 0 || task.key == null) {
+                return;
+            }
+            List<Task> waiting = held.remove(task.key);
+            if (waiting != null) {
+                ready.addAll(waiting);
+            }
+        }
+
+        /**
+         * 发送线程退出后, 按送达顺序取出所有还没发送的结果
+         */
+        private List<Task> drainAll() {
+            List<Task> rest = new ArrayList<>();
+            List<Task> retrying = new ArrayList<>(retries);
+            retries.clear();
+            retrying.sort(Comparator.comparingLong((Task t) -> t.retryAtNanos));
+            for (Task task : retrying) {
+                rest.add(task);
+                List<Task> waiting = task.key == null ? null : held.remove(task.key);
+                if (waiting != null) {
+                    rest.addAll(waiting);
+                }
+            }
+            rest.addAll(ready);
+            ready.clear();
+            queue.drainTo(rest);
+            return rest;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.developcollect.commonpay.notice;
+
+import com.developcollect.commonpay.cache.TerminalStateCache;
+import com.developcollect.commonpay.config.GlobalConfig;
+import com.developcollect.commonpay.metrics.IPayMetrics;
+import com.developcollect.commonpay.metrics.PayFlightRecorder;
+import com.developcollect.commonpay.pay.PayResponse;
+import com.developcollect.commonpay.pay.RefundResponse;
+import com.developcollect.commonpay.pay.TransferResponse;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 广播工具类
+ * 所有结果广播都经过这里, 已经广播过的终态结果不会再次广播
+ * 配置了{@link BroadcastPipeline}时结果交给管道异步发送, 否则在当前线程同步发送
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+@Slf4j
+public class BroadcastUtil {
+
+    /**
+     * 广播支付结果
+     *
+     * @param payResponse 支付结果
+     * @return 是否广播成功, 异步广播时表示是否已受理, 没有配置广播器时返回false
+     */
+    public static boolean broadcast(PayResponse payResponse) {
+        IPayBroadcaster payBroadcaster = GlobalConfig.payBroadcaster();
+        if (payBroadcaster == null) {
+            return false;
+        }
+        TerminalStateCache cache = GlobalConfig.terminalStateCache();
+        if (cache != null && cache.isBroadcasted(payResponse)) {
+            log.debug("订单[{}]支付结果已广播过, 不再重复广播", payResponse.getOutTradeNo());
+            return true;
+        }
+        BroadcastPipeline pipeline = GlobalConfig.broadcastPipeline();
+        if (pipeline != null && pipeline.isRunning()) {
+            return pipeline.submit(payResponse);
+        }
+        long start = System.nanoTime();
+        Object event = PayFlightRecorder.get().broadcastStarted();
+        boolean broadcast = false;
+        try {
+            broadcast = payBroadcaster.broadcast(payResponse);
+        } finally {
+            broadcastFinished("pay", broadcast, start);
+            PayFlightRecorder.get().broadcastFinished(event, "pay", 1, broadcast ? 0 : 1, false);
+        }
+        if (broadcast && cache != null) {
+            cache.markBroadcasted(payResponse);
+        }
+        return broadcast;
+    }
+
+    /**
+     * 广播退款结果
+     *
+     * @param refundResponse 退款结果
+     * @return 是否广播成功, 异步广播时表示是否已受理, 没有配置广播器时返回false
+     */
+    public static boolean broadcast(RefundResponse refundResponse) {
+        IRefundBroadcaster refundBroadcaster = GlobalConfig.refundBroadcaster();
+        if (refundBroadcaster == null) {
+            return false;
+        }
+        TerminalStateCache cache = GlobalConfig.terminalStateCache();
+        if (cache != null && cache.isBroadcasted(refundResponse)) {
+            log.debug("退款[{}]结果已广播过, 不再重复广播", refundResponse.getOutRefundNo());
+            return true;
+        }
+        BroadcastPipeline pipeline = GlobalConfig.broadcastPipeline();
+        if (pipeline != null && pipeline.isRunning()) {
+            return pipeline.submit(refundResponse);
+        }
+        long start = System.nanoTime();
+        Object event = PayFlightRecorder.get().broadcastStarted();
+        boolean broadcast = false;
+        try {
+            broadcast = refundBroadcaster.broadcast(refundResponse);
+        } finally {
+            broadcastFinished("refund", broadcast, start);
+            PayFlightRecorder.get().broadcastFinished(event, "refund", 1, broadcast ? 0 : 1, false);
+        }
+        if (broadcast && cache != null) {
+            cache.markBroadcasted(refundResponse);
+        }
+        return broadcast;
+    }
+
+    /**
+     * 广播转账结果
+     *
+     * @param transferResponse 转账结果
+     * @return 是否广播成功, 异步广播时表示是否已受理, 没有配置广播器时返回false
+     */
+    public static boolean broadcast(TransferResponse transferResponse) {
+        ITransferBroadcaster transferBroadcaster = GlobalConfig.transferBroadcaster();
+        if (transferBroadcaster == null) {
+            return false;
+        }
+        TerminalStateCache cache = GlobalConfig.terminalStateCache();
+        if (cache != null && cache.isBroadcasted(transferResponse)) {
+            log.debug("转账[{}]结果已广播过, 不再重复广播", transferResponse.getOutTransferNo());
+            return true;
+        }
+        BroadcastPipeline pipeline = GlobalConfig.broadcastPipeline();
+        if (pipeline != null && pipeline.isRunning()) {
+            return pipeline.submit(transferResponse);
+        }
+        long start = System.nanoTime();
+        Object event = PayFlightRecorder.get().broadcastStarted();
+        boolean broadcast = false;
+        try {
+            broadcast = transferBroadcaster.broadcast(transferResponse);
+        } finally {
+            broadcastFinished("transfer", broadcast, start);
+            PayFlightRecorder.get().broadcastFinished(event, "transfer", 1, broadcast ? 0 : 1, false);
+        }
+        if (broadcast && cache != null) {
+            cache.markBroadcasted(transferResponse);
+        }
+        return broadcast;
+    }
+
+    /**
+     * 上报一条结果的广播结果和耗时
+     *
+     * @param type       结果类型, pay、refund或transfer
+     * @param success    是否广播成功
+     * @param startNanos 开始广播(异步广播时为提交)的时间
+     */
+    static void broadcastFinished(String type, boolean success, long startNanos) {
+        IPayMetrics metrics = GlobalConfig.payMetrics();
+        if (metrics != null) {
+            metrics.broadcastFinished(type, success, System.nanoTime() - startNanos);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.developcollect.commonpay.notice;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import com.developcollect.commonpay.PayUtil;
+import com.developcollect.commonpay.cache.TerminalStateCache;
+import com.developcollect.commonpay.config.GlobalConfig;
+import com.developcollect.commonpay.guard.PayCallContext;
+import com.developcollect.commonpay.pay.IPayDTO;
+import com.developcollect.commonpay.pay.PayResponse;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 过期订单关闭器
+ * 定时从{@link IUnconfirmedOrderFetcher}中取出已经过了过期时间的未确认订单, 调用支付平台的关单接口关闭,
+ * 并把关闭结果(或者关闭前已经支付成功的结果)广播出去, 业务方收到广播后把订单标记为已确认, 未确认订单就不会越积越多
+ * <p>
+ * 支付平台上还没有交易的订单(如支付宝扫码支付用户还没扫码)关不掉, 不广播, 计入{@link #getNotClosedCount()},
+ * 下次执行时再尝试关闭; 这类订单靠下单时传给支付平台的过期时间失效, 业务方可以按过期时间自行确认
+ * <p>
+ * 在{@link GlobalConfig}中配置后生效
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+@Slf4j
+@Accessors(chain = true)
+public class ExpiredOrderCloser {
+
+    /**
+     * 同时关闭的订单数
+     */
+    @Getter
+    @Setter
+    private int concurrency = 4;
+
+    /**
+     * 每批处理的订单数, 也是向提取器取订单时的分页大小
+     */
+    @Getter
+    @Setter
+    private int batchSize = 50;
+
+    /**
+     * 过期后再等待多久才关闭, 单位毫秒
+     * 留出时间给过期前一刻的支付通知; 另外微信要求订单生成5分钟后才能关闭
+     */
+    @Getter
+    @Setter
+    private long graceMillis = 5 * 60 * 1000;
+
+    /**
+     * 执行间隔, 单位毫秒, 小于等于0时使用{@link GlobalConfig#queryNoticeDelay()}
+     */
+    @Getter
+    @Setter
+    private long delayMillis = 0;
+
+
+    private ScheduledExecutorService scheduler;
+    private ThreadPoolExecutor workers;
+
+    private final LongAdder closedCount = new LongAdder();
+    private final LongAdder paidCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder notClosedCount = new LongAdder();
+
+
+    /**
+     * 初始化方法, 启动定时任务
+     *
+     * @author zak
+     * @since 2.2.0
+     */
+    public synchronized void init() {
+        shutdown();
+        workers = new ThreadPoolExecutor(
+                concurrency, concurrency,
+                60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                ThreadFactoryBuilder.create().setNamePrefix("COMMON-PAY-ORDER-CLOSER-").build()
+        );
+        workers.allowCoreThreadTimeOut(true);
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+                ThreadFactoryBuilder.create().setNamePrefix("COMMON-PAY-ORDER-CLOSER-SCHEDULER-").build()
+        );
+        long delay = delayMillis > 0 ? delayMillis : GlobalConfig.queryNoticeDelay();
+        scheduler.scheduleWithFixedDelay(this::closeExpiredOrders, delay, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止定时任务
+     *
+     * @author zak
+     * @since 2.2.0
+     */
+    public synchronized void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        if (workers != null) {
+            workers.shutdownNow();
+            workers = null;
+        }
+    }
+
+    /**
+     * 关闭所有已过期的未确认订单
+     *
+     * @return 本次关闭(或发现已支付)的订单数
+     * @author zak
+     * @since 2.2.0
+     */
+    public int closeExpiredOrders() {
+        IUnconfirmedOrderFetcher unconfirmedOrderFetcher = GlobalConfig.unconfirmedOrderFetcher();
+        ExecutorService executor = workers;
+        if (unconfirmedOrderFetcher == null || executor == null) {
+            return 0;
+        }
+
+        int count = 0;
+        LocalDateTime deadline = LocalDateTime.now().minusNanos(graceMillis * 1_000_000);
+        Page<IPayDTO> page = new Page<>(1, batchSize);
+        try {
+            while (true) {
+                page = unconfirmedOrderFetcher.getUnconfirmedOrders(page);
+
+                List<Future<Boolean>> futures = new ArrayList<>(page.getRecords().size());
+                for (IPayDTO payDTO : page.getRecords()) {
+                    LocalDateTime timeExpire = payDTO.getTimeExpire();
+                    if (timeExpire != null && timeExpire.isBefore(deadline)) {
+                        futures.add(executor.submit(() -> PayCallContext.background(() -> close(payDTO))));
+                    }
+                }
+                // 一批处理完再取下一批, 同时在途的关单请求不超过concurrency个
+                for (Future<Boolean> future : futures) {
+                    if (future.get()) {
+                        count++;
+                    }
+                }
+
+                if (!page.hasNext() || page.getRecords().isEmpty()) {
+                    break;
+                }
+                // 本批关闭的订单可能已经不在未确认订单中了, 翻页时会漏掉一些, 留到下次处理
+                page = new Page<>(page.getCurrent() + 1, batchSize);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("关闭过期订单失败", e);
+        }
+        return count;
+    }
+
+    public long getClosedCount() {
+        return closedCount.sum();
+    }
+
+    /**
+     * 关闭时发现已经支付成功的订单数
+     */
+    public long getPaidCount() {
+        return paidCount.sum();
+    }
+
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    /**
+     * 支付平台没有关闭的订单数, 如支付宝上还没有交易的扫码支付订单
+     */
+    public long getNotClosedCount() {
+        return notClosedCount.sum();
+    }
+
+
+    private boolean close(IPayDTO payDTO) {
+        try {
+            PayResponse payResponse = PayUtil.closeOrder(payDTO);
+            if (!TerminalStateCache.isTerminal(payResponse)) {
+                log.debug("过期订单[{}]没有关闭: {}", payDTO.getOutTradeNo(), payResponse.getErrCode());
+                notClosedCount.increment();
+                return false;
+            }
+            if (payResponse.isSuccess()) {
+                log.info("过期订单[{}]已经支付成功", payDTO.getOutTradeNo());
+                paidCount.increment();
+            } else {
+                log.debug("过期订单[{}]已关闭", payDTO.getOutTradeNo());
+                closedCount.increment();
+            }
+            BroadcastUtil.broadcast(payResponse);
+            return true;
+        } catch (Exception e) {
+            failedCount.increment();
+            log.info("关闭过期订单[{}]失败", payDTO.getOutTradeNo(), e);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.developcollect.commonpay.notice;
+
+
+import com.developcollect.commonpay.pay.PayResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 支付结果广播器接口
+ *
+ * @author zak
+ * @since 1.0.0
+ */
+@FunctionalInterface
+public interface IPayBroadcaster {
+
+
+    /**
+     * 发送广播
+     *
+     * @param payResponse 支付结果
+     * @return boolean 是否发送成功
+     * @author zak
+     * @since 1.0.0
+     */
+    boolean broadcast(PayResponse payResponse);
+
+    /**
+     * 批量发送广播
+     * 默认逐个调用{@link #broadcast(PayResponse)}, 单个支付结果广播异常时视为发送失败
+     * 如果广播目标支持批量处理(比如批量写库、批量发消息), 可以重写该方法
+     *
+     * @param payResponses 支付结果列表
+     * @return 发送失败的支付结果, 全部成功时返回空列表
+     * @author zak
+     * @since 2.2.0
+     */
+    default List<PayResponse> broadcastAll(List<PayResponse> payResponses) {
+        List<PayResponse> failed = new ArrayList<>(0);
+        for (PayResponse payResponse : payResponses) {
+            boolean broadcast;
+            try {
+                broadcast = broadcast(payResponse);
+            } catch (Exception e) {
+                broadcast = false;
+            }
+            if (!broadcast) {
+                failed.add(payResponse);
+            }
+        }
+        return failed;
+    }
+}
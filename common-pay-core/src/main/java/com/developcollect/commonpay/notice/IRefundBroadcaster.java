@@ -0,0 +1,56 @@
+package com.developcollect.commonpay.notice;
+
+
+import com.developcollect.commonpay.pay.RefundResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 退款结果广播器接口
+ *
+ * @author zak
+ * @since 1.0.0
+ */
+@FunctionalInterface
+public interface IRefundBroadcaster {
+
+
+    /**
+     * 发送广播
+     * 主动查询时支付平台上不存在的退款单也会广播: 支付宝的状态为{@link RefundResponse#FAIL},
+     * 微信(REFUNDNOTEXIST)没有状态, 由业务方决定重新发起退款还是确认失败
+     *
+     * @param refundResponse 退款结果
+     * @return boolean 是否发送成功
+     * @author zak
+     * @since 1.0.0
+     */
+    boolean broadcast(RefundResponse refundResponse);
+
+    /**
+     * 批量发送广播
+     * 默认逐个调用{@link #broadcast(RefundResponse)}, 单个退款结果广播异常时视为发送失败
+     * 如果广播目标支持批量处理(比如批量写库、批量发消息), 可以重写该方法
+     *
+     * @param refundResponses 退款结果列表
+     * @return 发送失败的退款结果, 全部成功时返回空列表
+     * @author zak
+     * @since 2.2.0
+     */
+    default List<RefundResponse> broadcastAll(List<RefundResponse> refundResponses) {
+        List<RefundResponse> failed = new ArrayList<>(0);
+        for (RefundResponse refundResponse : refundResponses) {
+            boolean broadcast;
+            try {
+                broadcast = broadcast(refundResponse);
+            } catch (Exception e) {
+                broadcast = false;
+            }
+            if (!broadcast) {
+                failed.add(refundResponse);
+            }
+        }
+        return failed;
+    }
+}
@@ -0,0 +1,52 @@
+package com.developcollect.commonpay.notice;
+
+import com.developcollect.commonpay.pay.TransferResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 转账结果广播器
+ *
+ * @author zak
+ * @since 1.0.0
+ */
+@FunctionalInterface
+public interface ITransferBroadcaster {
+
+    /**
+     * 发送广播
+     *
+     * @param transferResponse 退款结果
+     * @return boolean 是否发送成功
+     * @author zak
+     * @since 1.0.0
+     */
+    boolean broadcast(TransferResponse transferResponse);
+
+    /**
+     * 批量发送广播
+     * 默认逐个调用{@link #broadcast(TransferResponse)}, 单个转账结果广播异常时视为发送失败
+     * 如果广播目标支持批量处理(比如批量写库、批量发消息), 可以重写该方法
+     *
+     * @param transferResponses 转账结果列表
+     * @return 发送失败的转账结果, 全部成功时返回空列表
+     * @author zak
+     * @since 2.2.0
+     */
+    default List<TransferResponse> broadcastAll(List<TransferResponse> transferResponses) {
+        List<TransferResponse> failed = new ArrayList<>(0);
+        for (TransferResponse transferResponse : transferResponses) {
+            boolean broadcast;
+            try {
+                broadcast = broadcast(transferResponse);
+            } catch (Exception e) {
+                broadcast = false;
+            }
+            if (!broadcast) {
+                failed.add(transferResponse);
+            }
+        }
+        return failed;
+    }
+}
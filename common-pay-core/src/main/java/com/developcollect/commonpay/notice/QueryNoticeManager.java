@@ -0,0 +1,241 @@
+package com.developcollect.commonpay.notice;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import com.developcollect.commonpay.PayUtil;
+import com.developcollect.commonpay.config.GlobalConfig;
+import com.developcollect.commonpay.exception.CircuitOpenException;
+import com.developcollect.commonpay.guard.PayCallContext;
+import com.developcollect.commonpay.metrics.IPayMetrics;
+import com.developcollect.commonpay.metrics.PayFlightRecorder;
+import com.developcollect.commonpay.pay.*;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * 主动查询通知管理器
+ * 在这里有设置定时任务去主动查询支付结果， 并将支付结果通过广播器广播出去
+ * 已经广播过的终态结果会由{@link com.developcollect.commonpay.cache.TerminalStateCache}直接返回, 不会重复查询和广播
+ * @author zak
+ * @since 1.0.0
+ */
+@Slf4j
+public class QueryNoticeManager {
+
+    /**
+     * 定时器
+     */
+    protected ScheduledThreadPoolExecutor executor;
+
+
+    /**
+     * 初始化方法
+     *
+     * @author zak
+     * @since 1.0.0
+     */
+    public void init() {
+        init(CompletableFuture.completedFuture(null));
+    }
+
+    /**
+     * 初始化方法, 等到指定的阶段完成后才开始第一轮查询
+     * 用于等待{@link com.developcollect.commonpay.warmup.PayWarmUp}预热结束, 避免第一轮查询在冷的客户端上进行
+     *
+     * @param ready 完成(不论成功还是失败)后开始查询
+     * @author zak
+     * @since 2.2.0
+     */
+    public synchronized void init(CompletionStage<?> ready) {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+                2,
+                ThreadFactoryBuilder.create().setNamePrefix("COMMON-PAY-QUERY-NOTICE-").build()
+        );
+        this.executor = executor;
+
+        ready.whenComplete((result, e) -> schedule(executor));
+    }
+
+    private synchronized void schedule(ScheduledThreadPoolExecutor executor) {
+        // 等待期间又重新初始化了
+        if (executor.isShutdown()) {
+            return;
+        }
+        // 主动查询是后台调用, 限流时给业务调用让路
+        executor.scheduleWithFixedDelay(() -> PayCallContext.background(this::payQueryTask), 0, GlobalConfig.queryNoticeDelay(), TimeUnit.MILLISECONDS);
+        executor.scheduleWithFixedDelay(() -> PayCallContext.background(this::refundQueryTask), 0, GlobalConfig.queryNoticeDelay(), TimeUnit.MILLISECONDS);
+        executor.scheduleWithFixedDelay(() -> PayCallContext.background(this::transferQueryTask), 0, GlobalConfig.queryNoticeDelay(), TimeUnit.MILLISECONDS);
+    }
+
+
+    /**
+     * 支付结果查询任务
+     * @author zak
+     * @since 1.0.0
+     */
+    protected void payQueryTask() {
+
+        IUnconfirmedOrderFetcher unconfirmedOrderFetcher = GlobalConfig.unconfirmedOrderFetcher();
+        if (unconfirmedOrderFetcher == null) {
+            return;
+        }
+
+        Page<IPayDTO> page = new Page<>(1, 50);
+        long start = System.nanoTime();
+        Object event = PayFlightRecorder.get().sweepStarted();
+        int backlog = 0;
+        try {
+            do {
+                page = unconfirmedOrderFetcher.getUnconfirmedOrders(page);
+
+                for (IPayDTO payDTO : page.getRecords()) {
+                    backlog++;
+                    try {
+                        QueryResult<PayResponse> result = PayUtil.payQueryResult(payDTO);
+
+                        if (result.isAnswered()) {
+                            BroadcastUtil.broadcast(result.getResponse());
+                        } else {
+                            logFailure("查询订单状态失败", result);
+                        }
+                    } catch (Exception e) {
+                        // 当前订单失败不影响下一个
+                        log.info("查询订单状态失败", e);
+                    }
+                }
+
+            } while (page.hasNext());
+        } finally {
+            sweepFinished("pay", backlog, start, event);
+        }
+    }
+
+
+    /**
+     * 转账结果查询任务
+     *
+     * @author zak
+     * @since 1.0.0
+     */
+    protected void refundQueryTask() {
+
+        IUnconfirmedRefundFetcher unconfirmedRefundFetcher = GlobalConfig.unconfirmedRefundFetcher();
+
+        if (unconfirmedRefundFetcher == null) {
+            return;
+        }
+
+        Page<IRefundDTO> page = new Page<>(1, 50);
+        long start = System.nanoTime();
+        Object event = PayFlightRecorder.get().sweepStarted();
+        int backlog = 0;
+        try {
+            do {
+                page = unconfirmedRefundFetcher.getUnconfirmedRefunds(page);
+
+                for (IRefundDTO refundDTO : page.getRecords()) {
+                    backlog++;
+                    try {
+                        QueryResult<RefundResponse> result = PayUtil.refundQueryResult(refundDTO);
+
+                        // 退款单不存在时也广播, 和旧的查询方法一致: 支付宝没有退款金额时状态为失败, 微信REFUNDNOTEXIST时没有状态,
+                        // 由业务方决定是否重新发起退款
+                        if (result.isAnswered() || result.isNotFound() && result.getResponse() != null) {
+                            BroadcastUtil.broadcast(result.getResponse());
+                        } else {
+                            logFailure("查询退款单状态失败", result);
+                        }
+                    } catch (Exception e) {
+                        // 当前退款单失败不影响下一个
+                        log.info("查询退款单状态失败", e);
+                    }
+                }
+            } while (page.hasNext());
+        } finally {
+            sweepFinished("refund", backlog, start, event);
+        }
+    }
+
+    /**
+     * 转账结果查询任务
+     *
+     * @author zak
+     * @since 1.0.0
+     */
+    protected void transferQueryTask() {
+
+        IUnconfirmedTransferFetcher unconfirmedTransferFetcher = GlobalConfig.unconfirmedTransferFetcher();
+
+        if (unconfirmedTransferFetcher == null) {
+            return;
+        }
+
+        Page<ITransferDTO> page = new Page<>(1, 50);
+        long start = System.nanoTime();
+        Object event = PayFlightRecorder.get().sweepStarted();
+        int backlog = 0;
+        try {
+            do {
+                page = unconfirmedTransferFetcher.getUnconfirmedTransfers(page);
+
+                for (ITransferDTO transferDTO : page.getRecords()) {
+                    backlog++;
+                    try {
+                        QueryResult<TransferResponse> result = PayUtil.transferQueryResult(transferDTO);
+
+                        if (result.isAnswered()) {
+                            BroadcastUtil.broadcast(result.getResponse());
+                        } else {
+                            logFailure("查询转账单状态失败", result);
+                        }
+                    } catch (Exception e) {
+                        // 当前转账单失败不影响下一个
+                        log.info("查询转账单状态失败", e);
+                    }
+                }
+            } while (page.hasNext());
+        } finally {
+            sweepFinished("transfer", backlog, start, event);
+        }
+    }
+
+    /**
+     * 上报一轮主动查询的单据数和耗时
+     */
+    private static void sweepFinished(String task, int backlog, long startNanos, Object event) {
+        IPayMetrics metrics = GlobalConfig.payMetrics();
+        if (metrics != null) {
+            metrics.sweepFinished(task, backlog, System.nanoTime() - startNanos);
+        }
+        PayFlightRecorder.get().sweepFinished(event, task, backlog);
+    }
+
+    /**
+     * 记录没有查到结果的查询
+     * 轮询时单据不存在和业务错误是常态, 只有通信失败才记录异常堆栈
+     *
+     * @param message 日志信息
+     * @param result  查询结果
+     */
+    protected void logFailure(String message, QueryResult<?> result) {
+        if (result.isNotFound()) {
+            log.debug("{}: {}", message, result);
+        } else if (result.isBusinessError()) {
+            log.info("{}: {}", message, result);
+        } else if (result.getCause() instanceof CircuitOpenException) {
+            // 熔断期间不请求支付平台, 等恢复后的下一轮再查
+            log.debug("{}: {}", message, result.getCause().getMessage());
+        } else {
+            log.info(message, result.getCause());
+        }
+    }
+
+}
@@ -0,0 +1,368 @@
+package com.developcollect.commonpay.notice.outbox;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于内存映射文件的发件箱
+ * 广播结果在发送前先追加到段文件中, 送达后再标记完成;
+ * 进程意外退出后, 下次启动时通过{@link #open()}取回所有没有标记完成的结果重新发送
+ * <p>
+ * 记录写在内存映射区域中, 只要操作系统没有崩溃, 进程退出后数据也不会丢;
+ * 如果还要防止操作系统崩溃或断电, 需要打开{@link #syncOnAppend}, 代价是每次追加都要刷盘
+ * <p>
+ * 段文件写满后封存并新建一个段, 封存的段中所有记录都完成后立即释放映射区域并删除文件;
+ * 只剩少量记录没完成的段会在压缩时把这些记录复制到当前段, 然后删除旧段
+ * <p>
+ * 记录内容使用java序列化, 升级版本前最好先把发件箱中的结果发送完
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+@Slf4j
+@Accessors(chain = true)
+public class MappedOutbox {
+
+    /**
+     * 段文件目录
+     */
+    @Getter
+    private final File dir;
+
+    /**
+     * 段文件大小, 单位字节
+     */
+    @Getter
+    @Setter
+    private int segmentSize = 16 * 1024 * 1024;
+
+    /**
+     * 每次追加后是否刷盘
+     */
+    @Getter
+    @Setter
+    private boolean syncOnAppend = false;
+
+    /**
+     * 封存的段中未完成记录的占比不超过这个值时压缩
+     */
+    @Getter
+    @Setter
+    private double compactThreshold = 0.25;
+
+
+    private final ConcurrentSkipListMap<Integer, OutboxSegment> segments = new ConcurrentSkipListMap<>();
+
+    /**
+     * 压缩时被复制的记录, 交出去的id到记录当前id的映射
+     * 复制前已经交出去的id在送达后仍然能标记到新记录上; 同一条记录被多次复制时只更新映射, 不会越积越多
+     */
+    private final Map<Long, Long> forwards = new ConcurrentHashMap<>();
+
+    /**
+     * forwards的反向映射, 记录当前id到交出去的id
+     */
+    private final Map<Long, Long> origins = new ConcurrentHashMap<>();
+
+    private final Object appendLock = new Object();
+
+    private volatile OutboxSegment active;
+
+    private final LongAdder appendCount = new LongAdder();
+    private final LongAdder compactedCount = new LongAdder();
+
+
+    public MappedOutbox(String dir) {
+        this(new File(dir));
+    }
+
+    public MappedOutbox(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * 打开发件箱
+     * 扫描目录中已有的段文件, 返回所有没有标记完成的记录, 然后新建一个段用于追加
+     *
+     * @return 没有完成的记录, 按追加顺序排列
+     * @throws IOException 目录无法创建或段文件无法读写
+     */
+    public List<OutboxEntry> open() throws IOException {
+        synchronized (appendLock) {
+            if (active != null) {
+                throw new IllegalStateException("outbox already opened");
+            }
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("cannot create outbox dir: " + dir);
+            }
+
+            List<OutboxEntry> pending = new ArrayList<>();
+            int maxId = 0;
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    int id = OutboxSegment.idOf(file.getName());
+                    if (id >= 0) {
+                        maxId = Math.max(maxId, id);
+                        segments.put(id, OutboxSegment.open(file, id));
+                    }
+                }
+            }
+
+            for (OutboxSegment segment : new ArrayList<>(segments.values())) {
+                for (int offset = segment.firstOffset(); offset >= 0; offset = segment.nextOffset(offset)) {
+                    if (!segment.isPending(offset)) {
+                        continue;
+                    }
+                    long id = toId(segment.getId(), offset);
+                    try {
+                        pending.add(new OutboxEntry(id, segment.typeAt(offset), deserialize(segment.payloadAt(offset))));
+                    } catch (IOException | ClassNotFoundException e) {
+                        log.error("发件箱记录[{}]无法读取, 已跳过", id, e);
+                        segment.markDone(offset);
+                    }
+                }
+                deleteIfDone(segment);
+            }
+
+            active = OutboxSegment.create(dir, maxId + 1, segmentSize);
+            segments.put(active.getId(), active);
+            return pending;
+        }
+    }
+
+    /**
+     * 追加一条记录
+     *
+     * @param type    记录类型
+     * @param message 记录内容
+     * @return 记录id, 用于{@link #markDone(long)}
+     * @throws IOException 序列化失败或新建段文件失败
+     */
+    public long append(byte type, Serializable message) throws IOException {
+        // 序列化放在锁外面, 锁内只做内存拷贝
+        byte[] payload = serialize(message);
+        if (payload.length + OutboxSegment.HEADER_SIZE > segmentSize) {
+            throw new IOException("outbox record too large: " + payload.length);
+        }
+        synchronized (appendLock) {
+            int segmentId = active == null ? -1 : active.getId();
+            long id = appendLocked(type, payload);
+            if (segmentId >= 0 && segmentIdOf(id) != segmentId) {
+                // 刚刚换了新段, 顺带压缩一次旧段
+                try {
+                    compact();
+                } catch (IOException e) {
+                    log.warn("发件箱压缩失败", e);
+                }
+            }
+            return id;
+        }
+    }
+
+    /**
+     * 标记记录已完成
+     * 重复标记或者标记不存在的记录都会被忽略
+     *
+     * @param id 记录id
+     */
+    public void markDone(long id) {
+        if (markDoneAt(id)) {
+            return;
+        }
+        // 记录不是待发送状态, 可能是被压缩复制到了别的位置
+        Long current;
+        while ((current = forwards.get(id)) != null) {
+            if (markDoneAt(current)) {
+                forwards.remove(id, current);
+                origins.remove(current);
+                return;
+            }
+            // 压缩在标记旧记录前先更新映射, 映射变了说明又被复制了, 按新位置重试
+            if (forwards.remove(id, current)) {
+                origins.remove(current);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 压缩封存的段
+     * 未完成记录占比不超过{@link #compactThreshold}的段, 把这些记录复制到当前段后删除
+     *
+     * @return 复制的记录数
+     * @throws IOException 新建段文件失败
+     */
+    public int compact() throws IOException {
+        int copied = 0;
+        synchronized (appendLock) {
+            for (OutboxSegment segment : new ArrayList<>(segments.values())) {
+                if (segment == active || !segment.isSealed()) {
+                    continue;
+                }
+                if (segment.getPendingCount() > segment.getRecordCount() * compactThreshold) {
+                    continue;
+                }
+                for (int offset = segment.firstOffset(); offset >= 0; offset = segment.nextOffset(offset)) {
+                    // 持有段的锁, 复制过程中并发的markDone会等复制完成后通过转发标记到新记录上
+                    synchronized (segment) {
+                        if (!segment.isPending(offset)) {
+                            continue;
+                        }
+                        long oldId = toId(segment.getId(), offset);
+                        long newId = appendLocked(segment.typeAt(offset), segment.payloadAt(offset));
+                        Long origin = origins.remove(oldId);
+                        if (origin == null) {
+                            origin = oldId;
+                        }
+                        forwards.put(origin, newId);
+                        origins.put(newId, origin);
+                        segment.markDone(offset);
+                        copied++;
+                    }
+                }
+                deleteIfDone(segment);
+            }
+        }
+        compactedCount.add(copied);
+        return copied;
+    }
+
+    /**
+     * 刷盘并关闭所有段文件
+     * 没有完成的记录会留在段文件中, 下次打开时返回
+     */
+    public void close() {
+        synchronized (appendLock) {
+            for (OutboxSegment segment : segments.values()) {
+                segment.force();
+                segment.close();
+            }
+            segments.clear();
+            forwards.clear();
+            origins.clear();
+            active = null;
+        }
+    }
+
+    /**
+     * 所有段中没有完成的记录数
+     */
+    public int pendingCount() {
+        int count = 0;
+        for (OutboxSegment segment : segments.values()) {
+            count += segment.getPendingCount();
+        }
+        return count;
+    }
+
+    /**
+     * 当前段文件数
+     */
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    public long getAppendCount() {
+        return appendCount.sum();
+    }
+
+    public long getCompactedCount() {
+        return compactedCount.sum();
+    }
+
+    /**
+     * 压缩后还没有标记完成的转发数, 不超过没有完成的记录数
+     */
+    public int forwardCount() {
+        return forwards.size();
+    }
+
+
+    private long appendLocked(byte type, byte[] payload) throws IOException {
+        OutboxSegment segment = active;
+        if (segment == null) {
+            throw new IllegalStateException("outbox not opened");
+        }
+        int offset = segment.append(type, payload);
+        if (offset < 0) {
+            segment = rotate();
+            offset = segment.append(type, payload);
+        }
+        if (syncOnAppend) {
+            segment.force();
+        }
+        appendCount.increment();
+        return toId(segment.getId(), offset);
+    }
+
+    /**
+     * 封存当前段, 并新建一个段
+     */
+    private OutboxSegment rotate() throws IOException {
+        OutboxSegment old = active;
+        OutboxSegment segment = OutboxSegment.create(dir, old.getId() + 1, segmentSize);
+        segments.put(segment.getId(), segment);
+        active = segment;
+        old.seal();
+        old.force();
+        deleteIfDone(old);
+        return segment;
+    }
+
+    /**
+     * 标记指定位置的记录
+     *
+     * @return 记录之前是否是待发送状态
+     */
+    private boolean markDoneAt(long id) {
+        OutboxSegment segment = segments.get(segmentIdOf(id));
+        if (segment != null && segment.markDone(offsetOf(id))) {
+            deleteIfDone(segment);
+            return true;
+        }
+        return false;
+    }
+
+    private void deleteIfDone(OutboxSegment segment) {
+        if (segment.isSealed() && segment.getPendingCount() == 0 && segments.remove(segment.getId(), segment)) {
+            segment.delete();
+        }
+    }
+
+    private static long toId(int segmentId, int offset) {
+        return ((long) segmentId << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private static int segmentIdOf(long id) {
+        return (int) (id >>> 32);
+    }
+
+    private static int offsetOf(long id) {
+        return (int) id;
+    }
+
+    private static byte[] serialize(Serializable message) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(512);
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(message);
+        }
+        return bos.toByteArray();
+    }
+
+    private static Serializable deserialize(byte[] payload) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(payload))) {
+            return (Serializable) ois.readObject();
+        }
+    }
+}
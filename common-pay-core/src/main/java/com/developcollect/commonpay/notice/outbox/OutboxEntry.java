@@ -0,0 +1,36 @@
+package com.developcollect.commonpay.notice.outbox;
+
+import lombok.Getter;
+
+import java.io.Serializable;
+
+/**
+ * 发件箱记录
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+@Getter
+public class OutboxEntry {
+
+    /**
+     * 记录id
+     */
+    private final long id;
+
+    /**
+     * 记录类型
+     */
+    private final byte type;
+
+    /**
+     * 记录内容
+     */
+    private final Serializable message;
+
+    public OutboxEntry(long id, byte type, Serializable message) {
+        this.id = id;
+        this.type = type;
+        this.message = message;
+    }
+}
@@ -0,0 +1,299 @@
+package com.developcollect.commonpay.notice.outbox;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.function.Consumer;
+
+/**
+ * 发件箱段文件
+ * 一个段文件是一块固定大小的内存映射区域, 记录依次追加写入:
+ * <pre>
+ * | len(4) | state(1) | type(1) | payload(len) |
+ * </pre>
+ * 追加时先写状态、类型和内容, 最后写长度, 长度为0的位置就是段的末尾,
+ * 所以进程在追加中途退出也不会留下半条记录
+ * <p>
+ * 关闭时立即释放映射区域, 不等GC回收; 释放后再访问映射区域会使JVM崩溃,
+ * 所以除了只在持有发件箱写锁时使用的追加, 其他读写映射区域的方法都持有段的锁并检查是否已释放
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+final class OutboxSegment {
+
+    static final int HEADER_SIZE = 6;
+
+    private static final Consumer<ByteBuffer> UNMAPPER = unmapper();
+
+    static final byte PENDING = 0;
+    static final byte DONE = 1;
+
+    private final int id;
+    private final File file;
+    private final RandomAccessFile raf;
+    private final MappedByteBuffer buffer;
+
+    /**
+     * 追加专用的视图, 只在持有发件箱写锁时使用
+     */
+    private final ByteBuffer appendView;
+
+    /**
+     * 下一条记录的写入位置
+     */
+    private int writePosition;
+
+    private int recordCount;
+    private int pendingCount;
+
+    /**
+     * 是否已封存, 封存后不再追加
+     */
+    private volatile boolean sealed;
+
+    /**
+     * 映射区域是否已释放
+     */
+    private boolean released;
+
+    private OutboxSegment(int id, File file, int size) throws IOException {
+        this.id = id;
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "rw");
+        try {
+            this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+        this.appendView = buffer.duplicate();
+    }
+
+    static OutboxSegment create(File dir, int id, int size) throws IOException {
+        File file = new File(dir, fileName(id));
+        if (file.exists()) {
+            throw new IOException("outbox segment already exists: " + file);
+        }
+        return new OutboxSegment(id, file, size);
+    }
+
+    /**
+     * 打开已有的段文件, 并扫描出其中的记录
+     */
+    static OutboxSegment open(File file, int id) throws IOException {
+        OutboxSegment segment = new OutboxSegment(id, file, (int) file.length());
+        segment.sealed = true;
+        ByteBuffer buf = segment.buffer;
+        int pos = 0;
+        while (pos + HEADER_SIZE <= buf.capacity()) {
+            int len = buf.getInt(pos);
+            if (len <= 0 || pos + HEADER_SIZE + len > buf.capacity()) {
+                break;
+            }
+            segment.recordCount++;
+            if (buf.get(pos + 4) == PENDING) {
+                segment.pendingCount++;
+            }
+            pos += HEADER_SIZE + len;
+        }
+        segment.writePosition = pos;
+        return segment;
+    }
+
+    static String fileName(int id) {
+        return String.format("outbox-%010d.seg", id);
+    }
+
+    /**
+     * 从文件名解出段编号, 不是段文件时返回-1
+     */
+    static int idOf(String fileName) {
+        if (!fileName.startsWith("outbox-") || !fileName.endsWith(".seg")) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(fileName.substring(7, fileName.length() - 4));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 追加一条记录, 调用方负责加锁
+     *
+     * @return 记录在段中的偏移, 空间不足时返回-1
+     */
+    int append(byte type, byte[] payload) {
+        int pos = writePosition;
+        if (pos + HEADER_SIZE + payload.length > buffer.capacity()) {
+            return -1;
+        }
+        appendView.position(pos + 4);
+        appendView.put(PENDING);
+        appendView.put(type);
+        appendView.put(payload);
+        // 最后写长度, 写完长度这条记录才算存在
+        buffer.putInt(pos, payload.length);
+        writePosition = pos + HEADER_SIZE + payload.length;
+        synchronized (this) {
+            recordCount++;
+            pendingCount++;
+        }
+        return pos;
+    }
+
+    /**
+     * 标记记录已完成
+     *
+     * @return 记录之前是否是待发送状态
+     */
+    synchronized boolean markDone(int offset) {
+        if (released || buffer.get(offset + 4) != PENDING) {
+            return false;
+        }
+        buffer.put(offset + 4, DONE);
+        pendingCount--;
+        return true;
+    }
+
+    synchronized boolean isPending(int offset) {
+        return !released && buffer.get(offset + 4) == PENDING;
+    }
+
+    synchronized byte typeAt(int offset) {
+        checkNotReleased();
+        return buffer.get(offset + 5);
+    }
+
+    synchronized byte[] payloadAt(int offset) {
+        checkNotReleased();
+        int len = buffer.getInt(offset);
+        byte[] payload = new byte[len];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset + HEADER_SIZE);
+        view.get(payload);
+        return payload;
+    }
+
+    /**
+     * 下一条记录的偏移, 没有下一条时返回-1
+     */
+    synchronized int nextOffset(int offset) {
+        if (released) {
+            return -1;
+        }
+        int next = offset + HEADER_SIZE + buffer.getInt(offset);
+        return next < writePosition ? next : -1;
+    }
+
+    int firstOffset() {
+        return writePosition > 0 ? 0 : -1;
+    }
+
+    int getId() {
+        return id;
+    }
+
+    synchronized int getRecordCount() {
+        return recordCount;
+    }
+
+    synchronized int getPendingCount() {
+        return pendingCount;
+    }
+
+    int getWritePosition() {
+        return writePosition;
+    }
+
+    boolean isSealed() {
+        return sealed;
+    }
+
+    void seal() {
+        sealed = true;
+    }
+
+    synchronized void force() {
+        if (!released) {
+            buffer.force();
+        }
+    }
+
+    /**
+     * 关闭文件并释放映射区域, 重复调用会被忽略
+     */
+    synchronized void close() {
+        if (released) {
+            return;
+        }
+        released = true;
+        UNMAPPER.accept(buffer);
+        try {
+            raf.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * 关闭并删除段文件
+     * 释放映射区域失败时(比如JVM不允许)文件可能还被占用, 有的系统上这时删不掉, 留到进程退出时再删
+     */
+    void delete() {
+        close();
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    private void checkNotReleased() {
+        if (released) {
+            throw new IllegalStateException("outbox segment closed: " + file);
+        }
+    }
+
+    /**
+     * 释放映射区域的方法
+     * JDK9以上用Unsafe.invokeCleaner, JDK8用映射区域自己的cleaner; 都不可用时什么也不做, 等GC回收
+     */
+    private static Consumer<ByteBuffer> unmapper() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Object unsafe = theUnsafe.get(null);
+            return buffer -> invoke(invokeCleaner, unsafe, buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // JDK8没有invokeCleaner
+        }
+        try {
+            Method cleanerMethod = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+            Method cleanMethod = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            return buffer -> {
+                Object cleaner = invoke(cleanerMethod, buffer);
+                if (cleaner != null) {
+                    invoke(cleanMethod, cleaner);
+                }
+            };
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return buffer -> {
+            };
+        }
+    }
+
+    private static Object invoke(Method method, Object target, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // 释放失败时等GC回收
+            return null;
+        }
+    }
+}
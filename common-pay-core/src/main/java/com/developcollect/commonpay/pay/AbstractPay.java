@@ -2,8 +2,11 @@ package com.developcollect.commonpay.pay;
 
 import com.developcollect.commonpay.config.AbstractPayConfig;
 import com.developcollect.commonpay.config.GlobalConfig;
+import com.developcollect.commonpay.config.PayConfigSnapshot;
 import com.developcollect.commonpay.exception.PayException;
 
+import java.util.function.Function;
+
 /**
  * 支付基类
  *
@@ -12,10 +15,55 @@ import com.developcollect.commonpay.exception.PayException;
  */
 public abstract class AbstractPay implements Pay {
 
+    /**
+     * 商户标识, 为null时使用默认配置
+     */
+    private final String merchantId;
+
+    protected AbstractPay() {
+        this(null);
+    }
+
+    /**
+     * @param merchantId 商户标识, 为null时使用默认配置
+     * @since 2.2.0
+     */
+    protected AbstractPay(String merchantId) {
+        this.merchantId = merchantId;
+    }
+
     protected abstract int getPlatform();
 
+    /**
+     * 获取商户标识
+     *
+     * @return 商户标识, 使用默认配置时为null
+     * @author zak
+     * @since 2.2.0
+     */
+    public String getMerchantId() {
+        return merchantId;
+    }
+
     protected <T extends AbstractPayConfig> T getPayConfig() {
-        return GlobalConfig.getPayConfig(getPlatform());
+        return GlobalConfig.getPayConfig(getPlatform(), merchantId);
+    }
+
+    /**
+     * 获取根据支付配置创建的对象, 同一版本的配置只创建一次
+     * 对象挂在传入的配置所属的快照上, 保证对象和配置一致, 快照被替换后随快照一起关闭
+     *
+     * @param payConfig 支付配置
+     * @param name      对象名称
+     * @param factory   根据配置创建对象
+     * @param <T>       支付配置类型
+     * @param <R>       对象类型
+     * @return 对象
+     * @author zak
+     * @since 2.2.0
+     */
+    protected <T extends AbstractPayConfig, R> R getConfigResource(T payConfig, String name, Function<? super T, ? extends R> factory) {
+        return PayConfigSnapshot.of(payConfig).getResource(name, factory);
     }
 
     @Override
@@ -82,4 +130,9 @@ public abstract class AbstractPay implements Pay {
     public TransferResponse transferQuery(ITransferDTO transferDTO) {
         throw new PayException("暂不查询转账状态");
     }
+
+    @Override
+    public PayResponse closeOrder(IPayDTO payDTO) {
+        throw new PayException("暂不支持关闭订单");
+    }
 }
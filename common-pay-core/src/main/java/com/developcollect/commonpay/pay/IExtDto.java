@@ -1,5 +1,7 @@
 package com.developcollect.commonpay.pay;
 
+import com.developcollect.commonpay.ExtKeys;
+
 import java.io.Serializable;
 
 /**
@@ -34,4 +36,18 @@ public interface IExtDto extends Serializable {
         // do nothing
         // 留给子类去重写
     }
+
+    /**
+     * 获取商户标识
+     * 多商户时用来选择商户, 为空时由{@link com.developcollect.commonpay.config.IMerchantRouter}选择
+     * 默认从扩展参数{@link ExtKeys#MERCHANT_ID}中获取, 订单上保存了商户标识的可以重写这个方法
+     *
+     * @return 商户标识
+     * @author zak
+     * @since 2.2.0
+     */
+    default String getMerchantId() {
+        Object merchantId = getExt(ExtKeys.MERCHANT_ID);
+        return merchantId == null ? null : merchantId.toString();
+    }
 }
@@ -0,0 +1,256 @@
+package com.developcollect.commonpay.pay;
+
+import com.developcollect.commonpay.warmup.WarmUpSteps;
+
+import java.io.Serializable;
+
+/**
+ * 支付抽象接口
+ *
+ * @author zak
+ * @since 1.0.0
+ */
+public interface Pay extends Serializable {
+
+
+    /**
+     * 扫用户付款码支付
+     *
+     * @param payDTO    支付参数
+     */
+    PayResponse payScan(IPayDTO payDTO);
+
+    /**
+     * app支付
+     * 有些平台(如: 微信)在app支付时需要后台预下单,然后app根据预下单结果进行支付
+     * 有的(如: 支付宝)不需要,只要app直接调用平台支付接口就行
+     */
+    PayAppResult payApp(IPayDTO payDTO);
+
+
+    /**
+     * 支付
+     * 通过付款二维码支付
+     *
+     * @param payDTO 支付参数
+     * @return String 二维码值
+     * @author zak
+     * @since 1.0.0
+     */
+    String payQrCode(IPayDTO payDTO);
+
+
+    /**
+     * 通过跳转到第三方的支付PC表单实现支付
+     *
+     * @param payDTO 支付参数
+     * @return String html代码片段
+     * @author zak
+     * @since 1.0.0
+     */
+    String payPcForm(IPayDTO payDTO);
+
+    /**
+     * 通过跳转到第三方的支付WAP表单实现支付
+     *
+     * @param payDTO
+     * @return java.lang.String
+     * @author Zhu Kaixiao
+     * @date 2020/8/15 10:55
+     */
+    String payWapForm(IPayDTO payDTO);
+
+
+    /**
+     * 在微信浏览器里面使用WeixinJSBridge打开H5网页中执行JS调起支付
+     * 仅微信支持
+     *
+     * @param payDTO 支付参数
+     * @return PayWxJsResult
+     * @author Zhu Kaixiao
+     * @date 2020/8/15 13:49
+     */
+    PayWxJsResult payWxJs(IPayDTO payDTO);
+
+    /**
+     * 通过小程序js实现支付
+     * 仅微信支持
+     *
+     * @param payDTO 支付参数
+     * @return PayWxJsResult
+     * @author Zhu Kaixiao
+     * @date 2020/8/15 13:49
+     */
+    PayWxJsResult payAppletsJs(IPayDTO payDTO);
+
+    /**
+     * 同步调用支付
+     * 直接返回支付结果，不使用异步通知的方式
+     *
+     * @author zak
+     * @since 1.0.0
+     */
+    PayResponse paySync(IPayDTO payDTO);
+
+
+    /**
+     * 支付结果查询
+     *
+     * @author zak
+     * @since 1.0.0
+     */
+    PayResponse payQuery(IPayDTO payDTO);
+
+    /**
+     * 退款
+     *
+     * @param refundDTO 退款信息
+     * @return 退款结果
+     * @author zak
+     * @since 1.0.0
+     */
+    RefundResponse refundSync(IPayDTO payDTO, IRefundDTO refundDTO);
+
+    RefundResponse refundQuery(IRefundDTO transferDTO);
+
+    /**
+     * 支付结果查询, 结果用{@link QueryResult}表示
+     * 订单不存在、未支付这些业务结果不抛异常, 适合定时查询这类高频调用;
+     * 默认实现包装{@link #payQuery(IPayDTO)}, 支付平台的实现应该覆盖它避免构造异常
+     *
+     * @param payDTO 订单
+     * @return 查询结果
+     * @author zak
+     * @since 2.2.0
+     */
+    default QueryResult<PayResponse> payQueryResult(IPayDTO payDTO) {
+        try {
+            PayResponse payResponse = payQuery(payDTO);
+            return payResponse == null
+                    ? QueryResult.transportError("订单[" + payDTO.getOutTradeNo() + "]查询失败", null)
+                    : QueryResult.of(payResponse);
+        } catch (RuntimeException e) {
+            return QueryResult.transportError(e);
+        }
+    }
+
+    /**
+     * 把{@link #payQueryResult(IPayDTO)}的结果转换为{@link #payQuery(IPayDTO)}的返回值
+     * {@link com.developcollect.commonpay.guard.GuardedPay}用查询结果判断调用是否失败, 再用这个方法得到原来的返回值;
+     * 默认实现对应默认的{@link #payQueryResult(IPayDTO)}: 抛出原来的异常, 否则返回查询到的结果,
+     * 覆盖了{@link #payQueryResult(IPayDTO)}的实现也要覆盖这个方法, 保持和{@link #payQuery(IPayDTO)}一致
+     *
+     * @param payDTO 订单
+     * @param result 查询结果
+     * @return 支付结果
+     * @author zak
+     * @since 2.2.0
+     */
+    default PayResponse toPayQueryResponse(IPayDTO payDTO, QueryResult<PayResponse> result) {
+        return QueryResult.legacyResponse(result);
+    }
+
+    /**
+     * 退款结果查询, 结果用{@link QueryResult}表示
+     *
+     * @param refundDTO 退款单
+     * @return 查询结果
+     * @author zak
+     * @since 2.2.0
+     * @see #payQueryResult(IPayDTO)
+     */
+    default QueryResult<RefundResponse> refundQueryResult(IRefundDTO refundDTO) {
+        try {
+            RefundResponse refundResponse = refundQuery(refundDTO);
+            return refundResponse == null
+                    ? QueryResult.transportError("退款单[" + refundDTO.getOutRefundNo() + "]查询失败", null)
+                    : QueryResult.of(refundResponse);
+        } catch (RuntimeException e) {
+            return QueryResult.transportError(e);
+        }
+    }
+
+    /**
+     * 把{@link #refundQueryResult(IRefundDTO)}的结果转换为{@link #refundQuery(IRefundDTO)}的返回值
+     *
+     * @param refundDTO 退款单
+     * @param result    查询结果
+     * @return 退款结果
+     * @author zak
+     * @since 2.2.0
+     * @see #toPayQueryResponse(IPayDTO, QueryResult)
+     */
+    default RefundResponse toRefundQueryResponse(IRefundDTO refundDTO, QueryResult<RefundResponse> result) {
+        return QueryResult.legacyResponse(result);
+    }
+
+    /**
+     * 转账
+     *
+     * @param transferDTO 转账信息
+     * @return 转账结果
+     * @author zak
+     * @since 1.0.0
+     */
+    TransferResponse transferSync(ITransferDTO transferDTO);
+
+
+    TransferResponse transferQuery(ITransferDTO transferDTO);
+
+    /**
+     * 转账结果查询, 结果用{@link QueryResult}表示
+     *
+     * @param transferDTO 转账单
+     * @return 查询结果
+     * @author zak
+     * @since 2.2.0
+     * @see #payQueryResult(IPayDTO)
+     */
+    default QueryResult<TransferResponse> transferQueryResult(ITransferDTO transferDTO) {
+        try {
+            TransferResponse transferResponse = transferQuery(transferDTO);
+            return transferResponse == null
+                    ? QueryResult.transportError("转账单[" + transferDTO.getOutTransferNo() + "]查询失败", null)
+                    : QueryResult.of(transferResponse);
+        } catch (RuntimeException e) {
+            return QueryResult.transportError(e);
+        }
+    }
+
+    /**
+     * 把{@link #transferQueryResult(ITransferDTO)}的结果转换为{@link #transferQuery(ITransferDTO)}的返回值
+     *
+     * @param transferDTO 转账单
+     * @param result      查询结果
+     * @return 转账结果
+     * @author zak
+     * @since 2.2.0
+     * @see #toPayQueryResponse(IPayDTO, QueryResult)
+     */
+    default TransferResponse toTransferQueryResponse(ITransferDTO transferDTO, QueryResult<TransferResponse> result) {
+        return QueryResult.legacyResponse(result);
+    }
+
+    /**
+     * 关闭订单
+     * 关闭后订单不能再支付, 如果订单在关闭前已经支付成功, 返回的是支付成功的结果
+     *
+     * @param payDTO 订单
+     * @return 关闭结果, 关闭成功时{@link PayResponse#isClosed()}为true
+     * @author zak
+     * @since 2.2.0
+     */
+    PayResponse closeOrder(IPayDTO payDTO);
+
+    /**
+     * 预热
+     * 创建客户端、解析密钥和证书、预先建立连接, 执行一次签名和报文编解码,
+     * 由{@link com.developcollect.commonpay.warmup.PayWarmUp}在初始化时调用, 默认什么也不做
+     *
+     * @param steps 用来执行并记录各个预热步骤
+     * @author zak
+     * @since 2.2.0
+     */
+    default void warmUp(WarmUpSteps steps) {
+    }
+}
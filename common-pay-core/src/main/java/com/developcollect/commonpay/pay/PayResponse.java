@@ -0,0 +1,106 @@
+package com.developcollect.commonpay.pay;
+
+import com.developcollect.commonpay.metrics.CallTimings;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 支付结果
+ * 各支付平台的通知和查询结果转换为支付结果的方法分别在{@code AliPayResponses}和{@code WxPayResponses}中
+ *
+ * @author zak
+ * @since 1.0.0
+ */
+@Data
+@Accessors(chain = true)
+public class PayResponse implements Serializable {
+
+    /**
+     * 支付平台
+     */
+    private int payPlatform;
+
+    /**
+     * 商户标识
+     * 多商户时为处理这笔业务的商户, 使用默认配置时为null
+     */
+    private String merchantId;
+
+    /**
+     * 是否支付成功
+     */
+    private boolean success;
+
+    /**
+     * 订单是否已关闭
+     * 已关闭的订单不会再支付成功, 和支付成功一样是终态
+     */
+    private boolean closed;
+
+    /**
+     * 错误代码
+     */
+    private String errCode;
+
+    /**
+     * 错误代码描述
+     */
+    private String errCodeDes;
+
+    /**
+     * 交易凭证号
+     */
+    private String tradeNo;
+
+    /**
+     * 原支付请求的商户订单号
+     */
+    private String outTradeNo;
+
+    /**
+     * 支付完成实际
+     */
+    private LocalDateTime payTime;
+
+    /**
+     * 各平台的原始通知信息
+     * 注意： 同一平台的异步推送信息和主动查询信息的对象可能不同
+     *       不能只靠payPlatform值来区分是什么对象
+     */
+    private Serializable rawObj;
+
+    /**
+     * 本次调用的分阶段耗时
+     * 只在调用的线程中有, 不序列化; 没有请求支付平台(如命中缓存)或没有配置指标收集器时为null
+     */
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private transient CallTimings timings;
+
+    /**
+     * 复制一份结果, 缓存中的结果不直接交给调用方修改
+     * 原始信息{@link #rawObj}只复制引用, 不要修改; 耗时{@link #timings}不复制
+     *
+     * @return 新的结果
+     * @author zak
+     * @since 2.2.0
+     */
+    public PayResponse copy() {
+        return new PayResponse()
+                .setPayPlatform(payPlatform)
+                .setMerchantId(merchantId)
+                .setSuccess(success)
+                .setClosed(closed)
+                .setErrCode(errCode)
+                .setErrCodeDes(errCodeDes)
+                .setTradeNo(tradeNo)
+                .setOutTradeNo(outTradeNo)
+                .setPayTime(payTime)
+                .setRawObj(rawObj);
+    }
+}
@@ -0,0 +1,225 @@
+package com.developcollect.commonpay.pay;
+
+import java.io.Serializable;
+
+/**
+ * 查询结果
+ * 查询接口的业务结果(未支付、订单不存在、业务错误)直接用状态和错误码表示, 不抛异常也不记录堆栈,
+ * 只有网络异常、验签失败这类意外的传输错误才保留异常
+ * <p>
+ * 定时查询这类高频调用应该使用返回查询结果的方法
+ *
+ * @param <T> 查询到的结果类型
+ * @author zak
+ * @since 2.2.0
+ */
+public final class QueryResult<T> implements Serializable {
+
+    /**
+     * 查询状态
+     */
+    public enum Status {
+        /**
+         * 查询成功, 并且已经是终态(支付成功、已关闭、退款成功或失败、转账成功或失败), 不用再查
+         */
+        SUCCESS,
+        /**
+         * 查询成功, 还在处理中(等待用户支付、退款处理中、转账处理中), 稍后再查
+         */
+        PENDING,
+        /**
+         * 支付平台没有这笔订单/退款单/转账单
+         */
+        NOT_FOUND,
+        /**
+         * 支付平台返回了业务错误
+         */
+        BUSINESS_ERROR,
+        /**
+         * 网络异常、响应无法解析、验签失败等意外错误
+         */
+        TRANSPORT_ERROR
+    }
+
+    private final Status status;
+
+    private final T response;
+
+    private final String code;
+
+    private final String message;
+
+    private final transient Throwable cause;
+
+
+    private QueryResult(Status status, T response, String code, String message, Throwable cause) {
+        this.status = status;
+        this.response = response;
+        this.code = code;
+        this.message = message;
+        this.cause = cause;
+    }
+
+    public static <T> QueryResult<T> success(T response) {
+        return new QueryResult<>(Status.SUCCESS, response, null, null, null);
+    }
+
+    public static <T> QueryResult<T> pending(T response) {
+        return new QueryResult<>(Status.PENDING, response, null, null, null);
+    }
+
+    /**
+     * @param response 可以为null, 有的支付平台不存在时也会返回部分信息
+     * @param code     支付平台的错误码
+     * @param message  支付平台的错误描述
+     */
+    public static <T> QueryResult<T> notFound(T response, String code, String message) {
+        return new QueryResult<>(Status.NOT_FOUND, response, code, message, null);
+    }
+
+    /**
+     * @param response 可以为null
+     * @param code     支付平台的错误码
+     * @param message  支付平台的错误描述
+     */
+    public static <T> QueryResult<T> businessError(T response, String code, String message) {
+        return new QueryResult<>(Status.BUSINESS_ERROR, response, code, message, null);
+    }
+
+    public static <T> QueryResult<T> transportError(Throwable cause) {
+        return new QueryResult<>(Status.TRANSPORT_ERROR, null, null, cause.getMessage(), cause);
+    }
+
+    /**
+     * @param message 错误描述
+     * @param cause   异常, 可以为null
+     */
+    public static <T> QueryResult<T> transportError(String message, Throwable cause) {
+        return new QueryResult<>(Status.TRANSPORT_ERROR, null, null, message, cause);
+    }
+
+    /**
+     * 根据支付结果判断是否已是终态
+     */
+    public static QueryResult<PayResponse> of(PayResponse response) {
+        return response.isSuccess() || response.isClosed() ? success(response) : pending(response);
+    }
+
+    /**
+     * 根据退款结果判断是否已是终态, 没有状态的视为退款单不存在
+     */
+    public static QueryResult<RefundResponse> of(RefundResponse response) {
+        switch (response.getStatus()) {
+            case RefundResponse.SUCCESS:
+            case RefundResponse.FAIL:
+                return success(response);
+            case RefundResponse.PROCESSING:
+                return pending(response);
+            default:
+                return notFound(response, null, null);
+        }
+    }
+
+    /**
+     * 根据转账结果判断是否已是终态
+     */
+    public static QueryResult<TransferResponse> of(TransferResponse response) {
+        Integer status = response.getStatus();
+        return status != null && (status == TransferResponse.SUCCESS || status == TransferResponse.FAIL)
+                ? success(response)
+                : pending(response);
+    }
+
+    /**
+     * 默认的查询结果包装了旧的查询方法, 反过来得到旧的查询方法的返回值:
+     * 旧方法抛出的异常原样抛出, 否则返回查询到的结果, 旧方法返回null时也返回null
+     *
+     * @param result 查询结果
+     * @param <T>    查询到的结果类型
+     * @return 旧的查询方法的返回值
+     */
+    static <T> T legacyResponse(QueryResult<T> result) {
+        if (result.cause instanceof RuntimeException) {
+            throw (RuntimeException) result.cause;
+        }
+        return result.response;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * 查询到的结果
+     * {@link Status#SUCCESS}和{@link Status#PENDING}时不为null, 其他状态下可能为null
+     */
+    public T getResponse() {
+        return response;
+    }
+
+    /**
+     * 支付平台的错误码
+     */
+    public String getCode() {
+        return code;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * 传输错误的异常, 其他状态下为null
+     */
+    public Throwable getCause() {
+        return cause;
+    }
+
+    public boolean isSuccess() {
+        return status == Status.SUCCESS;
+    }
+
+    public boolean isPending() {
+        return status == Status.PENDING;
+    }
+
+    public boolean isNotFound() {
+        return status == Status.NOT_FOUND;
+    }
+
+    public boolean isBusinessError() {
+        return status == Status.BUSINESS_ERROR;
+    }
+
+    public boolean isTransportError() {
+        return status == Status.TRANSPORT_ERROR;
+    }
+
+    /**
+     * 是否查询到了结果, 即{@link Status#SUCCESS}或{@link Status#PENDING}
+     */
+    public boolean isAnswered() {
+        return status == Status.SUCCESS || status == Status.PENDING;
+    }
+
+    /**
+     * 换成另一个结果对象, 状态、错误码和异常不变
+     * 用于把查询到的结果的副本交给其他调用方
+     *
+     * @param response 新的结果对象
+     * @param <R>      结果类型
+     * @return 新的查询结果
+     * @author zak
+     * @since 2.2.0
+     */
+    public <R> QueryResult<R> withResponse(R response) {
+        return new QueryResult<>(status, response, code, message, cause);
+    }
+
+    @Override
+    public String toString() {
+        return code == null
+                ? "QueryResult(" + status + (message == null ? "" : ", " + message) + ")"
+                : "QueryResult(" + status + ", " + code + ", " + message + ")";
+    }
+}
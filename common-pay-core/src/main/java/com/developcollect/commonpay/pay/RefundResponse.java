@@ -1,7 +1,10 @@
 package com.developcollect.commonpay.pay;
 
 
+import com.developcollect.commonpay.metrics.CallTimings;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 import lombok.experimental.Accessors;
 
 import java.io.Serializable;
@@ -45,6 +48,12 @@ public class RefundResponse implements Serializable {
      */
     private int payPlatform;
 
+    /**
+     * 商户标识
+     * 多商户时为处理这笔业务的商户, 使用默认配置时为null
+     */
+    private String merchantId;
+
     /**
      * 支付平台退款单号
      */
@@ -67,6 +76,14 @@ public class RefundResponse implements Serializable {
      */
     private Serializable rawObj;
 
+    /**
+     * 本次调用的分阶段耗时
+     * 只在调用的线程中有, 不序列化; 没有请求支付平台(如命中缓存)或没有配置指标收集器时为null
+     */
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private transient CallTimings timings;
+
 
     /**
      * 退款是否成功
@@ -75,4 +92,23 @@ public class RefundResponse implements Serializable {
     public boolean success() {
         return status == SUCCESS;
     }
+
+    /**
+     * 复制一份结果, 缓存中的结果不直接交给调用方修改
+     * 原始信息{@link #rawObj}只复制引用, 不要修改; 耗时{@link #timings}不复制
+     *
+     * @return 新的结果
+     * @author zak
+     * @since 2.2.0
+     */
+    public RefundResponse copy() {
+        return new RefundResponse()
+                .setStatus(status)
+                .setPayPlatform(payPlatform)
+                .setMerchantId(merchantId)
+                .setRefundNo(refundNo)
+                .setOutRefundNo(outRefundNo)
+                .setRefundTime(refundTime)
+                .setRawObj(rawObj);
+    }
 }
@@ -0,0 +1,141 @@
+package com.developcollect.commonpay.qrcode;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 二维码PNG编码器
+ * 直接把模块矩阵编码成1位灰度的PNG, 不经过BufferedImage和ImageIO;
+ * 扫描行、压缩缓冲区和Deflater都会复用, 所以实例不是线程安全的, 每个线程使用自己的实例
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+final class PngEncoder {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final byte[] IHDR = {'I', 'H', 'D', 'R'};
+    private static final byte[] IDAT = {'I', 'D', 'A', 'T'};
+    private static final byte[] IEND = {'I', 'E', 'N', 'D'};
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final CRC32 crc = new CRC32();
+    private final byte[] header = new byte[13];
+    private final byte[] intBuf = new byte[4];
+
+    /**
+     * 未压缩的图片数据, 每行以一个过滤类型字节开头
+     */
+    private byte[] raw = new byte[0];
+
+    /**
+     * 一个模块行对应的扫描行
+     */
+    private byte[] line = new byte[0];
+
+    private byte[] compressed = new byte[8192];
+
+
+    void encode(QrCodeMatrix matrix, OutputStream out) throws IOException {
+        int width = matrix.width;
+        int height = matrix.height;
+        int stride = 1 + (width + 7) / 8;
+        int rawLength = stride * height;
+        if (raw.length < rawLength) {
+            raw = new byte[rawLength];
+        }
+        if (line.length < stride) {
+            line = new byte[stride];
+        }
+
+        // 1表示白色, 先整张填白, 再画深色模块
+        Arrays.fill(raw, 0, rawLength, (byte) 0xFF);
+        for (int y = 0; y < height; y++) {
+            raw[y * stride] = 0;
+        }
+        int scale = matrix.scale;
+        for (int my = 0; my < matrix.modules; my++) {
+            Arrays.fill(line, 0, stride, (byte) 0xFF);
+            line[0] = 0;
+            boolean anyDark = false;
+            for (int mx = 0; mx < matrix.modules; mx++) {
+                if (matrix.isDark(mx, my)) {
+                    clearBits(line, matrix.left + mx * scale, scale);
+                    anyDark = true;
+                }
+            }
+            if (!anyDark) {
+                continue;
+            }
+            int y0 = matrix.top + my * scale;
+            for (int dy = 0; dy < scale; dy++) {
+                System.arraycopy(line, 0, raw, (y0 + dy) * stride, stride);
+            }
+        }
+
+        out.write(SIGNATURE);
+
+        writeInt(header, 0, width);
+        writeInt(header, 4, height);
+        // 位深1, 灰度, 默认压缩, 默认过滤, 不隔行
+        header[8] = 1;
+        header[9] = 0;
+        header[10] = 0;
+        header[11] = 0;
+        header[12] = 0;
+        writeChunk(out, IHDR, header, 13);
+
+        deflater.reset();
+        deflater.setInput(raw, 0, rawLength);
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+        writeChunk(out, IDAT, compressed, length);
+
+        writeChunk(out, IEND, header, 0);
+    }
+
+    /**
+     * 释放Deflater占用的本地内存
+     */
+    void close() {
+        deflater.end();
+    }
+
+
+    private void writeChunk(OutputStream out, byte[] type, byte[] data, int length) throws IOException {
+        writeInt(intBuf, 0, length);
+        out.write(intBuf);
+        out.write(type);
+        out.write(data, 0, length);
+        crc.reset();
+        crc.update(type);
+        crc.update(data, 0, length);
+        writeInt(intBuf, 0, (int) crc.getValue());
+        out.write(intBuf);
+    }
+
+    /**
+     * 把扫描行中从第from个像素开始的count个像素置为黑色
+     */
+    private static void clearBits(byte[] line, int from, int count) {
+        for (int x = from, end = from + count; x < end; x++) {
+            line[1 + (x >> 3)] &= ~(0x80 >>> (x & 7));
+        }
+    }
+
+    private static void writeInt(byte[] buf, int offset, int value) {
+        buf[offset] = (byte) (value >>> 24);
+        buf[offset + 1] = (byte) (value >>> 16);
+        buf[offset + 2] = (byte) (value >>> 8);
+        buf[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,33 @@
+package com.developcollect.commonpay.qrcode;
+
+/**
+ * 二维码图片格式
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public enum QrCodeFormat {
+
+    /**
+     * 黑白PNG图片
+     */
+    PNG("image/png"),
+
+    /**
+     * SVG矢量图
+     */
+    SVG("image/svg+xml");
+
+    private final String contentType;
+
+    QrCodeFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    /**
+     * 对应的http Content-Type
+     */
+    public String getContentType() {
+        return contentType;
+    }
+}
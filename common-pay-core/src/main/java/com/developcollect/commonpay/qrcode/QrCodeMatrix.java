@@ -0,0 +1,98 @@
+package com.developcollect.commonpay.qrcode;
+
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+import com.google.zxing.qrcode.encoder.Encoder;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * 二维码模块矩阵及其在图片中的布局
+ * 布局规则和zxing的QRCodeWriter一致: 模块按整数倍放大, 剩余空间平均分到四周作为留白
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+final class QrCodeMatrix {
+
+    /**
+     * 四周至少留出的模块数, 和原来使用的hutool默认配置一致
+     */
+    static final int QUIET_ZONE = 2;
+
+    private static final Map<EncodeHintType, Object> HINTS = new EnumMap<>(EncodeHintType.class);
+
+    static {
+        HINTS.put(EncodeHintType.CHARACTER_SET, "UTF-8");
+    }
+
+    /**
+     * 每个模块是否是深色, 按行存放
+     */
+    final boolean[] dark;
+
+    /**
+     * 每行的模块数
+     */
+    final int modules;
+
+    /**
+     * 图片宽高
+     */
+    final int width;
+    final int height;
+
+    /**
+     * 每个模块的边长, 单位像素
+     */
+    final int scale;
+
+    /**
+     * 矩阵左上角在图片中的位置
+     */
+    final int left;
+    final int top;
+
+    private QrCodeMatrix(boolean[] dark, int modules, int width, int height) {
+        this.dark = dark;
+        this.modules = modules;
+        int quietModules = modules + QUIET_ZONE * 2;
+        this.width = Math.max(width, quietModules);
+        this.height = Math.max(height, quietModules);
+        this.scale = Math.min(this.width / quietModules, this.height / quietModules);
+        this.left = (this.width - modules * scale) / 2;
+        this.top = (this.height - modules * scale) / 2;
+    }
+
+    static QrCodeMatrix encode(String content, int width, int height) {
+        if (content == null || content.isEmpty()) {
+            throw new IllegalArgumentException("qr code content is empty");
+        }
+        if (width < 0 || height < 0) {
+            throw new IllegalArgumentException("qr code size must not be negative");
+        }
+        ByteMatrix matrix;
+        try {
+            matrix = Encoder.encode(content, ErrorCorrectionLevel.M, HINTS).getMatrix();
+        } catch (WriterException e) {
+            throw new IllegalArgumentException("qr code content cannot be encoded", e);
+        }
+        int modules = matrix.getWidth();
+        boolean[] dark = new boolean[modules * modules];
+        byte[][] rows = matrix.getArray();
+        for (int y = 0; y < modules; y++) {
+            byte[] row = rows[y];
+            for (int x = 0; x < modules; x++) {
+                dark[y * modules + x] = row[x] == 1;
+            }
+        }
+        return new QrCodeMatrix(dark, modules, width, height);
+    }
+
+    boolean isDark(int x, int y) {
+        return dark[y * modules + x];
+    }
+}
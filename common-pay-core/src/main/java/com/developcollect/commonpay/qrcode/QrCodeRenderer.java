@@ -0,0 +1,205 @@
+package com.developcollect.commonpay.qrcode;
+
+import com.developcollect.commonpay.cache.BoundedCache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 二维码渲染器
+ * 把二维码内容直接编码成PNG或SVG, 支持输出到OutputStream和ByteBuffer;
+ * 渲染结果按 格式 + 尺寸 + 内容 缓存, 同一个支付二维码重复请求时不会重新渲染
+ * <p>
+ * 生成的二维码和原来使用的hutool默认配置一致: 纠错级别M, 四周留白2个模块, UTF-8编码
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public class QrCodeRenderer {
+
+    /**
+     * 默认最大缓存条目数
+     */
+    public static final int DEFAULT_MAX_SIZE = 1_000;
+
+    /**
+     * 默认存活时间, 单位毫秒, 和微信code_url的有效期一致
+     */
+    public static final long DEFAULT_EXPIRE_MILLIS = 2 * 60 * 60 * 1000L;
+
+    /**
+     * 最多保留的空闲PNG编码器数量, 多出来的用完就释放
+     */
+    private static final int MAX_IDLE_ENCODERS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * 渲染结果缓存, 为null时不缓存
+     */
+    private final BoundedCache<String, byte[]> cache;
+
+    private final ConcurrentLinkedQueue<PngEncoder> idleEncoders = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleEncoderCount = new AtomicInteger();
+
+    private final LongAdder renderCount = new LongAdder();
+
+
+    public QrCodeRenderer() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_EXPIRE_MILLIS);
+    }
+
+    /**
+     * @param maxSize                最大缓存条目数, 小于等于0时不缓存
+     * @param expireAfterWriteMillis 缓存存活时间, 单位毫秒
+     */
+    public QrCodeRenderer(int maxSize, long expireAfterWriteMillis) {
+        this.cache = maxSize > 0 ? new BoundedCache<>(maxSize, expireAfterWriteMillis) : null;
+    }
+
+    /**
+     * 渲染二维码
+     *
+     * @param content 二维码内容
+     * @param width   图片宽度, 单位像素
+     * @param height  图片高度, 单位像素
+     * @param format  图片格式
+     * @return 图片数据, 调用方不要修改
+     */
+    public byte[] render(String content, int width, int height, QrCodeFormat format) {
+        if (cache == null) {
+            return doRender(content, width, height, format);
+        }
+        String key = keyOf(content, width, height, format);
+        byte[] image = cache.get(key);
+        if (image == null) {
+            image = doRender(content, width, height, format);
+            cache.put(key, image);
+        }
+        return image;
+    }
+
+    /**
+     * 渲染二维码并写入输出流
+     *
+     * @param content 二维码内容
+     * @param width   图片宽度, 单位像素
+     * @param height  图片高度, 单位像素
+     * @param format  图片格式
+     * @param out     输出流
+     * @throws IOException 写入失败
+     */
+    public void render(String content, int width, int height, QrCodeFormat format, OutputStream out) throws IOException {
+        if (cache != null) {
+            out.write(render(content, width, height, format));
+            return;
+        }
+        encode(QrCodeMatrix.encode(content, width, height), format, out);
+    }
+
+    /**
+     * 渲染二维码并写入ByteBuffer
+     *
+     * @param content 二维码内容
+     * @param width   图片宽度, 单位像素
+     * @param height  图片高度, 单位像素
+     * @param format  图片格式
+     * @param buffer  目标缓冲区, 从当前位置开始写入
+     * @return 写入的字节数
+     * @throws java.nio.BufferOverflowException 缓冲区剩余空间不足
+     */
+    public int render(String content, int width, int height, QrCodeFormat format, ByteBuffer buffer) {
+        byte[] image = render(content, width, height, format);
+        buffer.put(image);
+        return image.length;
+    }
+
+    /**
+     * 渲染PNG二维码并转成Base64
+     *
+     * @param content 二维码内容
+     * @param width   图片宽度, 单位像素
+     * @param height  图片高度, 单位像素
+     * @return PNG图片的Base64
+     */
+    public String renderPngBase64(String content, int width, int height) {
+        return Base64.getEncoder().encodeToString(render(content, width, height, QrCodeFormat.PNG));
+    }
+
+    public void clear() {
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * 实际渲染的次数, 不包含命中缓存的请求
+     */
+    public long getRenderCount() {
+        return renderCount.sum();
+    }
+
+    public long getHitCount() {
+        return cache == null ? 0 : cache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return cache == null ? 0 : cache.getMissCount();
+    }
+
+
+    private byte[] doRender(String content, int width, int height, QrCodeFormat format) {
+        QrCodeMatrix matrix = QrCodeMatrix.encode(content, width, height);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1024 + matrix.width * matrix.height / 64);
+        try {
+            encode(matrix, format, out);
+        } catch (IOException e) {
+            // 写ByteArrayOutputStream不会出现IO异常
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private void encode(QrCodeMatrix matrix, QrCodeFormat format, OutputStream out) throws IOException {
+        renderCount.increment();
+        if (format == QrCodeFormat.SVG) {
+            SvgEncoder.encode(matrix, out);
+            return;
+        }
+        PngEncoder encoder = idleEncoders.poll();
+        if (encoder == null) {
+            encoder = new PngEncoder();
+        } else {
+            idleEncoderCount.decrementAndGet();
+        }
+        try {
+            encoder.encode(matrix, out);
+        } finally {
+            if (idleEncoderCount.incrementAndGet() <= MAX_IDLE_ENCODERS) {
+                idleEncoders.offer(encoder);
+            } else {
+                idleEncoderCount.decrementAndGet();
+                encoder.close();
+            }
+        }
+    }
+
+    private static String keyOf(String content, int width, int height, QrCodeFormat format) {
+        if (content == null || content.isEmpty()) {
+            throw new IllegalArgumentException("qr code content is empty");
+        }
+        return new StringBuilder(content.length() + 5)
+                .append((char) format.ordinal())
+                .append((char) (width >>> 16))
+                .append((char) width)
+                .append((char) (height >>> 16))
+                .append((char) height)
+                .append(content)
+                .toString();
+    }
+}
@@ -0,0 +1,51 @@
+package com.developcollect.commonpay.qrcode;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 二维码SVG编码器
+ * 每行连续的深色模块合并成一个矩形路径, 尺寸和PNG的布局一致
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+final class SvgEncoder {
+
+    private SvgEncoder() {
+    }
+
+    static void encode(QrCodeMatrix matrix, OutputStream out) throws IOException {
+        int scale = matrix.scale;
+        StringBuilder sb = new StringBuilder(256 + matrix.modules * matrix.modules);
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>")
+                .append("<svg xmlns=\"http://www.w3.org/2000/svg\" version=\"1.1\" width=\"").append(matrix.width)
+                .append("\" height=\"").append(matrix.height)
+                .append("\" viewBox=\"0 0 ").append(matrix.width).append(' ').append(matrix.height)
+                .append("\" shape-rendering=\"crispEdges\">")
+                .append("<rect width=\"100%\" height=\"100%\" fill=\"#FFFFFF\"/>")
+                .append("<path fill=\"#000000\" d=\"");
+        for (int my = 0; my < matrix.modules; my++) {
+            int mx = 0;
+            while (mx < matrix.modules) {
+                if (!matrix.isDark(mx, my)) {
+                    mx++;
+                    continue;
+                }
+                int start = mx;
+                while (mx < matrix.modules && matrix.isDark(mx, my)) {
+                    mx++;
+                }
+                int w = (mx - start) * scale;
+                sb.append('M').append(matrix.left + start * scale).append(',').append(matrix.top + my * scale)
+                        .append('h').append(w)
+                        .append('v').append(scale)
+                        .append('h').append(-w)
+                        .append('z');
+            }
+        }
+        sb.append("\"/></svg>");
+        out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,153 @@
+package com.developcollect.commonpay.warmup;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import com.developcollect.commonpay.PayPlatform;
+import com.developcollect.commonpay.config.AbstractPayConfig;
+import com.developcollect.commonpay.config.GlobalConfig;
+import com.developcollect.commonpay.pay.Pay;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 支付预热
+ * 在{@link GlobalConfig}初始化时并行预热每个支付平台(的每个商户): 加载SDK的类, 创建客户端并解析密钥和证书,
+ * 预先建立连接放进连接池, 执行一次签名和报文编解码, 第一笔业务调用就不用承担这些一次性的开销
+ * <p>
+ * 预热在后台线程中进行, 不阻塞初始化; 主动查询等预热结束后才开始第一轮,
+ * 超过{@link #timeoutMillis}还没结束的预热不再等待. 预热失败只记录日志, 不影响正常调用
+ * <p>
+ * 在{@link GlobalConfig}中配置后生效
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+@Slf4j
+@Accessors(chain = true)
+public class PayWarmUp {
+
+    /**
+     * 同时预热的支付对象数
+     */
+    @Getter
+    @Setter
+    private int parallelism = 4;
+
+    /**
+     * 每个支付对象预先建立的连接数, 为0时不建立连接
+     * 只对使用连接池的支付平台(微信支付)生效, 支付宝SDK使用JDK的keep-alive缓存, 空闲连接保留时间太短, 不预先建立连接
+     */
+    @Getter
+    @Setter
+    private int connections = 2;
+
+    /**
+     * 等待预热结束的最长时间, 单位毫秒
+     */
+    @Getter
+    @Setter
+    private long timeoutMillis = 30_000;
+
+    private volatile CompletableFuture<WarmUpReport> result;
+
+
+    /**
+     * 开始预热
+     *
+     * @param globalConfig 全局配置, 预热其中配置的所有支付平台和商户
+     * @return 预热结果, 所有预热结束或超时后完成, 不会异常完成
+     * @author zak
+     * @since 2.2.0
+     */
+    public synchronized CompletableFuture<WarmUpReport> start(GlobalConfig globalConfig) {
+        WarmUpReport report = new WarmUpReport();
+        CompletableFuture<WarmUpReport> future = new CompletableFuture<>();
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(
+                parallelism, parallelism,
+                0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                ThreadFactoryBuilder.create().setNamePrefix("COMMON-PAY-WARM-UP-").setDaemon(true).build()
+        );
+
+        for (Integer payPlatform : globalConfig.getPayConfigSupplierMap().keySet()) {
+            submit(workers, report, payPlatform, null);
+        }
+        for (Map.Entry<Integer, Map<String, Supplier<? extends AbstractPayConfig>>> entry : globalConfig.getMerchantPayConfigSupplierMap().entrySet()) {
+            for (String merchantId : entry.getValue().keySet()) {
+                submit(workers, report, entry.getKey(), merchantId);
+            }
+        }
+        workers.shutdown();
+
+        // 单独的线程等待预热结束, 超时后中断还在进行的预热
+        Thread waiter = new Thread(() -> {
+            boolean timedOut = false;
+            try {
+                timedOut = !workers.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                timedOut = true;
+                Thread.currentThread().interrupt();
+            } finally {
+                if (timedOut) {
+                    workers.shutdownNow();
+                }
+                report.finish(timedOut);
+                if (timedOut || report.getFailedCount() > 0) {
+                    log.warn("支付预热结束, 有步骤失败或超时: {}", report);
+                } else {
+                    log.info("支付预热结束: {}", report);
+                }
+                future.complete(report);
+            }
+        }, "COMMON-PAY-WARM-UP-WAITER");
+        waiter.setDaemon(true);
+        waiter.start();
+
+        result = future;
+        return future;
+    }
+
+    /**
+     * 最近一次预热的结果
+     *
+     * @return 预热结果, 还没有开始预热时返回null
+     * @author zak
+     * @since 2.2.0
+     */
+    public CompletableFuture<WarmUpReport> getResult() {
+        return result;
+    }
+
+    private void submit(ExecutorService workers, WarmUpReport report, int payPlatform, String merchantId) {
+        String target = merchantId == null ? platformLabel(payPlatform) : platformLabel(payPlatform) + ":" + merchantId;
+        workers.execute(() -> {
+            WarmUpSteps steps = new WarmUpSteps(target, connections, report);
+            try {
+                Pay pay = steps.call("pay", () -> GlobalConfig.payFactory().createPay(payPlatform, merchantId));
+                pay.warmUp(steps);
+            } catch (Exception e) {
+                // 失败的步骤已经记录在结果中, 第一笔业务调用时会重新尝试
+                log.debug("预热[{}]失败", target, e);
+            }
+        });
+    }
+
+    private static String platformLabel(int payPlatform) {
+        if (payPlatform == PayPlatform.ALI_PAY) {
+            return "alipay";
+        }
+        if (payPlatform == PayPlatform.WX_PAY) {
+            return "wxpay";
+        }
+        return Integer.toString(payPlatform);
+    }
+}
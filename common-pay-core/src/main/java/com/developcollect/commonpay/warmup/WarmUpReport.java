@@ -0,0 +1,138 @@
+package com.developcollect.commonpay.warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 一次预热的结果
+ * 记录每个预热对象各步骤的耗时和失败原因
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public final class WarmUpReport {
+
+    /**
+     * 预热步骤
+     */
+    public static final class Step {
+        private final String target;
+        private final String name;
+        private final long nanos;
+        private final Throwable error;
+
+        Step(String target, String name, long nanos, Throwable error) {
+            this.target = target;
+            this.name = name;
+            this.nanos = nanos;
+            this.error = error;
+        }
+
+        /**
+         * 预热对象, 如 支付平台 或 支付平台:商户标识
+         */
+        public String getTarget() {
+            return target;
+        }
+
+        /**
+         * 步骤名称
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * 耗时, 单位纳秒
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * 失败原因, 成功时为null
+         */
+        public Throwable getError() {
+            return error;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+    }
+
+
+    private final List<Step> steps = Collections.synchronizedList(new ArrayList<>());
+
+    private final long startNanos = System.nanoTime();
+
+    private volatile long totalNanos = -1;
+
+    private volatile boolean timedOut;
+
+
+    void addStep(Step step) {
+        steps.add(step);
+    }
+
+    void finish(boolean timedOut) {
+        this.timedOut = timedOut;
+        this.totalNanos = System.nanoTime() - startNanos;
+    }
+
+    /**
+     * 已完成的步骤, 按完成的先后排列
+     */
+    public List<Step> getSteps() {
+        synchronized (steps) {
+            return new ArrayList<>(steps);
+        }
+    }
+
+    /**
+     * 失败的步骤数
+     */
+    public int getFailedCount() {
+        int count = 0;
+        for (Step step : getSteps()) {
+            if (!step.isSuccess()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 是否因为超时没有等所有预热完成
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * 整个预热的耗时
+     *
+     * @return 耗时, 单位纳秒, 还没有结束时返回到现在为止的耗时
+     */
+    public long getTotalNanos() {
+        return totalNanos >= 0 ? totalNanos : System.nanoTime() - startNanos;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(256)
+                .append("total=").append(String.format("%.1f", getTotalNanos() / 1e6)).append("ms");
+        if (timedOut) {
+            sb.append(" (timed out)");
+        }
+        for (Step step : getSteps()) {
+            sb.append("\n  ").append(step.target).append(' ').append(step.name).append('=')
+                    .append(String.format("%.1f", step.nanos / 1e6)).append("ms");
+            if (step.error != null) {
+                sb.append(" failed: ").append(step.error);
+            }
+        }
+        return sb.toString();
+    }
+}
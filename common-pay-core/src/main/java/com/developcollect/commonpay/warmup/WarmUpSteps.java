@@ -0,0 +1,88 @@
+package com.developcollect.commonpay.warmup;
+
+import com.developcollect.commonpay.exception.PayException;
+
+import java.util.concurrent.Callable;
+
+/**
+ * 一个预热对象的预热步骤
+ * 由{@link PayWarmUp}传给{@link com.developcollect.commonpay.pay.Pay#warmUp(WarmUpSteps)},
+ * 支付对象用它执行并记录各个步骤, 某一步失败时抛出异常, 后面的步骤不再执行
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public final class WarmUpSteps {
+
+    /**
+     * 没有返回值的步骤
+     */
+    @FunctionalInterface
+    public interface Action {
+        void run() throws Exception;
+    }
+
+
+    private final String target;
+
+    private final int connections;
+
+    private final WarmUpReport report;
+
+    WarmUpSteps(String target, int connections, WarmUpReport report) {
+        this.target = target;
+        this.connections = connections;
+        this.report = report;
+    }
+
+    /**
+     * 预热对象
+     */
+    public String getTarget() {
+        return target;
+    }
+
+    /**
+     * 预先建立的连接数, 为0时不建立连接
+     */
+    public int getConnections() {
+        return connections;
+    }
+
+    /**
+     * 执行一个步骤并记录耗时
+     *
+     * @param name   步骤名称
+     * @param action 步骤
+     * @param <T>    步骤结果类型
+     * @return 步骤结果
+     * @throws PayException 步骤失败
+     */
+    public <T> T call(String name, Callable<T> action) {
+        long start = System.nanoTime();
+        try {
+            T result = action.call();
+            report.addStep(new WarmUpReport.Step(target, name, System.nanoTime() - start, null));
+            return result;
+        } catch (Exception e) {
+            report.addStep(new WarmUpReport.Step(target, name, System.nanoTime() - start, e));
+            throw (e instanceof PayException)
+                    ? (PayException) e
+                    : new PayException("预热[" + target + "]的" + name + "失败", e);
+        }
+    }
+
+    /**
+     * 执行一个没有返回值的步骤并记录耗时
+     *
+     * @param name   步骤名称
+     * @param action 步骤
+     * @throws PayException 步骤失败
+     */
+    public void run(String name, Action action) {
+        call(name, () -> {
+            action.run();
+            return null;
+        });
+    }
+}
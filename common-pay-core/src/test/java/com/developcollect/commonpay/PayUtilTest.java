@@ -0,0 +1,139 @@
+package com.developcollect.commonpay;
+
+import com.developcollect.commonpay.cache.TerminalStateCache;
+import com.developcollect.commonpay.config.AbstractPayConfig;
+import com.developcollect.commonpay.config.GlobalConfig;
+import com.developcollect.commonpay.guard.PayCallContext;
+import com.developcollect.commonpay.pay.DefaultPayDTO;
+import com.developcollect.commonpay.pay.DefaultRefundDTO;
+import com.developcollect.commonpay.pay.IPayDTO;
+import com.developcollect.commonpay.pay.IRefundDTO;
+import com.developcollect.commonpay.pay.PayResponse;
+import com.developcollect.commonpay.pay.QueryResult;
+import com.developcollect.commonpay.pay.RefundResponse;
+import com.developcollect.commonpay.pay.nopay.NoPay;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * 支付工具类测试
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public class PayUtilTest {
+
+    private static final int PLATFORM = 99;
+
+    private final Deque<QueryResult<RefundResponse>> refundQueryResults = new ArrayDeque<>();
+    private int refundQueryCount;
+    private long payQueryMillis;
+    private GlobalConfig config;
+
+    @Before
+    public void installGlobalConfig() throws ReflectiveOperationException {
+        config = new GlobalConfig();
+        config.setTerminalStateCache(new TerminalStateCache());
+        config.setPayFactory(payPlatform -> new NoPay() {
+            @Override
+            public QueryResult<RefundResponse> refundQueryResult(IRefundDTO refundDTO) {
+                refundQueryCount++;
+                return refundQueryResults.poll();
+            }
+
+            @Override
+            public PayResponse payQuery(IPayDTO payDTO) {
+                sleep(payQueryMillis);
+                PayCallContext.current().checkDeadline("查询订单");
+                return new PayResponse().setPayPlatform(PLATFORM).setOutTradeNo(payDTO.getOutTradeNo());
+            }
+        });
+        installGlobalConfig(config);
+    }
+
+    @After
+    public void uninstallGlobalConfig() throws ReflectiveOperationException {
+        installGlobalConfig(null);
+    }
+
+    @Test
+    public void notFoundRefundIsQueriedAgain() {
+        // 支付平台还没有记录的退款单返回失败状态, 但不是终态
+        refundQueryResults.add(QueryResult.notFound(refundResponse(RefundResponse.FAIL), "REFUNDNOTEXIST", "退款不存在"));
+        refundQueryResults.add(QueryResult.success(refundResponse(RefundResponse.SUCCESS)));
+        DefaultRefundDTO refundDTO = new DefaultRefundDTO();
+        refundDTO.setPayPlatform(PLATFORM);
+        refundDTO.setOutRefundNo("R1");
+
+        assertEquals(RefundResponse.FAIL, PayUtil.refundQuery(refundDTO).getStatus());
+        assertNull(GlobalConfig.terminalStateCache().getRefundResponse(PLATFORM, "R1"));
+
+        assertEquals(RefundResponse.SUCCESS, PayUtil.refundQuery(refundDTO).getStatus());
+        assertEquals(2, refundQueryCount);
+
+        // 成功后从缓存返回
+        assertEquals(RefundResponse.SUCCESS, PayUtil.refundQuery(refundDTO).getStatus());
+        assertEquals(RefundResponse.SUCCESS, PayUtil.refundQueryResult(refundDTO).getResponse().getStatus());
+        assertEquals(2, refundQueryCount);
+    }
+
+    @Test
+    public void timedPayQueryReturnsNullAtDeadline() {
+        DefaultPayDTO payDTO = new DefaultPayDTO();
+        payDTO.setPayPlatform(PLATFORM);
+        payDTO.setOutTradeNo("T1");
+
+        payQueryMillis = 50;
+        assertNull(PayUtil.payQuery(payDTO, 10));
+
+        payQueryMillis = 0;
+        assertEquals("T1", PayUtil.payQuery(payDTO, 1000).getOutTradeNo());
+    }
+
+    @Test
+    public void merchantOnlyPlatformPassesVerification() {
+        assertFalse(GlobalConfig.payPlatformVerify(PLATFORM));
+        Map<String, Supplier<? extends AbstractPayConfig>> merchants = new HashMap<>();
+        merchants.put("m1", () -> null);
+        config.getMerchantPayConfigSupplierMap().put(PLATFORM, merchants);
+
+        assertTrue(GlobalConfig.payPlatformVerify(PLATFORM));
+        assertTrue(GlobalConfig.payPlatformVerify(PLATFORM, "m1"));
+        assertFalse(GlobalConfig.payPlatformVerify(PLATFORM, "m2"));
+        // 没有默认配置
+        assertFalse(GlobalConfig.payPlatformVerify(PLATFORM, null));
+    }
+
+
+    private static RefundResponse refundResponse(int status) {
+        RefundResponse refundResponse = new RefundResponse();
+        refundResponse.setPayPlatform(PLATFORM);
+        refundResponse.setOutRefundNo("R1");
+        refundResponse.setStatus(status);
+        return refundResponse;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void installGlobalConfig(GlobalConfig config) throws ReflectiveOperationException {
+        Field instance = GlobalConfig.class.getDeclaredField("GLOBAL_CONFIG");
+        instance.setAccessible(true);
+        instance.set(null, config);
+    }
+}
@@ -0,0 +1,136 @@
+package com.developcollect.commonpay.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 有界缓存测试
+ * 用手动推进的时钟测试过期
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public class BoundedCacheTest {
+
+    @Test
+    public void evictsEarliestWrittenWhenFull() {
+        ManualClockCache cache = new ManualClockCache(3, 60_000);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+        cache.put("d", 4);
+
+        assertEquals(3, cache.size());
+        assertNull(cache.peek("a"));
+        assertEquals(Integer.valueOf(4), cache.peek("d"));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void overwriteMovesEntryToTail() {
+        ManualClockCache cache = new ManualClockCache(3, 60_000);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+        cache.put("a", 10);
+        assertEquals(3, cache.size());
+
+        cache.put("d", 4);
+        assertNull(cache.peek("b"));
+        assertEquals(Integer.valueOf(10), cache.peek("a"));
+        assertEquals(Integer.valueOf(3), cache.peek("c"));
+        assertEquals(Integer.valueOf(4), cache.peek("d"));
+    }
+
+    @Test
+    public void expiresAfterWrite() {
+        ManualClockCache cache = new ManualClockCache(10, 1000);
+        cache.put("a", 1);
+        cache.now += 999;
+        assertEquals(Integer.valueOf(1), cache.peek("a"));
+
+        cache.now += 1;
+        assertNull(cache.peek("a"));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void explicitExpireIsCappedByDefault() {
+        ManualClockCache cache = new ManualClockCache(10, 1000);
+        cache.put("short", 1, cache.now + 100);
+        cache.put("long", 2, cache.now + 60_000);
+        cache.put("past", 3, cache.now);
+        assertNull(cache.peek("past"));
+
+        cache.now += 100;
+        assertNull(cache.peek("short"));
+        assertEquals(Integer.valueOf(2), cache.peek("long"));
+        cache.now += 900;
+        assertNull(cache.peek("long"));
+    }
+
+    @Test
+    public void expiredEntriesAreDroppedOnWrite() {
+        ManualClockCache cache = new ManualClockCache(2, 1000);
+        cache.put("a", 1);
+        cache.now += 1000;
+        cache.put("b", 2);
+        cache.put("c", 3);
+        // a过期后先被清理, b不会因为容量被淘汰
+        assertEquals(2, cache.size());
+        assertEquals(Integer.valueOf(2), cache.peek("b"));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void onlyGetCountsHits() {
+        ManualClockCache cache = new ManualClockCache(10, 1000);
+        assertEquals(1.0, cache.hitRate(), 0.0001);
+        cache.put("a", 1);
+        cache.peek("a");
+        cache.peek("b");
+        assertEquals(0, cache.getHitCount());
+        assertEquals(0, cache.getMissCount());
+
+        cache.get("a");
+        cache.get("b");
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.5, cache.hitRate(), 0.0001);
+    }
+
+    @Test
+    public void removeAndClear() {
+        ManualClockCache cache = new ManualClockCache(10, 1000);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        assertEquals(Integer.valueOf(1), cache.remove("a"));
+        assertNull(cache.remove("a"));
+        assertEquals(1, cache.size());
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNull(cache.peek("b"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveSize() {
+        new BoundedCache<String, Integer>(0, 1000);
+    }
+
+
+    private static final class ManualClockCache extends BoundedCache<String, Integer> {
+
+        long now = 1_000_000;
+
+        ManualClockCache(int maxSize, long expireAfterWriteMillis) {
+            super(maxSize, expireAfterWriteMillis);
+        }
+
+        @Override
+        protected long currentTimeMillis() {
+            return now;
+        }
+    }
+}
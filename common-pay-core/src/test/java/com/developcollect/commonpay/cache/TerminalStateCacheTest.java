@@ -0,0 +1,178 @@
+package com.developcollect.commonpay.cache;
+
+import com.developcollect.commonpay.pay.PayResponse;
+import com.developcollect.commonpay.pay.RefundResponse;
+import com.developcollect.commonpay.pay.TransferResponse;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 终态结果缓存测试
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public class TerminalStateCacheTest {
+
+    private static final int PLATFORM = 1;
+
+    @Test
+    public void onlyTerminalResultsAreCached() {
+        TerminalStateCache cache = new TerminalStateCache();
+        assertFalse(cache.put(payResponse("T1").setSuccess(false)));
+        assertFalse(cache.put(refundResponse("R1", RefundResponse.PROCESSING)));
+        assertFalse(cache.put(transferResponse("S1", null)));
+        assertFalse(cache.put(transferResponse("S2", TransferResponse.PROCESSING)));
+        assertEquals(0, cache.size());
+
+        assertTrue(cache.put(payResponse("T2").setSuccess(true)));
+        assertTrue(cache.put(payResponse("T3").setClosed(true)));
+        assertTrue(cache.put(refundResponse("R2", RefundResponse.SUCCESS)));
+        assertTrue(cache.put(refundResponse("R3", RefundResponse.FAIL)));
+        assertTrue(cache.put(transferResponse("S3", TransferResponse.SUCCESS)));
+        assertTrue(cache.put(transferResponse("S4", TransferResponse.FAIL)));
+        assertEquals(6, cache.size());
+
+        assertNull(cache.getPayResponse(PLATFORM, "T1"));
+        assertTrue(cache.getPayResponse(PLATFORM, "T2").isSuccess());
+        assertTrue(cache.getPayResponse(PLATFORM, "T3").isClosed());
+        assertEquals(RefundResponse.FAIL, cache.getRefundResponse(PLATFORM, "R3").getStatus());
+        assertEquals(Integer.valueOf(TransferResponse.SUCCESS), cache.getTransferResponse(PLATFORM, "S3").getStatus());
+        // 不同支付平台的单号互不影响
+        assertNull(cache.getPayResponse(PLATFORM + 1, "T2"));
+    }
+
+    @Test
+    public void returnsCopies() {
+        TerminalStateCache cache = new TerminalStateCache();
+        PayResponse original = payResponse("T1").setSuccess(true).setTradeNo("4200001");
+        cache.put(original);
+        original.setTradeNo("changed by caller");
+
+        PayResponse first = cache.getPayResponse(PLATFORM, "T1");
+        assertEquals("4200001", first.getTradeNo());
+        first.setSuccess(false).setTradeNo("changed again");
+
+        PayResponse second = cache.getPayResponse(PLATFORM, "T1");
+        assertNotSame(first, second);
+        assertTrue(second.isSuccess());
+        assertEquals("4200001", second.getTradeNo());
+        assertNull(second.getTimings());
+    }
+
+    @Test
+    public void peekDoesNotCountHitsOrMisses() {
+        TerminalStateCache cache = new TerminalStateCache();
+        cache.put(payResponse("T1").setSuccess(true));
+
+        PayResponse peeked = cache.peekPayResponse(PLATFORM, null, "T1");
+        assertTrue(peeked.isSuccess());
+        peeked.setSuccess(false);
+        assertNull(cache.peekPayResponse(PLATFORM, null, "T2"));
+        assertEquals(0, cache.getHitCount());
+        assertEquals(0, cache.getMissCount());
+
+        assertTrue(cache.getPayResponse(PLATFORM, "T1").isSuccess());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void merchantsDoNotShareOrderNumbers() {
+        TerminalStateCache cache = new TerminalStateCache();
+        cache.put(payResponse("T1").setMerchantId("m1").setSuccess(true).setTradeNo("m1-trade"));
+        cache.put(payResponse("T1").setMerchantId("m2").setClosed(true));
+
+        PayResponse m1 = cache.getPayResponse(PLATFORM, "m1", "T1");
+        assertTrue(m1.isSuccess());
+        assertEquals("m1", m1.getMerchantId());
+        assertEquals("m1-trade", m1.getTradeNo());
+        assertTrue(cache.getPayResponse(PLATFORM, "m2", "T1").isClosed());
+        // 默认商户没有这个订单
+        assertNull(cache.getPayResponse(PLATFORM, "T1"));
+
+        RefundResponse refund = refundResponse("R1", RefundResponse.SUCCESS).setMerchantId("m1");
+        cache.markBroadcasted(refund);
+        assertTrue(cache.isBroadcasted(refund));
+        assertFalse(cache.isBroadcasted(refundResponse("R1", RefundResponse.SUCCESS).setMerchantId("m2")));
+    }
+
+    @Test
+    public void cacheKeysRoundTrip() {
+        String key = CacheKeys.of(CacheKeys.REFUND, 70000, "m1", "R1");
+        assertEquals(CacheKeys.REFUND, CacheKeys.typeOf(key));
+        assertEquals(70000, CacheKeys.payPlatformOf(key));
+        assertEquals("m1", CacheKeys.merchantIdOf(key));
+        assertEquals("R1", CacheKeys.noOf(key));
+
+        String defaultKey = CacheKeys.of(CacheKeys.REFUND, 70000, "R1");
+        assertNull(CacheKeys.merchantIdOf(defaultKey));
+        assertEquals("R1", CacheKeys.noOf(defaultKey));
+        // 商户标识和单号的边界不会混淆
+        assertFalse(CacheKeys.of(CacheKeys.PAY, 1, "m", "1T").equals(CacheKeys.of(CacheKeys.PAY, 1, "m1", "T")));
+    }
+
+    @Test
+    public void broadcastedFlagSurvivesLaterPuts() {
+        TerminalStateCache cache = new TerminalStateCache();
+        RefundResponse refund = refundResponse("R1", RefundResponse.SUCCESS);
+        cache.put(refund);
+        assertFalse(cache.isBroadcasted(refund));
+
+        cache.markBroadcasted(refund);
+        assertTrue(cache.isBroadcasted(refund));
+        cache.put(refund);
+        assertTrue(cache.isBroadcasted(refund));
+
+        // 非终态结果不标记
+        RefundResponse processing = refundResponse("R2", RefundResponse.PROCESSING);
+        cache.markBroadcasted(processing);
+        assertFalse(cache.isBroadcasted(processing));
+        assertNull(cache.getRefundResponse(PLATFORM, "R2"));
+    }
+
+    @Test
+    public void evictsWhenFull() {
+        TerminalStateCache cache = new TerminalStateCache(2, 60_000);
+        cache.put(payResponse("T1").setSuccess(true));
+        cache.put(payResponse("T2").setSuccess(true));
+        cache.put(payResponse("T3").setSuccess(true));
+        assertEquals(2, cache.size());
+        assertNull(cache.getPayResponse(PLATFORM, "T1"));
+        assertNotNull(cache.getPayResponse(PLATFORM, "T3"));
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void expiresAfterWrite() throws InterruptedException {
+        TerminalStateCache cache = new TerminalStateCache(10, 50);
+        cache.put(payResponse("T1").setSuccess(true));
+        assertNotNull(cache.getPayResponse(PLATFORM, "T1"));
+        Thread.sleep(80);
+        assertNull(cache.getPayResponse(PLATFORM, "T1"));
+        assertEquals(0, cache.size());
+    }
+
+
+    private static PayResponse payResponse(String outTradeNo) {
+        return new PayResponse()
+                .setPayPlatform(PLATFORM)
+                .setOutTradeNo(outTradeNo);
+    }
+
+    private static RefundResponse refundResponse(String outRefundNo, int status) {
+        return new RefundResponse()
+                .setPayPlatform(PLATFORM)
+                .setOutRefundNo(outRefundNo)
+                .setStatus(status);
+    }
+
+    private static TransferResponse transferResponse(String outTransferNo, Integer status) {
+        return new TransferResponse()
+                .setPayPlatform(PLATFORM)
+                .setOutTransferNo(outTransferNo)
+                .setStatus(status);
+    }
+}
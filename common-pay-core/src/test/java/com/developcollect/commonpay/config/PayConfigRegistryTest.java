@@ -0,0 +1,94 @@
+package com.developcollect.commonpay.config;
+
+import com.developcollect.commonpay.exception.PayException;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * 支付配置注册表测试
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public class PayConfigRegistryTest {
+
+    private static final int PLATFORM = 1;
+
+    @Test
+    public void frozenConfigRejectsSetters() {
+        PayConfigRegistry registry = new PayConfigRegistry((payPlatform, merchantId) -> TestConfig::new);
+        AbstractPayConfig config = registry.get(PLATFORM).getConfig();
+        assertTrue(config.isFrozen());
+        try {
+            config.setQrCodeWidth(100);
+            fail("frozen config should reject setters");
+        } catch (PayException expected) {
+        }
+        try {
+            config.putExt("key", "value");
+            fail("frozen config should reject putExt");
+        } catch (PayException expected) {
+        }
+        assertEquals(300, config.getQrCodeWidth());
+    }
+
+    @Test
+    public void resourcesBelongToTheConfigSnapshot() {
+        PayConfigRegistry registry = new PayConfigRegistry((payPlatform, merchantId) -> TestConfig::new);
+        AtomicInteger created = new AtomicInteger();
+        PayConfigSnapshot<AbstractPayConfig> first = registry.get(PLATFORM);
+        AbstractPayConfig firstConfig = first.getConfig();
+        assertSame(first, PayConfigSnapshot.of(firstConfig));
+
+        Resource resource = first.getResource("client", c -> resource(created));
+        assertSame(resource, first.getResource("client", c -> resource(created)));
+
+        // 重新加载后, 旧配置仍然拿到旧快照上的对象, 不会创建不受管理的对象
+        PayConfigSnapshot<AbstractPayConfig> second = registry.reload(PLATFORM);
+        assertNotSame(first, second);
+        assertSame(resource, PayConfigSnapshot.of(firstConfig).getResource("client", c -> resource(created)));
+        assertEquals(1, created.get());
+
+        first.closeResources();
+        assertTrue(resource.closed);
+        try {
+            first.getResource("client", c -> resource(created));
+            fail("closed snapshot should not create resources");
+        } catch (PayException expected) {
+        }
+        assertEquals(1, created.get());
+
+        second.getResource("client", c -> resource(created));
+        assertEquals(2, created.get());
+    }
+
+    @Test
+    public void configNotLoadedByRegistryHasNoSnapshot() {
+        try {
+            PayConfigSnapshot.of(new TestConfig());
+            fail("config was not loaded by the registry");
+        } catch (PayException expected) {
+        }
+    }
+
+
+    private static class TestConfig extends AbstractPayConfig {
+    }
+
+    private static Resource resource(AtomicInteger created) {
+        created.incrementAndGet();
+        return new Resource();
+    }
+
+    private static class Resource implements AutoCloseable {
+        private boolean closed;
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
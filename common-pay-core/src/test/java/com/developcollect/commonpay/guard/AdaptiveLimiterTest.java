@@ -0,0 +1,209 @@
+package com.developcollect.commonpay.guard;
+
+import com.developcollect.commonpay.exception.ConcurrencyLimitException;
+import com.developcollect.commonpay.exception.PayException;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * 自适应并发限制测试
+ * 限制的收紧和放开直接喂给固定的耗时样本, 只用一个本地模拟网关做冒烟测试
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public class AdaptiveLimiterTest {
+
+    private static final int PLATFORM = 1;
+
+    private final List<Thread> threads = new ArrayList<>();
+
+    @After
+    public void joinThreads() throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.interrupt();
+            thread.join(5000);
+        }
+    }
+
+    @Test
+    public void limitFollowsLatency() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter()
+                .setInitialLimit(16)
+                .setMinLimit(2)
+                .setMaxLimit(64);
+        AdaptiveLimiter.Limit limit = limiter.limitOf(PLATFORM, PayOperation.PAY_QUERY);
+
+        sample(limit, 10, 300);
+        int healthyLimit = limiter.getLimit(PLATFORM, PayOperation.PAY_QUERY);
+        assertTrue("limit did not grow while busy and healthy: " + healthyLimit, healthyLimit > 16);
+
+        sample(limit, 200, 50);
+        int slowLimit = limiter.getLimit(PLATFORM, PayOperation.PAY_QUERY);
+        assertTrue("latency rose but limit did not tighten: " + healthyLimit + " -> " + slowLimit, slowLimit < healthyLimit);
+
+        sample(limit, 10, 100);
+        int recoveredLimit = limiter.getLimit(PLATFORM, PayOperation.PAY_QUERY);
+        assertTrue("latency recovered but limit did not relax: " + slowLimit + " -> " + recoveredLimit, recoveredLimit > slowLimit);
+
+        assertEquals(Integer.valueOf(recoveredLimit), limiter.getLimits().get(PLATFORM).get(PayOperation.PAY_QUERY));
+        // 其他操作不受影响
+        assertEquals(16, limiter.getLimit(PLATFORM, PayOperation.PAY_SCAN));
+    }
+
+    @Test
+    public void idleLimitDoesNotGrow() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter().setInitialLimit(16);
+        AdaptiveLimiter.Limit limit = limiter.limitOf(PLATFORM, PayOperation.PAY_QUERY);
+        for (int i = 0; i < 100; i++) {
+            limit.onSample(TimeUnit.MILLISECONDS.toNanos(10), 1, false);
+        }
+        assertEquals(16, limiter.getLimit(PLATFORM, PayOperation.PAY_QUERY));
+        assertEquals(10, limiter.getBaselineRttMillis(PLATFORM, PayOperation.PAY_QUERY), 0.01);
+    }
+
+    @Test
+    public void rejectsCallsOverLimit() throws InterruptedException {
+        AdaptiveLimiter limiter = new AdaptiveLimiter()
+                .setInitialLimit(2)
+                .setMinLimit(2)
+                .setMaxLimit(2);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 2; i++) {
+            start(() -> limiter.execute(PLATFORM, PayOperation.PAY_SCAN, () -> await(release)));
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (limiter.getInFlight(PLATFORM, PayOperation.PAY_SCAN) < 2) {
+            assertTrue("timed out waiting for calls in flight", System.currentTimeMillis() < deadline);
+            Thread.sleep(2);
+        }
+        try {
+            limiter.execute(PLATFORM, PayOperation.PAY_SCAN, () -> "third");
+            fail("call over limit should be rejected");
+        } catch (ConcurrencyLimitException expected) {
+        }
+        assertEquals(1, limiter.getRejectedCount());
+
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join(5000);
+            assertFalse("thread did not finish", thread.isAlive());
+        }
+        assertEquals(0, limiter.getInFlight(PLATFORM, PayOperation.PAY_SCAN));
+    }
+
+    @Test
+    public void networkErrorsBackOff() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter()
+                .setInitialLimit(40)
+                .setMinLimit(4);
+        for (int i = 0; i < 10; i++) {
+            try {
+                limiter.execute(PLATFORM, PayOperation.REFUND_SYNC, () -> {
+                    throw new PayException("gateway timeout", new IOException("Read timed out"));
+                });
+                fail();
+            } catch (PayException expected) {
+            }
+        }
+        int limit = limiter.getLimit(PLATFORM, PayOperation.REFUND_SYNC);
+        assertTrue("limit did not back off: " + limit, limit < 20);
+
+        // 业务异常不算网络异常
+        try {
+            limiter.execute(PLATFORM, PayOperation.REFUND_SYNC, () -> {
+                throw new PayException("refund amount exceeds order amount");
+            });
+            fail();
+        } catch (PayException expected) {
+        }
+        assertTrue(limiter.getLimit(PLATFORM, PayOperation.REFUND_SYNC) >= limit);
+    }
+
+    @Test
+    public void samplesRealGatewayCalls() throws IOException {
+        HttpServer gateway = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        ExecutorService gatewayExecutor = Executors.newCachedThreadPool();
+        gateway.setExecutor(gatewayExecutor);
+        gateway.createContext("/pay", exchange -> {
+            byte[] body = "<xml><return_code>SUCCESS</return_code></xml>".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        gateway.start();
+        try {
+            String gatewayUrl = "http://127.0.0.1:" + gateway.getAddress().getPort() + "/pay";
+            AdaptiveLimiter limiter = new AdaptiveLimiter();
+            for (int i = 0; i < 5; i++) {
+                assertTrue(limiter.execute(PLATFORM, PayOperation.PAY_QUERY, () -> callGateway(gatewayUrl)).contains("SUCCESS"));
+            }
+            assertEquals(0, limiter.getInFlight(PLATFORM, PayOperation.PAY_QUERY));
+            assertTrue(limiter.getBaselineRttMillis(PLATFORM, PayOperation.PAY_QUERY) > 0);
+            assertTrue(limiter.getLimits().get(PLATFORM).containsKey(PayOperation.PAY_QUERY));
+        } finally {
+            gateway.stop(0);
+            gatewayExecutor.shutdownNow();
+        }
+    }
+
+
+    /**
+     * 喂给限制若干个相同耗时的样本, 在途请求数取当前限制, 模拟调用方一直满负荷
+     */
+    private static void sample(AdaptiveLimiter.Limit limit, long rttMillis, int count) {
+        for (int i = 0; i < count; i++) {
+            limit.onSample(TimeUnit.MILLISECONDS.toNanos(rttMillis), limit.limit, false);
+        }
+    }
+
+    private void start(Runnable task) {
+        Thread thread = new Thread(task);
+        threads.add(thread);
+        thread.start();
+    }
+
+    private static String await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "released";
+    }
+
+    private static String callGateway(String gatewayUrl) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(gatewayUrl).openConnection();
+            try (InputStream in = connection.getInputStream()) {
+                byte[] buffer = new byte[256];
+                StringBuilder sb = new StringBuilder();
+                for (int n; (n = in.read(buffer)) > 0; ) {
+                    sb.append(new String(buffer, 0, n, StandardCharsets.UTF_8));
+                }
+                return sb.toString();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
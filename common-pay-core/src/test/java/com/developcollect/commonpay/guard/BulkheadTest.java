@@ -0,0 +1,157 @@
+package com.developcollect.commonpay.guard;
+
+import com.developcollect.commonpay.exception.BulkheadFullException;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * 隔离舱测试
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public class BulkheadTest {
+
+    private final List<Thread> threads = new ArrayList<>();
+
+    @After
+    public void joinThreads() throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.interrupt();
+            thread.join(5000);
+        }
+    }
+
+    @Test
+    public void rejectsWhenFullAndQueueIsEmpty() {
+        Bulkhead bulkhead = new Bulkhead().configure(OperationClass.CHECKOUT, 1, 0);
+        String result = bulkhead.execute(OperationClass.CHECKOUT, () -> {
+            assertEquals(1, bulkhead.getActiveCount(OperationClass.CHECKOUT));
+            try {
+                bulkhead.execute(OperationClass.CHECKOUT, () -> "second");
+                fail("compartment is full");
+            } catch (BulkheadFullException expected) {
+            }
+            // 其他舱不受影响
+            return bulkhead.execute(OperationClass.QUERY, () -> "query");
+        });
+        assertEquals("query", result);
+        assertEquals(1, bulkhead.getRejectedCount(OperationClass.CHECKOUT));
+        assertEquals(0, bulkhead.getActiveCount(OperationClass.CHECKOUT));
+    }
+
+    @Test
+    public void foregroundQueueTimesOut() {
+        Bulkhead bulkhead = new Bulkhead()
+                .setMaxWaitMillis(50)
+                .configure(OperationClass.SETTLEMENT, 1, 1);
+        long start = System.nanoTime();
+        bulkhead.execute(OperationClass.SETTLEMENT, () -> {
+            try {
+                bulkhead.execute(OperationClass.SETTLEMENT, () -> "second");
+                fail("queued call should time out");
+            } catch (BulkheadFullException expected) {
+            }
+            return null;
+        });
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 40);
+        assertEquals(1, bulkhead.getQueuedCount(OperationClass.SETTLEMENT));
+        assertEquals(1, bulkhead.getRejectedCount(OperationClass.SETTLEMENT));
+        assertEquals(0, bulkhead.getWaitingCount(OperationClass.SETTLEMENT));
+    }
+
+    @Test
+    public void backgroundUsesOnlyPartOfCompartment() {
+        Bulkhead bulkhead = new Bulkhead()
+                .setBackgroundMaxWaitMillis(20)
+                .configure(OperationClass.QUERY, 2, 1, 1);
+        PayCallContext.background(() -> bulkhead.execute(OperationClass.QUERY, () -> {
+            try {
+                bulkhead.execute(OperationClass.QUERY, () -> "second background");
+                fail("background calls are limited to one");
+            } catch (BulkheadFullException expected) {
+            }
+            return null;
+        }));
+        assertEquals(1, bulkhead.getShedCount(OperationClass.QUERY));
+
+        // 前台调用可以用剩下的并发
+        String result = PayCallContext.background(() -> bulkhead.execute(OperationClass.QUERY, () -> foreground(bulkhead)));
+        assertEquals("foreground", result);
+        assertEquals(0, bulkhead.getRejectedCount(OperationClass.QUERY));
+    }
+
+    @Test
+    public void foregroundGoesBeforeQueuedBackground() throws Exception {
+        Bulkhead bulkhead = new Bulkhead().configure(OperationClass.SETTLEMENT, 1, 4, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        start(() -> bulkhead.execute(OperationClass.SETTLEMENT, () -> {
+            await(release);
+            return null;
+        }));
+        waitForCount(() -> bulkhead.getActiveCount(OperationClass.SETTLEMENT), 1);
+        start(() -> PayCallContext.background(() -> bulkhead.execute(OperationClass.SETTLEMENT, () -> order.add("background"))));
+        waitForCount(() -> bulkhead.getWaitingCount(OperationClass.SETTLEMENT), 1);
+        start(() -> bulkhead.execute(OperationClass.SETTLEMENT, () -> order.add("foreground")));
+        waitForCount(() -> bulkhead.getWaitingCount(OperationClass.SETTLEMENT), 2);
+
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join(5000);
+            assertFalse("thread did not finish", thread.isAlive());
+        }
+        assertEquals(2, order.size());
+        assertEquals("foreground", order.get(0));
+        assertEquals("background", order.get(1));
+        assertEquals(0, bulkhead.getActiveCount(OperationClass.SETTLEMENT));
+    }
+
+
+    /**
+     * 在另一个线程发起前台调用, 模拟同一个舱里同时有前台和后台调用
+     */
+    private static String foreground(Bulkhead bulkhead) {
+        String[] result = new String[1];
+        Thread thread = new Thread(() -> result[0] = bulkhead.execute(OperationClass.QUERY, () -> "foreground"));
+        thread.start();
+        try {
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return result[0];
+    }
+
+    private void start(Runnable task) {
+        Thread thread = new Thread(task);
+        threads.add(thread);
+        thread.start();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitForCount(IntSupplier count, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (count.getAsInt() < expected) {
+            assertTrue("timed out waiting for " + expected, System.currentTimeMillis() < deadline);
+            Thread.sleep(2);
+        }
+    }
+}
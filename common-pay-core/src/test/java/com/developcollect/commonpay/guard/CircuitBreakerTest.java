@@ -0,0 +1,257 @@
+package com.developcollect.commonpay.guard;
+
+import com.developcollect.commonpay.exception.CircuitOpenException;
+import com.developcollect.commonpay.exception.PayException;
+import com.developcollect.commonpay.pay.QueryResult;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * 熔断器测试
+ * 熔断、半开探测和恢复的状态变化
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public class CircuitBreakerTest {
+
+    private static final int PLATFORM = 1;
+
+    private final List<Thread> threads = new ArrayList<>();
+
+    @After
+    public void joinThreads() throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.interrupt();
+            thread.join(5000);
+        }
+    }
+
+    @Test
+    public void opensWhenFailureRateExceedsThreshold() {
+        List<String> transitions = new ArrayList<>();
+        CircuitBreaker breaker = new CircuitBreaker()
+                .setMinimumCalls(4)
+                .setFailureRateThreshold(0.5);
+        breaker.addListener((payPlatform, operation, from, to) -> transitions.add(operation + ":" + from + "->" + to));
+
+        breaker.execute(PLATFORM, PayOperation.REFUND_SYNC, () -> "ok");
+        breaker.execute(PLATFORM, PayOperation.REFUND_SYNC, () -> "ok");
+        gatewayFailure(breaker, PayOperation.REFUND_SYNC);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(PLATFORM, PayOperation.REFUND_SYNC));
+        gatewayFailure(breaker, PayOperation.REFUND_SYNC);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(PLATFORM, PayOperation.REFUND_SYNC));
+        assertEquals(0.5, breaker.getFailureRate(PLATFORM, PayOperation.REFUND_SYNC), 0.0001);
+
+        // 熔断期间不再调用支付平台
+        AtomicInteger calls = new AtomicInteger();
+        try {
+            breaker.execute(PLATFORM, PayOperation.REFUND_SYNC, calls::incrementAndGet);
+            fail("call should be rejected while open");
+        } catch (CircuitOpenException expected) {
+        }
+        try {
+            breaker.checkNotOpen(PLATFORM, PayOperation.REFUND_SYNC);
+            fail("checkNotOpen should fail while open");
+        } catch (CircuitOpenException expected) {
+        }
+        assertEquals(0, calls.get());
+        assertEquals(1, transitions.size());
+        assertEquals("REFUND_SYNC:CLOSED->OPEN", transitions.get(0));
+
+        // 其他操作不受影响
+        assertEquals("ok", breaker.execute(PLATFORM, PayOperation.PAY_QUERY, () -> "ok"));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(PLATFORM, PayOperation.PAY_QUERY));
+    }
+
+    @Test
+    public void businessErrorsDoNotOpen() {
+        CircuitBreaker breaker = new CircuitBreaker().setMinimumCalls(4);
+        for (int i = 0; i < 10; i++) {
+            try {
+                breaker.execute(PLATFORM, PayOperation.REFUND_SYNC, () -> {
+                    throw new PayException("refund amount exceeds order amount");
+                });
+                fail();
+            } catch (PayException expected) {
+            }
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(PLATFORM, PayOperation.REFUND_SYNC));
+        assertEquals(0, breaker.getFailureRate(PLATFORM, PayOperation.REFUND_SYNC), 0.0001);
+    }
+
+    @Test
+    public void queryResultsAreClassifiedByKind() {
+        CircuitBreaker breaker = new CircuitBreaker().setMinimumCalls(4);
+        for (int i = 0; i < 4; i++) {
+            breaker.execute(PLATFORM, PayOperation.PAY_QUERY, () -> QueryResult.notFound(null, "ORDERNOTEXIST", "order not exist"));
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(PLATFORM, PayOperation.PAY_QUERY));
+
+        for (int i = 0; i < 4; i++) {
+            breaker.execute(PLATFORM, PayOperation.PAY_QUERY, () -> QueryResult.transportError(new IOException("Read timed out")));
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(PLATFORM, PayOperation.PAY_QUERY));
+    }
+
+    @Test
+    public void opensOnSlowCalls() {
+        CircuitBreaker breaker = new CircuitBreaker()
+                .setMinimumCalls(3)
+                .setSlowCallMillis(0)
+                .setSlowCallRateThreshold(0.8);
+        for (int i = 0; i < 3; i++) {
+            breaker.execute(PLATFORM, PayOperation.PAY_SCAN, () -> "ok");
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(PLATFORM, PayOperation.PAY_SCAN));
+    }
+
+    @Test
+    public void halfOpenLimitsProbesAndClosesAfterSuccess() throws InterruptedException {
+        List<CircuitBreaker.State> states = new ArrayList<>();
+        CircuitBreaker breaker = new CircuitBreaker()
+                .setOpenMillis(50)
+                .setHalfOpenPermits(2);
+        breaker.addListener((payPlatform, operation, from, to) -> states.add(to));
+        breaker.forceOpen(PLATFORM, PayOperation.TRANSFER_SYNC);
+        Thread.sleep(80);
+
+        // 熔断时间已过, 检查放行, 但不占用探测名额
+        breaker.checkNotOpen(PLATFORM, PayOperation.TRANSFER_SYNC);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(PLATFORM, PayOperation.TRANSFER_SYNC));
+
+        // 两个探测调用在途时, 第三个调用被拒绝
+        String result = breaker.execute(PLATFORM, PayOperation.TRANSFER_SYNC, () -> {
+            assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(PLATFORM, PayOperation.TRANSFER_SYNC));
+            return breaker.execute(PLATFORM, PayOperation.TRANSFER_SYNC, () -> {
+                try {
+                    breaker.execute(PLATFORM, PayOperation.TRANSFER_SYNC, () -> "third");
+                    fail("probe over permits should be rejected");
+                } catch (CircuitOpenException expected) {
+                }
+                return "probe";
+            });
+        });
+        assertEquals("probe", result);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(PLATFORM, PayOperation.TRANSFER_SYNC));
+        assertEquals(3, states.size());
+        assertEquals(CircuitBreaker.State.OPEN, states.get(0));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, states.get(1));
+        assertEquals(CircuitBreaker.State.CLOSED, states.get(2));
+    }
+
+    @Test
+    public void halfOpenFailureReopens() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker()
+                .setOpenMillis(50)
+                .setHalfOpenPermits(2);
+        breaker.forceOpen(PLATFORM, PayOperation.CLOSE_ORDER);
+        Thread.sleep(80);
+
+        gatewayFailure(breaker, PayOperation.CLOSE_ORDER);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(PLATFORM, PayOperation.CLOSE_ORDER));
+        try {
+            breaker.execute(PLATFORM, PayOperation.CLOSE_ORDER, () -> "ok");
+            fail("call should be rejected after a failed probe");
+        } catch (CircuitOpenException expected) {
+        }
+
+        breaker.reset(PLATFORM, PayOperation.CLOSE_ORDER);
+        assertEquals("ok", breaker.execute(PLATFORM, PayOperation.CLOSE_ORDER, () -> "ok"));
+    }
+
+    @Test
+    public void listenersRunWithoutBreakerLock() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker()
+                .setMinimumCalls(2)
+                .setFailureRateThreshold(0.5);
+        List<Boolean> unlocked = new ArrayList<>();
+        // 监听器里另一个线程读取熔断器, 持有锁通知时会等到超时
+        breaker.addListener((payPlatform, operation, from, to) -> {
+            Thread reader = new Thread(() -> breaker.getFailureRate(payPlatform, operation));
+            reader.start();
+            try {
+                reader.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            unlocked.add(!reader.isAlive());
+        });
+
+        gatewayFailure(breaker, PayOperation.PAY_QUERY);
+        gatewayFailure(breaker, PayOperation.PAY_QUERY);
+        breaker.reset(PLATFORM, PayOperation.PAY_QUERY);
+        assertEquals(2, unlocked.size());
+        assertTrue(unlocked.get(0));
+        assertTrue(unlocked.get(1));
+    }
+
+    @Test
+    public void callAdmittedBeforeTransitionIsNotCounted() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker()
+                .setOpenMillis(50)
+                .setHalfOpenPermits(2);
+        CountDownLatch admitted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean failed = new AtomicBoolean();
+        // 正常状态放行的慢调用, 半开后才失败
+        start(() -> {
+            try {
+                breaker.execute(PLATFORM, PayOperation.REFUND_QUERY, () -> {
+                    admitted.countDown();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw new PayException("gateway timeout", new IOException("Read timed out"));
+                });
+            } catch (PayException expected) {
+                failed.set(true);
+            }
+        });
+        assertTrue(admitted.await(5, TimeUnit.SECONDS));
+        breaker.forceOpen(PLATFORM, PayOperation.REFUND_QUERY);
+        Thread.sleep(80);
+        assertEquals("probe", breaker.execute(PLATFORM, PayOperation.REFUND_QUERY, () -> "probe"));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(PLATFORM, PayOperation.REFUND_QUERY));
+
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join(5000);
+            assertFalse("thread did not finish", thread.isAlive());
+        }
+        assertTrue(failed.get());
+        // 不算探测失败, 第二个探测成功后恢复
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(PLATFORM, PayOperation.REFUND_QUERY));
+        assertEquals("probe", breaker.execute(PLATFORM, PayOperation.REFUND_QUERY, () -> "probe"));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(PLATFORM, PayOperation.REFUND_QUERY));
+    }
+
+
+    private void start(Runnable task) {
+        Thread thread = new Thread(task);
+        threads.add(thread);
+        thread.start();
+    }
+
+    private static void gatewayFailure(CircuitBreaker breaker, PayOperation operation) {
+        try {
+            breaker.execute(PLATFORM, operation, () -> {
+                throw new PayException("gateway timeout", new IOException("Read timed out"));
+            });
+            fail();
+        } catch (PayException expected) {
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.developcollect.commonpay.guard;
+
+import com.developcollect.commonpay.exception.RateLimitException;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * 客户端限流测试
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public class RateLimiterTest {
+
+    private static final int PLATFORM = 1;
+
+    @Test
+    public void unlimitedOperationsDoNotWait() {
+        RateLimiter limiter = new RateLimiter().limit(PLATFORM, PayOperation.PAY_QUERY, 1);
+        for (int i = 0; i < 100; i++) {
+            limiter.acquire(PLATFORM, null, PayOperation.REFUND_QUERY);
+            limiter.acquire(PLATFORM + 1, null, PayOperation.PAY_QUERY);
+        }
+        assertEquals(0, limiter.getRejectedCount());
+    }
+
+    @Test
+    public void rejectsWhenWaitExceedsLimit() {
+        RateLimiter limiter = new RateLimiter()
+                .setMaxWaitMillis(0)
+                .limit(PLATFORM, PayOperation.PAY_QUERY, 1);
+        limiter.acquire(PLATFORM, null, PayOperation.PAY_QUERY);
+        try {
+            limiter.acquire(PLATFORM, null, PayOperation.PAY_QUERY);
+            fail("second call in the same second should be rejected");
+        } catch (RateLimitException expected) {
+        }
+        assertEquals(1, limiter.getAcquiredCount(PayOperation.PAY_QUERY));
+        assertEquals(1, limiter.getRejectedCount(PayOperation.PAY_QUERY));
+    }
+
+    @Test
+    public void foregroundWaitsForNextToken() {
+        // 每秒20个令牌, 桶里最多1个
+        RateLimiter limiter = new RateLimiter()
+                .setBurstSeconds(0.05)
+                .limit(PLATFORM, PayOperation.PAY_SCAN, 20);
+        limiter.acquire(PLATFORM, null, PayOperation.PAY_SCAN);
+        long start = System.nanoTime();
+        limiter.acquire(PLATFORM, null, PayOperation.PAY_SCAN);
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue("waited only " + waitedMillis + "ms", waitedMillis >= 40);
+        assertEquals(2, limiter.getAcquiredCount(PayOperation.PAY_SCAN));
+        assertEquals(1, limiter.getWaitedCount(PayOperation.PAY_SCAN));
+        assertTrue(limiter.getAverageWaitMillis(PayOperation.PAY_SCAN) > 0);
+    }
+
+    @Test
+    public void merchantsHaveSeparateBuckets() {
+        RateLimiter limiter = new RateLimiter()
+                .setMaxWaitMillis(0)
+                .limit(PLATFORM, PayOperation.REFUND_SYNC, 1)
+                .limit(PLATFORM, "vip", PayOperation.REFUND_SYNC, 100);
+        limiter.acquire(PLATFORM, "a", PayOperation.REFUND_SYNC);
+        limiter.acquire(PLATFORM, "b", PayOperation.REFUND_SYNC);
+        limiter.acquire(PLATFORM, null, PayOperation.REFUND_SYNC);
+        for (int i = 0; i < 50; i++) {
+            limiter.acquire(PLATFORM, "vip", PayOperation.REFUND_SYNC);
+        }
+        try {
+            limiter.acquire(PLATFORM, "a", PayOperation.REFUND_SYNC);
+            fail("merchant a has used its token");
+        } catch (RateLimitException expected) {
+        }
+    }
+
+    @Test
+    public void backgroundLeavesReserveForForeground() {
+        // 桶容量10, 后台调用要保留5个
+        RateLimiter limiter = new RateLimiter()
+                .setBackgroundMaxWaitMillis(50)
+                .setBackgroundReserveRatio(0.5)
+                .limit(PLATFORM, PayOperation.PAY_QUERY, 10);
+        PayCallContext.background(() -> limiter.acquire(PLATFORM, null, PayOperation.PAY_QUERY));
+        for (int i = 0; i < 4; i++) {
+            limiter.acquire(PLATFORM, null, PayOperation.PAY_QUERY);
+        }
+        // 只剩5个, 后台调用拿不到, 等不到就放弃
+        try {
+            PayCallContext.background(() -> limiter.acquire(PLATFORM, null, PayOperation.PAY_QUERY));
+            fail("background call should yield to foreground");
+        } catch (RateLimitException expected) {
+        }
+        // 前台调用还能用保留的令牌
+        for (int i = 0; i < 5; i++) {
+            limiter.acquire(PLATFORM, null, PayOperation.PAY_QUERY);
+        }
+        assertEquals(10, limiter.getAcquiredCount(PayOperation.PAY_QUERY));
+        assertEquals(1, limiter.getRejectedCount(PayOperation.PAY_QUERY));
+    }
+
+    @Test
+    public void waitIsBoundedByDeadline() {
+        RateLimiter limiter = new RateLimiter()
+                .setMaxWaitMillis(5000)
+                .limit(PLATFORM, PayOperation.TRANSFER_SYNC, 1);
+        limiter.acquire(PLATFORM, null, PayOperation.TRANSFER_SYNC);
+        long start = System.nanoTime();
+        try {
+            PayCallContext.withDeadline(50, () -> {
+                limiter.acquire(PLATFORM, null, PayOperation.TRANSFER_SYNC);
+                return null;
+            });
+            fail("wait beyond the deadline should be rejected");
+        } catch (RateLimitException expected) {
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+    }
+}
@@ -0,0 +1,263 @@
+package com.developcollect.commonpay.guard;
+
+import com.developcollect.commonpay.exception.DeadlineExceededException;
+import com.developcollect.commonpay.exception.DuplicateCallException;
+import com.developcollect.commonpay.exception.PayException;
+import com.developcollect.commonpay.pay.PayResponse;
+import com.developcollect.commonpay.pay.QueryResult;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * 相同调用合并测试
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public class SingleFlightTest {
+
+    private static final int PLATFORM = 1;
+
+    private final List<Thread> threads = new ArrayList<>();
+
+    @After
+    public void joinThreads() throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.interrupt();
+            thread.join(5000);
+        }
+    }
+
+    @Test
+    public void concurrentQueriesShareOneCall() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<Object> first = new AtomicReference<>();
+        AtomicReference<Object> second = new AtomicReference<>();
+
+        start(() -> first.set(singleFlight.execute(PLATFORM, PayOperation.PAY_QUERY, "T1", () -> {
+            await(release);
+            return new Object();
+        })));
+        waitUntil(singleFlight::inFlightCount, 1);
+        start(() -> second.set(singleFlight.execute(PLATFORM, PayOperation.PAY_QUERY, "T1", Object::new)));
+        waitUntil(singleFlight::getCollapsedCount, 1);
+        release.countDown();
+        joinAll();
+
+        assertNotNull(first.get());
+        assertSame(first.get(), second.get());
+        assertEquals(1, singleFlight.getExecutedCount(PayOperation.PAY_QUERY));
+        assertEquals(1, singleFlight.getCollapsedCount(PayOperation.PAY_QUERY));
+        assertEquals(0, singleFlight.inFlightCount());
+    }
+
+    @Test
+    public void joinedCallsGetTheirOwnCopy() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<QueryResult<PayResponse>> first = new AtomicReference<>();
+        AtomicReference<QueryResult<PayResponse>> second = new AtomicReference<>();
+
+        start(() -> first.set(singleFlight.execute(PLATFORM, PayOperation.PAY_QUERY, "T1", () -> {
+            await(release);
+            PayResponse payResponse = new PayResponse();
+            payResponse.setOutTradeNo("T1");
+            payResponse.setSuccess(true);
+            return QueryResult.success(payResponse);
+        })));
+        waitUntil(singleFlight::inFlightCount, 1);
+        start(() -> second.set(singleFlight.execute(PLATFORM, PayOperation.PAY_QUERY, "T1", () -> null)));
+        waitUntil(singleFlight::getCollapsedCount, 1);
+        release.countDown();
+        joinAll();
+
+        assertNotSame(first.get().getResponse(), second.get().getResponse());
+        assertTrue(second.get().isSuccess());
+        first.get().getResponse().setMerchantId("changed by caller");
+        assertEquals("T1", second.get().getResponse().getOutTradeNo());
+        assertNull(second.get().getResponse().getMerchantId());
+    }
+
+    @Test
+    public void joinerGivesUpAtItsDeadline() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        CountDownLatch release = new CountDownLatch(1);
+        start(() -> singleFlight.execute(PLATFORM, PayOperation.PAY_QUERY, "T1", () -> {
+            await(release);
+            return "slow";
+        }));
+        waitUntil(singleFlight::inFlightCount, 1);
+
+        long start = System.nanoTime();
+        try {
+            PayCallContext.withDeadline(50, () -> singleFlight.execute(PLATFORM, PayOperation.PAY_QUERY, "T1", () -> "unexpected"));
+            fail("joiner should not wait past its deadline");
+        } catch (DeadlineExceededException expected) {
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        release.countDown();
+        joinAll();
+        assertEquals(1, singleFlight.getExecutedCount(PayOperation.PAY_QUERY));
+    }
+
+    @Test
+    public void joinedCallsGetTheSameException() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        CountDownLatch release = new CountDownLatch(1);
+        PayException failure = new PayException("gateway error");
+        AtomicReference<Throwable> first = new AtomicReference<>();
+        AtomicReference<Throwable> second = new AtomicReference<>();
+
+        start(() -> {
+            try {
+                singleFlight.execute(PLATFORM, PayOperation.REFUND_QUERY, "R1", () -> {
+                    await(release);
+                    throw failure;
+                });
+            } catch (PayException e) {
+                first.set(e);
+            }
+        });
+        waitUntil(singleFlight::inFlightCount, 1);
+        start(() -> {
+            try {
+                singleFlight.execute(PLATFORM, PayOperation.REFUND_QUERY, "R1", () -> "unexpected");
+            } catch (PayException e) {
+                second.set(e);
+            }
+        });
+        waitUntil(singleFlight::getCollapsedCount, 1);
+        release.countDown();
+        joinAll();
+
+        assertSame(failure, first.get());
+        assertSame(failure, second.get());
+        assertEquals(0, singleFlight.inFlightCount());
+    }
+
+    @Test
+    public void rejectsDuplicateMutatingCallsByDefault() {
+        SingleFlight singleFlight = new SingleFlight();
+        String result = singleFlight.execute(PLATFORM, PayOperation.REFUND_SYNC, "R1", () -> {
+            try {
+                singleFlight.execute(PLATFORM, PayOperation.REFUND_SYNC, "R1", () -> "duplicate");
+                fail("duplicate refund should be rejected");
+            } catch (DuplicateCallException expected) {
+            }
+            // 不同单号、不同操作、不同支付平台互不影响
+            assertEquals("other", singleFlight.execute(PLATFORM, PayOperation.REFUND_SYNC, "R2", () -> "other"));
+            assertEquals("transfer", singleFlight.execute(PLATFORM, PayOperation.TRANSFER_SYNC, "R1", () -> "transfer"));
+            assertEquals("platform", singleFlight.execute(PLATFORM + 1, PayOperation.REFUND_SYNC, "R1", () -> "platform"));
+            assertEquals("merchant", singleFlight.execute(PLATFORM, "m2", PayOperation.REFUND_SYNC, "R1", () -> "merchant"));
+            return "refund";
+        });
+        assertEquals("refund", result);
+        assertEquals(1, singleFlight.getRejectedCount(PayOperation.REFUND_SYNC));
+        assertEquals(0, singleFlight.inFlightCount());
+
+        // 完成后可以再次调用
+        assertEquals("again", singleFlight.execute(PLATFORM, PayOperation.REFUND_SYNC, "R1", () -> "again"));
+    }
+
+    @Test
+    public void secondPayScanIsNotAnsweredWithFirstResult() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<Object> first = new AtomicReference<>();
+        AtomicReference<Throwable> second = new AtomicReference<>();
+
+        start(() -> first.set(singleFlight.execute(PLATFORM, PayOperation.PAY_SCAN, "T1", () -> {
+            await(release);
+            return "auth code 1";
+        })));
+        waitUntil(singleFlight::inFlightCount, 1);
+        // 换了付款码重新扫码, 不能拿到上一次的结果
+        start(() -> {
+            try {
+                singleFlight.execute(PLATFORM, PayOperation.PAY_SCAN, "T1", () -> "auth code 2");
+            } catch (DuplicateCallException e) {
+                second.set(e);
+            }
+        });
+        waitUntil(singleFlight::getRejectedCount, 1);
+        release.countDown();
+        joinAll();
+
+        assertEquals("auth code 1", first.get());
+        assertTrue(second.get() instanceof DuplicateCallException);
+        assertEquals(0, singleFlight.getCollapsedCount());
+    }
+
+    @Test
+    public void joinsMutatingCallsWhenConfigured() throws Exception {
+        SingleFlight singleFlight = new SingleFlight().setMutatingPolicy(SingleFlight.MutatingPolicy.JOIN);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<Object> first = new AtomicReference<>();
+        AtomicReference<Object> second = new AtomicReference<>();
+
+        start(() -> first.set(singleFlight.execute(PLATFORM, PayOperation.REFUND_SYNC, "R1", () -> {
+            await(release);
+            return new Object();
+        })));
+        waitUntil(singleFlight::inFlightCount, 1);
+        start(() -> second.set(singleFlight.execute(PLATFORM, PayOperation.REFUND_SYNC, "R1", Object::new)));
+        waitUntil(singleFlight::getCollapsedCount, 1);
+        release.countDown();
+        joinAll();
+
+        assertSame(first.get(), second.get());
+        assertEquals(1, singleFlight.getExecutedCount(PayOperation.REFUND_SYNC));
+        assertEquals(0, singleFlight.getRejectedCount());
+    }
+
+    @Test
+    public void emptyNoIsNeverMerged() {
+        SingleFlight singleFlight = new SingleFlight();
+        String result = singleFlight.execute(PLATFORM, PayOperation.CLOSE_ORDER, null,
+                () -> singleFlight.execute(PLATFORM, PayOperation.CLOSE_ORDER, "", () -> "inner"));
+        assertEquals("inner", result);
+        assertEquals(2, singleFlight.getExecutedCount(PayOperation.CLOSE_ORDER));
+        assertEquals(0, singleFlight.getRejectedCount());
+    }
+
+
+    private void start(Runnable task) {
+        Thread thread = new Thread(task);
+        threads.add(thread);
+        thread.start();
+    }
+
+    private void joinAll() throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.join(5000);
+            assertFalse("thread did not finish", thread.isAlive());
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PayException("interrupted", e);
+        }
+    }
+
+    private static void waitUntil(LongSupplier value, long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (value.getAsLong() < expected) {
+            assertTrue("timed out waiting for " + expected, System.currentTimeMillis() < deadline);
+            Thread.sleep(2);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.developcollect.commonpay.metrics;
+
+import com.developcollect.commonpay.PayPlatform;
+import com.developcollect.commonpay.guard.PayOperation;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 内存中的支付指标测试
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public class InMemoryPayMetricsTest {
+
+    @Test
+    public void merchantsHaveSeparateSeries() {
+        InMemoryPayMetrics metrics = new InMemoryPayMetrics();
+        call(metrics, null, Outcome.SUCCESS);
+        call(metrics, "m1", Outcome.SUCCESS);
+        call(metrics, "m1", Outcome.TRANSPORT_ERROR);
+        metrics.callStarted(PayPlatform.WX_PAY, "m2", PayOperation.PAY_QUERY);
+
+        assertEquals(1, metrics.getCallCount(PayPlatform.WX_PAY, null, PayOperation.PAY_QUERY, Outcome.SUCCESS));
+        assertEquals(1, metrics.getCallCount(PayPlatform.WX_PAY, "m1", PayOperation.PAY_QUERY, Outcome.SUCCESS));
+        assertEquals(1, metrics.getCallCount(PayPlatform.WX_PAY, "m1", PayOperation.PAY_QUERY, Outcome.TRANSPORT_ERROR));
+        // 不带商户的查询是整个支付平台的合计
+        assertEquals(2, metrics.getCallCount(PayPlatform.WX_PAY, PayOperation.PAY_QUERY, Outcome.SUCCESS));
+        assertEquals(1, metrics.getInFlight(PayPlatform.WX_PAY, "m2", PayOperation.PAY_QUERY));
+        assertEquals(0, metrics.getInFlight(PayPlatform.WX_PAY, "m1", PayOperation.PAY_QUERY));
+        assertEquals(1, metrics.getInFlight(PayPlatform.WX_PAY, PayOperation.PAY_QUERY));
+
+        String text = metrics.toPrometheus();
+        assertTrue(text, text.contains("commonpay_calls_total{platform=\"wxpay\",operation=\"pay_query\",outcome=\"success\"} 1\n"));
+        assertTrue(text, text.contains("commonpay_calls_total{platform=\"wxpay\",merchant=\"m1\",operation=\"pay_query\",outcome=\"success\"} 1\n"));
+        assertTrue(text, text.contains("commonpay_call_errors_total{platform=\"wxpay\",merchant=\"m1\",operation=\"pay_query\"} 1\n"));
+        assertTrue(text, text.contains("commonpay_calls_in_flight{platform=\"wxpay\",merchant=\"m2\",operation=\"pay_query\"} 1\n"));
+    }
+
+    @Test
+    public void merchantLabelIsEscaped() {
+        InMemoryPayMetrics metrics = new InMemoryPayMetrics();
+        call(metrics, "a\"b\\c", Outcome.SUCCESS);
+        assertTrue(metrics.toPrometheus().contains("merchant=\"a\\\"b\\\\c\""));
+    }
+
+
+    private static void call(InMemoryPayMetrics metrics, String merchantId, Outcome outcome) {
+        metrics.callStarted(PayPlatform.WX_PAY, merchantId, PayOperation.PAY_QUERY);
+        metrics.callFinished(PayPlatform.WX_PAY, merchantId, PayOperation.PAY_QUERY, outcome, 1_000_000);
+    }
+}
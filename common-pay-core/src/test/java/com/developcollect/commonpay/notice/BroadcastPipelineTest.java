@@ -0,0 +1,244 @@
+package com.developcollect.commonpay.notice;
+
+import com.developcollect.commonpay.PayPlatform;
+import com.developcollect.commonpay.config.GlobalConfig;
+import com.developcollect.commonpay.notice.outbox.MappedOutbox;
+import com.developcollect.commonpay.notice.outbox.OutboxEntry;
+import com.developcollect.commonpay.pay.PayResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.*;
+
+/**
+ * 异步广播管道测试
+ * 广播器记录每次发送的结果, 可以让指定的结果发送失败或者阻塞发送线程
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public class BroadcastPipelineTest {
+
+    private final List<PayResponse> sent = Collections.synchronizedList(new ArrayList<>());
+    private final List<PayResponse> delivered = Collections.synchronizedList(new ArrayList<>());
+    private final List<Long> sentNanos = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * 返回true的结果这次发送失败
+     */
+    private volatile Predicate<PayResponse> failing = payResponse -> false;
+
+    /**
+     * 发送线程在发送前等待放行
+     */
+    private volatile CountDownLatch release = new CountDownLatch(0);
+    private final CountDownLatch sending = new CountDownLatch(1);
+
+    private BroadcastPipeline pipeline;
+    private File outboxDir;
+
+    @Before
+    public void installGlobalConfig() throws ReflectiveOperationException {
+        installGlobalConfig(new GlobalConfig().setPayBroadcaster(payResponse -> {
+            sending.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            sent.add(payResponse);
+            sentNanos.add(System.nanoTime());
+            if (failing.test(payResponse)) {
+                return false;
+            }
+            delivered.add(payResponse);
+            return true;
+        }));
+    }
+
+    @After
+    public void shutdown() throws ReflectiveOperationException {
+        release.countDown();
+        if (pipeline != null) {
+            pipeline.shutdown();
+        }
+        installGlobalConfig(null);
+        if (outboxDir != null) {
+            File[] files = outboxDir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            outboxDir.delete();
+        }
+    }
+
+    @Test
+    public void resultsOfOneOrderKeepSubmitOrder() throws InterruptedException {
+        pipeline = new BroadcastPipeline().setStripes(2).setInitialBackoffMillis(50);
+        pipeline.init();
+        PayResponse first = payResponse("A", "1");
+        PayResponse second = payResponse("A", "2");
+        AtomicInteger firstFailures = new AtomicInteger();
+        failing = payResponse -> payResponse == first && firstFailures.incrementAndGet() == 1;
+
+        assertTrue(pipeline.submit(first));
+        assertTrue(pipeline.submit(second));
+        assertTrue(pipeline.submit(payResponse("B", "1")));
+        awaitDelivered(3);
+
+        // 第一条等待重试时第二条被暂存, 不会先送达
+        List<PayResponse> orderA = new ArrayList<>();
+        for (PayResponse payResponse : delivered) {
+            if ("A".equals(payResponse.getOutTradeNo())) {
+                orderA.add(payResponse);
+            }
+        }
+        assertEquals(2, orderA.size());
+        assertSame(first, orderA.get(0));
+        assertSame(second, orderA.get(1));
+        assertEquals(1, pipeline.getRetryCount());
+    }
+
+    @Test
+    public void failedResultsAreRetriedWithBackoff() throws InterruptedException {
+        pipeline = new BroadcastPipeline().setStripes(1).setMaxAttempts(3).setInitialBackoffMillis(50);
+        pipeline.init();
+        AtomicInteger failures = new AtomicInteger();
+        failing = payResponse -> "A".equals(payResponse.getOutTradeNo()) && failures.incrementAndGet() <= 2;
+
+        assertTrue(pipeline.submit(payResponse("A", "1")));
+        awaitDelivered(1);
+        assertEquals(3, sent.size());
+        assertEquals(2, pipeline.getRetryCount());
+        long firstBackoff = sentNanos.get(1) - sentNanos.get(0);
+        long secondBackoff = sentNanos.get(2) - sentNanos.get(1);
+        assertTrue("first backoff " + firstBackoff, firstBackoff >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue("second backoff " + secondBackoff, secondBackoff >= TimeUnit.MILLISECONDS.toNanos(100));
+
+        // 重试次数用尽后放弃
+        failing = payResponse -> true;
+        assertTrue(pipeline.submit(payResponse("B", "1")));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pipeline.getDroppedCount() == 0) {
+            assertTrue("result was not dropped", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+        assertEquals(6, sent.size());
+        assertEquals(1, pipeline.getDeliveredCount());
+    }
+
+    @Test
+    public void fullStripeRejects() throws InterruptedException {
+        pipeline = newBlockedPipeline();
+        assertTrue(pipeline.submit(payResponse("B", "1")));
+        assertFalse(pipeline.submit(payResponse("C", "1")));
+        assertEquals(1, pipeline.getRejectedCount());
+
+        release.countDown();
+        awaitDelivered(2);
+        assertEquals(0, pipeline.getDroppedCount());
+    }
+
+    @Test
+    public void pendingTerminalResultIsSubmittedOnce() throws InterruptedException {
+        pipeline = newBlockedPipeline();
+        assertTrue(pipeline.submit(terminalPayResponse("B")));
+        // 主动查询在送达前再次提交同一个终态结果
+        assertTrue(pipeline.submit(terminalPayResponse("B")));
+        assertEquals(2, pipeline.getSubmittedCount());
+
+        release.countDown();
+        awaitDelivered(2);
+        // 送达后可以再次提交
+        assertTrue(pipeline.submit(terminalPayResponse("B")));
+        awaitDelivered(3);
+        assertEquals(3, pipeline.getSubmittedCount());
+    }
+
+    @Test
+    public void resubmittedRejectedResultIsKeptOnceInOutbox() throws IOException, InterruptedException {
+        outboxDir = Files.createTempDirectory("outbox").toFile();
+        pipeline = new BroadcastPipeline().setStripes(1).setQueueCapacity(1).setBatchSize(1)
+                .setOutbox(new MappedOutbox(outboxDir));
+        block();
+        assertTrue(pipeline.submit(payResponse("B", "1")));
+        assertFalse(pipeline.submit(payResponse("C", "1")));
+        // 主动查询再次提交被拒绝的结果, 发件箱中只保留最新的一条
+        assertFalse(pipeline.submit(payResponse("C", "2")));
+        assertEquals(3, pipeline.getOutbox().pendingCount());
+
+        release.countDown();
+        awaitDelivered(2);
+        pipeline.shutdown();
+        pipeline = null;
+
+        MappedOutbox reopened = new MappedOutbox(outboxDir);
+        try {
+            List<OutboxEntry> pending = reopened.open();
+            assertEquals(1, pending.size());
+            PayResponse payResponse = (PayResponse) pending.get(0).getMessage();
+            assertEquals("C", payResponse.getOutTradeNo());
+            assertEquals("2", payResponse.getTradeNo());
+        } finally {
+            reopened.close();
+        }
+    }
+
+
+    /**
+     * 只有一个容量为1的分段, 发送线程被第一条结果占住
+     */
+    private BroadcastPipeline newBlockedPipeline() throws InterruptedException {
+        BroadcastPipeline blocked = new BroadcastPipeline().setStripes(1).setQueueCapacity(1).setBatchSize(1);
+        pipeline = blocked;
+        block();
+        return blocked;
+    }
+
+    private void block() throws InterruptedException {
+        release = new CountDownLatch(1);
+        pipeline.init();
+        assertTrue(pipeline.submit(payResponse("A", "1")));
+        assertTrue("sender did not pick up the first result", sending.await(5, TimeUnit.SECONDS));
+    }
+
+    private void awaitDelivered(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (delivered.size() < count) {
+            assertTrue("delivered " + delivered.size() + " of " + count, System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private static PayResponse payResponse(String outTradeNo, String tradeNo) {
+        return new PayResponse()
+                .setPayPlatform(PayPlatform.WX_PAY)
+                .setOutTradeNo(outTradeNo)
+                .setTradeNo(tradeNo);
+    }
+
+    private static PayResponse terminalPayResponse(String outTradeNo) {
+        return payResponse(outTradeNo, "1").setSuccess(true);
+    }
+
+    private static void installGlobalConfig(GlobalConfig config) throws ReflectiveOperationException {
+        Field instance = GlobalConfig.class.getDeclaredField("GLOBAL_CONFIG");
+        instance.setAccessible(true);
+        instance.set(null, config);
+    }
+}
@@ -0,0 +1,189 @@
+package com.developcollect.commonpay.notice.outbox;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 发件箱测试
+ * 段文件大小按记录大小设置, 每个段正好放下{@link #RECORDS_PER_SEGMENT}条记录
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public class MappedOutboxTest {
+
+    private static final byte TYPE = 7;
+
+    private static final int RECORDS_PER_SEGMENT = 4;
+
+    private File dir;
+
+    private final List<MappedOutbox> outboxes = new ArrayList<>();
+
+    @Before
+    public void createDir() throws IOException {
+        dir = Files.createTempDirectory("outbox").toFile();
+    }
+
+    @After
+    public void deleteDir() {
+        for (MappedOutbox outbox : outboxes) {
+            outbox.close();
+        }
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void reopenReturnsPendingEntriesInOrder() throws IOException {
+        MappedOutbox outbox = open();
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            ids.add(outbox.append(TYPE, message(i)));
+        }
+        outbox.markDone(ids.get(1));
+        outbox.markDone(ids.get(4));
+        outbox.markDone(ids.get(8));
+        outbox.close();
+
+        List<OutboxEntry> pending = reopen();
+        assertEquals(7, pending.size());
+        int[] expected = {0, 2, 3, 5, 6, 7, 9};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(message(expected[i]), pending.get(i).getMessage());
+            assertEquals(TYPE, pending.get(i).getType());
+        }
+    }
+
+    @Test
+    public void markDoneFollowsForwardAfterCompact() throws IOException {
+        MappedOutbox outbox = open();
+        long[] ids = new long[RECORDS_PER_SEGMENT];
+        for (int i = 0; i < RECORDS_PER_SEGMENT; i++) {
+            ids[i] = outbox.append(TYPE, message(i));
+        }
+        for (int i = 0; i < RECORDS_PER_SEGMENT - 1; i++) {
+            outbox.markDone(ids[i]);
+        }
+        // 写满后换段, 旧段只剩一条没完成, 被复制到新段后删除
+        outbox.append(TYPE, message(RECORDS_PER_SEGMENT));
+        assertEquals(1, outbox.getCompactedCount());
+        assertEquals(1, outbox.forwardCount());
+        assertEquals(1, outbox.segmentCount());
+        assertEquals(2, outbox.pendingCount());
+
+        // 用复制前交出去的id标记, 通过转发标记到新记录上
+        outbox.markDone(ids[RECORDS_PER_SEGMENT - 1]);
+        assertEquals(0, outbox.forwardCount());
+        assertEquals(1, outbox.pendingCount());
+        // 重复标记被忽略
+        outbox.markDone(ids[RECORDS_PER_SEGMENT - 1]);
+        assertEquals(1, outbox.pendingCount());
+        outbox.close();
+
+        List<OutboxEntry> pending = reopen();
+        assertEquals(1, pending.size());
+        assertEquals(message(RECORDS_PER_SEGMENT), pending.get(0).getMessage());
+    }
+
+    @Test
+    public void doneSealedSegmentIsDeleted() throws IOException {
+        MappedOutbox outbox = open();
+        long[] ids = new long[RECORDS_PER_SEGMENT];
+        for (int i = 0; i < RECORDS_PER_SEGMENT; i++) {
+            ids[i] = outbox.append(TYPE, message(i));
+        }
+        // 旧段都没完成, 换段时不压缩
+        outbox.append(TYPE, message(RECORDS_PER_SEGMENT));
+        assertEquals(2, outbox.segmentCount());
+        assertEquals(0, outbox.getCompactedCount());
+        File sealed = new File(dir, OutboxSegment.fileName(segmentIdOf(ids[0])));
+        assertTrue(sealed.exists());
+
+        for (long id : ids) {
+            outbox.markDone(id);
+        }
+        assertEquals(1, outbox.segmentCount());
+        assertFalse(sealed.exists());
+        assertEquals(1, outbox.pendingCount());
+    }
+
+    @Test
+    public void corruptRecordIsSkipped() throws IOException {
+        MappedOutbox outbox = open();
+        long[] ids = new long[3];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = outbox.append(TYPE, message(i));
+        }
+        outbox.close();
+        corruptPayload(ids[1]);
+
+        List<OutboxEntry> pending = reopen();
+        assertEquals(2, pending.size());
+        assertEquals(message(0), pending.get(0).getMessage());
+        assertEquals(message(2), pending.get(1).getMessage());
+
+        // 读不出来的记录已标记完成, 下次打开不会再出现
+        outboxes.get(outboxes.size() - 1).close();
+        assertEquals(2, reopen().size());
+    }
+
+
+    private MappedOutbox open() throws IOException {
+        MappedOutbox outbox = new MappedOutbox(dir)
+                .setSegmentSize(RECORDS_PER_SEGMENT * (OutboxSegment.HEADER_SIZE + payloadSize()));
+        outboxes.add(outbox);
+        assertTrue(outbox.open().isEmpty());
+        return outbox;
+    }
+
+    private List<OutboxEntry> reopen() throws IOException {
+        MappedOutbox outbox = new MappedOutbox(dir)
+                .setSegmentSize(RECORDS_PER_SEGMENT * (OutboxSegment.HEADER_SIZE + payloadSize()));
+        outboxes.add(outbox);
+        return outbox.open();
+    }
+
+    /**
+     * 把记录内容的开头改掉, 反序列化时流头不对
+     */
+    private void corruptPayload(long id) throws IOException {
+        File file = new File(dir, OutboxSegment.fileName(segmentIdOf(id)));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek((int) id + OutboxSegment.HEADER_SIZE);
+            raf.write(new byte[]{1, 2, 3, 4});
+        }
+    }
+
+    private static String message(int i) {
+        return "message-" + i;
+    }
+
+    /**
+     * 个位数编号的记录序列化后长度相同
+     */
+    private static int payloadSize() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(message(0));
+        }
+        return bos.size();
+    }
+
+    private static int segmentIdOf(long id) {
+        return (int) (id >>> 32);
+    }
+}
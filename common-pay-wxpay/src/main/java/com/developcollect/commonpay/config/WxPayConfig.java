@@ -0,0 +1,103 @@
+package com.developcollect.commonpay.config;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.experimental.Accessors;
+
+import java.io.InputStream;
+import java.util.function.Supplier;
+
+/**
+ * 微信支付配置
+ *
+ * @author zak
+ * @since 1.0.0
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+@Accessors(chain = true)
+public class WxPayConfig extends AbstractPayConfig {
+
+    /**
+     * appid
+     */
+    private String appId;
+
+    /**
+     * 小程序appid;
+     */
+    private String appletAppid;
+
+    /**
+     * 商户id
+     */
+    private String mchId;
+
+    /**
+     * 微信支付key
+     */
+    private String key;
+
+    /**
+     * 证书
+     */
+    private Supplier<InputStream> certInputStreamSupplier;
+
+    /**
+     * 接口域名, 为空时在微信支付的主备域名间自动切换
+     * 可以带协议和端口, 如 http://127.0.0.1:8080, 用于指向本地的模拟网关
+     *
+     * @since 2.2.0
+     */
+    private String domain;
+
+    /**
+     * 每个域名的最大连接数, 同时调用微信支付的线程多于这个数时会排队等连接
+     *
+     * @since 2.2.0
+     */
+    private int maxConnectionsPerRoute = 32;
+
+
+    public WxPayConfig setAppId(String appId) {
+        checkNotFrozen();
+        this.appId = appId;
+        return this;
+    }
+
+    public WxPayConfig setAppletAppid(String appletAppid) {
+        checkNotFrozen();
+        this.appletAppid = appletAppid;
+        return this;
+    }
+
+    public WxPayConfig setMchId(String mchId) {
+        checkNotFrozen();
+        this.mchId = mchId;
+        return this;
+    }
+
+    public WxPayConfig setKey(String key) {
+        checkNotFrozen();
+        this.key = key;
+        return this;
+    }
+
+    public WxPayConfig setCertInputStreamSupplier(Supplier<InputStream> certInputStreamSupplier) {
+        checkNotFrozen();
+        this.certInputStreamSupplier = certInputStreamSupplier;
+        return this;
+    }
+
+    public WxPayConfig setDomain(String domain) {
+        checkNotFrozen();
+        this.domain = domain;
+        return this;
+    }
+
+    public WxPayConfig setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        checkNotFrozen();
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        return this;
+    }
+}
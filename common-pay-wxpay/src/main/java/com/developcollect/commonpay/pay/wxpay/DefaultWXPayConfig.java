@@ -0,0 +1,121 @@
+package com.developcollect.commonpay.pay.wxpay;
+
+import com.developcollect.commonpay.config.GlobalConfig;
+import com.developcollect.commonpay.guard.AdaptiveTimeouts;
+import com.developcollect.commonpay.pay.wxpay.sdk.IWXPayDomain;
+import com.developcollect.commonpay.pay.wxpay.sdk.WXPayConfig;
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.InputStream;
+import java.util.function.Supplier;
+
+/**
+ * 微信sdk配置
+ * @author zak
+ * @since 1.0.0
+ */
+@EqualsAndHashCode(callSuper = true)
+@Data
+public class DefaultWXPayConfig extends WXPayConfig {
+
+
+    private String appId;
+
+    private String mchId;
+
+    private String key;
+
+    /**
+     * 证书
+     */
+    private Supplier<InputStream> certInputStreamSupplier;
+
+    /**
+     * 固定使用的域名, 可以带协议和端口; 为空时在微信支付的主备域名间自动切换
+     */
+    private String domain;
+
+    /**
+     * 每个域名的最大连接数
+     */
+    private int maxConnectionsPerRoute = 32;
+
+    /**
+     * 域名选择器, 记录了主域名是否可用, 同一个sdk配置要用同一个
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private transient volatile IWXPayDomain wxPayDomain;
+
+
+    @Override
+    public String getAppID() {
+        return appId;
+    }
+
+    @Override
+    public String getMchID() {
+        return mchId;
+    }
+
+    @Override
+    public String getKey() {
+        return key;
+    }
+
+
+    /**
+     * 微信支付证书
+     *
+     * @return 流
+     * @author zak
+     * @since 1.0.0
+     */
+    @Override
+    public InputStream getCertStream() {
+        // 将证书配置通过配置传入
+        return certInputStreamSupplier == null ? null : certInputStreamSupplier.get();
+    }
+
+    @Override
+    public AdaptiveTimeouts getAdaptiveTimeouts() {
+        return GlobalConfig.adaptiveTimeouts();
+    }
+
+    @Override
+    public IWXPayDomain getWXPayDomain() {
+        IWXPayDomain payDomain = wxPayDomain;
+        if (payDomain == null) {
+            synchronized (this) {
+                payDomain = wxPayDomain;
+                if (payDomain == null) {
+                    payDomain = domain == null ? super.getWXPayDomain() : fixedDomain(domain);
+                    wxPayDomain = payDomain;
+                }
+            }
+        }
+        return payDomain;
+    }
+
+    /**
+     * 固定的域名, 不是主域名, 出错时不会切换
+     */
+    private static IWXPayDomain fixedDomain(String domain) {
+        IWXPayDomain.DomainInfo domainInfo = new IWXPayDomain.DomainInfo(domain, false);
+        return new IWXPayDomain() {
+            @Override
+            public void report(String domain, long elapsedTimeMillis, Exception ex) {
+            }
+
+            @Override
+            public DomainInfo getDomain(WXPayConfig config) {
+                return domainInfo;
+            }
+        };
+    }
+}
+
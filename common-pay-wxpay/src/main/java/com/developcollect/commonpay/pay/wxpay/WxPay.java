@@ -11,6 +11,7 @@ import com.developcollect.commonpay.pay.*;
 import com.developcollect.commonpay.pay.wxpay.sdk.WXPay;
 import com.developcollect.commonpay.pay.wxpay.sdk.WXPayConstants;
 import com.developcollect.commonpay.pay.wxpay.sdk.WXPayUtil;
+import com.developcollect.commonpay.warmup.WarmUpSteps;
 import com.developcollect.dcinfra.utils.DateUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
@@ -29,12 +30,44 @@ import java.util.Map;
 @Slf4j
 public class WxPay extends AbstractPay {
 
+    public WxPay() {
+    }
+
+    /**
+     * @param merchantId 商户标识, 为null时使用默认配置
+     * @since 2.2.0
+     */
+    public WxPay(String merchantId) {
+        super(merchantId);
+    }
+
+
+    /**
+     * sdk对象挂在配置快照上, 配置重新加载后重新创建
+     */
+    private static final String SDK_PAY_RESOURCE = "wxpay.sdk";
+    private static final String APPLET_SDK_PAY_RESOURCE = "wxpay.sdk.applet";
+
 
     private WXPay getWxSdkPay(WxPayConfig wxPayConfig) {
+        return getConfigResource(wxPayConfig, SDK_PAY_RESOURCE, c -> newWxSdkPay(c, c.getAppId()));
+    }
+
+    /**
+     * 小程序支付用小程序的appid下单, 其他配置和公众号相同
+     */
+    private WXPay getAppletWxSdkPay(WxPayConfig wxPayConfig) {
+        return getConfigResource(wxPayConfig, APPLET_SDK_PAY_RESOURCE, c -> newWxSdkPay(c, c.getAppletAppid()));
+    }
+
+    private WXPay newWxSdkPay(WxPayConfig wxPayConfig, String appId) {
         DefaultWXPayConfig wxSdkConfig = new DefaultWXPayConfig();
-        wxSdkConfig.setAppId(wxPayConfig.getAppId());
+        wxSdkConfig.setAppId(appId);
         wxSdkConfig.setMchId(wxPayConfig.getMchId());
         wxSdkConfig.setKey(wxPayConfig.getKey());
+        wxSdkConfig.setCertInputStreamSupplier(wxPayConfig.getCertInputStreamSupplier());
+        wxSdkConfig.setDomain(wxPayConfig.getDomain());
+        wxSdkConfig.setMaxConnectionsPerRoute(wxPayConfig.getMaxConnectionsPerRoute());
 
         WXPay wxPay = new WXPay(wxSdkConfig, true, wxPayConfig.isDebug());
         return wxPay;
@@ -114,7 +147,10 @@ public class WxPay extends AbstractPay {
      * @date 2020/8/15 14:18
      */
     private Map<String, String> unifiedOrder(IPayDTO payDTO, WxPayConfig wxPayConfig, String tradeType, String openId) throws Exception {
-        WXPay wxSdkPay = getWxSdkPay(wxPayConfig);
+        return unifiedOrder(getWxSdkPay(wxPayConfig), payDTO, wxPayConfig, tradeType, openId);
+    }
+
+    private Map<String, String> unifiedOrder(WXPay wxSdkPay, IPayDTO payDTO, WxPayConfig wxPayConfig, String tradeType, String openId) throws Exception {
         Map<String, String> reqData = convertToPayReqMap(payDTO);
         reqData.put("trade_type", tradeType);
         if (StrUtil.isNotBlank(openId)) {
@@ -281,8 +317,7 @@ public class WxPay extends AbstractPay {
     public PayWxJsResult payAppletsJs(IPayDTO payDTO) {
         try {
             WxPayConfig wxPayConfig = getPayConfig();
-            wxPayConfig.setAppId(wxPayConfig.getAppletAppid());
-            Map<String, String> map = unifiedOrder(payDTO, wxPayConfig, "JSAPI",
+            Map<String, String> map = unifiedOrder(getAppletWxSdkPay(wxPayConfig), payDTO, wxPayConfig, "JSAPI",
                     payDTO.getExt(ExtKeys.PAY_WXJS_OPENID).toString());
             String prepayId = map.get("prepay_id");
 
@@ -290,7 +325,7 @@ public class WxPay extends AbstractPay {
             wxJsPayMap.put("package", "prepay_id=" + prepayId);
             // 这里是深坑，微信js支付时有两次签名，第一次在统一下单处，然后用统一下单的返回的prepay_id再做一次签名
             // 这两次签名的参数名风格不同，前面的是下滑线风格，这里是驼峰风格，这里的appId的I要大写
-            wxJsPayMap.put("appId", wxPayConfig.getAppId());
+            wxJsPayMap.put("appId", wxPayConfig.getAppletAppid());
             wxJsPayMap.put("nonceStr", WXPayUtil.generateNonceStr());
             wxJsPayMap.put("timeStamp", String.valueOf((System.currentTimeMillis() / 1000)));
             wxJsPayMap.put("signType", wxPayConfig.isDebug() ? WXPayConstants.MD5 : WXPayConstants.HMACSHA256);
@@ -348,6 +383,28 @@ public class WxPay extends AbstractPay {
      */
     @Override
     public PayResponse payQuery(IPayDTO payDTO) {
+        return toPayQueryResponse(payDTO, payQueryResult(payDTO));
+    }
+
+    @Override
+    public PayResponse toPayQueryResponse(IPayDTO payDTO, QueryResult<PayResponse> result) {
+        if (result.isTransportError()) {
+            log.error("微信订单[{}]查询失败", payDTO.getOutTradeNo(), result.getCause());
+        } else if (!result.isAnswered()) {
+            log.info("微信订单[{}]查询失败: {}", payDTO.getOutTradeNo(), result);
+        }
+        return result.isAnswered() ? result.getResponse() : null;
+    }
+
+    /**
+     * 微信订单查询, 订单不存在等业务结果不抛异常
+     * https://pay.weixin.qq.com/wiki/doc/api/native.php?chapter=9_2
+     *
+     * @param payDTO 订单
+     * @return 查询结果
+     */
+    @Override
+    public QueryResult<PayResponse> payQueryResult(IPayDTO payDTO) {
         try {
             WxPayConfig payConfig = getPayConfig();
             WXPay wxSdkPay = getWxSdkPay(payConfig);
@@ -355,23 +412,85 @@ public class WxPay extends AbstractPay {
             Map<String, String> map = wxSdkPay.orderQuery(reqData);
 
             if ("FAIL".equals(map.get("return_code"))) {
-                throw new PayException(map.get("return_msg"), map);
+                return QueryResult.businessError(null, map.get("return_code"), map.get("return_msg"));
             }
             if ("FAIL".equals(map.get("result_code"))) {
-                throw new PayException(map.get("err_code_des"), map);
+                String errCode = map.get("err_code");
+                return "ORDERNOTEXIST".equals(errCode)
+                        ? QueryResult.notFound(null, errCode, map.get("err_code_des"))
+                        : QueryResult.businessError(null, errCode, map.get("err_code_des"));
             }
             // --
             PayResponse payResponse = new PayResponse();
             payResponse.setSuccess("SUCCESS".equals(map.get("trade_state")));
+            payResponse.setClosed(isClosedTradeState(map.get("trade_state")));
             payResponse.setTradeNo(map.get("transaction_id"));
             payResponse.setOutTradeNo(map.get("out_trade_no"));
             payResponse.setPayPlatform(getPlatform());
             payResponse.setPayTime(DateUtil.parseLocalDateTime(map.get("time_end"), "yyyyMMddHHmmss"));
             payResponse.setRawObj((Serializable) map);
-            return payResponse;
+            return QueryResult.of(payResponse);
         } catch (Exception e) {
-            log.error("微信订单[{}]查询失败", payDTO.getOutTradeNo(), e);
-            return null;
+            return QueryResult.transportError(e);
+        }
+    }
+
+    /**
+     * 交易状态是否表示订单已关闭
+     * CLOSED: 已关闭, REVOKED: 已撤销(付款码支付)
+     * PAYERROR(支付失败)不是终态, 用户还可以重新支付
+     */
+    private boolean isClosedTradeState(String tradeState) {
+        return "CLOSED".equals(tradeState)
+                || "REVOKED".equals(tradeState);
+    }
+
+    /**
+     * 关闭订单
+     * https://pay.weixin.qq.com/wiki/doc/api/native.php?chapter=9_3
+     * 注意: 订单生成后不能马上调用关单接口，最短调用时间间隔为5分钟
+     *
+     * @param payDTO 订单
+     * @return 关闭结果
+     */
+    @Override
+    public PayResponse closeOrder(IPayDTO payDTO) {
+        try {
+            WxPayConfig payConfig = getPayConfig();
+            WXPay wxSdkPay = getWxSdkPay(payConfig);
+            Map<String, String> reqData = convertToPayQueryMap(payDTO);
+            Map<String, String> map = wxSdkPay.closeOrder(reqData);
+
+            if ("FAIL".equals(map.get("return_code"))) {
+                throw new PayException(map.get("return_msg"), map);
+            }
+            if ("FAIL".equals(map.get("result_code"))) {
+                String errCode = map.get("err_code");
+                if ("ORDERPAID".equals(errCode)) {
+                    // 已经支付了, 返回支付结果
+                    PayResponse payResponse = payQuery(payDTO);
+                    if (payResponse == null) {
+                        throw new PayException("微信订单已支付, 但查询支付结果失败", map);
+                    }
+                    return payResponse;
+                }
+                if (!"ORDERCLOSED".equals(errCode)) {
+                    throw new PayException(map.get("err_code_des"), map);
+                }
+            }
+
+            PayResponse payResponse = new PayResponse();
+            payResponse.setClosed(true);
+            payResponse.setOutTradeNo(payDTO.getOutTradeNo());
+            payResponse.setTradeNo(payDTO.getTradeNo());
+            payResponse.setPayPlatform(getPlatform());
+            payResponse.setRawObj((Serializable) map);
+            return payResponse;
+        } catch (Throwable throwable) {
+            log.error("微信订单[{}]关闭失败", payDTO.getOutTradeNo(), throwable);
+            throw throwable instanceof PayException
+                    ? (PayException) throwable
+                    : new PayException("微信订单关闭失败", throwable);
         }
     }
 
@@ -443,6 +562,33 @@ public class WxPay extends AbstractPay {
      */
     @Override
     public RefundResponse refundQuery(IRefundDTO refundDTO) {
+        return toRefundQueryResponse(refundDTO, refundQueryResult(refundDTO));
+    }
+
+    @Override
+    public RefundResponse toRefundQueryResponse(IRefundDTO refundDTO, QueryResult<RefundResponse> result) {
+        if (result.isTransportError()) {
+            log.error("微信退款状态查询失败");
+            Throwable cause = result.getCause();
+            throw cause instanceof PayException
+                    ? (PayException) cause
+                    : new PayException("微信退款状态查询失败", cause);
+        }
+        if (result.isBusinessError()) {
+            throw new PayException("微信退款查询接口调用失败：" + result.getMessage(), result.getResponse().getRawObj());
+        }
+        return result.getResponse();
+    }
+
+    /**
+     * 查询退款结果, 退款单不存在等业务结果不抛异常
+     * https://pay.weixin.qq.com/wiki/doc/api/native.php?chapter=9_5
+     *
+     * @param refundDTO 退款单
+     * @return 查询结果, 业务错误和退款单不存在时也带有包含原始响应的退款结果
+     */
+    @Override
+    public QueryResult<RefundResponse> refundQueryResult(IRefundDTO refundDTO) {
         try {
             WxPayConfig wxPayConfig = getPayConfig();
             WXPay wxSdkPay = getWxSdkPay(wxPayConfig);
@@ -455,18 +601,22 @@ public class WxPay extends AbstractPay {
                 paramMap.put("refund_id", refundDTO.getRefundNo());
             }
             Map<String, String> resultMap = wxSdkPay.refundQuery(paramMap);
-            if (!"SUCCESS".equals(resultMap.get("return_code"))) {
-                throw new PayException("微信退款查询接口调用失败：" + resultMap.get("return_msg"), resultMap);
-            }
 
             RefundResponse refundResponse = new RefundResponse();
             refundResponse.setPayPlatform(getPlatform());
+            refundResponse.setOutRefundNo(refundDTO.getOutRefundNo());
+            refundResponse.setRawObj((Serializable) resultMap);
 
+            if (!"SUCCESS".equals(resultMap.get("return_code"))) {
+                return QueryResult.businessError(refundResponse, resultMap.get("return_code"), resultMap.get("return_msg"));
+            }
             //不存在退款订单记录直接返回
-            if (resultMap.containsKey("err_code") && resultMap.get("err_code").equals("REFUNDNOTEXIST")) {
-                refundResponse.setRawObj((Serializable) resultMap);
-                refundResponse.setOutRefundNo(refundDTO.getOutRefundNo());
-                return refundResponse;
+            String errCode = resultMap.get("err_code");
+            if ("REFUNDNOTEXIST".equals(errCode)) {
+                return QueryResult.notFound(refundResponse, errCode, resultMap.get("err_code_des"));
+            }
+            if ("FAIL".equals(resultMap.get("result_code"))) {
+                return QueryResult.businessError(refundResponse, errCode, resultMap.get("err_code_des"));
             }
 
             // 确认当前查询的退款的下标
@@ -482,7 +632,6 @@ public class WxPay extends AbstractPay {
 
             refundResponse.setRefundNo(resultMap.get("refund_id_" + refundIdx));
             refundResponse.setOutRefundNo(resultMap.get("out_refund_no_" + refundIdx));
-            refundResponse.setRawObj((Serializable) resultMap);
 
             String refundStatus = resultMap.get("refund_status_" + refundIdx);
             if ("SUCCESS".equals(refundStatus)) {
@@ -493,14 +642,9 @@ public class WxPay extends AbstractPay {
             } else {
                 refundResponse.setStatus(RefundResponse.FAIL);
             }
-
-
-            return refundResponse;
-        } catch (Throwable throwable) {
-            log.error("微信退款状态查询失败");
-            throw throwable instanceof PayException
-                    ? (PayException) throwable
-                    : new PayException("微信退款状态查询失败", throwable);
+            return QueryResult.of(refundResponse);
+        } catch (Exception e) {
+            return QueryResult.transportError(e);
         }
     }
 
@@ -557,6 +701,36 @@ public class WxPay extends AbstractPay {
 
     @Override
     public TransferResponse transferQuery(ITransferDTO transferDTO) {
+        return toTransferQueryResponse(transferDTO, transferQueryResult(transferDTO));
+    }
+
+    @Override
+    public TransferResponse toTransferQueryResponse(ITransferDTO transferDTO, QueryResult<TransferResponse> result) {
+        if (result.isTransportError()) {
+            log.error("微信查询企业付款失败", result.getCause());
+            Throwable cause = result.getCause();
+            throw cause instanceof PayException
+                    ? (PayException) cause
+                    : new PayException("微信查询企业付款失败", cause);
+        }
+        TransferResponse transferResponse = result.getResponse();
+        if (transferResponse.getStatus() == null) {
+            // 通信失败, 没有业务结果
+            throw new PayException("微信查询企业付款失败: " + result.getMessage(), transferResponse.getRawObj());
+        }
+        // 业务失败时返回处理中和错误码
+        return transferResponse;
+    }
+
+    /**
+     * 查询企业付款结果, 转账单不存在等业务结果不抛异常
+     * https://pay.weixin.qq.com/wiki/doc/api/tools/mch_pay.php?chapter=14_3
+     *
+     * @param transferDTO 转账单
+     * @return 查询结果, 业务错误和转账单不存在时也带有包含原始响应的转账结果
+     */
+    @Override
+    public QueryResult<TransferResponse> transferQueryResult(ITransferDTO transferDTO) {
         try {
             WxPayConfig wxPayConfig = getPayConfig();
             WXPay wxSdkPay = getWxSdkPay(wxPayConfig);
@@ -566,40 +740,63 @@ public class WxPay extends AbstractPay {
 
             Map<String, String> resultMap = wxSdkPay.transferQuery(reqData);
 
-            if ("FAIL".equals(resultMap.get("return_code"))) {
-                throw new PayException("微信查询企业付款失败: " + resultMap.get("return_msg"), resultMap);
-            }
-
-
             TransferResponse transferResponse = new TransferResponse();
             transferResponse.setRawObj((Serializable) resultMap);
             transferResponse.setPayPlatform(getPlatform());
 
+            if ("FAIL".equals(resultMap.get("return_code"))) {
+                transferResponse.setOutTransferNo(transferDTO.getOutTransferNo());
+                return QueryResult.businessError(transferResponse, resultMap.get("return_code"), resultMap.get("return_msg"));
+            }
+
             if ("FAIL".equals(resultMap.get("result_code"))) {
+                String errCode = resultMap.get("err_code");
                 transferResponse.setOutTransferNo(transferDTO.getOutTransferNo());
-                transferResponse.setErrorCode(resultMap.get("err_code"));
+                transferResponse.setErrorCode(errCode);
                 transferResponse.setErrorDesc(resultMap.get("err_code_des"));
                 transferResponse.setStatus(TransferResponse.PROCESSING);
+                return "NOT_FOUND".equals(errCode)
+                        ? QueryResult.notFound(transferResponse, errCode, resultMap.get("err_code_des"))
+                        : QueryResult.businessError(transferResponse, errCode, resultMap.get("err_code_des"));
+            }
+
+            transferResponse.setTransferNo(resultMap.get("detail_id"));
+            transferResponse.setPaymentTime(DateUtil.parseLocalDateTime(resultMap.get("payment_time")));
+            transferResponse.setOutTransferNo(resultMap.get("partner_trade_no"));
+            if ("SUCCESS".equals(resultMap.get("status"))) {
+                transferResponse.setStatus(TransferResponse.SUCCESS);
+            } else if ("PROCESSING".equals(resultMap.get("status"))) {
+                transferResponse.setStatus(TransferResponse.PROCESSING);
             } else {
-                transferResponse.setTransferNo(resultMap.get("detail_id"));
-                transferResponse.setPaymentTime(DateUtil.parseLocalDateTime(resultMap.get("payment_time")));
-                transferResponse.setOutTransferNo(resultMap.get("partner_trade_no"));
-                if ("SUCCESS".equals(resultMap.get("status"))) {
-                    transferResponse.setStatus(TransferResponse.SUCCESS);
-                } else if ("PROCESSING".equals(resultMap.get("status"))) {
-                    transferResponse.setStatus(TransferResponse.PROCESSING);
-                } else {
-                    transferResponse.setStatus(TransferResponse.FAIL);
-                    transferResponse.setErrorDesc(resultMap.get("reason"));
-                }
+                transferResponse.setStatus(TransferResponse.FAIL);
+                transferResponse.setErrorDesc(resultMap.get("reason"));
+            }
+            return QueryResult.of(transferResponse);
+        } catch (Exception e) {
+            return QueryResult.transportError(e);
+        }
+    }
+
+    /**
+     * 小程序的sdk对象有自己的连接池, 配置了小程序appid时一起预热
+     */
+    @Override
+    public void warmUp(WarmUpSteps steps) {
+        WxPayConfig wxPayConfig = getPayConfig();
+        WXPay wxSdkPay = steps.call("client", () -> getWxSdkPay(wxPayConfig));
+        steps.run("sign", wxSdkPay::warmUpSignAndXml);
+        if (wxPayConfig.getCertInputStreamSupplier() != null) {
+            steps.run("cert", () -> wxSdkPay.getWXPayRequest().warmUpCert());
+        }
+        if (steps.getConnections() > 0) {
+            steps.call("connect", () -> wxSdkPay.getWXPayRequest().warmUpConnections(steps.getConnections()));
+        }
 
+        if (StrUtil.isNotBlank(wxPayConfig.getAppletAppid())) {
+            WXPay appletSdkPay = steps.call("applet.client", () -> getAppletWxSdkPay(wxPayConfig));
+            if (steps.getConnections() > 0) {
+                steps.call("applet.connect", () -> appletSdkPay.getWXPayRequest().warmUpConnections(steps.getConnections()));
             }
-            return transferResponse;
-        } catch (Throwable throwable) {
-            log.error("微信查询企业付款失败", throwable);
-            throw throwable instanceof PayException
-                    ? (PayException) throwable
-                    : new PayException("微信查询企业付款失败", throwable);
         }
     }
 
@@ -0,0 +1,24 @@
+package com.developcollect.commonpay.pay.wxpay;
+
+import com.developcollect.commonpay.PayPlatform;
+import com.developcollect.commonpay.config.IPayProvider;
+import com.developcollect.commonpay.pay.Pay;
+
+/**
+ * 微信支付的提供者
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public class WxPayProvider implements IPayProvider {
+
+    @Override
+    public int getPayPlatform() {
+        return PayPlatform.WX_PAY;
+    }
+
+    @Override
+    public Pay createPay(String merchantId) {
+        return new WxPay(merchantId);
+    }
+}
@@ -0,0 +1,31 @@
+package com.developcollect.commonpay.pay.wxpay;
+
+import cn.hutool.core.date.DateUtil;
+import com.developcollect.commonpay.PayPlatform;
+import com.developcollect.commonpay.pay.PayResponse;
+import com.developcollect.commonpay.pay.wxpay.bean.WxPayDTO;
+
+/**
+ * 微信支付的通知结果转换为支付结果
+ * 原来在{@link PayResponse}中, 拆分模块后移到这里
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public class WxPayResponses {
+
+    private WxPayResponses() {
+    }
+
+    public static PayResponse of(WxPayDTO wxPayDTO) {
+        PayResponse payResponse = new PayResponse();
+        payResponse
+                .setSuccess(true)
+                .setRawObj(wxPayDTO)
+                .setPayPlatform(PayPlatform.WX_PAY)
+                .setPayTime(DateUtil.parseLocalDateTime(wxPayDTO.getTimeEnd(), "yyyyMMddHHmmss"))
+                .setTradeNo(wxPayDTO.getTransactionId())
+                .setOutTradeNo(wxPayDTO.getOutTradeNo());
+        return payResponse;
+    }
+}
@@ -1,9 +1,11 @@
 package com.developcollect.commonpay.pay.wxpay.sdk;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
-public class WXPay {
+public class WXPay implements Closeable {
 
     private WXPayConfig config;
     private WXPayConstants.SignType signType;
@@ -102,6 +104,37 @@ public class WXPay {
         return reqData;
     }
 
+    /**
+     * 预热: 按请求的签名方式生成一次带签名的报文, 再解析报文并验签, 提前加载XML解析和签名用到的类
+     *
+     * @throws Exception 签名或报文编解码失败
+     */
+    public void warmUpSignAndXml() throws Exception {
+        Map<String, String> reqData = new HashMap<>(8);
+        reqData.put("out_trade_no", "warm-up");
+        String xml = WXPayUtil.mapToXml(fillRequestData(reqData));
+        if (!isResponseSignatureValid(WXPayUtil.xmlToMap(xml))) {
+            throw new Exception("warm up signature mismatch");
+        }
+    }
+
+    /**
+     * 关闭http客户端, 配置快照被替换后调用
+     */
+    @Override
+    public void close() throws IOException {
+        wxPayRequest.close();
+    }
+
+    /**
+     * 请求对象, 预热时用来加载证书和预先建立连接
+     *
+     * @return 请求对象
+     */
+    public WXPayRequest getWXPayRequest() {
+        return wxPayRequest;
+    }
+
     /**
      * 判断xml数据的sign是否有效，必须包含sign字段，否则返回false。
      *
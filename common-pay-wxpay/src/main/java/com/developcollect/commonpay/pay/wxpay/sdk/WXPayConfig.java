@@ -2,6 +2,7 @@ package com.developcollect.commonpay.pay.wxpay.sdk;
 
 import cn.hutool.core.net.NetUtil;
 import cn.hutool.core.thread.ThreadFactoryBuilder;
+import com.developcollect.commonpay.guard.AdaptiveTimeouts;
 import org.apache.http.conn.ConnectTimeoutException;
 
 import java.io.InputStream;
@@ -66,6 +67,24 @@ public abstract class WXPayConfig {
         return 8 * 1000;
     }
 
+    /**
+     * 每个域名的最大连接数, 连接池总大小是它的两倍(主备两个域名)
+     *
+     * @return
+     */
+    public int getMaxConnectionsPerRoute() {
+        return 32;
+    }
+
+    /**
+     * 按接口自适应的读超时, 返回null时所有接口都使用{@link #getHttpReadTimeoutMs()}
+     *
+     * @return
+     */
+    public AdaptiveTimeouts getAdaptiveTimeouts() {
+        return null;
+    }
+
     /**
      * 获取WXPayDomain, 用于多域名容灾自动切换
      *
@@ -0,0 +1,508 @@
+package com.developcollect.commonpay.pay.wxpay.sdk;
+
+import com.developcollect.commonpay.exception.DeadlineExceededException;
+import com.developcollect.commonpay.guard.AdaptiveTimeouts;
+import com.developcollect.commonpay.guard.Deadlines;
+import com.developcollect.commonpay.guard.PayCallContext;
+import com.developcollect.commonpay.metrics.CallTimings;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.DefaultHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.DefaultSchemePortResolver;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.ssl.SSLContexts;
+import org.apache.http.util.EntityUtils;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+
+public class WXPayRequest implements Closeable {
+    /**
+     * 记录域名解析耗时的DNS解析器
+     */
+    private static final DnsResolver TIMED_DNS_RESOLVER = host -> {
+        long start = System.nanoTime();
+        try {
+            return SystemDefaultDnsResolver.INSTANCE.resolve(host);
+        } finally {
+            CallTimings.record(CallTimings.Phase.DNS, start);
+        }
+    };
+
+    private WXPayConfig config;
+
+    /**
+     * http客户端, 加载证书和建立连接的开销比较大, 同一个配置复用同一个客户端
+     */
+    private volatile HttpClient httpClient;
+    private volatile HttpClient certHttpClient;
+
+    /**
+     * 不带证书的客户端的连接池, 预热时用来预先建立连接
+     */
+    private volatile PoolingHttpClientConnectionManager connManager;
+
+    public WXPayRequest(WXPayConfig config) {
+
+        this.config = config;
+    }
+
+    private HttpClient getHttpClient(boolean useCert) throws Exception {
+        HttpClient client = useCert ? certHttpClient : httpClient;
+        if (client == null) {
+            synchronized (this) {
+                client = useCert ? certHttpClient : httpClient;
+                if (client == null) {
+                    long start = System.nanoTime();
+                    try {
+                        client = newHttpClient(useCert);
+                    } finally {
+                        CallTimings.record(CallTimings.Phase.CONFIG, start);
+                    }
+                    if (useCert) {
+                        certHttpClient = client;
+                    } else {
+                        httpClient = client;
+                    }
+                }
+            }
+        }
+        return client;
+    }
+
+    private HttpClient newHttpClient(boolean useCert) throws Exception {
+        SSLConnectionSocketFactory sslConnectionSocketFactory;
+        if (useCert) {
+            // 证书
+            char[] password = config.getMchID().toCharArray();
+            KeyStore ks = KeyStore.getInstance("PKCS12");
+            try (InputStream certStream = config.getCertStream()) {
+                ks.load(certStream, password);
+            }
+
+            // 实例化密钥库 & 初始化密钥工厂
+            KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            kmf.init(ks, password);
+
+            // 创建 SSLContext
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(kmf.getKeyManagers(), null, new SecureRandom());
+
+            sslConnectionSocketFactory = new TimedSSLConnectionSocketFactory(
+                    sslContext,
+                    new String[]{"TLSv1"},
+                    null,
+                    new DefaultHostnameVerifier());
+        } else {
+            sslConnectionSocketFactory = new TimedSSLConnectionSocketFactory(
+                    SSLContexts.createDefault(),
+                    null,
+                    null,
+                    SSLConnectionSocketFactory.getDefaultHostnameVerifier());
+        }
+
+        PoolingHttpClientConnectionManager connManager = new PoolingHttpClientConnectionManager(
+                RegistryBuilder.<ConnectionSocketFactory>create()
+                        .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                        .register("https", sslConnectionSocketFactory)
+                        .build(),
+                TIMED_DNS_RESOLVER
+        );
+        // 连接池大小, 微信支付只有主备两个域名
+        connManager.setMaxTotal(config.getMaxConnectionsPerRoute() * 2);
+        connManager.setDefaultMaxPerRoute(config.getMaxConnectionsPerRoute());
+        if (!useCert) {
+            this.connManager = connManager;
+        }
+
+        return HttpClientBuilder.create()
+                .setConnectionManager(connManager)
+                .evictIdleConnections(60, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * 关闭客户端, 连同连接池和空闲连接清理线程
+     * 配置快照被替换后调用, 之后不能再使用
+     */
+    @Override
+    public void close() throws IOException {
+        HttpClient client = httpClient;
+        HttpClient certClient = certHttpClient;
+        httpClient = null;
+        certHttpClient = null;
+        connManager = null;
+        try {
+            if (client instanceof Closeable) {
+                ((Closeable) client).close();
+            }
+        } finally {
+            if (certClient instanceof Closeable) {
+                ((Closeable) certClient).close();
+            }
+        }
+    }
+
+    /**
+     * 预热: 加载证书创建双向认证的客户端
+     * 双向认证的连接和证书绑定, 不预先建立
+     *
+     * @throws Exception 加载证书失败
+     */
+    public void warmUpCert() throws Exception {
+        getHttpClient(true);
+    }
+
+    /**
+     * 预热: 创建客户端, 并向当前域名预先建立连接放进连接池
+     * 第一次请求就不用再解析域名、建立连接和TLS握手
+     *
+     * @param connections 预先建立的连接数, 不超过每个域名的最大连接数
+     * @return 建立的连接数
+     * @throws Exception 创建客户端或建立连接失败
+     */
+    public int warmUpConnections(int connections) throws Exception {
+        getHttpClient(false);
+        PoolingHttpClientConnectionManager connManager = this.connManager;
+        IWXPayDomain.DomainInfo domainInfo = config.getWXPayDomain().getDomain(config);
+        if (domainInfo == null) {
+            throw new Exception("WXPayConfig.getWXPayDomain().getDomain() is empty or null");
+        }
+        // 和HttpClient选择路由的方式一致, 才能被请求取到
+        HttpHost target = HttpHost.create(domainInfo.domain.contains("://") ? domainInfo.domain : "https://" + domainInfo.domain);
+        if (target.getPort() <= 0) {
+            target = new HttpHost(target.getHostName(), DefaultSchemePortResolver.INSTANCE.resolve(target), target.getSchemeName());
+        }
+        HttpRoute route = new HttpRoute(target, null, "https".equalsIgnoreCase(target.getSchemeName()));
+        int timeoutMs = config.getHttpConnectTimeoutMs();
+
+        int count = Math.min(connections, config.getMaxConnectionsPerRoute());
+        List<HttpClientConnection> leased = new ArrayList<>(count);
+        int opened = 0;
+        try {
+            // 全部取出后再放回, 否则取到的一直是同一个连接
+            for (int i = 0; i < count; i++) {
+                HttpClientConnection conn = connManager.requestConnection(route, null).get(timeoutMs, TimeUnit.MILLISECONDS);
+                leased.add(conn);
+                if (!conn.isOpen()) {
+                    HttpClientContext context = HttpClientContext.create();
+                    connManager.connect(conn, route, timeoutMs, context);
+                    connManager.routeComplete(conn, route, context);
+                }
+                opened++;
+            }
+        } finally {
+            // 和请求结束后保持的连接一样, 空闲60秒后回收
+            for (HttpClientConnection conn : leased) {
+                connManager.releaseConnection(conn, null, 60, TimeUnit.SECONDS);
+            }
+        }
+        return opened;
+    }
+
+    /**
+     * 请求，只请求一次，不做重试
+     *
+     * @param domain
+     * @param urlSuffix
+     * @param uuid
+     * @param data
+     * @param connectTimeoutMs
+     * @param readTimeoutMs
+     * @param useCert          是否使用证书，针对退款、撤销等操作
+     * @return
+     * @throws Exception
+     */
+    private String requestOnce(final String domain, String urlSuffix, String uuid, String data, int connectTimeoutMs, int readTimeoutMs, boolean useCert) throws Exception {
+        HttpClient httpClient = getHttpClient(useCert);
+        CallTimings.recordDomain(domain);
+
+        // 域名可以带协议, 如指向本地的模拟网关
+        String url = domain.contains("://") ? domain + urlSuffix : "https://" + domain + urlSuffix;
+        HttpPost httpPost = new HttpPost(url);
+
+        RequestConfig requestConfig = RequestConfig.custom().setSocketTimeout(readTimeoutMs).setConnectTimeout(connectTimeoutMs).build();
+        httpPost.setConfig(requestConfig);
+
+        StringEntity postEntity = new StringEntity(data, "UTF-8");
+        httpPost.addHeader("Content-Type", "text/xml");
+        httpPost.addHeader("User-Agent", WXPayConstants.USER_AGENT + " " + config.getMchID());
+        httpPost.setEntity(postEntity);
+
+        // 连接超时和读超时各自只限制一段, 到截止时间直接中止整个请求
+        ScheduledFuture<?> abort = Deadlines.abortAtDeadline(httpPost::abort);
+        CallTimings timings = CallTimings.current();
+        long connectNanos = connectNanos(timings);
+        long start = System.nanoTime();
+        try {
+            HttpResponse httpResponse;
+            try {
+                httpResponse = httpClient.execute(httpPost);
+            } finally {
+                // 从连接池取连接时新建连接的耗时已经分别计入DNS、CONNECT、TLS
+                if (timings != null) {
+                    timings.add(CallTimings.Phase.SERVER, System.nanoTime() - start - (connectNanos(timings) - connectNanos));
+                }
+            }
+            long readStart = System.nanoTime();
+            HttpEntity httpEntity = httpResponse.getEntity();
+            String body = EntityUtils.toString(httpEntity, "UTF-8");
+            CallTimings.record(CallTimings.Phase.READ, readStart);
+            return body;
+        } finally {
+            if (abort != null) {
+                abort.cancel(false);
+            }
+        }
+
+    }
+
+
+    private String request(String urlSuffix, String uuid, String data, int connectTimeoutMs, int readTimeoutMs, boolean useCert, boolean autoReport) throws Exception {
+        AdaptiveTimeouts adaptiveTimeouts = config.getAdaptiveTimeouts();
+        if (adaptiveTimeouts != null) {
+            readTimeoutMs = adaptiveTimeouts.timeoutMillis(urlSuffix, readTimeoutMs);
+        }
+        return request(urlSuffix, uuid, data, connectTimeoutMs, readTimeoutMs, useCert, autoReport, true);
+    }
+
+    /**
+     * 请求, 主域名连接失败时切换到备用域名重试一次
+     * 有截止时间时每次请求的超时时间都不超过剩余时间, 到截止时间时中止请求
+     */
+    private String request(String urlSuffix, String uuid, String data, int connectTimeoutMs, int readTimeoutMs, boolean useCert, boolean autoReport, boolean failover) throws Exception {
+        PayCallContext context = PayCallContext.current();
+        context.checkDeadline("请求微信支付" + urlSuffix);
+        connectTimeoutMs = context.boundMillis(connectTimeoutMs);
+        readTimeoutMs = context.boundMillis(readTimeoutMs);
+
+        Exception exception = null;
+        long elapsedTimeMillis = 0;
+        long startTimestampMs = WXPayUtil.getCurrentTimestampMs();
+        boolean firstHasDnsErr = false;
+        boolean firstHasConnectTimeout = false;
+        boolean firstHasReadTimeout = false;
+        IWXPayDomain.DomainInfo domainInfo = config.getWXPayDomain().getDomain(config);
+        if (domainInfo == null) {
+            throw new Exception("WXPayConfig.getWXPayDomain().getDomain() is empty or null");
+        }
+        try {
+            String result = requestOnce(domainInfo.domain, urlSuffix, uuid, data, connectTimeoutMs, readTimeoutMs, useCert);
+            elapsedTimeMillis = WXPayUtil.getCurrentTimestampMs() - startTimestampMs;
+            recordElapsed(urlSuffix, elapsedTimeMillis);
+            config.getWXPayDomain().report(domainInfo.domain, elapsedTimeMillis, null);
+            WXPayReport.getInstance(config).report(
+                    uuid,
+                    elapsedTimeMillis,
+                    domainInfo.domain,
+                    domainInfo.primaryDomain,
+                    connectTimeoutMs,
+                    readTimeoutMs,
+                    firstHasDnsErr,
+                    firstHasConnectTimeout,
+                    firstHasReadTimeout);
+            return result;
+        } catch (UnknownHostException | ConnectTimeoutException ex) {  // dns 解析错误，或域名不存在, 或者连接超时
+            exception = ex;
+            firstHasDnsErr = true;
+            elapsedTimeMillis = WXPayUtil.getCurrentTimestampMs() - startTimestampMs;
+            WXPayUtil.getLogger().warn(
+                    ex instanceof UnknownHostException
+                            ? "UnknownHostException for domainInfo {}"
+                            : "connect timeout happened for domainInfo {}",
+                    domainInfo
+            );
+            WXPayReport.getInstance(config).report(
+                    uuid,
+                    elapsedTimeMillis,
+                    domainInfo.domain,
+                    domainInfo.primaryDomain,
+                    connectTimeoutMs,
+                    readTimeoutMs,
+                    firstHasDnsErr,
+                    firstHasConnectTimeout,
+                    firstHasReadTimeout
+            );
+            // 提交域名错误
+            config.getWXPayDomain().report(domainInfo.domain, elapsedTimeMillis, ex);
+            // 重试, 使用剩余的时间
+            if (domainInfo.primaryDomain && failover && context.remainingNanos() > 0) {
+                return request(urlSuffix, uuid, data, connectTimeoutMs, readTimeoutMs, useCert, autoReport, false);
+            }
+        } catch (SocketTimeoutException ex) {
+            exception = ex;
+            firstHasReadTimeout = true;
+            elapsedTimeMillis = WXPayUtil.getCurrentTimestampMs() - startTimestampMs;
+            // 超时的耗时也计入, 接口整体变慢时超时时间才能跟着放宽
+            recordElapsed(urlSuffix, elapsedTimeMillis);
+            WXPayUtil.getLogger().warn("timeout happened for domainInfo {}", domainInfo);
+            WXPayReport.getInstance(config).report(
+                    uuid,
+                    elapsedTimeMillis,
+                    domainInfo.domain,
+                    domainInfo.primaryDomain,
+                    connectTimeoutMs,
+                    readTimeoutMs,
+                    firstHasDnsErr,
+                    firstHasConnectTimeout,
+                    firstHasReadTimeout);
+            config.getWXPayDomain().report(domainInfo.domain, elapsedTimeMillis, ex);
+        } catch (Exception ex) {
+            exception = ex;
+            elapsedTimeMillis = WXPayUtil.getCurrentTimestampMs() - startTimestampMs;
+            WXPayReport.getInstance(config).report(
+                    uuid,
+                    elapsedTimeMillis,
+                    domainInfo.domain,
+                    domainInfo.primaryDomain,
+                    connectTimeoutMs,
+                    readTimeoutMs,
+                    firstHasDnsErr,
+                    firstHasConnectTimeout,
+                    firstHasReadTimeout);
+            config.getWXPayDomain().report(domainInfo.domain, elapsedTimeMillis, ex);
+        }
+
+        if (context.hasDeadline() && context.remainingNanos() <= 0) {
+            throw new DeadlineExceededException("请求微信支付" + urlSuffix + "超过截止时间", exception);
+        }
+        throw exception;
+    }
+
+    private static long connectNanos(CallTimings timings) {
+        return timings == null
+                ? 0
+                : timings.getNanos(CallTimings.Phase.DNS) + timings.getNanos(CallTimings.Phase.CONNECT) + timings.getNanos(CallTimings.Phase.TLS);
+    }
+
+    private void recordElapsed(String urlSuffix, long elapsedTimeMillis) {
+        AdaptiveTimeouts adaptiveTimeouts = config.getAdaptiveTimeouts();
+        if (adaptiveTimeouts != null) {
+            adaptiveTimeouts.record(urlSuffix, elapsedTimeMillis);
+        }
+    }
+
+
+    /**
+     * 可重试的，非双向认证的请求
+     *
+     * @param urlSuffix
+     * @param uuid
+     * @param data
+     * @return
+     */
+    public String requestWithoutCert(String urlSuffix, String uuid, String data, boolean autoReport) throws Exception {
+        return this.request(urlSuffix, uuid, data, config.getHttpConnectTimeoutMs(), config.getHttpReadTimeoutMs(), false, autoReport);
+    }
+
+    /**
+     * 可重试的，非双向认证的请求
+     *
+     * @param urlSuffix
+     * @param uuid
+     * @param data
+     * @param connectTimeoutMs
+     * @param readTimeoutMs
+     * @return
+     */
+    public String requestWithoutCert(String urlSuffix, String uuid, String data, int connectTimeoutMs, int readTimeoutMs, boolean autoReport) throws Exception {
+        return this.request(urlSuffix, uuid, data, connectTimeoutMs, readTimeoutMs, false, autoReport);
+    }
+
+    /**
+     * 可重试的，双向认证的请求
+     *
+     * @param urlSuffix
+     * @param uuid
+     * @param data
+     * @return
+     */
+    public String requestWithCert(String urlSuffix, String uuid, String data, boolean autoReport) throws Exception {
+        return this.request(urlSuffix, uuid, data, config.getHttpConnectTimeoutMs(), config.getHttpReadTimeoutMs(), true, autoReport);
+    }
+
+    /**
+     * 可重试的，双向认证的请求
+     *
+     * @param urlSuffix
+     * @param uuid
+     * @param data
+     * @param connectTimeoutMs
+     * @param readTimeoutMs
+     * @return
+     */
+    public String requestWithCert(String urlSuffix, String uuid, String data, int connectTimeoutMs, int readTimeoutMs, boolean autoReport) throws Exception {
+        return this.request(urlSuffix, uuid, data, connectTimeoutMs, readTimeoutMs, true, autoReport);
+    }
+
+
+    /**
+     * 分别记录建立TCP连接和TLS握手耗时的SSL连接工厂
+     */
+    private static final class TimedSSLConnectionSocketFactory extends SSLConnectionSocketFactory {
+
+        private TimedSSLConnectionSocketFactory(SSLContext sslContext, String[] supportedProtocols,
+                                                String[] supportedCipherSuites, HostnameVerifier hostnameVerifier) {
+            super(sslContext, supportedProtocols, supportedCipherSuites, hostnameVerifier);
+        }
+
+        @Override
+        public Socket connectSocket(int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress,
+                                    InetSocketAddress localAddress, HttpContext context) throws IOException {
+            CallTimings timings = CallTimings.current();
+            if (timings == null) {
+                return super.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+            }
+            long tlsNanos = timings.getNanos(CallTimings.Phase.TLS);
+            long start = System.nanoTime();
+            try {
+                return super.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+            } finally {
+                // 握手在createLayeredSocket中, 已经单独计入TLS
+                timings.add(CallTimings.Phase.CONNECT, System.nanoTime() - start - (timings.getNanos(CallTimings.Phase.TLS) - tlsNanos));
+            }
+        }
+
+        @Override
+        public Socket createLayeredSocket(Socket socket, String target, int port, HttpContext context) throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.createLayeredSocket(socket, target, port, context);
+            } finally {
+                CallTimings.record(CallTimings.Phase.TLS, start);
+            }
+        }
+    }
+}
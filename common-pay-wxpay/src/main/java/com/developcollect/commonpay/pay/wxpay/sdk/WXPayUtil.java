@@ -1,6 +1,7 @@
 package com.developcollect.commonpay.pay.wxpay.sdk;
 
 import cn.hutool.core.bean.BeanUtil;
+import com.developcollect.commonpay.metrics.CallTimings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Node;
@@ -82,6 +83,15 @@ public class WXPayUtil {
      * @throws Exception
      */
     public static Map<String, String> xmlToMap(String strXML) throws Exception {
+        long start = System.nanoTime();
+        try {
+            return doXmlToMap(strXML);
+        } finally {
+            CallTimings.record(CallTimings.Phase.PARSE, start);
+        }
+    }
+
+    private static Map<String, String> doXmlToMap(String strXML) throws Exception {
         try {
             Map<String, String> data = new HashMap<String, String>();
             DocumentBuilder documentBuilder = WXPayXmlUtil.newDocumentBuilder();
@@ -117,6 +127,15 @@ public class WXPayUtil {
      * @throws Exception
      */
     public static String mapToXml(Map<String, String> data) throws Exception {
+        long start = System.nanoTime();
+        try {
+            return doMapToXml(data);
+        } finally {
+            CallTimings.record(CallTimings.Phase.SERIALIZE, start);
+        }
+    }
+
+    private static String doMapToXml(Map<String, String> data) throws Exception {
         org.w3c.dom.Document document = WXPayXmlUtil.newDocument();
         org.w3c.dom.Element root = document.createElement("xml");
         document.appendChild(root);
@@ -239,6 +258,15 @@ public class WXPayUtil {
      * @return 签名
      */
     public static String generateSignature(final Map<String, String> data, String key, WXPayConstants.SignType signType) throws Exception {
+        long start = System.nanoTime();
+        try {
+            return doGenerateSignature(data, key, signType);
+        } finally {
+            CallTimings.record(CallTimings.Phase.SIGN, start);
+        }
+    }
+
+    private static String doGenerateSignature(final Map<String, String> data, String key, WXPayConstants.SignType signType) throws Exception {
         Set<String> keySet = data.keySet();
         String[] keyArray = keySet.toArray(new String[keySet.size()]);
         Arrays.sort(keyArray);
@@ -0,0 +1,33 @@
+package com.developcollect.commonpay.loadtest;
+
+import com.developcollect.commonpay.PayPlatform;
+import com.developcollect.commonpay.config.AliPayConfig;
+import com.developcollect.commonpay.config.GlobalConfig;
+import com.developcollect.commonpay.simulator.GatewaySimulator;
+
+import java.security.KeyPair;
+import java.util.Base64;
+
+/**
+ * 压测用的支付宝配置
+ * 和微信支付的配置分开放, 只用 common-pay-core 和 common-pay-alipay 启动时不会加载微信支付模块的类
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+final class AlipaySetup {
+
+    private AlipaySetup() {
+    }
+
+    static void configure(GlobalConfig config, GatewaySimulator simulator, KeyPair appKeys) {
+        AliPayConfig aliPayConfig = new AliPayConfig();
+        aliPayConfig.setAppId(LoadTestMain.ALIPAY_APP_ID);
+        aliPayConfig.setPrivateKey(Base64.getEncoder().encodeToString(appKeys.getPrivate().getEncoded()));
+        aliPayConfig.setPublicKey(simulator.getAlipayPublicKey());
+        aliPayConfig.setServerUrl(simulator.getAlipayServerUrl());
+        aliPayConfig.setPayNotifyUrlGenerator(payDTO -> "http://127.0.0.1/notify/pay");
+        aliPayConfig.setRefundNotifyUrlGenerator((payDTO, refundDTO) -> "http://127.0.0.1/notify/refund");
+        config.getPayConfigSupplierMap().put(PayPlatform.ALI_PAY, () -> aliPayConfig);
+    }
+}
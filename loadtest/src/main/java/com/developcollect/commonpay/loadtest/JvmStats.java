@@ -0,0 +1,62 @@
+package com.developcollect.commonpay.loadtest;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * 压测期间的内存分配和GC
+ * 内存分配只统计压测线程, 不包括进程内的模拟网关; GC是整个进程的,
+ * 需要排除模拟网关的影响时用 serve 在另一个进程启动模拟网关
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+final class JvmStats {
+
+    /**
+     * 压测线程分配的字节数, JVM不支持统计时为-1
+     */
+    final long allocatedBytes;
+    final long gcCount;
+    final long gcTimeMillis;
+
+    private JvmStats(long allocatedBytes, long gcCount, long gcTimeMillis) {
+        this.allocatedBytes = allocatedBytes;
+        this.gcCount = gcCount;
+        this.gcTimeMillis = gcTimeMillis;
+    }
+
+    static JvmStats snapshot(long[] threadIds) {
+        long gcCount = 0;
+        long gcTimeMillis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += Math.max(0, gc.getCollectionCount());
+            gcTimeMillis += Math.max(0, gc.getCollectionTime());
+        }
+        return new JvmStats(allocatedBytes(threadIds), gcCount, gcTimeMillis);
+    }
+
+    JvmStats minus(JvmStats before) {
+        long allocated = allocatedBytes < 0 || before.allocatedBytes < 0 ? -1 : allocatedBytes - before.allocatedBytes;
+        return new JvmStats(allocated, gcCount - before.gcCount, gcTimeMillis - before.gcTimeMillis);
+    }
+
+    private static long allocatedBytes(long[] threadIds) {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (!(threadBean instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        if (!allocationBean.isThreadAllocatedMemorySupported() || !allocationBean.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        long total = 0;
+        for (long allocated : allocationBean.getThreadAllocatedBytes(threadIds)) {
+            if (allocated > 0) {
+                total += allocated;
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,130 @@
+package com.developcollect.commonpay.loadtest;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+
+/**
+ * 耗时直方图, 单位微秒
+ * 小于128的值每个值一个桶, 更大的值按2的幂分段, 每段再等分成128个桶, 相对误差小于1%;
+ * 超过2^32微秒(约71分钟)的值计入最后一个桶
+ * <p>
+ * 不是线程安全的, 每个线程单独记录, 结束后再合并
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_MAGNITUDE = 31;
+    private static final int BUCKETS = SUB_BUCKETS + (MAX_MAGNITUDE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long sum;
+    private long max;
+
+    void record(long micros) {
+        long value = Math.max(0, micros);
+        counts[index(value)]++;
+        count++;
+        sum += value;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    void merge(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    long getMax() {
+        return max;
+    }
+
+    double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * 分位值
+     *
+     * @param quantile 0到1之间
+     * @return 分位值所在桶的上界, 单位微秒, 不超过最大值; 没有数据时返回0
+     */
+    long quantile(double quantile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * 转成报告中的格式, 耗时单位毫秒; buckets是非空桶的[上界, 数量]
+     */
+    JSONObject toJson() {
+        JSONObject json = new JSONObject(true);
+        json.put("count", count);
+        json.put("mean", millis(Math.round(getMean())));
+        json.put("p50", millis(quantile(0.5)));
+        json.put("p90", millis(quantile(0.9)));
+        json.put("p99", millis(quantile(0.99)));
+        json.put("p999", millis(quantile(0.999)));
+        json.put("max", millis(max));
+        JSONArray buckets = new JSONArray();
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts[i] > 0) {
+                JSONArray bucket = new JSONArray();
+                bucket.add(millis(upperBound(i)));
+                bucket.add(counts[i]);
+                buckets.add(bucket);
+            }
+        }
+        json.put("buckets", buckets);
+        return json;
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        if (magnitude > MAX_MAGNITUDE) {
+            return BUCKETS - 1;
+        }
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        long subBucket = SUB_BUCKETS + (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,222 @@
+package com.developcollect.commonpay.loadtest;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import com.developcollect.commonpay.PayUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * 压测报告
+ * 以JSON格式保存, 包括参数、环境、每种操作的吞吐量和耗时分布、内存分配和GC,
+ * 用 compare 命令对比不同版本的两次压测
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+final class LoadReport {
+
+    private static final String TOTAL = "total";
+
+    private final JSONObject json;
+
+    private LoadReport(JSONObject json) {
+        this.json = json;
+    }
+
+    static LoadReport of(LoadTestOptions options, LoadResult result, JSONObject gateway) {
+        JSONObject json = new JSONObject(true);
+        String version = libraryVersion();
+        json.put("label", options.label == null ? version : options.label);
+        json.put("version", version);
+        json.put("time", LocalDateTime.now().toString());
+        json.put("environment", environment());
+        json.put("config", config(options));
+
+        OperationStats total = result.total();
+        JSONObject summary = new JSONObject(true);
+        summary.put("elapsedSeconds", result.elapsedNanos / 1e9);
+        summary.put("count", total.responseTime.getCount());
+        summary.put("errors", total.errors);
+        summary.put("unfinished", result.unfinished);
+        summary.put("throughput", result.throughput(total.responseTime.getCount()));
+        json.put("summary", summary);
+
+        JSONObject operations = new JSONObject(true);
+        for (Map.Entry<Operation, OperationStats> entry : result.operations.entrySet()) {
+            if (entry.getValue().responseTime.getCount() > 0) {
+                operations.put(entry.getKey().label(), operation(entry.getValue(), result));
+            }
+        }
+        operations.put(TOTAL, operation(total, result));
+        json.put("operations", operations);
+
+        JvmStats jvm = result.jvm;
+        JSONObject allocation = new JSONObject(true);
+        allocation.put("bytes", jvm.allocatedBytes);
+        if (jvm.allocatedBytes >= 0) {
+            long count = Math.max(1, total.responseTime.getCount());
+            allocation.put("bytesPerOp", jvm.allocatedBytes / count);
+            allocation.put("mbPerSecond", jvm.allocatedBytes / 1048576.0 / (result.elapsedNanos / 1e9));
+        }
+        json.put("allocation", allocation);
+        JSONObject gc = new JSONObject(true);
+        gc.put("count", jvm.gcCount);
+        gc.put("timeMillis", jvm.gcTimeMillis);
+        gc.put("timeRatio", jvm.gcTimeMillis / (result.elapsedNanos / 1e6));
+        json.put("gc", gc);
+
+        if (gateway != null) {
+            json.put("gateway", gateway);
+        }
+        return new LoadReport(json);
+    }
+
+    static LoadReport read(String file) throws IOException {
+        String content = new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8);
+        return new LoadReport(JSON.parseObject(content));
+    }
+
+    void write(String file) throws IOException {
+        Path path = Paths.get(file);
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        Files.write(path, JSON.toJSONString(json, SerializerFeature.PrettyFormat).getBytes(StandardCharsets.UTF_8));
+    }
+
+    void print(PrintStream out) {
+        JSONObject config = json.getJSONObject("config");
+        out.printf("%s  mode=%s threads=%s mix=%s platform=%s%n", json.getString("label"),
+                config.getString("mode"), config.getString("threads"), config.getString("mix"), config.getString("platform"));
+        out.printf("%-12s %10s %8s %10s %9s %9s %9s %9s %9s%n",
+                "operation", "count", "errors", "ops/s", "p50(ms)", "p90(ms)", "p99(ms)", "p999(ms)", "max(ms)");
+        JSONObject operations = json.getJSONObject("operations");
+        for (String name : operations.keySet()) {
+            JSONObject operation = operations.getJSONObject(name);
+            JSONObject latency = operation.getJSONObject("responseTime");
+            out.printf("%-12s %10d %8d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n", name,
+                    latency.getLongValue("count"), operation.getLongValue("errors"), operation.getDoubleValue("throughput"),
+                    latency.getDoubleValue("p50"), latency.getDoubleValue("p90"), latency.getDoubleValue("p99"),
+                    latency.getDoubleValue("p999"), latency.getDoubleValue("max"));
+        }
+        JSONObject allocation = json.getJSONObject("allocation");
+        JSONObject gc = json.getJSONObject("gc");
+        if (allocation.containsKey("bytesPerOp")) {
+            out.printf("allocation: %.1f MB/s, %d bytes/op%n", allocation.getDoubleValue("mbPerSecond"), allocation.getLongValue("bytesPerOp"));
+        }
+        out.printf("gc: %d collections, %d ms (%.2f%%)%n", gc.getLongValue("count"), gc.getLongValue("timeMillis"), gc.getDoubleValue("timeRatio") * 100);
+        long unfinished = json.getJSONObject("summary").getLongValue("unfinished");
+        if (unfinished > 0) {
+            out.printf("丢弃了%d个积压的请求, 发送速率超过了能处理的速率%n", unfinished);
+        }
+    }
+
+    /**
+     * 对比两次压测, 变化为对比相对基准的百分比
+     */
+    static void compare(LoadReport base, LoadReport target, PrintStream out) {
+        out.printf("基准: %s  对比: %s%n", base.json.getString("label"), target.json.getString("label"));
+        if (!base.json.getJSONObject("config").equals(target.json.getJSONObject("config"))) {
+            out.println("注意: 两次压测的参数不同");
+        }
+        out.printf("%-12s %-12s %12s %12s %9s%n", "operation", "metric", "base", "target", "change");
+        JSONObject baseOperations = base.json.getJSONObject("operations");
+        JSONObject targetOperations = target.json.getJSONObject("operations");
+        Set<String> names = new LinkedHashSet<>(baseOperations.keySet());
+        names.retainAll(targetOperations.keySet());
+        for (String name : names) {
+            JSONObject baseOperation = baseOperations.getJSONObject(name);
+            JSONObject targetOperation = targetOperations.getJSONObject(name);
+            compareLine(out, name, "ops/s", baseOperation.getDoubleValue("throughput"), targetOperation.getDoubleValue("throughput"));
+            compareLine(out, name, "errors", baseOperation.getDoubleValue("errors"), targetOperation.getDoubleValue("errors"));
+            for (String quantile : new String[]{"p50", "p99", "p999"}) {
+                compareLine(out, name, quantile + "(ms)",
+                        baseOperation.getJSONObject("responseTime").getDoubleValue(quantile),
+                        targetOperation.getJSONObject("responseTime").getDoubleValue(quantile));
+            }
+        }
+        compareLine(out, TOTAL, "bytes/op", base.json.getJSONObject("allocation").getDoubleValue("bytesPerOp"),
+                target.json.getJSONObject("allocation").getDoubleValue("bytesPerOp"));
+        compareLine(out, TOTAL, "gc(ms)", base.json.getJSONObject("gc").getDoubleValue("timeMillis"),
+                target.json.getJSONObject("gc").getDoubleValue("timeMillis"));
+    }
+
+    private static void compareLine(PrintStream out, String operation, String metric, double base, double target) {
+        String change = base == 0 ? "-" : String.format("%+.1f%%", (target - base) / base * 100);
+        out.printf("%-12s %-12s %12.2f %12.2f %9s%n", operation, metric, base, target, change);
+    }
+
+    private static JSONObject operation(OperationStats stats, LoadResult result) {
+        JSONObject json = new JSONObject(true);
+        json.put("count", stats.responseTime.getCount());
+        json.put("errors", stats.errors);
+        json.put("errorTypes", stats.errorTypes);
+        json.put("throughput", result.throughput(stats.responseTime.getCount()));
+        json.put("responseTime", stats.responseTime.toJson());
+        json.put("serviceTime", stats.serviceTime.toJson());
+        return json;
+    }
+
+    private static JSONObject environment() {
+        Runtime runtime = Runtime.getRuntime();
+        JSONObject json = new JSONObject(true);
+        json.put("java", System.getProperty("java.version"));
+        json.put("vm", System.getProperty("java.vm.name") + " " + System.getProperty("java.vm.version"));
+        json.put("os", System.getProperty("os.name") + " " + System.getProperty("os.arch"));
+        json.put("processors", runtime.availableProcessors());
+        json.put("maxHeapMb", runtime.maxMemory() / 1048576);
+        json.put("jvmArgs", ManagementFactory.getRuntimeMXBean().getInputArguments());
+        return json;
+    }
+
+    private static JSONObject config(LoadTestOptions options) {
+        JSONObject json = new JSONObject(true);
+        json.put("mode", options.mode);
+        json.put("threads", options.threads);
+        if (options.isOpenLoop()) {
+            json.put("rate", options.rate);
+        }
+        json.put("durationSeconds", options.durationSeconds);
+        json.put("warmupSeconds", options.warmupSeconds);
+        json.put("mix", options.mix.toString());
+        json.put("platform", options.platform);
+        json.put("connections", options.connections);
+        json.put("orders", options.orders);
+        json.put("gateway", options.gateway == null ? "embedded" : options.gateway);
+        json.put("gatewayLatencyMedianMillis", options.latencyMillis);
+        json.put("gatewayLatencyP99Millis", options.latencyP99Millis);
+        json.put("gatewayErrorRate", options.errorRate);
+        json.put("bare", options.bare);
+        json.put("seed", options.seed);
+        return json;
+    }
+
+    /**
+     * 被测的common-pay版本, 从jar包中maven生成的pom.properties读取
+     */
+    static String libraryVersion() {
+        try (InputStream in = PayUtil.class.getResourceAsStream("/META-INF/maven/com.developcollect/common-pay/pom.properties")) {
+            if (in != null) {
+                Properties properties = new Properties();
+                properties.load(in);
+                return "common-pay-" + properties.getProperty("version");
+            }
+        } catch (IOException ignored) {
+        }
+        return "common-pay";
+    }
+}
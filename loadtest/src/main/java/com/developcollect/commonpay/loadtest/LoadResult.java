@@ -0,0 +1,52 @@
+package com.developcollect.commonpay.loadtest;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * 一个压测阶段的结果
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+final class LoadResult {
+
+    final Map<Operation, OperationStats> operations;
+
+    /**
+     * 从开始发请求到最后一个请求完成的时间
+     */
+    final long elapsedNanos;
+
+    /**
+     * open模式结束后等待超时被丢弃的请求数
+     */
+    final long unfinished;
+
+    final JvmStats jvm;
+
+    LoadResult(Map<Operation, OperationStats> operations, long elapsedNanos, long unfinished, JvmStats jvm) {
+        this.operations = operations;
+        this.elapsedNanos = elapsedNanos;
+        this.unfinished = unfinished;
+        this.jvm = jvm;
+    }
+
+    OperationStats total() {
+        OperationStats total = new OperationStats();
+        operations.values().forEach(total::merge);
+        return total;
+    }
+
+    double throughput(long count) {
+        return elapsedNanos == 0 ? 0 : count * 1e9 / elapsedNanos;
+    }
+
+    static Map<Operation, OperationStats> newOperationMap() {
+        Map<Operation, OperationStats> operations = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            operations.put(operation, new OperationStats());
+        }
+        return operations;
+    }
+}
@@ -0,0 +1,185 @@
+package com.developcollect.commonpay.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 压测执行器
+ * <ul>
+ *     <li>closed模式: 每个线程发完一个请求再发下一个, 吞吐量由耗时决定, 用来找单机能撑住的最大吞吐量</li>
+ *     <li>open模式: 按固定速率发请求, 不受响应快慢影响, 压测线程都忙时请求在队列中排队,
+ *     响应时间从计划发出的时间算起, 反映调用方实际等待的时间</li>
+ * </ul>
+ * 压测线程在预热和测量阶段之间复用, 每个线程单独记录结果, 阶段结束后合并
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+final class LoadRunner implements AutoCloseable {
+
+    /**
+     * open模式发完请求后最多等待积压的请求完成的时间
+     */
+    private static final long DRAIN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final LoadTestOptions options;
+    private final OrderPool pool;
+    private final ThreadPoolExecutor workers;
+    private final List<Thread> workerThreads = new CopyOnWriteArrayList<>();
+
+    LoadRunner(LoadTestOptions options, OrderPool pool) {
+        this.options = options;
+        this.pool = pool;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(options.threads, options.threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "loadtest-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            workerThreads.add(thread);
+            return thread;
+        });
+        this.workers.prestartAllCoreThreads();
+    }
+
+    /**
+     * 执行一个阶段
+     *
+     * @param seconds 时长, 单位秒
+     * @return 这个阶段的结果
+     */
+    LoadResult run(int seconds) throws InterruptedException {
+        Phase phase = new Phase();
+        long[] threadIds = workerThreadIds();
+        JvmStats before = JvmStats.snapshot(threadIds);
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(seconds);
+        long unfinished = options.isOpenLoop() ? runOpen(phase, start, deadline) : runClosed(phase, deadline);
+        long elapsed = System.nanoTime() - start;
+        JvmStats jvm = JvmStats.snapshot(threadIds).minus(before);
+        return new LoadResult(phase.merge(), elapsed, unfinished, jvm);
+    }
+
+    private long runClosed(Phase phase, long deadline) throws InterruptedException {
+        Future<?>[] futures = new Future<?>[options.threads];
+        for (int i = 0; i < futures.length; i++) {
+            Random random = new Random(options.seed + i);
+            futures[i] = workers.submit(() -> {
+                long now;
+                while ((now = System.nanoTime()) < deadline) {
+                    execute(phase, options.mix.next(random), now);
+                }
+            });
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("压测线程异常退出", e.getCause());
+            }
+        }
+        return 0;
+    }
+
+    private long runOpen(Phase phase, long start, long deadline) throws InterruptedException {
+        long periodNanos = TimeUnit.SECONDS.toNanos(1) / options.rate;
+        Random random = new Random(options.seed);
+        long dispatched = 0;
+        while (true) {
+            // 按计划时间发请求, 前面的请求慢了也不会推迟后面的请求
+            long intended = start + dispatched * periodNanos;
+            if (intended >= deadline) {
+                break;
+            }
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            Operation operation = options.mix.next(random);
+            workers.execute(() -> execute(phase, operation, intended));
+            dispatched++;
+        }
+
+        awaitCompleted(phase, dispatched);
+        if (phase.completed.get() >= dispatched) {
+            return 0;
+        }
+        // 积压太多时丢弃还在排队的请求, 再等正在执行的请求完成, 避免和合并结果同时写
+        List<Runnable> dropped = new ArrayList<>();
+        workers.getQueue().drainTo(dropped);
+        awaitCompleted(phase, dispatched - dropped.size());
+        return dispatched - phase.completed.get();
+    }
+
+    private static void awaitCompleted(Phase phase, long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + DRAIN_TIMEOUT_NANOS;
+        while (phase.completed.get() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private void execute(Phase phase, Operation operation, long intendedNanos) {
+        long begin = System.nanoTime();
+        Throwable error = null;
+        try {
+            operation.execute(pool);
+        } catch (RuntimeException e) {
+            error = e;
+        }
+        long end = System.nanoTime();
+        phase.recorder().get(operation).record((end - intendedNanos) / 1000, (end - begin) / 1000, error);
+        phase.completed.incrementAndGet();
+    }
+
+    private long[] workerThreadIds() {
+        return workerThreads.stream().mapToLong(Thread::getId).toArray();
+    }
+
+    @Override
+    public void close() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * 一个阶段中每个线程的结果
+     */
+    private static final class Phase {
+
+        private final Queue<Map<Operation, OperationStats>> recorders = new ConcurrentLinkedQueue<>();
+
+        private final ThreadLocal<Map<Operation, OperationStats>> recorder = ThreadLocal.withInitial(() -> {
+            Map<Operation, OperationStats> operations = LoadResult.newOperationMap();
+            recorders.add(operations);
+            return operations;
+        });
+
+        /**
+         * 已完成的请求数, 记录完结果后再加, 读到它之后就能看到对应的结果
+         */
+        private final AtomicLong completed = new AtomicLong();
+
+        Map<Operation, OperationStats> recorder() {
+            return recorder.get();
+        }
+
+        Map<Operation, OperationStats> merge() {
+            Map<Operation, OperationStats> merged = LoadResult.newOperationMap();
+            for (Map<Operation, OperationStats> operations : recorders) {
+                operations.forEach((operation, stats) -> merged.get(operation).merge(stats));
+            }
+            return merged;
+        }
+    }
+}
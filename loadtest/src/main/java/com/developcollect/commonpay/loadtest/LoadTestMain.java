@@ -0,0 +1,205 @@
+package com.developcollect.commonpay.loadtest;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import com.developcollect.commonpay.PayPlatform;
+import com.developcollect.commonpay.config.GlobalConfig;
+import com.developcollect.commonpay.metrics.InMemoryPayMetrics;
+import com.developcollect.commonpay.simulator.GatewaySimulator;
+import com.developcollect.commonpay.simulator.LatencyDistribution;
+
+import java.lang.reflect.Field;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Base64;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 压测入口
+ * 用PayUtil按配置的操作比例请求模拟网关, 报告吞吐量、耗时分布、内存分配和GC, 例如:
+ * <ul>
+ *     <li>找最大吞吐量: java -jar target/loadtest.jar -threads 64 -connections 64</li>
+ *     <li>固定速率看耗时: java -jar target/loadtest.jar -mode open -rate 2000 -threads 128</li>
+ *     <li>对比两个版本: java -jar target/loadtest.jar compare old.json new.json</li>
+ *     <li>启动开销: java -cp 依赖 com.developcollect.commonpay.loadtest.LoadTestMain startup -platform wx</li>
+ * </ul>
+ * 默认在进程内启动模拟网关, 要排除模拟网关对GC的影响时先用 serve 在另一个进程启动, 再用 -gateway 指向它
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+public class LoadTestMain {
+
+    static final String WX_APP_ID = "wx0000000000000000";
+    static final String WX_MCH_ID = "1900000000";
+    static final String WX_KEY = "0123456789abcdef0123456789abcdef";
+    static final String ALIPAY_APP_ID = "2021000000000000";
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options;
+        try {
+            options = LoadTestOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(LoadTestOptions.USAGE);
+            System.exit(1);
+            return;
+        }
+        switch (options.command) {
+            case "compare":
+                LoadReport.compare(LoadReport.read(options.files[0]), LoadReport.read(options.files[1]), System.out);
+                break;
+            case "serve":
+                serve(options);
+                break;
+            case "startup":
+                startup(options);
+                break;
+            default:
+                run(options);
+        }
+    }
+
+    private static void run(LoadTestOptions options) throws Exception {
+        KeyPair alipayAppKeys = rsaKeyPair();
+        GatewaySimulator simulator = null;
+        if (options.gateway == null) {
+            simulator = newSimulator(options, alipayAppKeys).start();
+        }
+        try {
+            int payPlatform = "alipay".equals(options.platform) ? PayPlatform.ALI_PAY : PayPlatform.WX_PAY;
+            // 查询要请求到网关, 不开启终态缓存
+            GlobalConfig config = options.bare ? new GlobalConfig() : guarded();
+            if (payPlatform == PayPlatform.WX_PAY) {
+                WxPaySetup.configure(config, options.gateway == null ? simulator.getWxPayDomain() : options.gateway, options.connections);
+            } else {
+                AlipaySetup.configure(config, simulator, alipayAppKeys);
+            }
+            install(config);
+
+            OrderPool pool = new OrderPool(payPlatform, options.orders);
+            pool.seed();
+            LoadResult result;
+            JSONObject gateway;
+            try (LoadRunner runner = new LoadRunner(options, pool)) {
+                if (options.warmupSeconds > 0) {
+                    System.out.printf("预热 %d 秒%n", options.warmupSeconds);
+                    runner.run(options.warmupSeconds);
+                }
+                System.out.printf("测量 %d 秒%n", options.durationSeconds);
+                long[] before = gatewayCounters(simulator);
+                result = runner.run(options.durationSeconds);
+                gateway = gatewayStats(before, gatewayCounters(simulator));
+            }
+
+            LoadReport report = LoadReport.of(options, result, gateway);
+            report.write(options.out);
+            report.print(System.out);
+            System.out.println("结果已写到 " + options.out);
+        } finally {
+            if (simulator != null) {
+                simulator.close();
+            }
+        }
+    }
+
+    /**
+     * 统计启动开销, 模拟网关在计时前启动, 不计入结果
+     */
+    private static void startup(LoadTestOptions options) throws Exception {
+        KeyPair alipayAppKeys = rsaKeyPair();
+        GatewaySimulator simulator = null;
+        if (options.gateway == null) {
+            simulator = newSimulator(options, alipayAppKeys).start();
+        }
+        try {
+            int payPlatform = "alipay".equals(options.platform) ? PayPlatform.ALI_PAY : PayPlatform.WX_PAY;
+            StartupProbe probe = StartupProbe.start();
+            GlobalConfig config = new GlobalConfig();
+            if (payPlatform == PayPlatform.WX_PAY) {
+                WxPaySetup.configure(config, options.gateway == null ? simulator.getWxPayDomain() : options.gateway, options.connections);
+            } else {
+                AlipaySetup.configure(config, simulator, alipayAppKeys);
+            }
+            install(config);
+            probe.initialized();
+
+            OrderPool pool = new OrderPool(payPlatform, 1);
+            pool.seed();
+            probe.firstPay();
+            Operation.PAY_QUERY.execute(pool);
+            probe.firstQuery();
+
+            System.out.println(JSON.toJSONString(probe.toJson(options), SerializerFeature.PrettyFormat));
+        } finally {
+            if (simulator != null) {
+                simulator.close();
+            }
+        }
+    }
+
+    private static void serve(LoadTestOptions options) throws Exception {
+        GatewaySimulator simulator = newSimulator(options, rsaKeyPair()).start();
+        Runtime.getRuntime().addShutdownHook(new Thread(simulator::close));
+        System.out.println("模拟网关已启动, 压测时使用参数: -gateway " + simulator.getWxPayDomain());
+        new CountDownLatch(1).await();
+    }
+
+    private static GatewaySimulator newSimulator(LoadTestOptions options, KeyPair alipayAppKeys) {
+        String appPublicKey = Base64.getEncoder().encodeToString(alipayAppKeys.getPublic().getEncoded());
+        return new GatewaySimulator(WX_KEY, appPublicKey, options.seed)
+                .setLatency(options.latencyMillis > 0
+                        ? LatencyDistribution.logNormal(options.latencyMillis, options.latencyP99Millis)
+                        : LatencyDistribution.none())
+                .setSystemErrorRate(options.errorRate)
+                // 预先创建的订单第一次查询或退款时就是已支付的
+                .setAutoPayMillis(0);
+    }
+
+    /**
+     * 开启所有保护措施和指标的配置, 不加 -bare 时使用
+     */
+    private static GlobalConfig guarded() {
+        return new GlobalConfig()
+                .enableGuards()
+                .setPayMetrics(new InMemoryPayMetrics());
+    }
+
+    /**
+     * 设置全局配置
+     * GlobalConfig通常由Spring注入后反射初始化, 这里不需要后台任务, 直接设置实例
+     */
+    private static void install(GlobalConfig config) throws ReflectiveOperationException {
+        Field instance = GlobalConfig.class.getDeclaredField("GLOBAL_CONFIG");
+        instance.setAccessible(true);
+        instance.set(null, config);
+    }
+
+    private static KeyPair rsaKeyPair() throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+
+    private static long[] gatewayCounters(GatewaySimulator simulator) {
+        if (simulator == null) {
+            return null;
+        }
+        return new long[]{simulator.getRequestCount(), simulator.getThrottledCount(),
+                simulator.getSystemErrorCount(), simulator.getTransportErrorCount()};
+    }
+
+    private static JSONObject gatewayStats(long[] before, long[] after) {
+        if (before == null) {
+            return null;
+        }
+        JSONObject json = new JSONObject(true);
+        json.put("requests", after[0] - before[0]);
+        json.put("throttled", after[1] - before[1]);
+        json.put("systemErrors", after[2] - before[2]);
+        json.put("transportErrors", after[3] - before[3]);
+        return json;
+    }
+}
@@ -0,0 +1,178 @@
+package com.developcollect.commonpay.loadtest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 压测参数, 格式为 -名称 值, 没有值的参数表示开关
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+final class LoadTestOptions {
+
+    static final String USAGE = String.join(System.lineSeparator(),
+            "用法:",
+            "  java -jar target/loadtest.jar [run] [参数]             压测, 默认在进程内启动模拟网关",
+            "  java -jar target/loadtest.jar serve [参数]             只启动模拟网关(微信支付), 配合 run -gateway 使用",
+            "  java -jar target/loadtest.jar compare 基准.json 对比.json  对比两次压测结果",
+            "  java -cp 依赖 com.developcollect.commonpay.loadtest.LoadTestMain startup [参数]",
+            "                                                      统计只用一个支付平台时的启动耗时、类加载和内存, 每次在新进程中执行",
+            "参数:",
+            "  -mode closed|open      closed: 每个线程发完一个请求再发下一个; open: 按 -rate 固定速率发请求, 耗时从计划发出的时间算起(默认closed)",
+            "  -threads N             调用PayUtil的线程数(默认16)",
+            "  -rate N                open模式每秒请求数(默认500)",
+            "  -duration N            测量时长, 秒(默认30)",
+            "  -warmup N              预热时长, 秒, 预热期间的结果不计入报告(默认10)",
+            "  -mix 操作=权重,...      操作比例, 可选 payQrCode、payQuery、refundSync(默认payQrCode=20,payQuery=60,refundSync=20)",
+            "  -platform wx|alipay    支付平台(默认wx)",
+            "  -connections N         微信支付每个域名的最大连接数(默认32); 支付宝SDK用JDK的连接, 用 -Dhttp.maxConnections 调整",
+            "  -orders N              查询和退款用的预先创建的订单数(默认1000)",
+            "  -latency N             模拟网关响应耗时的中位数, 毫秒, 0表示不加延迟(默认20)",
+            "  -latency-p99 N         模拟网关响应耗时的99分位, 毫秒(默认中位数的4倍)",
+            "  -error-rate N          模拟网关返回系统错误的比例, 0到1(默认0)",
+            "  -gateway URL           使用 serve 启动的模拟网关, 只支持微信支付",
+            "  -bare                  关闭熔断、限流、隔离舱、自适应并发限制和指标收集, 只测请求本身",
+            "  -label 名称             写到报告中的标识, 如版本号(默认为common-pay的版本)",
+            "  -out 文件               结果文件(默认target/loadtest-result.json)",
+            "  -seed N                随机数种子(默认1)");
+
+    String command = "run";
+    String mode = "closed";
+    int threads = 16;
+    int rate = 500;
+    int durationSeconds = 30;
+    int warmupSeconds = 10;
+    OperationMix mix = OperationMix.parse("payQrCode=20,payQuery=60,refundSync=20");
+    String platform = "wx";
+    int connections = 32;
+    int orders = 1000;
+    double latencyMillis = 20;
+    double latencyP99Millis = -1;
+    double errorRate;
+    String gateway;
+    boolean bare;
+    String label;
+    String out = "target/loadtest-result.json";
+    long seed = 1;
+    String[] files = new String[0];
+
+    static LoadTestOptions parse(String[] args) {
+        LoadTestOptions options = new LoadTestOptions();
+        int start = 0;
+        if (args.length > 0 && !args[0].startsWith("-")) {
+            options.command = args[0];
+            start = 1;
+        }
+        if ("compare".equals(options.command)) {
+            if (args.length - start != 2) {
+                throw new IllegalArgumentException("compare需要两个结果文件");
+            }
+            options.files = new String[]{args[start], args[start + 1]};
+            return options;
+        }
+        if (!"run".equals(options.command) && !"serve".equals(options.command) && !"startup".equals(options.command)) {
+            throw new IllegalArgumentException("不支持的命令: " + options.command);
+        }
+
+        Map<String, String> values = new LinkedHashMap<>();
+        for (int i = start; i < args.length; i++) {
+            if (!args[i].startsWith("-")) {
+                throw new IllegalArgumentException("参数格式错误: " + args[i]);
+            }
+            String name = args[i].substring(1);
+            if ("bare".equals(name)) {
+                values.put(name, "true");
+            } else if (i + 1 < args.length) {
+                values.put(name, args[++i]);
+            } else {
+                throw new IllegalArgumentException("参数缺少值: " + args[i]);
+            }
+        }
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            options.set(entry.getKey(), entry.getValue());
+        }
+        options.validate();
+        return options;
+    }
+
+    private void set(String name, String value) {
+        switch (name) {
+            case "mode":
+                mode = value;
+                break;
+            case "threads":
+                threads = Integer.parseInt(value);
+                break;
+            case "rate":
+                rate = Integer.parseInt(value);
+                break;
+            case "duration":
+                durationSeconds = Integer.parseInt(value);
+                break;
+            case "warmup":
+                warmupSeconds = Integer.parseInt(value);
+                break;
+            case "mix":
+                mix = OperationMix.parse(value);
+                break;
+            case "platform":
+                platform = value;
+                break;
+            case "connections":
+                connections = Integer.parseInt(value);
+                break;
+            case "orders":
+                orders = Integer.parseInt(value);
+                break;
+            case "latency":
+                latencyMillis = Double.parseDouble(value);
+                break;
+            case "latency-p99":
+                latencyP99Millis = Double.parseDouble(value);
+                break;
+            case "error-rate":
+                errorRate = Double.parseDouble(value);
+                break;
+            case "gateway":
+                gateway = value;
+                break;
+            case "bare":
+                bare = Boolean.parseBoolean(value);
+                break;
+            case "label":
+                label = value;
+                break;
+            case "out":
+                out = value;
+                break;
+            case "seed":
+                seed = Long.parseLong(value);
+                break;
+            default:
+                throw new IllegalArgumentException("不支持的参数: -" + name);
+        }
+    }
+
+    private void validate() {
+        if (!"closed".equals(mode) && !"open".equals(mode)) {
+            throw new IllegalArgumentException("-mode只能是closed或open: " + mode);
+        }
+        if (!"wx".equals(platform) && !"alipay".equals(platform)) {
+            throw new IllegalArgumentException("-platform只能是wx或alipay: " + platform);
+        }
+        if (gateway != null && !"wx".equals(platform)) {
+            throw new IllegalArgumentException("-gateway只支持微信支付");
+        }
+        if (threads <= 0 || rate <= 0 || durationSeconds <= 0 || warmupSeconds < 0 || connections <= 0 || orders <= 0) {
+            throw new IllegalArgumentException("线程数、速率、时长、连接数和订单数必须大于0");
+        }
+        if (latencyP99Millis < 0) {
+            latencyP99Millis = latencyMillis * 4;
+        }
+    }
+
+    boolean isOpenLoop() {
+        return "open".equals(mode);
+    }
+}
@@ -0,0 +1,70 @@
+package com.developcollect.commonpay.loadtest;
+
+import com.developcollect.commonpay.PayUtil;
+import com.developcollect.commonpay.pay.IPayDTO;
+
+/**
+ * 压测的操作
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+enum Operation {
+    /**
+     * 用新订单请求二维码, 每次都会调用统一下单/预下单
+     */
+    PAY_QR_CODE("payQrCode") {
+        @Override
+        void execute(OrderPool pool) {
+            PayUtil.payQrCode(pool.newOrder());
+        }
+    },
+    /**
+     * 随机查询一个预先创建的订单
+     */
+    PAY_QUERY("payQuery") {
+        @Override
+        void execute(OrderPool pool) {
+            PayUtil.payQuery(pool.randomOrder());
+        }
+    },
+    /**
+     * 随机选一个预先创建的订单退款1分钱
+     */
+    REFUND_SYNC("refundSync") {
+        @Override
+        void execute(OrderPool pool) {
+            IPayDTO order = pool.randomOrder();
+            PayUtil.refundSync(order, pool.newRefund());
+        }
+    };
+
+    private static final Operation[] OPERATIONS = values();
+
+    private final String label;
+
+    Operation(String label) {
+        this.label = label;
+    }
+
+    /**
+     * 执行一次操作, 失败时抛出异常
+     */
+    abstract void execute(OrderPool pool);
+
+    /**
+     * 和PayUtil方法名一致的名称, 用在参数和报告中
+     */
+    String label() {
+        return label;
+    }
+
+    static Operation fromLabel(String label) {
+        for (Operation operation : OPERATIONS) {
+            if (operation.label.equals(label)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("不支持的操作: " + label);
+    }
+}
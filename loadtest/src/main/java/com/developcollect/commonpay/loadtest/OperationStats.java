@@ -0,0 +1,46 @@
+package com.developcollect.commonpay.loadtest;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 一种操作的压测结果
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+final class OperationStats {
+
+    /**
+     * 响应时间, open模式从计划发出的时间算起, 包括在压测线程池中排队的时间
+     */
+    final LatencyHistogram responseTime = new LatencyHistogram();
+
+    /**
+     * 服务时间, 从实际调用PayUtil算起
+     */
+    final LatencyHistogram serviceTime = new LatencyHistogram();
+
+    /**
+     * 按异常类型统计的失败次数
+     */
+    final Map<String, Long> errorTypes = new TreeMap<>();
+
+    long errors;
+
+    void record(long responseMicros, long serviceMicros, Throwable error) {
+        responseTime.record(responseMicros);
+        serviceTime.record(serviceMicros);
+        if (error != null) {
+            errors++;
+            errorTypes.merge(error.getClass().getSimpleName(), 1L, Long::sum);
+        }
+    }
+
+    void merge(OperationStats other) {
+        responseTime.merge(other.responseTime);
+        serviceTime.merge(other.serviceTime);
+        errors += other.errors;
+        other.errorTypes.forEach((type, count) -> errorTypes.merge(type, count, Long::sum));
+    }
+}
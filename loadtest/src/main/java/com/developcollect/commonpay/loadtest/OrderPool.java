@@ -0,0 +1,71 @@
+package com.developcollect.commonpay.loadtest;
+
+import com.developcollect.commonpay.PayUtil;
+import com.developcollect.commonpay.pay.DefaultPayDTO;
+import com.developcollect.commonpay.pay.DefaultRefundDTO;
+import com.developcollect.commonpay.pay.IPayDTO;
+import com.developcollect.commonpay.pay.IRefundDTO;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 压测用的订单
+ * 查询和退款使用开始前创建好的一批订单, 模拟网关在第一次查询或退款时把它们置为已支付;
+ * 单号带上本次压测的标识, 多次压测同一个模拟网关时不会重复
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+final class OrderPool {
+
+    /**
+     * 预先创建的订单金额, 足够每次退款1分钱退很多次
+     */
+    private static final long POOLED_TOTAL_FEE = 100_000_000L;
+
+    private final int payPlatform;
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong sequence = new AtomicLong();
+    private final IPayDTO[] orders;
+
+    OrderPool(int payPlatform, int size) {
+        this.payPlatform = payPlatform;
+        this.orders = new IPayDTO[size];
+    }
+
+    /**
+     * 在支付平台创建预先准备的订单
+     */
+    void seed() {
+        for (int i = 0; i < orders.length; i++) {
+            DefaultPayDTO order = order(POOLED_TOTAL_FEE);
+            PayUtil.payQrCode(order);
+            orders[i] = order;
+        }
+    }
+
+    IPayDTO newOrder() {
+        return order(1);
+    }
+
+    IPayDTO randomOrder() {
+        return orders[ThreadLocalRandom.current().nextInt(orders.length)];
+    }
+
+    IRefundDTO newRefund() {
+        DefaultRefundDTO refund = new DefaultRefundDTO();
+        refund.setOutRefundNo("R" + runId + String.format("%012d", sequence.incrementAndGet()));
+        refund.setRefundFee(1L);
+        refund.setPayPlatform(payPlatform);
+        return refund;
+    }
+
+    private DefaultPayDTO order(long totalFee) {
+        DefaultPayDTO order = new DefaultPayDTO();
+        order.setOutTradeNo("L" + runId + String.format("%012d", sequence.incrementAndGet()));
+        order.setTotalFee(totalFee);
+        order.setPayPlatform(payPlatform);
+        return order;
+    }
+}
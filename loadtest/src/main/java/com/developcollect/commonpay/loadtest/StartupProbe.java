@@ -0,0 +1,145 @@
+package com.developcollect.commonpay.loadtest;
+
+import com.alibaba.fastjson.JSONObject;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.reflect.Method;
+
+/**
+ * 启动开销
+ * 在一个新进程里只配置一个支付平台, 统计从初始化到第一次下单、第一次查询的耗时,
+ * 以及这期间加载的类、Metaspace和GC后堆内存的增量, 用来比较不同依赖组合(如 common-pay 和 common-pay-core + common-pay-wxpay)的启动开销
+ * 进程内的模拟网关会加载微信支付SDK的类, 比较微信支付时先用 serve 在另一个进程启动模拟网关, 再用 -gateway 指向它
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+final class StartupProbe {
+
+    /**
+     * 用来判断各个模块是否被加载的类
+     */
+    private static final String[][] MODULE_MARKERS = {
+            {"common-pay-alipay", "com.developcollect.commonpay.pay.alipay.Alipay"},
+            {"alipay-sdk", "com.alipay.api.DefaultAlipayClient"},
+            {"common-pay-wxpay", "com.developcollect.commonpay.pay.wxpay.WxPay"},
+            {"httpclient", "org.apache.http.impl.client.CloseableHttpClient"},
+    };
+
+    private final long jvmUptimeMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+    private final int classesBefore;
+    private final long metaspaceBefore;
+    private final long heapBefore;
+    private final long startNanos;
+    private long initNanos;
+    private long firstPayNanos;
+    private long firstQueryNanos;
+
+    private StartupProbe() {
+        heapBefore = heapUsedAfterGc();
+        classesBefore = ManagementFactory.getClassLoadingMXBean().getLoadedClassCount();
+        metaspaceBefore = metaspaceUsed();
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * 在初始化common-pay之前调用, 之后的类加载和内存变化都算作启动开销
+     */
+    static StartupProbe start() {
+        return new StartupProbe();
+    }
+
+    void initialized() {
+        initNanos = System.nanoTime();
+    }
+
+    void firstPay() {
+        firstPayNanos = System.nanoTime();
+    }
+
+    void firstQuery() {
+        firstQueryNanos = System.nanoTime();
+    }
+
+    JSONObject toJson(LoadTestOptions options) {
+        int classesAfter = ManagementFactory.getClassLoadingMXBean().getLoadedClassCount();
+        long metaspaceAfter = metaspaceUsed();
+        long heapAfter = heapUsedAfterGc();
+
+        JSONObject json = new JSONObject(true);
+        json.put("platform", options.platform);
+        json.put("jvmUptimeMillis", jvmUptimeMillis);
+        json.put("initMillis", millis(startNanos, initNanos));
+        json.put("firstPayMillis", millis(initNanos, firstPayNanos));
+        json.put("firstQueryMillis", millis(firstPayNanos, firstQueryNanos));
+        json.put("loadedClasses", classesAfter - classesBefore);
+        json.put("metaspaceBytes", metaspaceBefore < 0 ? -1 : metaspaceAfter - metaspaceBefore);
+        json.put("heapAfterGcBytes", heapAfter - heapBefore);
+        JSONObject modules = new JSONObject(true);
+        for (String[] marker : MODULE_MARKERS) {
+            modules.put(marker[0], isLoaded(marker[1]));
+        }
+        json.put("loadedModules", modules);
+        json.put("classpathBytes", classpathBytes());
+        return json;
+    }
+
+    private static double millis(long from, long to) {
+        return (to - from) / 1_000_000.0;
+    }
+
+    private static long metaspaceUsed() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.NON_HEAP && "Metaspace".equals(pool.getName())) {
+                return pool.getUsage().getUsed();
+            }
+        }
+        return -1;
+    }
+
+    private static long heapUsedAfterGc() {
+        System.gc();
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getCollectionUsage() != null) {
+                used += pool.getCollectionUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    /**
+     * 类是否已被加载, 不会触发加载
+     */
+    private static boolean isLoaded(String className) {
+        try {
+            Method findLoadedClass = ClassLoader.class.getDeclaredMethod("findLoadedClass", String.class);
+            findLoadedClass.setAccessible(true);
+            for (ClassLoader loader = StartupProbe.class.getClassLoader(); loader != null; loader = loader.getParent()) {
+                if (findLoadedClass.invoke(loader, className) != null) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("无法检查类是否已加载: " + className, e);
+        }
+    }
+
+    /**
+     * classpath上所有jar的大小
+     */
+    private static long classpathBytes() {
+        long total = 0;
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            File file = new File(entry);
+            if (file.isFile()) {
+                total += file.length();
+            }
+        }
+        return total;
+    }
+}
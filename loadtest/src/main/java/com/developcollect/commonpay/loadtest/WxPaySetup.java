@@ -0,0 +1,44 @@
+package com.developcollect.commonpay.loadtest;
+
+import com.developcollect.commonpay.PayPlatform;
+import com.developcollect.commonpay.config.GlobalConfig;
+import com.developcollect.commonpay.config.WxPayConfig;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+/**
+ * 压测用的微信支付配置
+ * 和支付宝的配置分开放, 只用 common-pay-core 和 common-pay-wxpay 启动时不会加载支付宝模块的类
+ *
+ * @author zak
+ * @since 2.2.0
+ */
+final class WxPaySetup {
+
+    private WxPaySetup() {
+    }
+
+    static void configure(GlobalConfig config, String domain, int connections) throws GeneralSecurityException, IOException {
+        // 模拟网关不校验客户端证书, 退款时加载一个空的证书库
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(null, null);
+        ByteArrayOutputStream cert = new ByteArrayOutputStream();
+        keyStore.store(cert, LoadTestMain.WX_MCH_ID.toCharArray());
+        byte[] certBytes = cert.toByteArray();
+
+        WxPayConfig wxPayConfig = new WxPayConfig();
+        wxPayConfig.setAppId(LoadTestMain.WX_APP_ID);
+        wxPayConfig.setMchId(LoadTestMain.WX_MCH_ID);
+        wxPayConfig.setKey(LoadTestMain.WX_KEY);
+        wxPayConfig.setCertInputStreamSupplier(() -> new ByteArrayInputStream(certBytes));
+        wxPayConfig.setDomain(domain);
+        wxPayConfig.setMaxConnectionsPerRoute(connections);
+        wxPayConfig.setPayNotifyUrlGenerator(payDTO -> "http://127.0.0.1/notify/pay");
+        wxPayConfig.setRefundNotifyUrlGenerator((payDTO, refundDTO) -> "http://127.0.0.1/notify/refund");
+        config.getPayConfigSupplierMap().put(PayPlatform.WX_PAY, () -> wxPayConfig);
+    }
+}